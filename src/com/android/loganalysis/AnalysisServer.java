@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.LogAnalyzer.LogType;
+import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.util.LineReader;
+import com.android.loganalysis.util.LogFileUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long running server which analyzes logs over HTTP on the loopback interface, so that repeated
+ * analyses do not pay for JVM startup, class loading, and JIT warm up.
+ * <p>
+ * Requests are made to {@code /analyze} with an optional {@code type} parameter, one of the
+ * {@link LogType}s and {@code BUGREPORT} by default.  If the {@code path} parameter is set, the
+ * log is read from that local file, which must be inside the server's root directory.  A relative
+ * path is resolved against the root, and a server without a root rejects all paths.  Otherwise,
+ * the log is read from the request body, which may be gzipped or zipped.  The response is the
+ * JSON of the parsed {@link IItem}, or an object with an {@link #ERROR} message.
+ * </p><p>
+ * At most {@code maxRequests} logs are analyzed at a time, and further requests are rejected with
+ * {@code 503} rather than queued.  A request which takes longer than the timeout gets a
+ * {@code 504}.  The parse itself cannot be interrupted, so it keeps its slot until it finishes.
+ * </p>
+ */
+public class AnalysisServer {
+    /** The path which logs are analyzed on. */
+    public static final String ANALYZE_PATH = "/analyze";
+    /** The key for the error message in the response. */
+    public static final String ERROR = "ERROR";
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_FORBIDDEN = 403;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_BAD_METHOD = 405;
+    private static final int HTTP_INTERNAL_ERROR = 500;
+    private static final int HTTP_UNAVAILABLE = 503;
+    private static final int HTTP_GATEWAY_TIMEOUT = 504;
+
+    private final int mPort;
+    private final int mMaxRequests;
+    private final long mTimeoutMs;
+    private final File mRoot;
+    private final Semaphore mPermits;
+
+    private File mCanonicalRoot = null;
+
+    private HttpServer mServer = null;
+    private ExecutorService mHandlerExecutor = null;
+    private ExecutorService mWorkerExecutor = null;
+
+    /**
+     * Constructor for {@link AnalysisServer}.
+     *
+     * @param port the port to listen on, or 0 for any free port.
+     * @param maxRequests the maximum number of logs to analyze at once.
+     * @param timeoutMs the time to wait for an analysis before responding with an error.
+     * @param root the directory which logs may be read from by path, or {@code null} to only
+     * analyze logs sent in the request body.
+     */
+    public AnalysisServer(int port, int maxRequests, long timeoutMs, File root) {
+        mPort = port;
+        mMaxRequests = Math.max(1, maxRequests);
+        mTimeoutMs = timeoutMs;
+        mRoot = root;
+        mPermits = new Semaphore(mMaxRequests);
+    }
+
+    /**
+     * Start listening for requests.
+     *
+     * @throws IOException if the server could not be bound to the port, or if the root is not a
+     * directory.
+     */
+    public synchronized void start() throws IOException {
+        if (mRoot != null) {
+            if (!mRoot.isDirectory()) {
+                throw new IOException(String.format("%s is not a directory", mRoot.getPath()));
+            }
+            mCanonicalRoot = mRoot.getCanonicalFile();
+        }
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), mPort), 0);
+        mHandlerExecutor = Executors.newCachedThreadPool();
+        mWorkerExecutor = Executors.newFixedThreadPool(mMaxRequests);
+        mServer.setExecutor(mHandlerExecutor);
+        mServer.createContext(ANALYZE_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleAnalyze(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+    }
+
+    /**
+     * Stop the server, abandoning any analyses in progress.
+     */
+    public synchronized void stop() {
+        if (mServer != null) {
+            mServer.stop(0);
+            mHandlerExecutor.shutdownNow();
+            mWorkerExecutor.shutdownNow();
+            mServer = null;
+        }
+    }
+
+    /**
+     * Get the port the server is listening on.
+     */
+    public synchronized int getPort() {
+        return mServer != null ? mServer.getAddress().getPort() : mPort;
+    }
+
+    /**
+     * Handle a request to analyze a log.
+     */
+    private void handleAnalyze(final HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"POST".equals(method)) {
+            sendError(exchange, HTTP_BAD_METHOD, String.format("Unsupported method %s", method));
+            return;
+        }
+
+        final Map<String, String> params;
+        try {
+            params = parseQuery(exchange.getRequestURI().getRawQuery());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, HTTP_BAD_REQUEST, String.format("Malformed query: %s",
+                    e.getMessage()));
+            return;
+        }
+        final LogType type;
+        try {
+            type = params.containsKey("type") ?
+                    LogType.valueOf(params.get("type").toUpperCase(Locale.US)) : LogType.BUGREPORT;
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, HTTP_BAD_REQUEST, String.format("Unknown type %s",
+                    params.get("type")));
+            return;
+        }
+        final String path = params.get("path");
+        if (path == null && !"POST".equals(method)) {
+            sendError(exchange, HTTP_BAD_REQUEST, "Either a path or a POST body is required");
+            return;
+        }
+        final File file;
+        try {
+            file = path != null ? resolvePath(path) : null;
+        } catch (IOException e) {
+            sendError(exchange, HTTP_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        if (path != null && file == null) {
+            sendError(exchange, HTTP_FORBIDDEN, String.format(
+                    "%s is not inside the server root", path));
+            return;
+        }
+
+        if (!mPermits.tryAcquire()) {
+            sendError(exchange, HTTP_UNAVAILABLE, String.format(
+                    "Already analyzing %d logs", mMaxRequests));
+            return;
+        }
+        Future<IItem> future;
+        try {
+            future = mWorkerExecutor.submit(new Callable<IItem>() {
+                @Override
+                public IItem call() throws IOException {
+                    try {
+                        return analyze(type, file, exchange.getRequestBody());
+                    } finally {
+                        mPermits.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            mPermits.release();
+            throw e;
+        }
+
+        try {
+            sendItem(exchange, future.get(mTimeoutMs, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            sendError(exchange, HTTP_GATEWAY_TIMEOUT, String.format(
+                    "Analysis did not finish in %d ms", mTimeoutMs));
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            sendError(exchange, HTTP_UNAVAILABLE, "Server is shutting down");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FileNotFoundException) {
+                sendError(exchange, HTTP_NOT_FOUND, cause.getMessage());
+            } else if (cause instanceof IOException) {
+                sendError(exchange, HTTP_BAD_REQUEST, cause.getMessage());
+            } else {
+                sendError(exchange, HTTP_INTERNAL_ERROR, cause.toString());
+            }
+        }
+    }
+
+    /**
+     * Resolve the path of a log against the root, following any links.
+     *
+     * @return the canonical file, or {@code null} if there is no root or the file is outside it.
+     * @throws IOException if the path could not be resolved.
+     */
+    private File resolvePath(String path) throws IOException {
+        if (mCanonicalRoot == null) {
+            return null;
+        }
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(mCanonicalRoot, path);
+        }
+        file = file.getCanonicalFile();
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(mCanonicalRoot)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse a log from a local file or from the request body.
+     */
+    private IItem analyze(LogType type, File file, InputStream body) throws IOException {
+        LineReader reader = null;
+        try {
+            reader = file != null ? LogFileUtil.openLineReader(file) :
+                    LogFileUtil.openLineReader(body);
+            return LogAnalyzer.parse(type, reader);
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Send the JSON of an item as it is generated.
+     */
+    private void sendItem(HttpExchange exchange, IItem item) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(HTTP_OK, 0);
+        Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                "UTF-8"));
+        try {
+            LogAnalyzer.writeJson(item, new JSONWriter(out));
+        } catch (JSONException e) {
+            // The status has already been sent, so the response is cut short instead.
+            throw new IOException(e);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Send a JSON error response.
+     */
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        JSONObject error = new JSONObject();
+        try {
+            error.put(ERROR, message != null ? message : "");
+        } catch (JSONException e) {
+            // This shouldn't happen since the key is not null.
+        }
+        send(exchange, status, error);
+    }
+
+    /**
+     * Send a JSON response.
+     */
+    private void send(HttpExchange exchange, int status, JSONObject json) throws IOException {
+        byte[] response = json.toString().getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, response.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(response);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Parse the parameters of a query string.
+     *
+     * @throws IllegalArgumentException if the query has a malformed escape.
+     */
+    static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<String, String>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            String[] keyValue = param.split("=", 2);
+            params.put(URLDecoder.decode(keyValue[0], "UTF-8"),
+                    keyValue.length > 1 ? URLDecoder.decode(keyValue[1], "UTF-8") : "");
+        }
+        return params;
+    }
+}
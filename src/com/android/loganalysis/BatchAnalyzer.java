@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.LogAnalyzer.LogType;
+import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.util.LineReader;
+import com.android.loganalysis.util.LogFileUtil;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Analyzes a corpus of logs of the same {@link LogType} in a single process.
+ * <p>
+ * Files are parsed by a fixed pool of workers, each of which creates its own parser for every
+ * file.  As each file finishes, a single line of JSON is written to the output containing the
+ * {@link #FILE} and either the {@link #RESULT} or the {@link #ERROR} message, so that one bad file
+ * does not stop the rest of the batch.
+ * </p>
+ */
+public class BatchAnalyzer {
+    /** The key for the path of the analyzed file. */
+    public static final String FILE = "FILE";
+    /** The key for the JSON output of the parser. */
+    public static final String RESULT = "RESULT";
+    /** The key for the error message if the file could not be analyzed. */
+    public static final String ERROR = "ERROR";
+
+    private final LogType mType;
+    private final int mThreads;
+    private final PrintStream mOutput;
+
+    /**
+     * Constructor for {@link BatchAnalyzer}.
+     *
+     * @param type the {@link LogType} of every file in the batch.
+     * @param threads the number of files to analyze in parallel.
+     * @param output the {@link PrintStream} to write the results to.
+     */
+    public BatchAnalyzer(LogType type, int threads, PrintStream output) {
+        mType = type;
+        mThreads = Math.max(1, threads);
+        mOutput = output;
+    }
+
+    /**
+     * Analyze the files, writing one line of JSON per file in the order they finish.
+     *
+     * @param files the files to analyze.
+     * @return the number of files which could not be analyzed.
+     * @throws InterruptedException if interrupted while waiting for the workers.
+     */
+    public int analyze(List<File> files) throws InterruptedException {
+        final AtomicInteger failures = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(mThreads,
+                Math.max(1, files.size())));
+        try {
+            for (final File file : files) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!analyzeFile(file)) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        mOutput.flush();
+        return failures.get();
+    }
+
+    /**
+     * Analyze a single file and write its line of output.
+     *
+     * @return true if the file was analyzed, false if there was an error.
+     */
+    private boolean analyzeFile(File file) {
+        IItem item = null;
+        String error = null;
+        LineReader reader = null;
+        try {
+            reader = LogFileUtil.openLineReader(file);
+            item = LogAnalyzer.parse(mType, reader);
+        } catch (IOException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        } catch (RuntimeException e) {
+            error = e.toString();
+        } catch (Error e) {
+            // Such as an OutOfMemoryError or StackOverflowError on a pathological file.  The
+            // partial item is unreachable, so the other files can still be analyzed.
+            error = e.toString();
+        } finally {
+            close(reader);
+        }
+
+        // The whole line is built before any of it is written, so that a result which fails to
+        // serialize part way through can still be replaced by an error line, and so that the
+        // output lock is not held while serializing.  This holds at most one result per worker.
+        String line;
+        if (error == null) {
+            try {
+                line = formatResult(file, item);
+            } catch (JSONException e) {
+                error = e.toString();
+                line = formatError(file, error);
+            } catch (RuntimeException e) {
+                error = e.toString();
+                line = formatError(file, error);
+            }
+        } else {
+            line = formatError(file, error);
+        }
+
+        synchronized (mOutput) {
+            mOutput.println(line);
+        }
+        return error == null;
+    }
+
+    /**
+     * Format the line of output for a file which was analyzed.
+     */
+    private static String formatResult(File file, IItem item) throws JSONException {
+        StringWriter line = new StringWriter();
+        JSONWriter writer = new JSONWriter(line);
+        writer.object();
+        writer.key(FILE).value(file.getPath());
+        writer.key(RESULT);
+        LogAnalyzer.writeJson(item, writer);
+        writer.endObject();
+        return line.toString();
+    }
+
+    /**
+     * Format the line of output for a file which could not be analyzed.  This cannot fail, so
+     * that every file in the batch has a line.
+     */
+    private static String formatError(File file, String error) {
+        return String.format("{\"%s\":%s,\"%s\":%s}", FILE, JSONObject.quote(file.getPath()),
+                ERROR, JSONObject.quote(error));
+    }
+
+    /**
+     * Expand a list of paths into the files they refer to.  Directories are expanded to every file
+     * under them, and paths containing {@code *}, {@code ?} or {@code [} are treated as globs
+     * where {@code **} matches any number of directories.  Any other path is returned as is, so
+     * that a missing file is reported as an error for that file.
+     *
+     * @param paths the paths, directories and globs to expand.
+     * @return the files, with the files from each path in sorted order.
+     */
+    public static List<File> expandPaths(Collection<String> paths) {
+        List<File> files = new ArrayList<File>();
+        for (String path : paths) {
+            if (isGlob(path)) {
+                files.addAll(expandGlob(path));
+                continue;
+            }
+            File file = new File(path);
+            if (file.isDirectory()) {
+                List<File> dirFiles = new ArrayList<File>();
+                listFiles(file, "", null, Integer.MAX_VALUE, dirFiles);
+                Collections.sort(dirFiles);
+                files.addAll(dirFiles);
+            } else {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Read the paths from a manifest file, one path, directory or glob per line.  Blank lines and
+     * lines starting with {@code #} are ignored.
+     *
+     * @param manifest the manifest file.
+     * @return the paths listed in the manifest.
+     * @throws IOException if the manifest could not be read.
+     */
+    public static List<String> readManifest(File manifest) throws IOException {
+        List<String> paths = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(manifest), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    paths.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return paths;
+    }
+
+    private static boolean isGlob(String path) {
+        return path.indexOf('*') >= 0 || path.indexOf('?') >= 0 || path.indexOf('[') >= 0;
+    }
+
+    /**
+     * Expand a glob by walking the directory before the first wildcard.
+     */
+    static List<File> expandGlob(String glob) {
+        int wildcard = 0;
+        while (wildcard < glob.length() && "*?[".indexOf(glob.charAt(wildcard)) < 0) {
+            wildcard++;
+        }
+        final String prefix = glob.substring(0, glob.lastIndexOf('/', wildcard) + 1);
+        final String pattern = glob.substring(prefix.length());
+
+        int maxDepth = Integer.MAX_VALUE;
+        if (!pattern.contains("**")) {
+            maxDepth = pattern.split("/", -1).length;
+        }
+
+        List<File> files = new ArrayList<File>();
+        File dir = new File(prefix.isEmpty() ? "." : prefix);
+        if (dir.isDirectory()) {
+            for (File file : listFiles(dir, "", globToRegex(pattern), maxDepth,
+                    new ArrayList<File>())) {
+                files.add(new File(prefix + file.getPath()));
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Recursively add the files under a directory whose path relative to the top directory matches
+     * the pattern.  Files are added as the full path if there is no pattern, and as the relative
+     * path otherwise.
+     */
+    private static List<File> listFiles(File dir, String relativeDir, Pattern pattern,
+            int maxDepth, List<File> files) {
+        if (maxDepth <= 0) {
+            return files;
+        }
+        String[] names = dir.list();
+        if (names == null) {
+            return files;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            File file = new File(dir, name);
+            String relativePath = relativeDir + name;
+            if (file.isDirectory()) {
+                listFiles(file, relativePath + "/", pattern, maxDepth - 1, files);
+            } else if (pattern == null) {
+                files.add(file);
+            } else if (pattern.matcher(relativePath).matches()) {
+                files.add(new File(relativePath));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Convert a glob to a regex matching the path relative to the glob's prefix.
+     */
+    static Pattern globToRegex(String glob) {
+        return Pattern.compile(globToRegexString(glob));
+    }
+
+    private static String globToRegexString(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        i++;
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                            i++;
+                            regex.append("(?:.*/)?");
+                        } else {
+                            regex.append(".*");
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    int end = glob.indexOf(']', i + 1);
+                    if (end < 0) {
+                        regex.append("\\[");
+                    } else {
+                        String set = glob.substring(i + 1, end);
+                        if (set.startsWith("!")) {
+                            set = "^" + set.substring(1);
+                        }
+                        regex.append('[').append(set.replace("\\", "\\\\")).append(']');
+                        i = end;
+                    }
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Helper to close a {@link LineReader}.
+     */
+    private static void close(LineReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -16,47 +16,149 @@
 package com.android.loganalysis;
 
 import com.android.loganalysis.item.BugreportItem;
+import com.android.loganalysis.item.CombinedLogItem;
 import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.item.ItemCodec;
 import com.android.loganalysis.item.KernelLogItem;
 import com.android.loganalysis.item.LogcatItem;
 import com.android.loganalysis.parser.BugreportParser;
 import com.android.loganalysis.parser.KernelLogParser;
 import com.android.loganalysis.parser.LogcatParser;
+import com.android.loganalysis.util.LineReader;
+import com.android.loganalysis.util.LogFileUtil;
+import com.android.loganalysis.util.ParseStats;
+import com.android.loganalysis.util.SymbolTable;
 import com.android.loganalysis.util.config.ArgsOptionParser;
 import com.android.loganalysis.util.config.ConfigurationException;
 import com.android.loganalysis.util.config.Option;
 
-import org.json.JSONObject;
+import org.json.JSONException;
+import org.json.JSONWriter;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A command line tool to parse a bugreport, logcat, or kernel log file and return the output.
+ * <p>
+ * If more than one of the bugreport, logcat, and kernel log are given, they are parsed at the same
+ * time on separate threads and the output is a {@link CombinedLogItem}.
+ * </p><p>
+ * In batch mode, every file matched by the {@code --batch} paths and the {@code --batch-manifest}
+ * is analyzed by a {@link BatchAnalyzer} and the output is one line of JSON per file.  In server
+ * mode, an {@link AnalysisServer} analyzes logs sent to it over HTTP until the process is killed.
+ * </p>
  */
 public class LogAnalyzer {
 
+    /**
+     * The types of logs which can be analyzed.
+     */
+    public enum LogType {
+        BUGREPORT,
+        LOGCAT,
+        KERNEL_LOG;
+    }
+
     private enum OutputFormat{
-        // TODO: Add text output support.
-        JSON;
+        JSON,
+        TEXT,
+        BINARY;
     }
 
-    @Option(name="bugreport", description="The path to the bugreport")
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    @Option(name="bugreport", description=
+            "The path to the bugreport, which may be zipped or gzipped, or - for stdin")
     private String mBugreportPath = null;
 
-    @Option(name="logcat", description="The path to the logcat")
+    @Option(name="logcat", description=
+            "The path to the logcat, which may be gzipped, or - for stdin")
     private String mLogcatPath = null;
 
-    @Option(name="kernel-log", description="The path to the kernel log")
+    @Option(name="kernel-log", description=
+            "The path to the kernel log, which may be gzipped, or - for stdin")
     private String mKernelLogPath = null;
 
-    @Option(name="output", description="The output format, currently only JSON")
+    @Option(name="item", description=
+            "The path to an item saved with --output BINARY, or - for stdin")
+    private String mItemPath = null;
+
+    @Option(name="output", description="The output format, JSON, TEXT or BINARY")
     private OutputFormat mOutputFormat = OutputFormat.JSON;
 
+    @Option(name="stats", description="Print the time, lines, characters, allocations and regex "
+            + "matches of each parser and bugreport section to stderr")
+    private boolean mStats = false;
+
+    @Option(name="parallel-sections", description="Parse the sections of a bugreport in parallel "
+            + "on all cores while the rest of the bugreport is read")
+    private boolean mParallelSections = false;
+
+    @Option(name="include-section", description="A bugreport section to parse, such as "
+            + "LAST_KMSG. May be repeated, by default every section is parsed")
+    private Set<BugreportParser.Section> mIncludedSections =
+            new HashSet<BugreportParser.Section>();
+
+    @Option(name="exclude-section", description="A bugreport section to skip, such as DUMPSYS. "
+            + "May be repeated")
+    private Set<BugreportParser.Section> mExcludedSections =
+            new HashSet<BugreportParser.Section>();
+
+    @Option(name="batch", description="A file, directory, or glob of files to analyze in batch "
+            + "mode, printing one line of JSON per file. May be repeated")
+    private List<String> mBatchPaths = new LinkedList<String>();
+
+    @Option(name="batch-manifest", description="A file listing the files, directories, or globs "
+            + "to analyze in batch mode, one per line")
+    private File mBatchManifest = null;
+
+    @Option(name="batch-type", description="The type of the logs analyzed in batch mode")
+    private LogType mBatchType = LogType.BUGREPORT;
+
+    @Option(name="threads", description="The number of files analyzed in parallel in batch "
+            + "mode, by default the number of cores")
+    private Integer mThreads = null;
+
+    @Option(name="server-port", description=
+            "Run as a server on this local port, analyzing logs sent over HTTP")
+    private Integer mServerPort = null;
+
+    @Option(name="server-max-requests", description=
+            "The number of logs analyzed at once in server mode, by default the number of cores")
+    private Integer mServerMaxRequests = null;
+
+    @Option(name="server-timeout", description=
+            "The number of seconds to wait for an analysis in server mode")
+    private Integer mServerTimeout = 60;
+
+    @Option(name="server-root", description="The directory which logs may be read from by path "
+            + "in server mode. Without it, logs must be sent in the request body")
+    private File mServerRoot = null;
+
     /**
      * Run the command line tool
      */
@@ -73,26 +175,54 @@ public class LogAnalyzer {
             return;
         }
 
-        BufferedReader reader = null;
+        if (isBatch()) {
+            runBatch();
+            return;
+        }
+
+        if (mServerPort != null) {
+            runServer();
+            return;
+        }
+
+        final ParseStats stats = mStats ? new ParseStats() : null;
+        if (getInputs().size() > 1) {
+            runCombined(getInputs(), stats);
+            printStats(stats);
+            return;
+        }
+
+        LineReader reader = null;
+        ExecutorService sectionExecutor = createSectionExecutor();
+        ParseStats.setCurrent(stats);
         try {
             if (mBugreportPath != null) {
-                reader = getBufferedReader(mBugreportPath);
-                BugreportItem bugreport = new BugreportParser().parse(reader);
+                reader = getLineReader(mBugreportPath);
+                BugreportItem bugreport = (BugreportItem) parse(LogType.BUGREPORT, reader,
+                        sectionExecutor, new SymbolTable());
                 printBugreport(bugreport);
+                printStats(stats);
                 return;
             }
 
             if (mLogcatPath != null) {
-                reader = getBufferedReader(mLogcatPath);
-                LogcatItem logcat = new LogcatParser().parse(reader);
+                reader = getLineReader(mLogcatPath);
+                LogcatItem logcat = (LogcatItem) parse(LogType.LOGCAT, reader);
                 printLogcat(logcat);
+                printStats(stats);
                 return;
             }
 
             if (mKernelLogPath != null) {
-                reader = getBufferedReader(mKernelLogPath);
-                KernelLogItem kernelLog = new KernelLogParser().parse(reader);
+                reader = getLineReader(mKernelLogPath);
+                KernelLogItem kernelLog = (KernelLogItem) parse(LogType.KERNEL_LOG, reader);
                 printKernelLog(kernelLog);
+                printStats(stats);
+                return;
+            }
+
+            if (mItemPath != null) {
+                printItem(readItem(mItemPath));
                 return;
             }
         } catch (FileNotFoundException e) {
@@ -100,68 +230,367 @@ public class LogAnalyzer {
         } catch (IOException e) {
             System.err.println(e.getMessage());
         } finally {
+            ParseStats.setCurrent(null);
             close(reader);
+            if (sectionExecutor != null) {
+                sectionExecutor.shutdownNow();
+            }
         }
 
         // Should never reach here.
         printUsage();
     }
 
+    /**
+     * Parse several logs of different types at the same time and print a {@link CombinedLogItem}.
+     * If any log fails, the error is printed as soon as it happens and nothing else is printed.
+     * The other parses are abandoned on daemon threads, since parsers can't be interrupted.
+     *
+     * @param inputs the path of each log by type.
+     * @param stats the {@link ParseStats} to report into from each thread, or {@code null}.
+     */
+    private void runCombined(Map<LogType, String> inputs, final ParseStats stats) {
+        ExecutorService executor = Executors.newFixedThreadPool(inputs.size(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "LogAnalyzer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        final ExecutorService sectionExecutor = createSectionExecutor();
+        // The logs are of the same incident, so they share their tags and process names.
+        final SymbolTable symbols = new SymbolTable();
+        CompletionService<IItem> completion = new ExecutorCompletionService<IItem>(executor);
+        Map<Future<IItem>, LogType> types = new HashMap<Future<IItem>, LogType>();
+        try {
+            for (final Map.Entry<LogType, String> input : inputs.entrySet()) {
+                types.put(completion.submit(new Callable<IItem>() {
+                    @Override
+                    public IItem call() throws IOException {
+                        LineReader reader = getLineReader(input.getValue());
+                        ParseStats.setCurrent(stats);
+                        try {
+                            return parse(input.getKey(), reader, sectionExecutor, symbols);
+                        } finally {
+                            ParseStats.setCurrent(null);
+                            close(reader);
+                        }
+                    }
+                }), input.getKey());
+            }
+
+            // Take the results as they finish, so that a failure isn't hidden behind a slow parse.
+            CombinedLogItem combined = new CombinedLogItem();
+            for (int i = 0; i < types.size(); i++) {
+                Future<IItem> future = completion.take();
+                IItem item = future.get();
+                switch (types.get(future)) {
+                    case BUGREPORT:
+                        combined.setBugreport((BugreportItem) item);
+                        break;
+                    case LOGCAT:
+                        combined.setLogcat((LogcatItem) item);
+                        break;
+                    case KERNEL_LOG:
+                        combined.setKernelLog((KernelLogItem) item);
+                        break;
+                }
+            }
+            printItem(combined);
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted");
+        } catch (ExecutionException e) {
+            System.err.println(e.getCause() instanceof IOException ?
+                    e.getCause().getMessage() : e.getCause().toString());
+        } finally {
+            for (Future<IItem> future : types.keySet()) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            if (sectionExecutor != null) {
+                sectionExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Create the {@link ExecutorService} to parse bugreport sections on, or return {@code null} if
+     * sections are parsed on the reading thread.
+     */
+    private ExecutorService createSectionExecutor() {
+        if (!mParallelSections) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Get the bugreport sections to parse, or {@code null} if every section is parsed.
+     */
+    private Set<BugreportParser.Section> getIncludedSections() {
+        return mIncludedSections.isEmpty() ? null : mIncludedSections;
+    }
+
+    /**
+     * Get the logs to parse by type.
+     */
+    private Map<LogType, String> getInputs() {
+        Map<LogType, String> inputs = new EnumMap<LogType, String>(LogType.class);
+        if (mBugreportPath != null) inputs.put(LogType.BUGREPORT, mBugreportPath);
+        if (mLogcatPath != null) inputs.put(LogType.LOGCAT, mLogcatPath);
+        if (mKernelLogPath != null) inputs.put(LogType.KERNEL_LOG, mKernelLogPath);
+        return inputs;
+    }
+
+    /**
+     * Run in batch mode, printing one line of JSON per file.
+     */
+    private void runBatch() {
+        List<String> paths = new ArrayList<String>(mBatchPaths);
+        if (mBatchManifest != null) {
+            try {
+                paths.addAll(BatchAnalyzer.readManifest(mBatchManifest));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+        }
+
+        int threads = mThreads != null ? mThreads : Runtime.getRuntime().availableProcessors();
+        BatchAnalyzer batch = new BatchAnalyzer(mBatchType, threads, System.out);
+        try {
+            int failures = batch.analyze(BatchAnalyzer.expandPaths(paths));
+            if (failures > 0) {
+                System.err.println(String.format("%d file(s) could not be analyzed", failures));
+            }
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted");
+        }
+    }
+
+    /**
+     * Run in server mode until the process is killed.
+     */
+    private void runServer() {
+        int maxRequests = mServerMaxRequests != null ? mServerMaxRequests :
+                Runtime.getRuntime().availableProcessors();
+        AnalysisServer server = new AnalysisServer(mServerPort, maxRequests,
+                TimeUnit.SECONDS.toMillis(mServerTimeout), mServerRoot);
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        System.err.println(String.format("Listening on http://localhost:%d%s",
+                server.getPort(), AnalysisServer.ANALYZE_PATH));
+    }
+
+    /**
+     * Parse a log of the given type with a new parser and the default options.
+     *
+     * @param type the {@link LogType} of the log.
+     * @param reader the {@link LineReader} containing the log.
+     * @return the parsed {@link IItem}.
+     * @throws IOException if the log could not be read.
+     */
+    public static IItem parse(LogType type, LineReader reader) throws IOException {
+        return new LogAnalyzer().parse(type, reader, null, new SymbolTable());
+    }
+
+    /**
+     * Parse a log of the given type with a new parser, which only parses the bugreport sections
+     * selected by the options.
+     *
+     * @param type the {@link LogType} of the log.
+     * @param reader the {@link LineReader} containing the log.
+     * @param sectionExecutor the {@link ExecutorService} to parse the sections of a bugreport on,
+     * or {@code null} to parse them on the calling thread.
+     * @param symbols the {@link SymbolTable}, which may be shared by logs parsed together.
+     * @return the parsed {@link IItem}.
+     * @throws IOException if the log could not be read.
+     */
+    private IItem parse(LogType type, LineReader reader, ExecutorService sectionExecutor,
+            SymbolTable symbols) throws IOException {
+        ParseStats stats = ParseStats.getCurrent();
+        ParseStats.Measurement measurement = stats != null ? ParseStats.start() : null;
+        IItem item;
+        switch (type) {
+            case BUGREPORT:
+                BugreportParser parser = new BugreportParser();
+                parser.setExecutor(sectionExecutor);
+                parser.setIncludedSections(getIncludedSections());
+                parser.setExcludedSections(mExcludedSections);
+                parser.setSymbolTable(symbols);
+                item = parser.parse(reader);
+                break;
+            case LOGCAT:
+                LogcatParser logcatParser = new LogcatParser();
+                logcatParser.setSymbolTable(symbols);
+                item = logcatParser.parse(reader);
+                break;
+            case KERNEL_LOG:
+                KernelLogParser kernelLogParser = new KernelLogParser();
+                kernelLogParser.setSymbolTable(symbols);
+                item = kernelLogParser.parse(reader);
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown log type %s", type));
+        }
+        if (stats != null) {
+            // The whole log is reported under its type, separately from the section parsers.
+            stats.addParser(type.toString(), measurement);
+        }
+        return item;
+    }
+
+    /**
+     * Print the {@link ParseStats} to stderr, if they were collected.
+     */
+    private static void printStats(ParseStats stats) {
+        if (stats != null) {
+            System.err.println();
+            stats.print(System.err);
+        }
+    }
+
     /**
      * Print the bugreport to stdout.
      */
     private void printBugreport(BugreportItem bugreport) {
-        if (OutputFormat.JSON.equals(mOutputFormat)) {
-            printJson(bugreport);
-        }
-        // TODO: Print bugreport in human readable form.
+        printItem(bugreport);
     }
 
     /**
      * Print the logcat to stdout.
      */
     private void printLogcat(LogcatItem logcat) {
-        if (OutputFormat.JSON.equals(mOutputFormat)) {
-            printJson(logcat);
-        }
-        // TODO: Print logcat in human readable form.
+        printItem(logcat);
     }
 
     /**
      * Print the kernel log to stdout.
      */
     private void printKernelLog(KernelLogItem kernelLog) {
+        printItem(kernelLog);
+    }
+
+    /**
+     * Print an {@link IItem} to stdout in the output format.
+     */
+    private void printItem(IItem item) {
         if (OutputFormat.JSON.equals(mOutputFormat)) {
-            printJson(kernelLog);
+            printJson(item);
+        } else if (OutputFormat.TEXT.equals(mOutputFormat)) {
+            printText(item);
+        } else if (OutputFormat.BINARY.equals(mOutputFormat)) {
+            printBinary(item);
+        }
+    }
+
+    /**
+     * Print a human readable summary of an {@link IItem} to stdout with a
+     * {@link TextSummaryWriter}.  Like the JSON, the summary is written as it is generated.
+     */
+    private void printText(IItem item) {
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out),
+                OUTPUT_BUFFER_SIZE);
+        try {
+            new TextSummaryWriter(out).write(item);
+            out.flush();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Print an {@link IItem} to stdout encoded with {@link ItemCodec}.
+     */
+    private void printBinary(IItem item) {
+        try {
+            ItemCodec.encode(item, System.out);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
         }
-        // TODO: Print kernel log in human readable form.
     }
 
     /**
-     * Print an {@link IItem} to stdout.
+     * Read an {@link IItem} encoded with {@link ItemCodec}.
+     *
+     * @param filepath the path to the file, or {@code -} for stdin.
+     * @return the decoded {@link IItem}.
+     * @throws IOException if the item could not be read.
+     */
+    private IItem readItem(String filepath) throws IOException {
+        if ("-".equals(filepath)) {
+            return ItemCodec.decode(System.in);
+        }
+        InputStream input = new FileInputStream(filepath);
+        try {
+            return ItemCodec.decode(input);
+        } finally {
+            close(input);
+        }
+    }
+
+    /**
+     * Print an {@link IItem} to stdout.  The JSON is written as it is generated so that the whole
+     * output is never held in memory.
      */
     private void printJson(IItem item) {
-        if (item != null && item.toJson() != null) {
-            System.out.println(item.toJson().toString());
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out),
+                OUTPUT_BUFFER_SIZE);
+        try {
+            writeJson(item, new JSONWriter(out));
+            out.newLine();
+            out.flush();
+        } catch (JSONException e) {
+            System.err.println(e.getMessage());
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Write the JSON representation of an {@link IItem}, or an empty object if the item is
+     * {@code null}.
+     *
+     * @param item the {@link IItem} to write.
+     * @param writer the {@link JSONWriter} to write to.
+     * @throws JSONException if the item could not be written.
+     */
+    public static void writeJson(IItem item, JSONWriter writer) throws JSONException {
+        if (item != null) {
+            item.writeJson(writer);
         } else {
-            System.out.println(new JSONObject().toString());
+            writer.object().endObject();
         }
     }
 
     /**
-     * Get a {@link BufferedReader} from a given filepath.
+     * Get a {@link LineReader} from a given filepath.  Regular files are memory mapped, while
+     * stdin ({@code -}), pipes and other special files are read as a stream.  Gzip and zip files
+     * are decompressed as they are read.
+     *
      * @param filepath the path to the file.
-     * @return The {@link BufferedReader} containing the contents of the file.
+     * @return The {@link LineReader} containing the contents of the file.
      * @throws FileNotFoundException if the file could not be found.
+     * @throws IOException if the file could not be opened.
+     * @see LogFileUtil#openLineReader(File)
      */
-    private BufferedReader getBufferedReader(String filepath) throws FileNotFoundException {
-        return new BufferedReader(new FileReader(new File(filepath)));
+    private static LineReader getLineReader(String filepath) throws IOException {
+        if ("-".equals(filepath)) {
+            return LogFileUtil.openLineReader(System.in);
+        }
+        return LogFileUtil.openLineReader(new File(filepath));
     }
 
     /**
      * Helper to close a {@link Closeable}.
      */
-    private void close(Closeable closeable) {
+    private static void close(Closeable closeable) {
         if (closeable != null) {
             try {
                 closeable.close();
@@ -185,19 +614,60 @@ public class LogAnalyzer {
      * @return true if they are valid, false if they are not.
      */
     private boolean checkPreconditions() {
-        // Check to see that exactly one log is set.
-        int logCount = 0;
-        if (mBugreportPath != null) logCount++;
-        if (mLogcatPath != null) logCount++;
-        if (mKernelLogPath != null) logCount++;
-        return (logCount == 1);
+        // Check to see that at least one log or exactly one item is set, or that nothing is set in
+        // batch or server mode.
+        final Map<LogType, String> inputs = getInputs();
+        int logCount = inputs.size();
+        if (mItemPath != null) logCount++;
+        if (mItemPath != null && logCount > 1) {
+            return false;
+        }
+        int stdinCount = 0;
+        for (String input : inputs.values()) {
+            if ("-".equals(input)) stdinCount++;
+        }
+        if (stdinCount > 1) {
+            return false;
+        }
+        if (mThreads != null && mThreads < 1) {
+            return false;
+        }
+        if ((isBatch() || mServerPort != null) && (!OutputFormat.JSON.equals(mOutputFormat) ||
+                !mIncludedSections.isEmpty() || !mExcludedSections.isEmpty())) {
+            return false;
+        }
+        if (mServerRoot != null && mServerPort == null) {
+            return false;
+        }
+        if (mServerPort != null) {
+            return logCount == 0 && !isBatch() && mServerTimeout != null && mServerTimeout > 0 &&
+                    (mServerMaxRequests == null || mServerMaxRequests > 0);
+        }
+        return isBatch() ? logCount == 0 : logCount >= 1;
+    }
+
+    /**
+     * Returns true if running in batch mode.
+     */
+    private boolean isBatch() {
+        return !mBatchPaths.isEmpty() || mBatchManifest != null;
     }
 
     /**
      * Print the usage for the command.
      */
     private void printUsage() {
-        System.err.println("Usage: loganalysis [--bugreport FILE|--logcat FILE|--kernel-log FILE]");
+        System.err.println("Usage: loganalysis [--bugreport FILE] [--logcat FILE] "
+                + "[--kernel-log FILE] [--output JSON|TEXT|BINARY] [--stats] "
+                + "[--parallel-sections]");
+        System.err.println("                   [--include-section SECTION]... "
+                + "[--exclude-section SECTION]...");
+        System.err.println("       loganalysis --item FILE [--output JSON|TEXT|BINARY]");
+        System.err.println("       loganalysis [--batch PATH]... [--batch-manifest FILE] "
+                + "[--batch-type BUGREPORT|LOGCAT|KERNEL_LOG] [--threads N]");
+        System.err.println("       loganalysis --server-port PORT [--server-max-requests N] "
+                + "[--server-timeout SECONDS]");
+        System.err.println("                   [--server-root DIR]");
     }
 
     /**
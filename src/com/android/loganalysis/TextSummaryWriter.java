@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.item.AnrItem;
+import com.android.loganalysis.item.BugreportItem;
+import com.android.loganalysis.item.CombinedLogItem;
+import com.android.loganalysis.item.DumpsysBatteryInfoItem;
+import com.android.loganalysis.item.DumpsysBatteryInfoItem.WakeLock;
+import com.android.loganalysis.item.DumpsysBatteryInfoItem.WakeLockCategory;
+import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.item.JavaCrashItem;
+import com.android.loganalysis.item.KernelLogItem;
+import com.android.loganalysis.item.LogcatItem;
+import com.android.loganalysis.item.MiscKernelLogItem;
+import com.android.loganalysis.item.MiscLogcatItem;
+import com.android.loganalysis.item.NativeCrashItem;
+import com.android.loganalysis.item.ProcrankItem;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a human readable summary of an {@link IItem}, section by section.
+ * <p>
+ * Each section is written to the {@link Writer} as soon as it is visited rather than built up
+ * first, so only the per category counts and the top processes and wakelocks are held while
+ * writing.  Events are grouped by category by making one pass over the events for each category.
+ * Items without a text summary are written as JSON.
+ * </p>
+ */
+public class TextSummaryWriter {
+    /** The number of processes listed from procrank. */
+    static final int TOP_PROCESSES = 10;
+    /** The number of wakelocks listed for each category. */
+    static final int TOP_WAKELOCKS = 10;
+
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    private final Writer mOut;
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    /**
+     * Constructor for {@link TextSummaryWriter}.
+     *
+     * @param out the {@link Writer} to write to.  It is not flushed or closed.
+     */
+    public TextSummaryWriter(Writer out) {
+        mOut = out;
+    }
+
+    /**
+     * Write the summary of an item.
+     *
+     * @param item the {@link IItem} to summarize, or {@code null} for no summary.
+     * @throws IOException if the summary could not be written.
+     */
+    public void write(IItem item) throws IOException {
+        if (item == null) {
+            return;
+        } else if (item instanceof CombinedLogItem) {
+            writeCombined((CombinedLogItem) item);
+        } else if (item instanceof BugreportItem) {
+            writeBugreport((BugreportItem) item);
+        } else if (item instanceof LogcatItem) {
+            writeLogcat("Logcat", (LogcatItem) item);
+        } else if (item instanceof KernelLogItem) {
+            writeKernelLog("Kernel log", (KernelLogItem) item);
+        } else {
+            writeJson(item);
+        }
+    }
+
+    /**
+     * Write the summary of each log in a {@link CombinedLogItem}.
+     */
+    private void writeCombined(CombinedLogItem combined) throws IOException {
+        if (combined.getBugreport() != null) {
+            writeBugreport(combined.getBugreport());
+        }
+        if (combined.getLogcat() != null) {
+            writeLogcat("Logcat", combined.getLogcat());
+        }
+        if (combined.getKernelLog() != null) {
+            writeKernelLog("Kernel log", combined.getKernelLog());
+        }
+    }
+
+    /**
+     * Write the summary of a bugreport, with a section for each part of the bugreport.
+     */
+    private void writeBugreport(BugreportItem bugreport) throws IOException {
+        writeHeader("Bugreport");
+        writeField("Time", formatDate(bugreport.getTime()));
+        if (bugreport.getCommandLine() != null) {
+            for (Map.Entry<String, String> entry : bugreport.getCommandLine().entrySet()) {
+                writeField(String.format("Command line %s", entry.getKey()), entry.getValue());
+            }
+        }
+        mOut.write(NEWLINE);
+
+        if (bugreport.getSystemLog() != null) {
+            writeLogcat("System log", bugreport.getSystemLog());
+        }
+        if (bugreport.getKernelLog() != null) {
+            writeKernelLog("Kernel log", bugreport.getKernelLog());
+        }
+        if (bugreport.getLastKmsg() != null) {
+            writeKernelLog("Last kmsg", bugreport.getLastKmsg());
+        }
+        if (bugreport.getProcrank() != null) {
+            writeProcrank(bugreport.getProcrank());
+        }
+        if (bugreport.getDumpsys() != null && bugreport.getDumpsys().getBatteryInfo() != null) {
+            writeBatteryInfo(bugreport.getDumpsys().getBatteryInfo());
+        }
+    }
+
+    /**
+     * Write the summary of a logcat, with the events grouped by category.
+     */
+    private void writeLogcat(String title, LogcatItem logcat) throws IOException {
+        writeHeader(title);
+        writeField("Start time", formatDate(logcat.getStartTime()));
+        writeField("Stop time", formatDate(logcat.getStopTime()));
+
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (MiscLogcatItem event : logcat.getEvents()) {
+            increment(counts, event.getCategory());
+        }
+        writeCounts(counts);
+
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            writeSubheader(count.getKey(), count.getValue());
+            for (MiscLogcatItem event : logcat.getEvents()) {
+                if (count.getKey().equals(String.valueOf(event.getCategory()))) {
+                    writeLogcatEvent(event);
+                }
+            }
+        }
+        mOut.write(NEWLINE);
+    }
+
+    /**
+     * Write a one line summary of a logcat event.
+     */
+    private void writeLogcatEvent(MiscLogcatItem event) throws IOException {
+        StringBuilder line = new StringBuilder("  ");
+        line.append(formatDate(event.getEventTime()));
+        line.append(String.format(" pid=%s tid=%s", event.getPid(), event.getTid()));
+        if (event.getApp() != null) {
+            line.append(" app=").append(event.getApp());
+        }
+        String detail = null;
+        if (event instanceof AnrItem) {
+            detail = ((AnrItem) event).getReason();
+        } else if (event instanceof JavaCrashItem) {
+            JavaCrashItem crash = (JavaCrashItem) event;
+            detail = crash.getMessage() != null ?
+                    String.format("%s: %s", crash.getException(), crash.getMessage()) :
+                    crash.getException();
+        } else if (event instanceof NativeCrashItem) {
+            detail = ((NativeCrashItem) event).getFingerprint();
+        } else if (event.getTag() != null) {
+            detail = String.format("tag=%s", event.getTag());
+        }
+        if (detail != null) {
+            line.append(' ').append(firstLine(detail));
+        }
+        mOut.write(line.toString());
+        mOut.write(NEWLINE);
+    }
+
+    /**
+     * Write the summary of a kernel log, with the events grouped by category.  Kernel resets are
+     * listed first since they are usually the reason for looking at the kernel log.
+     */
+    private void writeKernelLog(String title, KernelLogItem kernelLog) throws IOException {
+        writeHeader(title);
+        writeField("Start time", formatSeconds(kernelLog.getStartTime()));
+        writeField("Stop time", formatSeconds(kernelLog.getStopTime()));
+
+        Map<String, Integer> counts = new TreeMap<String, Integer>(new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                boolean aReset = "KERNEL_RESET".equals(a);
+                boolean bReset = "KERNEL_RESET".equals(b);
+                if (aReset != bReset) {
+                    return aReset ? -1 : 1;
+                }
+                return a.compareTo(b);
+            }
+        });
+        for (MiscKernelLogItem event : kernelLog.getEvents()) {
+            increment(counts, event.getCategory());
+        }
+        writeCounts(counts);
+
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            writeSubheader(count.getKey(), count.getValue());
+            for (MiscKernelLogItem event : kernelLog.getEvents()) {
+                if (count.getKey().equals(String.valueOf(event.getCategory()))) {
+                    StringBuilder line = new StringBuilder("  ");
+                    line.append(formatSeconds(event.getEventTime()));
+                    if (event.getStack() != null) {
+                        line.append(' ').append(firstLine(event.getStack()));
+                    }
+                    mOut.write(line.toString());
+                    mOut.write(NEWLINE);
+                }
+            }
+        }
+        mOut.write(NEWLINE);
+    }
+
+    /**
+     * Write the processes from procrank which use the most memory.
+     */
+    private void writeProcrank(final ProcrankItem procrank) throws IOException {
+        writeHeader("Procrank");
+        List<Integer> pids = new ArrayList<Integer>(procrank.getPids());
+        Collections.sort(pids, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareDescending(procrank.getPss(a), procrank.getPss(b));
+            }
+        });
+        writeField("Processes", String.valueOf(pids.size()));
+        mOut.write(String.format("  %7s %9s %9s %9s %9s  %s%n", "PID", "Vss", "Rss", "Pss",
+                "Uss", "cmdline"));
+        for (Integer pid : pids.subList(0, Math.min(TOP_PROCESSES, pids.size()))) {
+            mOut.write(String.format("  %7d %8sK %8sK %8sK %8sK  %s%n", pid, procrank.getVss(pid),
+                    procrank.getRss(pid), procrank.getPss(pid), procrank.getUss(pid),
+                    procrank.getProcessName(pid)));
+        }
+        mOut.write(NEWLINE);
+    }
+
+    /**
+     * Write the wakelocks which were held the longest in each category.
+     */
+    private void writeBatteryInfo(DumpsysBatteryInfoItem batteryInfo) throws IOException {
+        writeHeader("Wakelocks");
+        for (WakeLockCategory category : WakeLockCategory.values()) {
+            List<WakeLock> wakeLocks = new ArrayList<WakeLock>(
+                    batteryInfo.getWakeLocks(category));
+            if (wakeLocks.isEmpty()) {
+                continue;
+            }
+            Collections.sort(wakeLocks, new Comparator<WakeLock>() {
+                @Override
+                public int compare(WakeLock a, WakeLock b) {
+                    return compareDescending(a.getHeldTime(), b.getHeldTime());
+                }
+            });
+            writeSubheader(category.toString(), wakeLocks.size());
+            for (WakeLock wakeLock : wakeLocks.subList(0,
+                    Math.min(TOP_WAKELOCKS, wakeLocks.size()))) {
+                mOut.write(String.format("  %10d ms %6d times  %s%n", wakeLock.getHeldTime(),
+                        wakeLock.getLockedCount(), wakeLock.getName()));
+            }
+        }
+        mOut.write(NEWLINE);
+    }
+
+    /**
+     * Write an item without a text summary as JSON.
+     */
+    private void writeJson(IItem item) throws IOException {
+        try {
+            item.writeJson(new JSONWriter(mOut));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        mOut.write(NEWLINE);
+    }
+
+    private void writeHeader(String title) throws IOException {
+        mOut.write(String.format("== %s ==%n", title));
+    }
+
+    private void writeSubheader(String title, int count) throws IOException {
+        mOut.write(String.format("-- %s (%d) --%n", title, count));
+    }
+
+    private void writeField(String name, String value) throws IOException {
+        mOut.write(String.format("%s: %s%n", name, value));
+    }
+
+    /**
+     * Write the total number of events and the number in each category.
+     */
+    private void writeCounts(Map<String, Integer> counts) throws IOException {
+        int total = 0;
+        StringBuilder categories = new StringBuilder();
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            total += count.getValue();
+            categories.append(categories.length() == 0 ? " (" : ", ");
+            categories.append(count.getKey()).append(": ").append(count.getValue());
+        }
+        if (categories.length() > 0) {
+            categories.append(')');
+        }
+        writeField("Events", total + categories.toString());
+    }
+
+    private static void increment(Map<String, Integer> counts, String category) {
+        String key = String.valueOf(category);
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private static <T extends Comparable<T>> int compareDescending(T a, T b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        return b.compareTo(a);
+    }
+
+    private String formatDate(Date date) {
+        return date != null ? mDateFormat.format(date) : "unknown";
+    }
+
+    private static String formatSeconds(Double seconds) {
+        return seconds != null ? String.format("[%12.6f]", seconds) : "unknown";
+    }
+
+    private static String firstLine(String text) {
+        int end = text.indexOf('\n');
+        return end < 0 ? text : text.substring(0, end);
+    }
+}
@@ -15,13 +15,24 @@
  */
 package com.android.loganalysis.item;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * An {@link IItem} used to store Bugreport info.
+ * <p>
+ * The sections of a bugreport can be loaded on demand by a {@link SectionLoader}, in which case
+ * each section is loaded the first time it is accessed, and all of the remaining sections are
+ * loaded before the item is output.
+ * </p>
  */
 public class BugreportItem extends GenericItem {
 
@@ -52,6 +63,23 @@ public class BugreportItem extends GenericItem {
 
     public static class CommandLineItem extends GenericMapItem<String> {}
 
+    /**
+     * Loads the sections of a {@link BugreportItem} the first time they are accessed.
+     */
+    public static interface SectionLoader {
+        /**
+         * Load an attribute of the bugreport, such as {@link BugreportItem#SYSTEM_LOG}, by setting
+         * it on the item.
+         *
+         * @param bugreport The {@link BugreportItem} to set the attribute on.
+         * @param attribute The name of the attribute.
+         */
+        public void load(BugreportItem bugreport, String attribute);
+    }
+
+    private SectionLoader mLoader = null;
+    private Set<String> mPendingAttributes = new HashSet<String>();
+
     /**
      * The constructor for {@link BugreportItem}.
      */
@@ -198,4 +226,77 @@ public class BugreportItem extends GenericItem {
     public void setDumpsys(DumpsysItem dumpsys) {
         setAttribute(DUMPSYS, dumpsys);
     }
+
+    /**
+     * Set a {@link SectionLoader} to load the given attributes the first time they are accessed.
+     * Attributes which are set before they are accessed are not loaded.
+     *
+     * @param loader The {@link SectionLoader}.
+     * @param attributes The names of the attributes to load.
+     */
+    public synchronized void setSectionLoader(SectionLoader loader,
+            Collection<String> attributes) {
+        mLoader = loader;
+        mPendingAttributes.clear();
+        mPendingAttributes.addAll(attributes);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Loads the attribute first if it has not been loaded yet.
+     * </p>
+     */
+    @Override
+    protected synchronized Object getAttribute(String attribute) {
+        if (mPendingAttributes.remove(attribute)) {
+            mLoader.load(this, attribute);
+        }
+        return super.getAttribute(attribute);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected synchronized void setAttribute(String attribute, Object value) {
+        mPendingAttributes.remove(attribute);
+        super.setAttribute(attribute, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JSONObject toJson() {
+        loadAll();
+        return super.toJson();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeJson(JSONWriter writer) throws JSONException {
+        loadAll();
+        super.writeJson(writer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Map<String, Object> getAttributeMap() {
+        loadAll();
+        return super.getAttributeMap();
+    }
+
+    /**
+     * Load all of the attributes which have not been loaded yet.
+     */
+    private synchronized void loadAll() {
+        while (!mPendingAttributes.isEmpty()) {
+            getAttribute(mPendingAttributes.iterator().next());
+        }
+    }
 }
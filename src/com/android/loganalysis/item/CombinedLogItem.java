@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An {@link IItem} used to store the results of a bugreport, logcat, and kernel log which were
+ * analyzed together, such as the logs collected for a single incident.
+ */
+public class CombinedLogItem extends GenericItem {
+
+    /** Constant for JSON output */
+    public static final String BUGREPORT = "BUGREPORT";
+    /** Constant for JSON output */
+    public static final String LOGCAT = "LOGCAT";
+    /** Constant for JSON output */
+    public static final String KERNEL_LOG = "KERNEL_LOG";
+
+    private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(
+            BUGREPORT, LOGCAT, KERNEL_LOG));
+
+    /**
+     * The constructor for {@link CombinedLogItem}.
+     */
+    public CombinedLogItem() {
+        super(ATTRIBUTES);
+    }
+
+    /**
+     * Get the bugreport.
+     */
+    public BugreportItem getBugreport() {
+        return (BugreportItem) getAttribute(BUGREPORT);
+    }
+
+    /**
+     * Set the bugreport.
+     */
+    public void setBugreport(BugreportItem bugreport) {
+        setAttribute(BUGREPORT, bugreport);
+    }
+
+    /**
+     * Get the logcat.
+     */
+    public LogcatItem getLogcat() {
+        return (LogcatItem) getAttribute(LOGCAT);
+    }
+
+    /**
+     * Set the logcat.
+     */
+    public void setLogcat(LogcatItem logcat) {
+        setAttribute(LOGCAT, logcat);
+    }
+
+    /**
+     * Get the kernel log.
+     */
+    public KernelLogItem getKernelLog() {
+        return (KernelLogItem) getAttribute(KERNEL_LOG);
+    }
+
+    /**
+     * Set the kernel log.
+     */
+    public void setKernelLog(KernelLogItem kernelLog) {
+        setAttribute(KERNEL_LOG, kernelLog);
+    }
+}
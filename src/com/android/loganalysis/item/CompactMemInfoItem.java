@@ -18,8 +18,10 @@ package com.android.loganalysis.item;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -28,6 +30,9 @@ import java.util.Set;
  * compact mem info file. Refer to CompactMemInfoParser for more details.
  */
 public class CompactMemInfoItem implements IItem {
+    private static final List<String> PROC_KEY_ORDER = JsonUtil.getKeyOrder("pid", "name", "pss",
+            "type", "activities");
+
     private Map<Integer, Map<String, Object>> mPids = new HashMap<Integer, Map<String, Object>>();
 
     @Override
@@ -65,6 +70,26 @@ public class CompactMemInfoItem implements IItem {
         return object;
     }
 
+    @Override
+    public void writeJson(JSONWriter writer) throws JSONException {
+        writer.object();
+        writer.key("processes");
+        writer.array();
+        for (int pid : getPids()) {
+            writer.object();
+            for (String key : PROC_KEY_ORDER) {
+                Object value = "pid".equals(key) ? pid : get(pid).get(key);
+                if (value != null) {
+                    writer.key(key);
+                    writer.value(value);
+                }
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
     /**
      * Get the list of pids of the processes that were added so far.
      * @return
@@ -18,6 +18,7 @@ package com.android.loganalysis.item;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -160,6 +161,13 @@ public class DumpsysBatteryInfoItem implements IItem {
         addWakeLock(name, null, heldTime, timesCalled, category);
     }
 
+    /**
+     * Get all the {@link WakeLock} objects in the order they were added, for {@link ItemCodec}.
+     */
+    Collection<WakeLock> getAllWakeLocks() {
+        return mWakeLocks;
+    }
+
     /**
      * Get a list of {@link WakeLock} objects matching a given {@link WakeLockCategory}.
      */
@@ -210,4 +218,19 @@ public class DumpsysBatteryInfoItem implements IItem {
         }
         return object;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeJson(JSONWriter writer) throws JSONException {
+        writer.object();
+        writer.key(WAKELOCKS);
+        writer.array();
+        for (WakeLock wakeLock : mWakeLocks) {
+            wakeLock.writeJson(writer);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
 }
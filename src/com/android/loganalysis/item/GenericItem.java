@@ -17,9 +17,12 @@ package com.android.loganalysis.item;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -156,6 +159,48 @@ public class GenericItem implements IItem {
         return object;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Attributes are written in the same order as {@link #toJson()}.  Subclasses which change how
+     * an attribute is output in {@link #toJson()} should override
+     * {@link #writeJsonAttribute(JSONWriter, String, Object)}.
+     * </p>
+     */
+    @Override
+    public void writeJson(JSONWriter writer) throws JSONException {
+        List<String> keys = new ArrayList<String>(mAttributes.size());
+        for (Map.Entry<String, Object> entry : mAttributes.entrySet()) {
+            if (entry.getValue() != null) {
+                keys.add(entry.getKey());
+            }
+        }
+
+        writer.object();
+        for (String key : JsonUtil.getKeyOrder(keys)) {
+            writer.key(key);
+            writeJsonAttribute(writer, key, mAttributes.get(key));
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Write the JSON value of a non-null attribute.
+     *
+     * @param writer The {@link JSONWriter} to write the value to.
+     * @param key The name of the attribute.
+     * @param attribute The value of the attribute.
+     * @throws JSONException If the value could not be written.
+     */
+    protected void writeJsonAttribute(JSONWriter writer, String key, Object attribute)
+            throws JSONException {
+        if (attribute instanceof IItem) {
+            ((IItem) attribute).writeJson(writer);
+        } else {
+            writer.value(attribute);
+        }
+    }
+
     /**
      * Set an attribute to a value.
      *
@@ -184,6 +229,20 @@ public class GenericItem implements IItem {
         return mAttributes.get(attribute);
     }
 
+    /**
+     * Get the map of all attributes, including those set to {@code null}, for {@link ItemCodec}.
+     */
+    Map<String, Object> getAttributeMap() {
+        return mAttributes;
+    }
+
+    /**
+     * Get the set of allowed attributes, for {@link ItemCodec}.
+     */
+    Set<String> getAllowedAttributes() {
+        return mAllowedAttributes;
+    }
+
     /**
      * Helper method to return if two objects are equal.
      *
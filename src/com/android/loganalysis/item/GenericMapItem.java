@@ -15,9 +15,12 @@
  */
 package com.android.loganalysis.item;
 
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * An IItem that just represents a simple key/value map
@@ -50,4 +53,18 @@ public class GenericMapItem<V> extends HashMap<String, V> implements IItem {
     public JSONObject toJson() {
         return new JSONObject(this);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeJson(JSONWriter writer) throws JSONException {
+        // The JSONObject from toJson() is backed by this map, so use the same order.
+        writer.object();
+        for (Map.Entry<String, V> entry : entrySet()) {
+            writer.key(entry.getKey());
+            writer.value(entry.getValue());
+        }
+        writer.endObject();
+    }
 }
@@ -15,7 +15,9 @@
  */
 package com.android.loganalysis.item;
 
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 /**
  * Interface for all items that are created by any parser.
@@ -56,4 +58,17 @@ public interface IItem {
      * @return The representation of the item as a {@link JSONObject}.
      */
     public JSONObject toJson();
+
+    /**
+     * Write a JSON representation of the item.
+     * <p>
+     * The output is the same as {@link #toJson()}, but it is written as it is generated instead of
+     * being built in memory first, so large items can be output without holding a second copy of
+     * them.
+     * </p>
+     *
+     * @param writer The {@link JSONWriter} to write the item to.
+     * @throws JSONException If the item could not be written.
+     */
+    public void writeJson(JSONWriter writer) throws JSONException;
 }
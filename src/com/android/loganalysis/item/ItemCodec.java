@@ -0,0 +1,636 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import com.android.loganalysis.item.DumpsysBatteryInfoItem.WakeLock;
+import com.android.loganalysis.item.DumpsysBatteryInfoItem.WakeLockCategory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact binary encoding of {@link IItem}s which, unlike {@link IItem#toJson()}, can be read
+ * back.
+ * <p>
+ * Numbers are written as varints, and strings such as attribute names, tags, and app names are
+ * written once and then referred to by their index in a string table.  Long strings such as stacks
+ * and preambles are split into lines which go in the string table, since the preambles of nearby
+ * events share most of their lines and stack frames repeat.  Items are written with their class
+ * name, so every {@link GenericItem} and {@link GenericMapItem} subclass with a no argument
+ * constructor can be decoded, along with {@link ProcrankItem}, {@link CompactMemInfoItem}, and
+ * {@link DumpsysBatteryInfoItem}.
+ * </p>
+ */
+public class ItemCodec {
+    private static final byte[] MAGIC = {'L', 'A', 'I', 'C'};
+    private static final int VERSION = 1;
+
+    /** Strings longer than this are split into lines or written inline */
+    private static final int MAX_TABLE_STRING_LENGTH = 256;
+    /** Encoded strings longer than this are rejected, so corrupt lengths fail quickly */
+    private static final int MAX_STRING_BYTES = 64 * 1024 * 1024;
+    /** Lengths and counts are only trusted up to this much before the data is read */
+    private static final int MAX_PREALLOCATION = 64 * 1024;
+
+    private static final int STRING_NEW = 0;
+    private static final int STRING_INLINE = 1;
+    private static final int STRING_LINES = 2;
+    private static final int STRING_REF = 3;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INTEGER = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_FLOAT = 5;
+    private static final int TYPE_TRUE = 6;
+    private static final int TYPE_FALSE = 7;
+    private static final int TYPE_DATE = 8;
+    private static final int TYPE_ENUM = 9;
+    private static final int TYPE_ITEM = 10;
+    private static final int TYPE_LIST = 11;
+    private static final int TYPE_SET = 12;
+
+    private ItemCodec() {
+    }
+
+    /**
+     * Encode an item.  The stream is flushed but not closed.
+     *
+     * @param item the {@link IItem} to encode, which may be {@code null}.
+     * @param out the {@link OutputStream} to write to.
+     * @throws IOException if the item could not be written, or if it contains a value which
+     * cannot be encoded.
+     */
+    public static void encode(IItem item, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder(new DataOutputStream(new BufferedOutputStream(out)));
+        encoder.mOut.write(MAGIC);
+        encoder.writeVarint(VERSION);
+        encoder.writeValue(item);
+        encoder.mOut.flush();
+    }
+
+    /**
+     * Decode an item written by {@link #encode(IItem, OutputStream)}.
+     *
+     * @param in the {@link InputStream} to read from.
+     * @return the decoded {@link IItem}, or {@code null} if a {@code null} item was encoded.
+     * @throws IOException if the item could not be read or was not encoded by this class.
+     */
+    public static IItem decode(InputStream in) throws IOException {
+        Decoder decoder = new Decoder(new DataInputStream(new BufferedInputStream(in)));
+        byte[] magic = new byte[MAGIC.length];
+        decoder.mIn.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not an encoded item");
+            }
+        }
+        final int version = decoder.readVarint();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported item version %d", version));
+        }
+        Object value = decoder.readValue();
+        if (value != null && !(value instanceof IItem)) {
+            throw new IOException("Encoded value is not an item");
+        }
+        return (IItem) value;
+    }
+
+    /**
+     * Writes items and keeps the string table.
+     */
+    private static class Encoder {
+        private final DataOutputStream mOut;
+        private final Map<String, Integer> mStrings = new HashMap<String, Integer>();
+
+        Encoder(DataOutputStream out) {
+            mOut = out;
+        }
+
+        void writeVarint(int value) throws IOException {
+            writeVarlong(value & 0xffffffffL);
+        }
+
+        void writeVarlong(long value) throws IOException {
+            while ((value & ~0x7fL) != 0) {
+                mOut.write((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            mOut.write((int) value);
+        }
+
+        void writeSignedVarint(int value) throws IOException {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        void writeSignedVarlong(long value) throws IOException {
+            writeVarlong((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) throws IOException {
+            Integer index = mStrings.get(value);
+            if (index != null) {
+                writeVarint(STRING_REF + index);
+                return;
+            }
+            if (value.length() <= MAX_TABLE_STRING_LENGTH) {
+                mStrings.put(value, mStrings.size());
+                writeVarint(STRING_NEW);
+            } else if (value.indexOf('\n') >= 0) {
+                String[] lines = value.split("\n", -1);
+                writeVarint(STRING_LINES);
+                writeVarint(lines.length);
+                for (String line : lines) {
+                    writeString(line);
+                }
+                return;
+            } else {
+                writeVarint(STRING_INLINE);
+            }
+            byte[] bytes = value.getBytes("UTF-8");
+            if (bytes.length > MAX_STRING_BYTES) {
+                throw new IOException(String.format("String of %d bytes is too long to encode",
+                        bytes.length));
+            }
+            writeVarint(bytes.length);
+            mOut.write(bytes);
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                writeVarint(TYPE_NULL);
+            } else if (value instanceof String) {
+                writeVarint(TYPE_STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                writeVarint(TYPE_INTEGER);
+                writeSignedVarint((Integer) value);
+            } else if (value instanceof Long) {
+                writeVarint(TYPE_LONG);
+                writeSignedVarlong((Long) value);
+            } else if (value instanceof Double) {
+                writeVarint(TYPE_DOUBLE);
+                mOut.writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                writeVarint(TYPE_FLOAT);
+                mOut.writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                writeVarint((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+            } else if (value instanceof Date) {
+                writeVarint(TYPE_DATE);
+                writeSignedVarlong(((Date) value).getTime());
+            } else if (value instanceof Enum) {
+                writeVarint(TYPE_ENUM);
+                writeString(((Enum<?>) value).getDeclaringClass().getName());
+                writeString(((Enum<?>) value).name());
+            } else if (value instanceof IItem) {
+                writeVarint(TYPE_ITEM);
+                writeItem((IItem) value);
+            } else if (value instanceof Collection) {
+                writeVarint(value instanceof Set ? TYPE_SET : TYPE_LIST);
+                Collection<?> collection = (Collection<?>) value;
+                writeVarint(collection.size());
+                for (Object element : collection) {
+                    writeValue(element);
+                }
+            } else {
+                throw new IOException(String.format("Cannot encode %s",
+                        value.getClass().getName()));
+            }
+        }
+
+        void writeItem(IItem item) throws IOException {
+            writeString(item.getClass().getName());
+            if (item instanceof GenericItem) {
+                GenericItem genericItem = (GenericItem) item;
+                if (item.getClass() == GenericItem.class) {
+                    writeValue(genericItem.getAllowedAttributes());
+                }
+                Map<String, Object> attributes = genericItem.getAttributeMap();
+                writeVarint(attributes.size());
+                for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                    writeString(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else if (item instanceof GenericMapItem) {
+                GenericMapItem<?> map = (GenericMapItem<?>) item;
+                writeVarint(map.size());
+                for (Map.Entry<String, ?> entry : map.entrySet()) {
+                    writeString(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+                if (item instanceof MemInfoItem) {
+                    writeValue(((MemInfoItem) item).getText());
+                } else if (item instanceof SystemPropsItem) {
+                    writeValue(((SystemPropsItem) item).getText());
+                }
+            } else if (item instanceof ProcrankItem) {
+                ProcrankItem procrank = (ProcrankItem) item;
+                writeVarint(procrank.getPids().size());
+                for (int pid : procrank.getPids()) {
+                    writeSignedVarint(pid);
+                    writeValue(procrank.getProcessName(pid));
+                    writeSignedVarint(procrank.getVss(pid));
+                    writeSignedVarint(procrank.getRss(pid));
+                    writeSignedVarint(procrank.getPss(pid));
+                    writeSignedVarint(procrank.getUss(pid));
+                }
+                writeValue(procrank.getText());
+            } else if (item instanceof CompactMemInfoItem) {
+                CompactMemInfoItem memInfo = (CompactMemInfoItem) item;
+                writeVarint(memInfo.getPids().size());
+                for (int pid : memInfo.getPids()) {
+                    writeSignedVarint(pid);
+                    writeValue(memInfo.getName(pid));
+                    writeValue(memInfo.getType(pid));
+                    writeSignedVarlong(memInfo.getPss(pid));
+                    writeValue(memInfo.hasActivities(pid));
+                }
+            } else if (item instanceof DumpsysBatteryInfoItem) {
+                Collection<WakeLock> wakeLocks =
+                        ((DumpsysBatteryInfoItem) item).getAllWakeLocks();
+                writeVarint(wakeLocks.size());
+                for (WakeLock wakeLock : wakeLocks) {
+                    writeValue(wakeLock.getName());
+                    writeValue(wakeLock.getNumber());
+                    writeSignedVarlong(wakeLock.getHeldTime());
+                    writeSignedVarint(wakeLock.getLockedCount());
+                    writeValue(wakeLock.getCategory());
+                }
+            } else {
+                throw new IOException(String.format("Cannot encode %s",
+                        item.getClass().getName()));
+            }
+        }
+    }
+
+    /**
+     * Reads items and keeps the string table.
+     */
+    private static class Decoder {
+        private final DataInputStream mIn;
+        private final List<String> mStrings = new ArrayList<String>();
+        private final Map<String, Constructor<?>> mConstructors =
+                new HashMap<String, Constructor<?>>();
+
+        Decoder(DataInputStream in) {
+            mIn = in;
+        }
+
+        int readVarint() throws IOException {
+            long value = readVarlong();
+            if ((value & ~0xffffffffL) != 0) {
+                throw new IOException("Corrupt item: varint too long");
+            }
+            return (int) value;
+        }
+
+        long readVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = mIn.read();
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt item: varint too long");
+        }
+
+        int readSignedVarint() throws IOException {
+            final int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readSignedVarlong() throws IOException {
+            final long value = readVarlong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int readCount() throws IOException {
+            final int count = readVarint();
+            if (count < 0) {
+                throw new IOException("Corrupt item: negative count");
+            }
+            return count;
+        }
+
+        String readString() throws IOException {
+            final int ref = readVarint();
+            if (ref >= STRING_REF) {
+                final int index = ref - STRING_REF;
+                if (index >= mStrings.size()) {
+                    throw new IOException("Corrupt item: unknown string");
+                }
+                return mStrings.get(index);
+            }
+            if (ref == STRING_LINES) {
+                final int count = readCount();
+                StringBuilder value = new StringBuilder();
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        value.append('\n');
+                    }
+                    value.append(readString());
+                }
+                return value.toString();
+            }
+            String value = new String(readBytes(readCount()), "UTF-8");
+            if (ref == STRING_NEW) {
+                mStrings.add(value);
+            }
+            return value;
+        }
+
+        /**
+         * Read the bytes of a string.  The array grows as the bytes are read, so that a corrupt
+         * length fails when the input runs out rather than allocating the whole length up front.
+         */
+        private byte[] readBytes(int length) throws IOException {
+            if (length > MAX_STRING_BYTES) {
+                throw new IOException(String.format("Corrupt item: string of %d bytes", length));
+            }
+            byte[] bytes = new byte[Math.min(length, MAX_PREALLOCATION)];
+            int read = 0;
+            while (true) {
+                mIn.readFully(bytes, read, bytes.length - read);
+                read = bytes.length;
+                if (read == length) {
+                    return bytes;
+                }
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+            }
+        }
+
+        /**
+         * Read a value which must be a {@link String} or {@code null}.
+         */
+        String readStringValue() throws IOException {
+            final int type = readVarint();
+            if (type == TYPE_NULL) {
+                return null;
+            }
+            checkType(type, TYPE_STRING, "string");
+            return readString();
+        }
+
+        /**
+         * Read a value which must be an {@link Integer} or {@code null}.
+         */
+        Integer readIntegerValue() throws IOException {
+            final int type = readVarint();
+            if (type == TYPE_NULL) {
+                return null;
+            }
+            checkType(type, TYPE_INTEGER, "integer");
+            return readSignedVarint();
+        }
+
+        /**
+         * Read a value which must be a boolean.
+         */
+        boolean readBooleanValue() throws IOException {
+            final int type = readVarint();
+            if (type != TYPE_TRUE) {
+                checkType(type, TYPE_FALSE, "boolean");
+            }
+            return type == TYPE_TRUE;
+        }
+
+        /**
+         * Read a value which must be an instance of a class or {@code null}.
+         */
+        <T> T readValue(Class<T> valueClass) throws IOException {
+            final Object value = readValue();
+            if (value != null && !valueClass.isInstance(value)) {
+                throw new IOException(String.format("Corrupt item: expected %s but found %s",
+                        valueClass.getName(), value.getClass().getName()));
+            }
+            return valueClass.cast(value);
+        }
+
+        private void checkType(int type, int expected, String name) throws IOException {
+            if (type != expected) {
+                throw new IOException(String.format("Corrupt item: expected a %s but found type %d",
+                        name, type));
+            }
+        }
+
+        Object readValue() throws IOException {
+            final int type = readVarint();
+            switch (type) {
+                case TYPE_NULL:
+                    return null;
+                case TYPE_STRING:
+                    return readString();
+                case TYPE_INTEGER:
+                    return readSignedVarint();
+                case TYPE_LONG:
+                    return readSignedVarlong();
+                case TYPE_DOUBLE:
+                    return mIn.readDouble();
+                case TYPE_FLOAT:
+                    return mIn.readFloat();
+                case TYPE_TRUE:
+                    return Boolean.TRUE;
+                case TYPE_FALSE:
+                    return Boolean.FALSE;
+                case TYPE_DATE:
+                    return new Date(readSignedVarlong());
+                case TYPE_ENUM:
+                    return readEnum();
+                case TYPE_ITEM:
+                    return readItem();
+                case TYPE_LIST:
+                case TYPE_SET:
+                    final int count = readCount();
+                    Collection<Object> collection = type == TYPE_SET ?
+                            new HashSet<Object>() :
+                            new ArrayList<Object>(Math.min(count, MAX_PREALLOCATION));
+                    for (int i = 0; i < count; i++) {
+                        collection.add(readValue());
+                    }
+                    return collection;
+                default:
+                    throw new IOException(String.format("Corrupt item: unknown type %d", type));
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object readEnum() throws IOException {
+            final String className = readString();
+            final String name = readString();
+            try {
+                // The class is not initialized unless it is an enum, which has no side effects.
+                Class<?> enumClass = Class.forName(className, false,
+                        ItemCodec.class.getClassLoader());
+                if (!enumClass.isEnum()) {
+                    throw new IOException(String.format("Corrupt item: %s is not an enum",
+                            className));
+                }
+                return Enum.valueOf((Class<? extends Enum>) enumClass, name);
+            } catch (ClassNotFoundException e) {
+                throw new IOException(String.format("Unknown enum %s", className));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(String.format("Unknown enum value %s.%s", className, name));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private IItem readItem() throws IOException {
+            final String className = readString();
+            if (GenericItem.class.getName().equals(className)) {
+                Object allowed = readValue();
+                if (!(allowed instanceof Collection)) {
+                    throw new IOException("Corrupt item: missing allowed attributes");
+                }
+                GenericItem item = new GenericItem(new HashSet<String>(
+                        (Collection<String>) allowed));
+                readAttributes(item);
+                return item;
+            }
+
+            IItem item = newItem(className);
+            if (item instanceof GenericItem) {
+                readAttributes((GenericItem) item);
+            } else if (item instanceof GenericMapItem) {
+                GenericMapItem<Object> map = (GenericMapItem<Object>) item;
+                final int count = readCount();
+                for (int i = 0; i < count; i++) {
+                    map.put(readString(), readValue());
+                }
+                if (item instanceof MemInfoItem) {
+                    ((MemInfoItem) item).setText(readStringValue());
+                } else if (item instanceof SystemPropsItem) {
+                    ((SystemPropsItem) item).setText(readStringValue());
+                }
+            } else if (item instanceof ProcrankItem) {
+                ProcrankItem procrank = (ProcrankItem) item;
+                final int count = readCount();
+                for (int i = 0; i < count; i++) {
+                    procrank.addProcrankLine(readSignedVarint(), readStringValue(),
+                            readSignedVarint(), readSignedVarint(), readSignedVarint(),
+                            readSignedVarint());
+                }
+                procrank.setText(readStringValue());
+            } else if (item instanceof CompactMemInfoItem) {
+                CompactMemInfoItem memInfo = (CompactMemInfoItem) item;
+                final int count = readCount();
+                for (int i = 0; i < count; i++) {
+                    final int pid = readSignedVarint();
+                    final String name = readStringValue();
+                    final String type = readStringValue();
+                    final long pss = readSignedVarlong();
+                    memInfo.addPid(pid, name, type, pss, readBooleanValue());
+                }
+            } else if (item instanceof DumpsysBatteryInfoItem) {
+                DumpsysBatteryInfoItem batteryInfo = (DumpsysBatteryInfoItem) item;
+                final int count = readCount();
+                for (int i = 0; i < count; i++) {
+                    final String name = readStringValue();
+                    final Integer number = readIntegerValue();
+                    final long heldTime = readSignedVarlong();
+                    final int lockedCount = readSignedVarint();
+                    batteryInfo.addWakeLock(name, number, heldTime, lockedCount,
+                            readValue(WakeLockCategory.class));
+                }
+            } else {
+                throw new IOException(String.format("Cannot decode %s", className));
+            }
+            return item;
+        }
+
+        /**
+         * Read the attributes of a {@link GenericItem}.  Collections created by the constructor
+         * are refilled rather than replaced, since items may rely on their type.
+         */
+        @SuppressWarnings("unchecked")
+        private void readAttributes(GenericItem item) throws IOException {
+            Map<String, Object> attributes = item.getAttributeMap();
+            final int count = readCount();
+            for (int i = 0; i < count; i++) {
+                final String key = readString();
+                final Object value = readValue();
+                final Object current = attributes.get(key);
+                if (current instanceof Collection && value instanceof Collection) {
+                    Collection<Object> collection = (Collection<Object>) current;
+                    collection.clear();
+                    collection.addAll((Collection<Object>) value);
+                    continue;
+                }
+                try {
+                    item.setAttribute(key, value);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(String.format("Corrupt item: %s is not an attribute "
+                            + "of %s", key, item.getClass().getName()));
+                }
+            }
+        }
+
+        /**
+         * Create an item with its no argument constructor.
+         */
+        private IItem newItem(String className) throws IOException {
+            try {
+                Constructor<?> constructor = mConstructors.get(className);
+                if (constructor == null) {
+                    Class<?> itemClass = Class.forName(className, false,
+                            ItemCodec.class.getClassLoader());
+                    if (!IItem.class.isAssignableFrom(itemClass)) {
+                        throw new IOException(String.format("Corrupt item: %s is not an item",
+                                className));
+                    }
+                    constructor = itemClass.getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    mConstructors.put(className, constructor);
+                }
+                return (IItem) constructor.newInstance();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(String.format("Unknown item %s", className));
+            } catch (NoSuchMethodException e) {
+                throw new IOException(String.format("Cannot decode %s", className));
+            } catch (InstantiationException e) {
+                throw new IOException(String.format("Cannot create %s: %s", className, e));
+            } catch (IllegalAccessException e) {
+                throw new IOException(String.format("Cannot create %s: %s", className, e));
+            } catch (InvocationTargetException e) {
+                throw new IOException(String.format("Cannot create %s: %s", className,
+                        e.getCause()));
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Helpers for writing items with {@link IItem#writeJson(org.json.JSONWriter)} so that the output
+ * is the same as {@link IItem#toJson()}.
+ */
+class JsonUtil {
+
+    private JsonUtil() {
+    }
+
+    /**
+     * Get the order that a {@link JSONObject} outputs keys in, if the keys are put in the given
+     * order.  The order depends on the implementation of the JSON library, so it is found by
+     * putting placeholder values for the keys rather than by building the values themselves.
+     * <p>
+     * The order is computed once for each item's fixed set of keys, and keys with {@code null}
+     * values are skipped when writing.  This relies on each subset of those keys having the same
+     * order as the full set, which holds for the small key sets of the items that use this class
+     * but not for sets of keys in general, since the order of a hash table depends on its
+     * capacity.  New callers should check that the output matches {@link IItem#toJson()}.
+     * </p>
+     */
+    static List<String> getKeyOrder(Collection<String> keys) {
+        JSONObject object = new JSONObject();
+        for (String key : keys) {
+            try {
+                object.put(key, Boolean.TRUE);
+            } catch (JSONException e) {
+                // This shouldn't happen since the value is not null.
+            }
+        }
+        List<String> order = new ArrayList<String>(object.length());
+        @SuppressWarnings("unchecked")
+        Iterator<String> iterator = object.keys();
+        while (iterator.hasNext()) {
+            order.add(iterator.next());
+        }
+        return order;
+    }
+
+    /**
+     * Get the order that a {@link JSONObject} outputs keys in.
+     *
+     * @see #getKeyOrder(Collection)
+     */
+    static List<String> getKeyOrder(String... keys) {
+        return getKeyOrder(Arrays.asList(keys));
+    }
+
+    /**
+     * Write a {@link JSONObject} which has already been built.  {@link JSONWriter#value(Object)}
+     * cannot be used since it is rejected for the top level object, so the keys are written one
+     * at a time in the order the object would output them.
+     */
+    static void writeObject(JSONWriter writer, JSONObject object) throws JSONException {
+        writer.object();
+        @SuppressWarnings("unchecked")
+        Iterator<String> iterator = object.keys();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            writer.key(key).value(object.get(key));
+        }
+        writer.endObject();
+    }
+}
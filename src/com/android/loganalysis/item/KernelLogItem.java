@@ -20,6 +20,7 @@ import com.android.loganalysis.parser.KernelLogParser;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.util.Arrays;
 import java.util.HashSet;
@@ -91,14 +92,18 @@ public class KernelLogItem extends GenericItem {
 
     /**
      * Add an {@link MiscKernelLogItem} event to the end of the list of events.
+     *
+     * @return {@code true} if the event was added, or {@code false} if it was a kernel reset
+     * after the first.
      */
-    public void addEvent(MiscKernelLogItem event) {
+    public boolean addEvent(MiscKernelLogItem event) {
         // Only take the first kernel reset
         if (KernelLogParser.KERNEL_RESET.equals(event.getCategory()) &&
                 !getMiscEvents(KernelLogParser.KERNEL_RESET).isEmpty()) {
-            return;
+            return false;
         }
         ((ItemList) getAttribute(EVENTS)).add(event);
+        return true;
     }
 
     /**
@@ -145,4 +150,21 @@ public class KernelLogItem extends GenericItem {
         }
         return output;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void writeJsonAttribute(JSONWriter writer, String key, Object attribute)
+            throws JSONException {
+        if (EVENTS.equals(key)) {
+            writer.array();
+            for (MiscKernelLogItem event : getEvents()) {
+                event.writeJson(writer);
+            }
+            writer.endArray();
+        } else {
+            super.writeJsonAttribute(writer, key, attribute);
+        }
+    }
 }
@@ -18,6 +18,7 @@ package com.android.loganalysis.item;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.util.Arrays;
 import java.util.Date;
@@ -219,4 +220,21 @@ public class LogcatItem extends GenericItem {
         }
         return output;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void writeJsonAttribute(JSONWriter writer, String key, Object attribute)
+            throws JSONException {
+        if (EVENTS.equals(key)) {
+            writer.array();
+            for (MiscLogcatItem event : getEvents()) {
+                event.writeJson(writer);
+            }
+            writer.endArray();
+        } else {
+            super.writeJsonAttribute(writer, key, attribute);
+        }
+    }
 }
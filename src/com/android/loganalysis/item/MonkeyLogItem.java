@@ -18,6 +18,7 @@ package com.android.loganalysis.item;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.util.Arrays;
 import java.util.Date;
@@ -360,6 +361,17 @@ public class MonkeyLogItem extends GenericItem {
         return object;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Monkey log items are small, so the output of {@link #toJson()} is written as is.
+     * </p>
+     */
+    @Override
+    public void writeJson(JSONWriter writer) throws JSONException {
+        JsonUtil.writeObject(writer, toJson());
+    }
+
     /**
      * Try to put an {@link Object} in a {@link JSONObject} and remove the existing key if it fails.
      */
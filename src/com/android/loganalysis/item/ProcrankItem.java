@@ -18,8 +18,10 @@ package com.android.loganalysis.item;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -48,6 +50,10 @@ public class ProcrankItem implements IItem {
     /** Constant for JSON output */
     public static final String TEXT = "TEXT";
 
+    private static final List<String> KEY_ORDER = JsonUtil.getKeyOrder(LINES, TEXT);
+    private static final List<String> LINE_KEY_ORDER = JsonUtil.getKeyOrder(PID, PROCESS_NAME,
+            VSS, RSS, PSS, USS);
+
     private class ProcrankValue {
         public String mProcessName;
         public int mVss;
@@ -199,4 +205,58 @@ public class ProcrankItem implements IItem {
         }
         return object;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeJson(JSONWriter writer) throws JSONException {
+        writer.object();
+        for (String key : KEY_ORDER) {
+            if (LINES.equals(key)) {
+                writer.key(LINES);
+                writer.array();
+                for (Entry<Integer, ProcrankValue> entry : mProcrankLines.entrySet()) {
+                    writeJsonLine(writer, entry.getKey(), entry.getValue());
+                }
+                writer.endArray();
+            } else if (getText() != null) {
+                writer.key(TEXT);
+                writer.value(getText());
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Write a line in the same format as {@link #toJson()}.
+     */
+    private void writeJsonLine(JSONWriter writer, Integer pid, ProcrankValue procrankValue)
+            throws JSONException {
+        writer.object();
+        for (String key : LINE_KEY_ORDER) {
+            if (PID.equals(key)) {
+                writer.key(PID);
+                writer.value(pid);
+            } else if (PROCESS_NAME.equals(key)) {
+                if (procrankValue.mProcessName != null) {
+                    writer.key(PROCESS_NAME);
+                    writer.value(procrankValue.mProcessName);
+                }
+            } else if (VSS.equals(key)) {
+                writer.key(VSS);
+                writer.value(procrankValue.mVss);
+            } else if (RSS.equals(key)) {
+                writer.key(RSS);
+                writer.value(procrankValue.mRss);
+            } else if (PSS.equals(key)) {
+                writer.key(PSS);
+                writer.value(procrankValue.mPss);
+            } else if (USS.equals(key)) {
+                writer.key(USS);
+                writer.value(procrankValue.mUss);
+            }
+        }
+        writer.endObject();
+    }
 }
@@ -17,6 +17,9 @@ package com.android.loganalysis.item;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.util.List;
 
 /**
  * An {@link IItem} used to store the system props info.
@@ -29,6 +32,8 @@ public class SystemPropsItem extends GenericMapItem<String> {
     /** Constant for JSON output */
     public static final String TEXT = "TEXT";
 
+    private static final List<String> KEY_ORDER = JsonUtil.getKeyOrder(LINES, TEXT);
+
     private String mText = null;
 
     /**
@@ -59,4 +64,22 @@ public class SystemPropsItem extends GenericMapItem<String> {
         }
         return object;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeJson(JSONWriter writer) throws JSONException {
+        writer.object();
+        for (String key : KEY_ORDER) {
+            if (LINES.equals(key)) {
+                writer.key(LINES);
+                super.writeJson(writer);
+            } else if (getText() != null) {
+                writer.key(TEXT);
+                writer.value(getText());
+            }
+        }
+        writer.endObject();
+    }
 }
@@ -16,12 +16,25 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.util.LineReader;
+import com.android.loganalysis.util.LineView;
+import com.android.loganalysis.util.ParseStats;
+import com.android.loganalysis.util.RegexLiteralUtil;
 import com.android.loganalysis.util.RegexTrie;
 
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A {@link IParser} that splits an input file into discrete sections and passes each section to an
@@ -30,13 +43,53 @@ import java.util.Map;
  * Before parsing input, {@link IParser}s can be added with
  * {@link #addSectionParser(IParser, String)}. The default parser is {@link NoopParser} but this can
  * be overwritten by calling {@link #setParser(IParser)} before parsing the input.
+ * </p><p>
+ * If {@link ParseStats} are being collected, the lines, characters and time of each section are
+ * reported under the name of the section, which is its first line without the surrounding dashes.
+ * </p><p>
+ * By default, each section is parsed on the reading thread.  Lines are passed directly to an
+ * {@link IStreamingParser} as they are read, so the section is never buffered, and other
+ * {@link IParser}s are given the buffered section as soon as it ends.  If an
+ * {@link ExecutorService} is set with {@link #setExecutor(ExecutorService)}, each section is
+ * instead buffered and handed to the executor and reading continues, and the result is waited for
+ * when the section is needed by {@link #getSection(IParser)} or when the input is committed.
+ * Sections which go to the same {@link IParser} are still parsed one at a time and in order, so
+ * section parsers do not need to be thread safe, but they must not share state with other section
+ * parsers.
+ * </p><p>
+ * Lines in a section which is being discarded, because its parser is a {@link NoopParser}, are
+ * dropped without being buffered unless they start with the literal prefix shared by every section
+ * pattern, since only those lines can start a new section.  {@link #readLineView(LineReader)}
+ * skips such lines in the input without reading them as {@link String}s at all, including lines
+ * which a nested {@link AbstractSectionParser} that lines are being streamed to would discard.
  * </p>
  */
 public abstract class AbstractSectionParser implements IParser {
+    /** The name of the section before the first section line, used for {@link ParseStats}. */
+    static final String HEADER_SECTION = "(header)";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private RegexTrie<IParser> mSectionTrie = new RegexTrie<IParser>();
+    /** A snapshot of {@link #mSectionTrie}, or {@code null} until the next line is checked. */
+    private RegexTrie.Snapshot<IParser> mSectionSnapshot = null;
+    /** The literal prefix of every section pattern, which is empty if there is none. */
+    private String mSectionPrefix = null;
+    private byte[][] mSectionPrefixes = null;
+    /** The prefixes last returned by a nested parser, and those prefixes plus our own. */
+    private byte[][] mNestedPrefixes = null;
+    private byte[][] mResumePrefixes = null;
     private IParser mCurrentParser = new NoopParser();
+    private String mCurrentSection = HEADER_SECTION;
     private List<String> mParseBlock = new LinkedList<String>();
+    private boolean mSectionStarted = false;
+    private boolean mStreamingSection = false;
+    private ParseStats.Measurement mSectionMeasurement = null;
+    private long mSectionLines = 0;
+    private long mSectionChars = 0;
     private Map<IParser, IItem> mSections = new HashMap<IParser, IItem>();
+    private ExecutorService mExecutor = null;
+    private Map<IParser, Future<IItem>> mPendingSections =
+            new LinkedHashMap<IParser, Future<IItem>>();
 
     /**
      * A method to add a given section parser to the set of potential parsers to use.
@@ -52,6 +105,97 @@ public abstract class AbstractSectionParser implements IParser {
             throw new NullPointerException("Pattern is null");
         }
         mSectionTrie.put(parser, pattern);
+        mSectionSnapshot = null;
+
+        String prefix = RegexLiteralUtil.getLiteralPrefix(pattern);
+        if (mSectionPrefix != null) {
+            int length = 0;
+            while (length < prefix.length() && length < mSectionPrefix.length()
+                    && prefix.charAt(length) == mSectionPrefix.charAt(length)) {
+                length++;
+            }
+            prefix = prefix.substring(0, length);
+        }
+        mSectionPrefix = prefix;
+        mSectionPrefixes = prefix.isEmpty() ? null : new byte[][] {prefix.getBytes(UTF_8)};
+        mNestedPrefixes = null;
+        mResumePrefixes = null;
+    }
+
+    /**
+     * Get the literal prefix which every section line starts with, as bytes.
+     *
+     * @return An array containing the prefix, or {@code null} if the section patterns do not
+     * share a literal prefix.
+     */
+    protected byte[][] getSectionPrefixes() {
+        return mSectionPrefixes;
+    }
+
+    /**
+     * Get the prefixes of the lines of input which need to be parsed next.  Other lines would be
+     * discarded, either by this parser or by the {@link AbstractSectionParser} that lines are
+     * being streamed to, so they can be skipped.
+     *
+     * @return The byte prefixes, or {@code null} if every line needs to be parsed.
+     */
+    protected byte[][] getResumePrefixes() {
+        if (mSectionPrefixes == null) {
+            return null;
+        }
+        if (isDiscardingSection()) {
+            return mSectionPrefixes;
+        }
+        if (!mStreamingSection || !(mCurrentParser instanceof AbstractSectionParser)) {
+            return null;
+        }
+        byte[][] nested = ((AbstractSectionParser) mCurrentParser).getResumePrefixes();
+        if (nested == null) {
+            return null;
+        }
+        if (nested != mNestedPrefixes) {
+            mNestedPrefixes = nested;
+            mResumePrefixes = Arrays.copyOf(nested, nested.length + 1);
+            mResumePrefixes[nested.length] = mSectionPrefixes[0];
+        }
+        return mResumePrefixes;
+    }
+
+    /**
+     * Read the next line of input which needs to be parsed, skipping lines which would be
+     * discarded without decoding them.
+     *
+     * @param input The {@link LineReader} to read.
+     * @return The {@link LineView}, or {@code null} if the end of the input has been reached.
+     * @throws IOException If the input could not be read.
+     * @see #getResumePrefixes()
+     */
+    protected LineView readLineView(LineReader input) throws IOException {
+        byte[][] prefixes = getResumePrefixes();
+        return prefixes == null ? input.readLineView() : input.readLineView(prefixes);
+    }
+
+    /**
+     * Get the section parser which a line would switch to.
+     *
+     * @param line The line to check.
+     * @return The {@link IParser} for the section started by the line, or {@code null} if the line
+     * does not start a section.
+     */
+    protected IParser getSectionParser(String line) {
+        if (mSectionSnapshot == null) {
+            mSectionSnapshot = mSectionTrie.freeze();
+        }
+        return mSectionSnapshot.retrieve(line);
+    }
+
+    /**
+     * Check if the current section is being discarded, either because its parser is a
+     * {@link NoopParser} or because there is no current parser.  Lines in a discarded section have
+     * no effect unless they start a new section.
+     */
+    protected boolean isDiscardingSection() {
+        return mCurrentParser == null || mCurrentParser instanceof NoopParser;
     }
 
     /**
@@ -61,38 +205,67 @@ public abstract class AbstractSectionParser implements IParser {
      * @param line The line to parse
      */
     protected void parseLine(String line) {
-        IParser nextParser = mSectionTrie.retrieve(line);
+        if (mSectionPrefixes != null && isDiscardingSection() && !line.startsWith(mSectionPrefix)) {
+            // Only a section line can end a discarded section.
+            return;
+        }
+        IParser nextParser = getSectionParser(line);
 
         if (nextParser == null) {
-            // no match, so buffer this for the current parser, if there is one
+            // no match, so pass or buffer this for the current parser, if there is one
             if (mCurrentParser != null) {
-                mParseBlock.add(line);
+                if (!mSectionStarted) {
+                    startSection();
+                }
+                if (mStreamingSection) {
+                    ((IStreamingParser) mCurrentParser).acceptLine(line);
+                    if (mSectionMeasurement != null) {
+                        mSectionLines++;
+                        mSectionChars += line.length() + 1;
+                    }
+                } else {
+                    mParseBlock.add(line);
+                }
             } else {
                 // CLog.w("Line outside of parsed section: %s", line);
             }
         } else {
             runCurrentParser();
             mCurrentParser = nextParser;
+            mCurrentSection = line;
         }
     }
 
     /**
-     * Signal that the input has finished and run the last parser.
+     * Signal that the input has finished, run the last parser, and wait for any sections which are
+     * still being parsed.
      */
     protected void commit() {
         runCurrentParser();
+        waitForSections();
     }
 
     /**
-     * Gets the {@link IItem} for a given section.
+     * Gets the {@link IItem} for a given section, waiting for the section to be parsed if needed.
      *
      * @param parser The {@link IParser} type for the section.
      * @return The {@link IItem}.
      */
     protected IItem getSection(IParser parser) {
+        waitForSection(parser);
         return mSections.get(parser);
     }
 
+    /**
+     * Set the {@link ExecutorService} to parse sections on, or {@code null} to parse sections on
+     * the reading thread.  The executor is not shut down by the parser.
+     *
+     * @param executor The {@link ExecutorService}.
+     */
+    public void setExecutor(ExecutorService executor) {
+        mExecutor = executor;
+    }
+
     /**
      * Set the {@link IParser}. Used to set the initial parser.
      *
@@ -109,19 +282,213 @@ public abstract class AbstractSectionParser implements IParser {
     }
 
     /**
-     * Run the current parser and add the {@link IItem} to the sections map.
+     * Start a section for the current parser.  The section is streamed if the parser is an
+     * {@link IStreamingParser} and there is no executor to hand the section to, or the section is
+     * being discarded.
+     */
+    private void startSection() {
+        mSectionStarted = true;
+        mStreamingSection = mCurrentParser instanceof IStreamingParser &&
+                (mExecutor == null || mCurrentParser instanceof NoopParser);
+        if (mStreamingSection) {
+            mSectionMeasurement = ParseStats.getCurrent() != null ? ParseStats.start() : null;
+            ((IStreamingParser) mCurrentParser).beginSection();
+        }
+    }
+
+    /**
+     * Finish the current section, run the current parser or hand it to the executor, and add the
+     * {@link IItem} to the sections map.
      */
     private void runCurrentParser() {
-        if (mCurrentParser != null) {
-            IItem item = mCurrentParser.parse(mParseBlock);
-            if (item != null && !(mCurrentParser instanceof NoopParser)) {
-                mSections.put(mCurrentParser, item);
-                // CLog.v("Just ran the %s parser", mCurrentParser.getClass().getSimpleName());
+        if (mCurrentParser != null && !mSectionStarted) {
+            startSection();
+        }
+        if (mCurrentParser != null && mStreamingSection) {
+            addSection(mCurrentParser, finishStreamingSection());
+        } else if (mExecutor != null && mCurrentParser != null &&
+                !(mCurrentParser instanceof NoopParser)) {
+            submitCurrentParser();
+        } else {
+            if (mCurrentParser != null) {
+                addSection(mCurrentParser, parseSection(mCurrentParser, mCurrentSection,
+                        mParseBlock));
             }
+            mParseBlock.clear();
         }
-
-        mParseBlock.clear();
+        mSectionStarted = false;
+        mStreamingSection = false;
         onSwitchParser();
     }
-}
 
+    /**
+     * Finish the section being streamed to the current parser, reporting it to the current
+     * {@link ParseStats} if any.  The time reported includes reading the lines of the section.
+     */
+    private IItem finishStreamingSection() {
+        IItem item = ((IStreamingParser) mCurrentParser).finishSection();
+        ParseStats stats = ParseStats.getCurrent();
+        if (stats != null && mSectionMeasurement != null) {
+            String sectionName = getSectionName(mCurrentSection);
+            stats.addSection(sectionName, getParserName(mCurrentParser), mSectionMeasurement);
+            stats.addSectionLines(sectionName, mSectionLines, mSectionChars);
+        }
+        mSectionMeasurement = null;
+        mSectionLines = 0;
+        mSectionChars = 0;
+        return item;
+    }
+
+    /**
+     * Hand the current section to the executor.  The block is handed over with it, so a new block
+     * is started for the next section.
+     */
+    private void submitCurrentParser() {
+        final IParser parser = mCurrentParser;
+        final String section = mCurrentSection;
+        final List<String> block = mParseBlock;
+        final ParseStats stats = ParseStats.getCurrent();
+
+        // Keep sections for the same parser in order, and off of the parser at the same time.
+        waitForSection(parser);
+        mPendingSections.put(parser, mExecutor.submit(new Callable<IItem>() {
+            @Override
+            public IItem call() {
+                ParseStats previousStats = ParseStats.getCurrent();
+                ParseStats.setCurrent(stats);
+                try {
+                    return parseSection(parser, section, block);
+                } finally {
+                    ParseStats.setCurrent(previousStats);
+                }
+            }
+        }));
+        mParseBlock = new LinkedList<String>();
+    }
+
+    /**
+     * Parse a section, reporting it to the current {@link ParseStats} if any.
+     */
+    private static IItem parseSection(IParser parser, String section, List<String> block) {
+        ParseStats stats = ParseStats.getCurrent();
+        ParseStats.Measurement measurement = stats != null ? ParseStats.start() : null;
+        IItem item = parser.parse(block);
+        if (stats != null) {
+            String sectionName = getSectionName(section);
+            stats.addSection(sectionName, getParserName(parser), measurement);
+            stats.addSectionLines(sectionName, block);
+        }
+        return item;
+    }
+
+    /**
+     * Parse a section read from a {@link LineReader}, reporting it to the current
+     * {@link ParseStats} if any.  An {@link IStreamingParser} is given each line as it is read, and
+     * other parsers are given the buffered section.
+     *
+     * @param parser The {@link IParser} for the section.
+     * @param section The first line of the section.
+     * @param reader The {@link LineReader} for the lines of the section, after the first line.
+     * @return The parsed {@link IItem}.
+     * @throws IOException If the section could not be read.
+     */
+    protected static IItem parseSection(IParser parser, String section, LineReader reader)
+            throws IOException {
+        String line;
+        if (!(parser instanceof IStreamingParser)) {
+            List<String> block = new LinkedList<String>();
+            while ((line = reader.readLine()) != null) {
+                block.add(line);
+            }
+            return parseSection(parser, section, block);
+        }
+
+        IStreamingParser streamingParser = (IStreamingParser) parser;
+        ParseStats stats = ParseStats.getCurrent();
+        ParseStats.Measurement measurement = stats != null ? ParseStats.start() : null;
+        long lines = 0;
+        long chars = 0;
+        streamingParser.beginSection();
+        while ((line = reader.readLine()) != null) {
+            streamingParser.acceptLine(line);
+            lines++;
+            chars += line.length() + 1;
+        }
+        IItem item = streamingParser.finishSection();
+        if (stats != null) {
+            String sectionName = getSectionName(section);
+            stats.addSection(sectionName, getParserName(parser), measurement);
+            stats.addSectionLines(sectionName, lines, chars);
+        }
+        return item;
+    }
+
+    /**
+     * Add the {@link IItem} of a section to the sections map.
+     */
+    private void addSection(IParser parser, IItem item) {
+        if (item != null && !(parser instanceof NoopParser)) {
+            mSections.put(parser, item);
+            // CLog.v("Just ran the %s parser", parser.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Wait for the section being parsed by the given parser, if any, and add it to the sections
+     * map.  Exceptions thrown by the parser are rethrown on this thread.
+     */
+    private void waitForSection(IParser parser) {
+        Future<IItem> future = mPendingSections.remove(parser);
+        if (future == null) {
+            return;
+        }
+        try {
+            addSection(parser, future.get());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Wait for all of the sections being parsed, in the order they were handed to the executor.
+     */
+    private void waitForSections() {
+        for (IParser parser : new ArrayList<IParser>(mPendingSections.keySet())) {
+            waitForSection(parser);
+        }
+    }
+
+    /**
+     * Get the name of a section from its first line, such as {@code KERNEL LOG (dmesg)} for
+     * {@code ------ KERNEL LOG (dmesg) ------}.
+     */
+    static String getSectionName(String line) {
+        int start = 0;
+        int end = line.length();
+        while (start < end && (line.charAt(start) == '-' || line.charAt(start) == ' ')) {
+            start++;
+        }
+        while (end > start && (line.charAt(end - 1) == '-' || line.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        return start < end ? line.substring(start, end) : line;
+    }
+
+    /**
+     * Get the name of a parser for {@link ParseStats}, which is its class name without the
+     * package.
+     */
+    static String getParserName(IParser parser) {
+        String name = parser.getClass().getName();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+}
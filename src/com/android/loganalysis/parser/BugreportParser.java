@@ -30,19 +30,38 @@ import com.android.loganalysis.item.SystemPropsItem;
 import com.android.loganalysis.item.TopItem;
 import com.android.loganalysis.item.TracesItem;
 
+import com.android.loganalysis.util.LineReader;
+import com.android.loganalysis.util.LineView;
+import com.android.loganalysis.util.SymbolTable;
+import com.android.loganalysis.util.TimestampCodec;
+
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * A {@link IParser} to parse Android bugreports.
+ * <p>
+ * A bugreport file can also be parsed lazily with {@link #parseLazily(File)}, which only indexes
+ * the sections and parses each section the first time it is accessed.
+ * </p><p>
+ * Every {@link Section} is parsed by default.  The sections to parse can be narrowed with
+ * {@link #setIncludedSections(Collection)} and {@link #setExcludedSections(Collection)}.
+ * </p>
  */
 public class BugreportParser extends AbstractSectionParser {
     private static final String MEM_INFO_SECTION_REGEX = "------ MEMORY INFO .*";
@@ -57,6 +76,12 @@ public class BugreportParser extends AbstractSectionParser {
     private static final String DUMPSYS_SECTION_REGEX = "------ DUMPSYS .*";
     private static final String NOOP_SECTION_REGEX = "------ .*";
 
+    /** The attributes of a {@link BugreportItem} which are loaded by {@link #parseLazily(File)}. */
+    private static final List<String> LAZY_ATTRIBUTES = Arrays.asList(BugreportItem.MEM_INFO,
+            BugreportItem.PROCRANK, BugreportItem.TOP, BugreportItem.SYSTEM_LOG,
+            BugreportItem.KERNEL_LOG, BugreportItem.LAST_KMSG, BugreportItem.SYSTEM_PROPS,
+            BugreportItem.DUMPSYS);
+
     private static final String BOOTREASON = "androidboot.bootreason";
 
     /**
@@ -71,32 +96,76 @@ public class BugreportParser extends AbstractSectionParser {
     private static final Pattern COMMAND_LINE = Pattern.compile(
             "Command line:((\\s+[^\\s=]+=[^\\s]*)*)\\s*");
 
-    private IParser mBugreportParser = new IParser() {
+    /**
+     * The sections of a bugreport which can be included in or excluded from parsing.
+     */
+    public enum Section {
+        MEM_INFO(MEM_INFO_SECTION_REGEX),
+        PROCRANK(PROCRANK_SECTION_REGEX),
+        TOP(TOP_SECTION_REGEX),
+        SYSTEM_PROPS(SYSTEM_PROP_SECTION_REGEX),
+        TRACES(ANR_TRACES_SECTION_REGEX),
+        SYSTEM_LOG(SYSTEM_LOG_SECTION_REGEX),
+        KERNEL_LOG(KERNEL_LOG_SECTION_REGEX),
+        LAST_KMSG(LAST_KMSG_SECTION_REGEX),
+        DUMPSYS(DUMPSYS_SECTION_REGEX);
+
+        private final String mRegex;
+
+        private Section(String regex) {
+            mRegex = regex;
+        }
+
+        /**
+         * Get the regular expression which matches the first line of the section.
+         */
+        public String getRegex() {
+            return mRegex;
+        }
+    }
+
+    private IParser mBugreportParser = new IStreamingParser() {
+        private BugreportItem mHeader = null;
+
         @Override
         public BugreportItem parse(List<String> lines) {
-            BugreportItem bugreport = null;
+            beginSection();
             for (String line : lines) {
-                if (bugreport == null && !"".equals(line.trim())) {
-                    bugreport = new BugreportItem();
-                }
-                Matcher m = DATE.matcher(line);
-                if (m.matches()) {
-                    bugreport.setTime(parseTime(m.group(1)));
-                }
-                m = COMMAND_LINE.matcher(line);
-                if (m.matches()) {
-                    String argString = m.group(1).trim();
-                    if (!argString.isEmpty()) {
-                        String[] pairs = argString.split("\\s+");
-                        for (String pair : pairs) {
-                            System.out.println(pair);
-                            String[] keyValue = pair.split("=", 2);
-                            mCommandLine.put(keyValue[0], keyValue[1]);
-                        }
+                acceptLine(line);
+            }
+            return finishSection();
+        }
+
+        @Override
+        public void beginSection() {
+            mHeader = null;
+        }
+
+        @Override
+        public void acceptLine(String line) {
+            if (mHeader == null && !"".equals(line.trim())) {
+                mHeader = new BugreportItem();
+            }
+            Matcher m = DATE.matcher(line);
+            if (m.matches()) {
+                mHeader.setTime(parseTime(m.group(1)));
+            }
+            m = COMMAND_LINE.matcher(line);
+            if (m.matches()) {
+                String argString = m.group(1).trim();
+                if (!argString.isEmpty()) {
+                    String[] pairs = argString.split("\\s+");
+                    for (String pair : pairs) {
+                        String[] keyValue = pair.split("=", 2);
+                        mCommandLine.put(keyValue[0], keyValue[1]);
                     }
                 }
             }
-            return bugreport;
+        }
+
+        @Override
+        public BugreportItem finishSection() {
+            return mHeader;
         }
     };
     private MemInfoParser mMemInfoParser = new MemInfoParser();
@@ -108,11 +177,14 @@ public class BugreportParser extends AbstractSectionParser {
     private KernelLogParser mLastKmsgParser = new KernelLogParser();
     private LogcatParser mLogcatParser = new LogcatParser();
     private DumpsysParser mDumpsysParser = new DumpsysParser();
+    private SymbolTable mSymbols = new SymbolTable();
 
     private BugreportItem mBugreport = null;
     private CommandLineItem mCommandLine = new CommandLineItem();
 
     private boolean mParsedInput = false;
+    private Set<Section> mIncludedSections = null;
+    private Set<Section> mExcludedSections = EnumSet.noneOf(Section.class);
 
     /**
      * Parse a bugreport from a {@link BufferedReader} into an {@link BugreportItem} object.
@@ -136,6 +208,29 @@ public class BugreportParser extends AbstractSectionParser {
         return mBugreport;
     }
 
+    /**
+     * Parse a bugreport from a {@link LineReader} into an {@link BugreportItem} object.
+     *
+     * @param input a {@link LineReader}.
+     * @return The {@link BugreportItem}.
+     * @see #parse(List)
+     */
+    public BugreportItem parse(LineReader input) throws IOException {
+        LineView line;
+
+        setup();
+        // Lines which would be discarded are skipped without being decoded.
+        while ((line = readLineView(input)) != null) {
+            if (!mParsedInput && !line.isBlank()) {
+                mParsedInput = true;
+            }
+            parseLine(line.toString());
+        }
+        commit();
+
+        return mBugreport;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -155,6 +250,107 @@ public class BugreportParser extends AbstractSectionParser {
         return mBugreport;
     }
 
+    /**
+     * Set the sections to parse.  Sections which are not included are skipped without being
+     * buffered or matched line by line, and their attributes of the {@link BugreportItem} are
+     * left unset.  The header, including the command line, is always parsed.
+     *
+     * @param sections the {@link Section}s to parse, or {@code null} to parse every section.
+     */
+    public void setIncludedSections(Collection<Section> sections) {
+        mIncludedSections = sections == null ? null : EnumSet.copyOf(sections);
+    }
+
+    /**
+     * Set the sections to skip, even if they are included by
+     * {@link #setIncludedSections(Collection)}.
+     *
+     * @param sections the {@link Section}s to skip, or {@code null} to not skip any sections.
+     */
+    public void setExcludedSections(Collection<Section> sections) {
+        mExcludedSections = EnumSet.noneOf(Section.class);
+        if (sections != null) {
+            mExcludedSections.addAll(sections);
+        }
+    }
+
+    /**
+     * Set the {@link SymbolTable} which the section parsers intern tags and process names in.  By
+     * default, the sections of a bugreport share a table of their own.
+     *
+     * @param symbols the {@link SymbolTable}, which may be shared with the parsers of other logs.
+     */
+    public void setSymbolTable(SymbolTable symbols) {
+        mSymbols = symbols;
+    }
+
+    /**
+     * Parse a bugreport file lazily into a {@link BugreportItem} object.
+     * <p>
+     * Only the header is parsed up front.  The rest of the file is scanned once to record the byte
+     * offset and length of each section, and the file is memory mapped so that each section can
+     * be parsed from the mapping the first time it is accessed from the {@link BugreportItem}.
+     * Fix-ups which use other sections, such as adding the ANR trace to the system log, are done
+     * when the section they change is loaded.
+     * </p>
+     *
+     * @param file the bugreport file.
+     * @return The {@link BugreportItem}.
+     * @throws IOException if the file could not be mapped or is larger than 2 GB.
+     * @see #parse(List)
+     */
+    public BugreportItem parseLazily(File file) throws IOException {
+        ByteBuffer buffer = map(file);
+        IStreamingParser headerParser = (IStreamingParser) mBugreportParser;
+        List<SectionRange> sections = new ArrayList<SectionRange>();
+        SectionRange currentSection = null;
+
+        setup();
+        headerParser.beginSection();
+        byte[][] sectionPrefixes = getSectionPrefixes();
+        LineReader reader = LineReader.open(buffer);
+        LineView line;
+        // Once the header has been read, only section lines are needed.
+        while ((line = currentSection == null || sectionPrefixes == null ?
+                reader.readLineView() : reader.readLineView(sectionPrefixes)) != null) {
+            if (!mParsedInput && !line.isBlank()) {
+                mParsedInput = true;
+            }
+            IParser sectionParser = null;
+            if (sectionPrefixes == null || line.startsWith(sectionPrefixes[0])) {
+                String sectionLine = line.toString();
+                sectionParser = getSectionParser(sectionLine);
+                if (sectionParser != null) {
+                    if (currentSection != null) {
+                        currentSection.mEnd = (int) reader.getLineOffset();
+                    }
+                    currentSection = new SectionRange(sectionLine, sectionParser,
+                            (int) reader.getOffset());
+                    sections.add(currentSection);
+                }
+            }
+            if (sectionParser == null && currentSection == null) {
+                headerParser.acceptLine(line.toString());
+            }
+        }
+        if (currentSection != null) {
+            currentSection.mEnd = buffer.limit();
+        }
+        reader.close();
+
+        mBugreport = (BugreportItem) headerParser.finishSection();
+        setLogcatYear();
+        if (mParsedInput && mBugreport == null) {
+            mBugreport = new BugreportItem();
+        }
+        if (mBugreport != null) {
+            mBugreport.setCommandLine(mCommandLine);
+            mBugreport.setSectionLoader(new LazySectionLoader(buffer, sections),
+                    LAZY_ATTRIBUTES);
+        }
+        return mBugreport;
+    }
+
     /**
      * Sets up the parser by adding the section parsers and adding an initial {@link IParser} to
      * parse the bugreport header.
@@ -162,24 +358,39 @@ public class BugreportParser extends AbstractSectionParser {
     protected void setup() {
         // Set the initial parser explicitly since the header isn't part of a section.
         setParser(mBugreportParser);
-        addSectionParser(mMemInfoParser, MEM_INFO_SECTION_REGEX);
-        addSectionParser(mProcrankParser, PROCRANK_SECTION_REGEX);
-        addSectionParser(mTopParser, TOP_SECTION_REGEX);
-        addSectionParser(mSystemPropsParser, SYSTEM_PROP_SECTION_REGEX);
-        addSectionParser(mTracesParser, ANR_TRACES_SECTION_REGEX);
-        addSectionParser(mLogcatParser, SYSTEM_LOG_SECTION_REGEX);
-        addSectionParser(mKernelLogParser, KERNEL_LOG_SECTION_REGEX);
-        addSectionParser(mLastKmsgParser, LAST_KMSG_SECTION_REGEX);
-        addSectionParser(mDumpsysParser, DUMPSYS_SECTION_REGEX);
+        mProcrankParser.setSymbolTable(mSymbols);
+        mLogcatParser.setSymbolTable(mSymbols);
+        mKernelLogParser.setSymbolTable(mSymbols);
+        mLastKmsgParser.setSymbolTable(mSymbols);
+        addSectionParser(mMemInfoParser, Section.MEM_INFO);
+        addSectionParser(mProcrankParser, Section.PROCRANK);
+        addSectionParser(mTopParser, Section.TOP);
+        addSectionParser(mSystemPropsParser, Section.SYSTEM_PROPS);
+        addSectionParser(mTracesParser, Section.TRACES);
+        addSectionParser(mLogcatParser, Section.SYSTEM_LOG);
+        addSectionParser(mKernelLogParser, Section.KERNEL_LOG);
+        addSectionParser(mLastKmsgParser, Section.LAST_KMSG);
+        addSectionParser(mDumpsysParser, Section.DUMPSYS);
+        // Sections which are not parsed, including excluded sections, fall through to here.
         addSectionParser(new NoopParser(), NOOP_SECTION_REGEX);
     }
 
+    /**
+     * Add a section parser for a {@link Section} if the section is included.
+     */
+    private void addSectionParser(IParser parser, Section section) {
+        if ((mIncludedSections == null || mIncludedSections.contains(section)) &&
+                !mExcludedSections.contains(section)) {
+            addSectionParser(parser, section.getRegex());
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected void commit() {
-        // signal EOF
+        // signal EOF, and wait for any sections still being parsed before the cross-section fix-ups
         super.commit();
 
         if (mParsedInput && mBugreport == null) {
@@ -197,36 +408,54 @@ public class BugreportParser extends AbstractSectionParser {
             mBugreport.setSystemProps((SystemPropsItem) getSection(mSystemPropsParser));
             mBugreport.setDumpsys((DumpsysItem) getSection(mDumpsysParser));
 
-            if (mBugreport.getSystemLog() != null && mBugreport.getProcrank() != null) {
-                for (IItem item : mBugreport.getSystemLog().getEvents()) {
-                    if (item instanceof MiscLogcatItem &&
-                            ((MiscLogcatItem) item).getApp() == null) {
-                        MiscLogcatItem logcatItem = (MiscLogcatItem) item;
-                        logcatItem.setApp(mBugreport.getProcrank().getProcessName(
-                                logcatItem.getPid()));
-                    }
+            addProcessNames(mBugreport);
+            addAnrTrace(mBugreport, (TracesItem) getSection(mTracesParser));
+            addLastBootReason(mBugreport);
+        }
+    }
+
+    /**
+     * Set the app of the system log events from the procrank section.
+     */
+    private void addProcessNames(BugreportItem bugreport) {
+        if (bugreport.getSystemLog() != null && bugreport.getProcrank() != null) {
+            for (IItem item : bugreport.getSystemLog().getEvents()) {
+                if (item instanceof MiscLogcatItem &&
+                        ((MiscLogcatItem) item).getApp() == null) {
+                    MiscLogcatItem logcatItem = (MiscLogcatItem) item;
+                    logcatItem.setApp(bugreport.getProcrank().getProcessName(
+                            logcatItem.getPid()));
                 }
             }
+        }
+    }
 
-            TracesItem traces = (TracesItem) getSection(mTracesParser);
-            if (traces != null && traces.getApp() != null && traces.getStack() != null &&
-                    mBugreport.getSystemLog() != null) {
-                addAnrTrace(mBugreport.getSystemLog().getAnrs(), traces.getApp(),
-                        traces.getStack());
-            }
+    /**
+     * Add the trace from the traces section to the last ANR for the same app in the system log.
+     */
+    private void addAnrTrace(BugreportItem bugreport, TracesItem traces) {
+        if (traces != null && traces.getApp() != null && traces.getStack() != null &&
+                bugreport.getSystemLog() != null) {
+            addAnrTrace(bugreport.getSystemLog().getAnrs(), traces.getApp(),
+                    traces.getStack());
+        }
+    }
 
-            if (mCommandLine.containsKey(BOOTREASON)) {
-                String bootreason = mCommandLine.get(BOOTREASON);
-                Matcher m = KernelLogParser.BAD_BOOTREASONS.matcher(bootreason);
-                if (m.matches()) {
-                    if (mBugreport.getLastKmsg() == null) {
-                        mBugreport.setLastKmsg(new KernelLogItem());
-                    }
-                    MiscKernelLogItem item = new MiscKernelLogItem();
-                    item.setStack("Last boot reason: " + bootreason.trim());
-                    item.setCategory(KernelLogParser.KERNEL_RESET);
-                    mBugreport.getLastKmsg().addEvent(item);
+    /**
+     * Add a kernel reset to the last kmsg if the command line has a bad boot reason.
+     */
+    private void addLastBootReason(BugreportItem bugreport) {
+        if (mCommandLine.containsKey(BOOTREASON)) {
+            String bootreason = mCommandLine.get(BOOTREASON);
+            Matcher m = KernelLogParser.BAD_BOOTREASONS.matcher(bootreason);
+            if (m.matches()) {
+                if (bugreport.getLastKmsg() == null) {
+                    bugreport.setLastKmsg(new KernelLogItem());
                 }
+                MiscKernelLogItem item = new MiscKernelLogItem();
+                item.setStack("Last boot reason: " + bootreason.trim());
+                item.setCategory(KernelLogParser.KERNEL_RESET);
+                bugreport.getLastKmsg().addEvent(item);
             }
         }
     }
@@ -254,9 +483,33 @@ public class BugreportParser extends AbstractSectionParser {
     protected void onSwitchParser() {
         if (mBugreport == null) {
             mBugreport = (BugreportItem) getSection(mBugreportParser);
-            if (mBugreport != null && mBugreport.getTime() != null) {
-                mLogcatParser.setYear(new SimpleDateFormat("yyyy").format(mBugreport.getTime()));
+            setLogcatYear();
+        }
+    }
+
+    /**
+     * Set the year of the {@link LogcatParser} from the bugreport header, if there is one.
+     */
+    private void setLogcatYear() {
+        if (mBugreport != null && mBugreport.getTime() != null) {
+            mLogcatParser.setYear(new SimpleDateFormat("yyyy").format(mBugreport.getTime()));
+        }
+    }
+
+    /**
+     * Memory map a whole file.
+     */
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s is too large to map", file));
             }
+            // The mapping stays valid after the file is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            input.close();
         }
     }
 
@@ -264,13 +517,91 @@ public class BugreportParser extends AbstractSectionParser {
      * Converts a {@link String} into a {@link Date}.
      */
     private static Date parseTime(String timeStr) {
-        DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        try {
-            return formatter.parse(timeStr);
-        } catch (ParseException e) {
-            // CLog.e("Could not parse time string %s", timeStr);
-            return null;
+        return TimestampCodec.toDate(new TimestampCodec().parseDateTime(timeStr, 0, false));
+    }
+
+    /**
+     * The location of a section in a mapped bugreport.  The offsets are of the lines after the
+     * first line of the section.
+     */
+    private static class SectionRange {
+        public final String mLine;
+        public final IParser mParser;
+        public final int mStart;
+        public int mEnd;
+
+        public SectionRange(String line, IParser parser, int start) {
+            mLine = line;
+            mParser = parser;
+            mStart = start;
+            mEnd = start;
         }
     }
-}
 
+    /**
+     * A {@link BugreportItem.SectionLoader} which parses sections from a mapped bugreport.
+     */
+    private class LazySectionLoader implements BugreportItem.SectionLoader {
+        private final ByteBuffer mBuffer;
+        private final List<SectionRange> mSections;
+
+        public LazySectionLoader(ByteBuffer buffer, List<SectionRange> sections) {
+            mBuffer = buffer;
+            mSections = sections;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void load(BugreportItem bugreport, String attribute) {
+            if (BugreportItem.MEM_INFO.equals(attribute)) {
+                bugreport.setMemInfo((MemInfoItem) parseSections(mMemInfoParser));
+            } else if (BugreportItem.PROCRANK.equals(attribute)) {
+                bugreport.setProcrank((ProcrankItem) parseSections(mProcrankParser));
+            } else if (BugreportItem.TOP.equals(attribute)) {
+                bugreport.setTop((TopItem) parseSections(mTopParser));
+            } else if (BugreportItem.SYSTEM_LOG.equals(attribute)) {
+                bugreport.setSystemLog((LogcatItem) parseSections(mLogcatParser));
+                addProcessNames(bugreport);
+                addAnrTrace(bugreport, (TracesItem) parseSections(mTracesParser));
+            } else if (BugreportItem.KERNEL_LOG.equals(attribute)) {
+                bugreport.setKernelLog((KernelLogItem) parseSections(mKernelLogParser));
+            } else if (BugreportItem.LAST_KMSG.equals(attribute)) {
+                bugreport.setLastKmsg((KernelLogItem) parseSections(mLastKmsgParser));
+                addLastBootReason(bugreport);
+            } else if (BugreportItem.SYSTEM_PROPS.equals(attribute)) {
+                bugreport.setSystemProps((SystemPropsItem) parseSections(mSystemPropsParser));
+            } else if (BugreportItem.DUMPSYS.equals(attribute)) {
+                bugreport.setDumpsys((DumpsysItem) parseSections(mDumpsysParser));
+            }
+        }
+
+        /**
+         * Parse every section for a parser, in order, and return the last non-null
+         * {@link IItem}, the same as {@link AbstractSectionParser#getSection(IParser)} after a
+         * full parse.
+         */
+        private IItem parseSections(IParser parser) {
+            IItem result = null;
+            for (SectionRange section : mSections) {
+                if (section.mParser != parser) {
+                    continue;
+                }
+                ByteBuffer buffer = mBuffer.duplicate();
+                buffer.position(section.mStart);
+                buffer.limit(section.mEnd);
+                try {
+                    IItem item = parseSection(parser, section.mLine, LineReader.open(buffer));
+                    if (item != null) {
+                        result = item;
+                    }
+                } catch (IOException e) {
+                    // Reading from memory does not throw.
+                    throw new IllegalStateException(e);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.CompactMemInfoItem;
+import com.android.loganalysis.util.SymbolTable;
 
 import java.util.List;
 import java.util.regex.Matcher;
@@ -40,6 +41,15 @@ public class CompactMemInfoParser implements IParser {
     private static final Pattern PROC_PREFIX = Pattern.compile(
             "proc,(.+),(.+),(\\d+),(\\d+),(.?)");
 
+    private SymbolTable mSymbols = new SymbolTable();
+
+    /**
+     * Set the {@link SymbolTable} which process names and types are interned in.
+     */
+    public void setSymbolTable(SymbolTable symbols) {
+        mSymbols = symbols;
+    }
+
     /**
      * Parse compact meminfo log. Output a CompactMemInfoItem which contains
      * the list of processes, their pids and their pss.
@@ -53,8 +63,8 @@ public class CompactMemInfoParser implements IParser {
 
             if (m.groupCount() != 5) continue;
 
-            String type = m.group(1);
-            String name = m.group(2);
+            String type = mSymbols.intern(line, m.start(1), m.end(1));
+            String name = mSymbols.intern(line, m.start(2), m.end(2));
             int pid = Integer.parseInt(m.group(3));
             long pss = Long.parseLong(m.group(4));
             boolean activities = "a".equals(m.group(5));
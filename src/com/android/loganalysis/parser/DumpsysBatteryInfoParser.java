@@ -23,9 +23,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A {@link IParser} to handle the "dumpsys batteryinfo" command output.
+ * A {@link IStreamingParser} to handle the "dumpsys batteryinfo" command output.
  */
-public class DumpsysBatteryInfoParser implements IParser {
+public class DumpsysBatteryInfoParser implements IStreamingParser {
     private static final Pattern LAST_CHARGED_START_PAT = Pattern.compile(
             "^Statistics since last charge:$");
     private static final Pattern LAST_UNPLUGGED_START_PAT = Pattern.compile(
@@ -50,57 +50,84 @@ public class DumpsysBatteryInfoParser implements IParser {
             "^  Wake lock #(\\d+) (.+): " + WAKE_LOCK_PAT_SUFFIX);
 
     private DumpsysBatteryInfoItem mItem = new DumpsysBatteryInfoItem();
+    private WakeLockCategory mKernelWakeLockCategory = null;
+    private WakeLockCategory mWakeLockCategory = null;
+    private boolean mInKernelWakeLock = false;
+    private boolean mInWakeLock = false;
 
     /**
      * {@inheritDoc}
      */
     @Override
     public DumpsysBatteryInfoItem parse(List<String> lines) {
-        WakeLockCategory kernelWakeLockCategory = null;
-        WakeLockCategory wakeLockCategory = null;
-        boolean inKernelWakeLock = false;
-        boolean inWakeLock = false;
+        beginSection();
+        for (String line : lines) {
+            acceptLine(line);
+        }
+        return finishSection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginSection() {
+        mKernelWakeLockCategory = null;
+        mWakeLockCategory = null;
+        mInKernelWakeLock = false;
+        mInWakeLock = false;
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
         // Look for the section for last unplugged statistics.  Kernel wakelocks are in the lines
         // immediately following, until a blank line. Partial wake locks are in their own block,
-        // until a blank line. Return immediately after since there is nothing left to parse.
-        for (String line : lines) {
-            if (kernelWakeLockCategory == null || wakeLockCategory == null) {
-                Matcher m = LAST_CHARGED_START_PAT.matcher(line);
-                if (m.matches()) {
-                    kernelWakeLockCategory = WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK;
-                    wakeLockCategory = WakeLockCategory.LAST_CHARGE_WAKELOCK;
-                    inKernelWakeLock = true;
+        // until a blank line.
+        if (mKernelWakeLockCategory == null || mWakeLockCategory == null) {
+            Matcher m = LAST_CHARGED_START_PAT.matcher(line);
+            if (m.matches()) {
+                mKernelWakeLockCategory = WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK;
+                mWakeLockCategory = WakeLockCategory.LAST_CHARGE_WAKELOCK;
+                mInKernelWakeLock = true;
+            }
+            m = LAST_UNPLUGGED_START_PAT.matcher(line);
+            if (m.matches()) {
+                mKernelWakeLockCategory = WakeLockCategory.LAST_UNPLUGGED_KERNEL_WAKELOCK;
+                mWakeLockCategory = WakeLockCategory.LAST_UNPLUGGED_WAKELOCK;
+                mInKernelWakeLock = true;
+            }
+        } else {
+            if (mInKernelWakeLock) {
+                if ("".equals(line.trim())) {
+                    mInKernelWakeLock = false;
+                } else {
+                    parseKernelWakeLock(line, mKernelWakeLockCategory);
                 }
-                m = LAST_UNPLUGGED_START_PAT.matcher(line);
-                if (m.matches()) {
-                    kernelWakeLockCategory = WakeLockCategory.LAST_UNPLUGGED_KERNEL_WAKELOCK;
-                    wakeLockCategory = WakeLockCategory.LAST_UNPLUGGED_WAKELOCK;
-                    inKernelWakeLock = true;
+            } else if (mInWakeLock) {
+                if ("".equals(line.trim())) {
+                    mInWakeLock = false;
+                    mKernelWakeLockCategory = null;
+                    mWakeLockCategory = null;
+                } else {
+                    parseWakeLock(line, mWakeLockCategory);
                 }
             } else {
-                if (inKernelWakeLock) {
-                    if ("".equals(line.trim())) {
-                        inKernelWakeLock = false;
-                    } else {
-                        parseKernelWakeLock(line, kernelWakeLockCategory);
-                    }
-                } else if (inWakeLock) {
-                    if ("".equals(line.trim())) {
-                        inWakeLock = false;
-                        kernelWakeLockCategory = null;
-                        wakeLockCategory = null;
-                    } else {
-                        parseWakeLock(line, wakeLockCategory);
-                    }
-                } else {
-                    Matcher m = WAKE_LOCK_START_PAT.matcher(line);
-                    if (m.matches()) {
-                        inWakeLock = true;
-                    }
+                Matcher m = WAKE_LOCK_START_PAT.matcher(line);
+                if (m.matches()) {
+                    mInWakeLock = true;
                 }
             }
         }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DumpsysBatteryInfoItem finishSection() {
         return mItem;
     }
 
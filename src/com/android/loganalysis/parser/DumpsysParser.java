@@ -23,13 +23,24 @@ import java.util.List;
 /**
  * A {@link IParser} to handle the output of the dumpsys section of the bugreport.
  */
-public class DumpsysParser extends AbstractSectionParser {
+public class DumpsysParser extends AbstractSectionParser implements IStreamingParser {
     private static final String BATTERY_INFO_SECTION_REGEX = "DUMP OF SERVICE batteryinfo:";
     private static final String NOOP_SECTION_REGEX = "DUMP OF SERVICE .*";
 
     private DumpsysBatteryInfoParser mBatteryInfoParser = new DumpsysBatteryInfoParser();
     private DumpsysItem mDumpsys = null;
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every line is needed until the first non-blank line, which creates the {@link DumpsysItem}.
+     * </p>
+     */
+    @Override
+    protected byte[][] getResumePrefixes() {
+        return mDumpsys == null ? null : super.getResumePrefixes();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -37,13 +48,39 @@ public class DumpsysParser extends AbstractSectionParser {
      */
     @Override
     public DumpsysItem parse(List<String> lines) {
-        setup();
+        beginSection();
         for (String line : lines) {
-            if (mDumpsys == null && !"".equals(line.trim())) {
-                mDumpsys = new DumpsysItem();
-            }
-            parseLine(line);
+            acceptLine(line);
         }
+        return finishSection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginSection() {
+        setup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
+        if (mDumpsys == null && !"".equals(line.trim())) {
+            mDumpsys = new DumpsysItem();
+        }
+        parseLine(line);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The {@link DumpsysItem}
+     */
+    @Override
+    public DumpsysItem finishSection() {
         commit();
 
         return mDumpsys;
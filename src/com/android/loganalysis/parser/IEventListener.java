@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.item.IItem;
+
+/**
+ * A listener for the events found by a parser, such as crashes and ANRs.  Each event is delivered
+ * as soon as it is complete, rather than when the whole input has been parsed, so that a log can
+ * be triaged while it is being read.
+ *
+ * @param <T> the type of the events.
+ */
+public interface IEventListener<T extends IItem> {
+
+    /**
+     * Called on the parsing thread when an event is complete.  The event is also part of the item
+     * returned when the parser finishes.
+     *
+     * @param event The event.
+     */
+    public void onEvent(T event);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.item.IItem;
+
+import java.util.List;
+
+/**
+ * An {@link IParser} which can be given its input one line at a time, so that the input does not
+ * need to be buffered.
+ * <p>
+ * A section is parsed by calling {@link #beginSection()}, then {@link #acceptLine(String)} for each
+ * line of the section, then {@link #finishSection()}.  {@link #parse(List)} must be the same as
+ * doing this for each line of the list.
+ * </p>
+ */
+public interface IStreamingParser extends IParser {
+
+    /**
+     * Signal that a new section is starting.
+     */
+    public void beginSection();
+
+    /**
+     * Parse the next line of the section.
+     *
+     * @param line The line to parse.
+     */
+    public void acceptLine(String line);
+
+    /**
+     * Signal that the section has finished.
+     *
+     * @return The parsed {@link IItem} object.
+     */
+    public IItem finishSection();
+}
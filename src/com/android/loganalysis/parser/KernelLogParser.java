@@ -18,8 +18,11 @@ package com.android.loganalysis.parser;
 import com.android.loganalysis.item.KernelLogItem;
 import com.android.loganalysis.item.MiscKernelLogItem;
 import com.android.loganalysis.item.SELinuxItem;
+import com.android.loganalysis.util.LineReader;
 import com.android.loganalysis.util.LogPatternUtil;
 import com.android.loganalysis.util.LogTailUtil;
+import com.android.loganalysis.util.ParseStats;
+import com.android.loganalysis.util.SymbolTable;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -30,7 +33,7 @@ import java.util.regex.Pattern;
 /**
 * A {@link IParser} to parse {@code /proc/last_kmsg} and the output from {@code dmsg}.
 */
-public class KernelLogParser implements IParser {
+public class KernelLogParser implements IStreamingParser {
     public static final String KERNEL_RESET = "KERNEL_RESET";
     public static final String KERNEL_ERROR = "KERNEL_ERROR";
     public static final String SELINUX_DENIAL = "SELINUX_DENIAL";
@@ -57,11 +60,30 @@ public class KernelLogParser implements IParser {
 
     private LogPatternUtil mPatternUtil = new LogPatternUtil();
     private LogTailUtil mPreambleUtil = new LogTailUtil(500, 50, 50);
+    private SymbolTable mSymbols = new SymbolTable();
+    private IEventListener<? super MiscKernelLogItem> mEventListener = null;
 
     public KernelLogParser() {
         initPatterns();
     }
 
+    /**
+     * Set the {@link IEventListener} which each event is delivered to as soon as its line is
+     * parsed.
+     *
+     * @param listener the {@link IEventListener}, or {@code null}.
+     */
+    public void setEventListener(IEventListener<? super MiscKernelLogItem> listener) {
+        mEventListener = listener;
+    }
+
+    /**
+     * Set the {@link SymbolTable} which the SELinux contexts of events are interned in.
+     */
+    public void setSymbolTable(SymbolTable symbols) {
+        mSymbols = symbols;
+    }
+
     /**
      * Parse a kernel log from a {@link BufferedReader} into an {@link KernelLogItem} object.
      *
@@ -78,6 +100,22 @@ public class KernelLogParser implements IParser {
         return mKernelLog;
     }
 
+    /**
+     * Parse a kernel log from a {@link LineReader} into an {@link KernelLogItem} object.
+     *
+     * @return The {@link KernelLogItem}.
+     * @see #parse(List)
+     */
+    public KernelLogItem parse(LineReader input) throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            parseLine(line);
+        }
+        commit();
+
+        return mKernelLog;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -93,6 +131,38 @@ public class KernelLogParser implements IParser {
         return mKernelLog;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Like the other parse methods, a {@link KernelLogParser} is meant to parse a single log, so
+     * nothing is reset.
+     * </p>
+     */
+    @Override
+    public void beginSection() {
+        // ignore
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
+        parseLine(line);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The {@link KernelLogItem}.
+     */
+    @Override
+    public KernelLogItem finishSection() {
+        commit();
+
+        return mKernelLog;
+    }
+
     /**
      * Parse a line of input.
      *
@@ -106,7 +176,7 @@ public class KernelLogParser implements IParser {
             mKernelLog = new KernelLogItem();
         }
         Matcher m = LOG_LINE.matcher(line);
-        if (m.matches()) {
+        if (ParseStats.matches(m)) {
             Double time = Double.parseDouble(m.group(2));
             String msg = m.group(3);
 
@@ -137,7 +207,7 @@ public class KernelLogParser implements IParser {
             SELinuxItem selinuxItem = new SELinuxItem();
             Matcher m = SELINUX_DENIAL_PATTERN.matcher(message);
             if (m.matches()) {
-                selinuxItem.setSContext(m.group(1));
+                selinuxItem.setSContext(mSymbols.intern(message, m.start(1), m.end(1)));
             }
             kernelLogItem = selinuxItem;
         } else {
@@ -147,7 +217,9 @@ public class KernelLogParser implements IParser {
         kernelLogItem.setPreamble(mPreambleUtil.getLastTail());
         kernelLogItem.setStack(message);
         kernelLogItem.setCategory(category);
-        mKernelLog.addEvent(kernelLogItem);
+        if (mKernelLog.addEvent(kernelLogItem) && mEventListener != null) {
+            mEventListener.onEvent(kernelLogItem);
+        }
     }
 
     /**
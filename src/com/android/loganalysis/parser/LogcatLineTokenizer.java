@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.util.SymbolTable;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a line of logcat in the threadtime or time format into its timestamp, pid, tid, level,
+ * tag and message without using regexes.
+ * <p>
+ * The fields are found as offsets into the line in a single pass, and the pid and tid are parsed
+ * in place.  The format of the last line is tried first, since a log rarely changes format.  The
+ * result is the same as matching {@link #THREADTIME_LINE} and then {@link #TIME_LINE}, which are
+ * still used for the rare lines that contain a line terminator such as {@code \r}, since
+ * {@code .} does not match those.
+ * </p><p>
+ * A tokenizer keeps the state of the last line, so it is not thread safe.
+ * </p>
+ */
+class LogcatLineTokenizer {
+
+    /** The formats of logcat which can be tokenized. */
+    enum Format {
+        THREADTIME, TIME
+    }
+
+    /**
+     * Match a single line of `logcat -v threadtime`, such as:
+     * 05-26 11:02:36.886  5689  5689 D AndroidRuntime: CheckJNI is OFF
+     */
+    static final Pattern THREADTIME_LINE = Pattern.compile(
+            "^(\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}.\\d{3})\\s+" +  /* timestamp [1] */
+                "(\\d+)\\s+(\\d+)\\s+([A-Z])\\s+" +  /* pid/tid and log level [2-4] */
+                "(.+?)\\s*: (.*)$" /* tag and message [5-6]*/);
+
+    /**
+     * Match a single line of `logcat -v time`, such as:
+     * 06-04 02:32:14.002 D/dalvikvm(  236): GC_CONCURRENT freed 580K, 51% free [...]
+     */
+    static final Pattern TIME_LINE = Pattern.compile(
+            "^(\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}.\\d{3})\\s+" +  /* timestamp [1] */
+                "(\\w)/(.+?)\\(\\s*(\\d+)\\): (.*)$");  /* level, tag, pid, msg [2-5] */
+
+    /** The length of a timestamp such as {@code 05-26 11:02:36.886}. */
+    private static final int TIME_LENGTH = 18;
+
+    /** The levels as {@link String}s, so each line does not need a new one. */
+    private static final String[] LEVELS = new String[128];
+    static {
+        for (char c = 0; c < LEVELS.length; c++) {
+            LEVELS[c] = String.valueOf(c);
+        }
+    }
+
+    private String mLine = null;
+    private Format mFormat = null;
+    private Format mLastFormat = Format.THREADTIME;
+    private int mPid = 0;
+    private Integer mTid = null;
+    private int mLevel = 0;
+    private int mTagStart = 0;
+    private int mTagEnd = 0;
+    private int mMessageStart = 0;
+
+    /**
+     * Tokenize a line.
+     *
+     * @param line the line
+     * @return {@code true} if the line is in one of the {@link Format}s.
+     * @throws NumberFormatException if the pid or tid is too large for an int.
+     */
+    public boolean tokenize(String line) {
+        mLine = line;
+        mFormat = null;
+        if (!startsWithTime(line)) {
+            return false;
+        }
+        if (hasLineTerminator(line, 0, line.length())) {
+            return tokenizeWithRegex(line);
+        }
+        Format first = mLastFormat;
+        if (first == Format.TIME ? tokenizeTime(line) || tokenizeThreadtime(line) :
+                tokenizeThreadtime(line) || tokenizeTime(line)) {
+            mLastFormat = mFormat;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the format of the last line, or {@code null} if it did not match either format.
+     */
+    public Format getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Get the timestamp of the last line, such as {@code 05-26 11:02:36.886}.
+     */
+    public String getTime() {
+        return mLine.substring(0, TIME_LENGTH);
+    }
+
+    /**
+     * Get the pid of the last line.
+     */
+    public int getPid() {
+        return mPid;
+    }
+
+    /**
+     * Get the tid of the last line, or {@code null} if the format does not include the tid.
+     */
+    public Integer getTid() {
+        return mTid;
+    }
+
+    /**
+     * Get the level of the last line, such as {@code E}.
+     */
+    public String getLevel() {
+        char level = mLine.charAt(mLevel);
+        return level < LEVELS.length ? LEVELS[level] : String.valueOf(level);
+    }
+
+    /**
+     * Get the tag of the last line.
+     */
+    public String getTag() {
+        return mLine.substring(mTagStart, mTagEnd);
+    }
+
+    /**
+     * Get the tag of the last line as its canonical instance in a {@link SymbolTable}, which
+     * avoids creating a {@link String} for tags which have been seen before.
+     */
+    public String getTag(SymbolTable symbols) {
+        return symbols.intern(mLine, mTagStart, mTagEnd);
+    }
+
+    /**
+     * Get the message of the last line.
+     */
+    public String getMessage() {
+        return mLine.substring(mMessageStart);
+    }
+
+    /**
+     * Check if a region of a {@link String} contains a character which {@code .} does not match,
+     * so that {@code .*} can be checked with a literal comparison.
+     */
+    static boolean hasLineTerminator(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028'
+                    || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tokenize the part of a line after the timestamp as {@code pid tid level tag: message}.
+     */
+    private boolean tokenizeThreadtime(String line) {
+        final int pidStart = skipSpaces(line, TIME_LENGTH);
+        if (pidStart == TIME_LENGTH) {
+            return false;
+        }
+        final int pidEnd = skipDigits(line, pidStart);
+        final int tidStart = skipSpaces(line, pidEnd);
+        if (pidEnd == pidStart || tidStart == pidEnd) {
+            return false;
+        }
+        final int tidEnd = skipDigits(line, tidStart);
+        final int level = skipSpaces(line, tidEnd);
+        if (tidEnd == tidStart || level == tidEnd || level >= line.length()) {
+            return false;
+        }
+        final char levelChar = line.charAt(level);
+        if (levelChar < 'A' || levelChar > 'Z') {
+            return false;
+        }
+        int tagStart = skipSpaces(line, level + 1);
+        if (tagStart == level + 1) {
+            return false;
+        }
+
+        // The tag is as short as possible, but at least one character, and any spaces before
+        // the ": " are not part of it.
+        int separator = line.indexOf(": ", tagStart + 1);
+        int tagEnd;
+        if (separator >= 0) {
+            tagEnd = separator;
+            while (tagEnd > tagStart + 1 && isSpace(line.charAt(tagEnd - 1))) {
+                tagEnd--;
+            }
+        } else if (tagStart - level > 2 && line.startsWith(": ", tagStart)) {
+            // The regex gives the last space before the tag back to make a one character tag.
+            separator = tagStart;
+            tagEnd = tagStart;
+            tagStart--;
+        } else {
+            return false;
+        }
+
+        mPid = parseInt(line, pidStart, pidEnd);
+        mTid = parseInt(line, tidStart, tidEnd);
+        mLevel = level;
+        mTagStart = tagStart;
+        mTagEnd = tagEnd;
+        mMessageStart = separator + 2;
+        mFormat = Format.THREADTIME;
+        return true;
+    }
+
+    /**
+     * Tokenize the part of a line after the timestamp as {@code level/tag( pid): message}.
+     */
+    private boolean tokenizeTime(String line) {
+        final int level = skipSpaces(line, TIME_LENGTH);
+        if (level == TIME_LENGTH || level + 1 >= line.length()
+                || !isWordChar(line.charAt(level)) || line.charAt(level + 1) != '/') {
+            return false;
+        }
+        final int tagStart = level + 2;
+        for (int paren = line.indexOf('(', tagStart + 1); paren >= 0;
+                paren = line.indexOf('(', paren + 1)) {
+            final int pidStart = skipSpaces(line, paren + 1);
+            final int pidEnd = skipDigits(line, pidStart);
+            if (pidEnd > pidStart && line.startsWith("): ", pidEnd)) {
+                mPid = parseInt(line, pidStart, pidEnd);
+                mTid = null;
+                mLevel = level;
+                mTagStart = tagStart;
+                mTagEnd = paren;
+                mMessageStart = pidEnd + 3;
+                mFormat = Format.TIME;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tokenize a line with {@link #THREADTIME_LINE} and {@link #TIME_LINE}.
+     */
+    private boolean tokenizeWithRegex(String line) {
+        Matcher m = THREADTIME_LINE.matcher(line);
+        if (m.matches()) {
+            mPid = Integer.parseInt(m.group(2));
+            mTid = Integer.parseInt(m.group(3));
+            mLevel = m.start(4);
+            mTagStart = m.start(5);
+            mTagEnd = m.end(5);
+            mMessageStart = m.start(6);
+            mFormat = Format.THREADTIME;
+            return true;
+        }
+        m = TIME_LINE.matcher(line);
+        if (m.matches()) {
+            mPid = Integer.parseInt(m.group(4));
+            mTid = null;
+            mLevel = m.start(2);
+            mTagStart = m.start(3);
+            mTagEnd = m.end(3);
+            mMessageStart = m.start(5);
+            mFormat = Format.TIME;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a line starts with a timestamp such as {@code 05-26 11:02:36.886}.
+     */
+    private static boolean startsWithTime(String line) {
+        if (line.length() < TIME_LENGTH) {
+            return false;
+        }
+        return isDigit(line.charAt(0)) && isDigit(line.charAt(1)) && line.charAt(2) == '-'
+                && isDigit(line.charAt(3)) && isDigit(line.charAt(4)) && line.charAt(5) == ' '
+                && isDigit(line.charAt(6)) && isDigit(line.charAt(7)) && line.charAt(8) == ':'
+                && isDigit(line.charAt(9)) && isDigit(line.charAt(10)) && line.charAt(11) == ':'
+                && isDigit(line.charAt(12)) && isDigit(line.charAt(13))
+                && !hasLineTerminator(line, 14, 15) && isDigit(line.charAt(15))
+                && isDigit(line.charAt(16)) && isDigit(line.charAt(17));
+    }
+
+    /**
+     * Parse the digits of a line as an int, in the same way as {@link Integer#parseInt(String)}.
+     */
+    private static int parseInt(String line, int start, int end) {
+        if (end - start > 9) {
+            // Let Integer.parseInt() decide whether the number overflows.
+            return Integer.parseInt(line.substring(start, end));
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static int skipSpaces(String line, int start) {
+        int i = start;
+        while (i < line.length() && isSpace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipDigits(String line, int start) {
+        int i = start;
+        while (i < line.length() && isDigit(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Check if a character is matched by {@code \s}.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Check if a character is matched by {@code \d}.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Check if a character is matched by {@code \w}.
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || isDigit(c);
+    }
+}
@@ -18,17 +18,22 @@ package com.android.loganalysis.parser;
 import com.android.loganalysis.item.LogcatItem;
 import com.android.loganalysis.item.MiscLogcatItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.LineReader;
 import com.android.loganalysis.util.LogPatternUtil;
 import com.android.loganalysis.util.LogTailUtil;
+import com.android.loganalysis.util.LongLruMap;
+import com.android.loganalysis.util.SymbolTable;
+import com.android.loganalysis.util.TimestampCodec;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -43,7 +48,7 @@ import java.util.regex.Pattern;
  * will be used.
  * </p>
  */
-public class LogcatParser implements IParser {
+public class LogcatParser implements IStreamingParser {
     public static final String ANR = "ANR";
     public static final String JAVA_CRASH = "JAVA_CRASH";
     public static final String NATIVE_CRASH = "NATIVE_CRASH";
@@ -51,23 +56,6 @@ public class LogcatParser implements IParser {
     public static final String HIGH_MEMORY_USAGE = "HIGH_MEMORY_USAGE";
     public static final String RUNTIME_RESTART = "RUNTIME_RESTART";
 
-    /**
-     * Match a single line of `logcat -v threadtime`, such as:
-     * 05-26 11:02:36.886  5689  5689 D AndroidRuntime: CheckJNI is OFF
-     */
-    private static final Pattern THREADTIME_LINE = Pattern.compile(
-            "^(\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}.\\d{3})\\s+" +  /* timestamp [1] */
-                "(\\d+)\\s+(\\d+)\\s+([A-Z])\\s+" +  /* pid/tid and log level [2-4] */
-                "(.+?)\\s*: (.*)$" /* tag and message [5-6]*/);
-
-    /**
-     * Match a single line of `logcat -v time`, such as:
-     * 06-04 02:32:14.002 D/dalvikvm(  236): GC_CONCURRENT freed 580K, 51% free [...]
-     */
-    private static final Pattern TIME_LINE = Pattern.compile(
-            "^(\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}.\\d{3})\\s+" +  /* timestamp [1] */
-                "(\\w)/(.+?)\\(\\s*(\\d+)\\): (.*)$");  /* level, tag, pid, msg [2-5] */
-
     /**
      * Match: "*** FATAL EXCEPTION IN SYSTEM PROCESS: message"
      */
@@ -81,9 +69,15 @@ public class LogcatParser implements IParser {
 
 
     /**
-     * Match a line thats printed when a non app java process starts.
+     * The start of a line thats printed when a non app java process starts, followed by its name.
      */
-    private static final Pattern JAVA_PROC_START = Pattern.compile("Calling main entry (.+)");
+    private static final String JAVA_PROC_START = "Calling main entry ";
+
+    /** The start of a message that's printed when the device begins to reboot. */
+    private static final String REBOOT_START = "Rebooting, reason: ";
+
+    /** The end of a line that's printed when a new log starts. */
+    private static final String MAIN_BUFFER_START = "--------- beginning of /dev/log/main";
 
     /**
      * Class for storing logcat meta data for a particular grouped list of lines.
@@ -91,18 +85,27 @@ public class LogcatParser implements IParser {
     private class LogcatData {
         public Integer mPid = null;
         public Integer mTid = null;
-        public Date mTime = null;
+        public long mTime = TimestampCodec.INVALID;
+        public long mLastTime = TimestampCodec.INVALID;
+        /** The order in which the group started, used to keep the events in order. */
+        public long mOrder = 0;
+        /** The number of the line which was last added to the group. */
+        public long mLastLine = 0;
         public String mLevel = null;
         public String mTag = null;
         public String mLastPreamble = null;
         public String mProcPreamble = null;
-        public List<String> mLines = new LinkedList<String>();
+        public List<String> mLines = new ArrayList<String>();
+        public MiscLogcatItem mItem = null;
 
-        public LogcatData(Integer pid, Integer tid, Date time, String level, String tag,
+        public LogcatData(Integer pid, Integer tid, long time, String level, String tag,
                 String lastPreamble, String procPreamble) {
             mPid = pid;
             mTid = tid;
             mTime = time;
+            mLastTime = time;
+            mOrder = mGroupCount++;
+            mLastLine = mLineNumber;
             mLevel = level;
             mTag = tag;
             mLastPreamble = lastPreamble;
@@ -111,17 +114,34 @@ public class LogcatParser implements IParser {
     }
 
     private LogPatternUtil mPatternUtil = new LogPatternUtil();
+    private LogcatLineTokenizer mTokenizer = new LogcatLineTokenizer();
     private LogTailUtil mPreambleUtil = new LogTailUtil();
+    private SymbolTable mSymbols = new SymbolTable();
 
     private String mYear = null;
+    private Integer mYearValue = null;
+    private TimestampCodec mTimestampCodec = new TimestampCodec();
 
     LogcatItem mLogcat = null;
 
-    Map<String, LogcatData> mDataMap = new HashMap<String, LogcatData>();
-    List<LogcatData> mDataList = new LinkedList<LogcatData>();
+    /**
+     * The open groups of ANR, native crash and Java crash lines, keyed by {@link #packKey} and
+     * ordered from the group which was least recently added to.
+     */
+    private LongLruMap<LogcatData> mAnrGroups = new LongLruMap<LogcatData>();
+    private LongLruMap<LogcatData> mNativeCrashGroups = new LongLruMap<LogcatData>();
+    private LongLruMap<LogcatData> mJavaCrashGroups = new LongLruMap<LogcatData>();
+    /** The closed groups which are events. */
+    private List<LogcatData> mEventGroups = new ArrayList<LogcatData>();
+    private long mLineNumber = 0;
+    private long mGroupCount = 0;
 
-    private Date mStartTime = null;
-    private Date mStopTime = null;
+    private IEventListener<? super MiscLogcatItem> mEventListener = null;
+    private long mGroupTimeout = 0;
+    private int mMaxOpenGroups = 0;
+
+    private long mStartTime = TimestampCodec.INVALID;
+    private long mStopTime = TimestampCodec.INVALID;
 
     private boolean mIsParsing = true;
 
@@ -151,6 +171,53 @@ public class LogcatParser implements IParser {
      */
     public void setYear(String year) {
         mYear = year;
+        mYearValue = null;
+    }
+
+    /**
+     * Sets the {@link IEventListener} which each event is delivered to as soon as its lines are
+     * complete.  The lines of an ANR or native crash are complete when the next one starts in the
+     * same thread, when the group times out, or when the input has finished.
+     *
+     * @param listener The {@link IEventListener}, or {@code null}.
+     * @see #setGroupTimeout(long)
+     */
+    public void setEventListener(IEventListener<? super MiscLogcatItem> listener) {
+        mEventListener = listener;
+    }
+
+    /**
+     * Sets how long the lines of an ANR or crash can stop for before the event is complete.
+     * Otherwise, Java crashes are only complete when the input has finished, and ANRs and native
+     * crashes are only complete when the next one starts in the same thread.  After a timeout,
+     * further lines of the same thread start a new group.
+     *
+     * @param timeout The timeout in milliseconds of log time, or 0 for no timeout.
+     */
+    public void setGroupTimeout(long timeout) {
+        mGroupTimeout = timeout;
+    }
+
+    /**
+     * Sets the limit on the number of groups of ANR and crash lines which are open at once.  When
+     * a line starts a group over the limit, the group which was least recently added to is
+     * complete.  This bounds the memory used by a log with many threads which log crashes, but
+     * since Java crashes are otherwise only complete when the input has finished, later lines of
+     * a closed Java crash are reported as a separate crash.  There is no limit by default.
+     *
+     * @param max The maximum number of open groups, or 0 for no limit.
+     */
+    public void setMaxOpenGroups(int max) {
+        mMaxOpenGroups = max;
+    }
+
+    /**
+     * Sets the {@link SymbolTable} which tags and process names are interned in.
+     *
+     * @param symbols The {@link SymbolTable}, which may be shared with other parsers.
+     */
+    public void setSymbolTable(SymbolTable symbols) {
+        mSymbols = symbols;
     }
 
     /**
@@ -170,6 +237,23 @@ public class LogcatParser implements IParser {
         return mLogcat;
     }
 
+    /**
+     * Parse a logcat from a {@link LineReader} into an {@link LogcatItem} object.
+     *
+     * @param input a {@link LineReader}.
+     * @return The {@link LogcatItem}.
+     * @see #parse(List)
+     */
+    public LogcatItem parse(LineReader input) throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            parseLine(line);
+        }
+        commit();
+
+        return mLogcat;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -185,6 +269,38 @@ public class LogcatParser implements IParser {
         return mLogcat;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Like the other parse methods, a {@link LogcatParser} is meant to parse a single log, so
+     * nothing is reset.
+     * </p>
+     */
+    @Override
+    public void beginSection() {
+        // ignore
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
+        parseLine(line);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The {@link LogcatItem}.
+     */
+    @Override
+    public LogcatItem finishSection() {
+        commit();
+
+        return mLogcat;
+    }
+
     /**
      * Parse a line of input.
      *
@@ -197,113 +313,77 @@ public class LogcatParser implements IParser {
         if (mLogcat == null) {
             mLogcat = new LogcatItem();
         }
+        mLineNumber++;
         Integer pid = null;
         Integer tid = null;
-        Date time = null;
+        long time = TimestampCodec.INVALID;
         String level = null;
         String tag = null;
         String msg = null;
 
-        Matcher m = THREADTIME_LINE.matcher(line);
-        Matcher tm = TIME_LINE.matcher(line);
-        if (m.matches()) {
-            time = parseTime(m.group(1));
-            pid = Integer.parseInt(m.group(2));
-            tid = Integer.parseInt(m.group(3));
-            level = m.group(4);
-            tag = m.group(5);
-            msg = m.group(6);
-        } else if (tm.matches()) {
-            time = parseTime(tm.group(1));
-            level = tm.group(2);
-            tag = tm.group(3);
-            pid = Integer.parseInt(tm.group(4));
-            msg = tm.group(5);
-        }
-
-        if (time != null) {
-            if (mStartTime == null) {
+        final boolean matched = mTokenizer.tokenize(line);
+        if (matched) {
+            time = parseTime(line);
+            pid = mTokenizer.getPid();
+            tid = mTokenizer.getTid();
+            level = mTokenizer.getLevel();
+            tag = mTokenizer.getTag(mSymbols);
+            msg = mTokenizer.getMessage();
+        }
+
+        if (time != TimestampCodec.INVALID) {
+            if (mStartTime == TimestampCodec.INVALID) {
                 mStartTime = time;
             }
             mStopTime = time;
         }
 
         // Don't parse any lines after device begins reboot until a new log is detected.
-        if ("I".equals(level) && "ShutdownThread".equals(tag) &&
-                Pattern.matches("Rebooting, reason: .*", msg)) {
+        // A tokenized message never contains a line terminator, which .* would not match.
+        if ("I".equals(level) && "ShutdownThread".equals(tag) && msg.startsWith(REBOOT_START)) {
             mIsParsing = false;
         }
-        if (Pattern.matches(".*--------- beginning of /dev/log/main", line)) {
+        if (line.endsWith(MAIN_BUFFER_START) && !LogcatLineTokenizer.hasLineTerminator(line, 0,
+                line.length() - MAIN_BUFFER_START.length())) {
             mIsParsing = true;
         }
 
-        if (!mIsParsing || !(m.matches() || tm.matches())) {
+        if (!mIsParsing || !matched) {
             return;
         }
 
 
         // When a non app java process starts add its pid to the map
-        Matcher pidMatcher = JAVA_PROC_START.matcher(msg);
-        if (pidMatcher.matches()) {
-            String name = pidMatcher.group(1);
+        if (msg.length() > JAVA_PROC_START.length() && msg.startsWith(JAVA_PROC_START)) {
+            String name = mSymbols.intern(msg, JAVA_PROC_START.length(), msg.length());
             mPids.put(pid, name);
         }
 
+        closeIdleGroups(time);
+
         // ANRs are separated either by different PID/TIDs or when AnrParser.START matches a line.
-        // The newest entry is kept in the dataMap for quick lookup while all entries are added to
-        // the list.
         if ("E".equals(level) && "ActivityManager".equals(tag)) {
-            String key = encodeLine(pid, tid, level, tag);
-            LogcatData data;
-            if (!mDataMap.containsKey(key) || AnrParser.START.matcher(msg).matches()) {
-                data = new LogcatData(pid, tid, time, level, tag, mPreambleUtil.getLastTail(),
-                        mPreambleUtil.getIdTail(pid));
-                mDataMap.put(key, data);
-                mDataList.add(data);
-            } else {
-                data = mDataMap.get(key);
-            }
-            data.mLines.add(msg);
+            addGroupLine(mAnrGroups, pid, tid, time, level, tag, msg, AnrParser.START);
         }
 
         // Native crashes are separated either by different PID/TIDs or when NativeCrashParser.START
-        // matches a line.  The newest entry is kept in the dataMap for quick lookup while all
-        // entries are added to the list.
+        // matches a line.
         if ("I".equals(level) && "DEBUG".equals(tag)) {
-            String key = encodeLine(pid, tid, level, tag);
-            LogcatData data;
-            if (!mDataMap.containsKey(key) || NativeCrashParser.START.matcher(msg).matches()) {
-                data = new LogcatData(pid, tid, time, level, tag, mPreambleUtil.getLastTail(),
-                        mPreambleUtil.getIdTail(pid));
-                mDataMap.put(key, data);
-                mDataList.add(data);
-            } else {
-                data = mDataMap.get(key);
-            }
-            data.mLines.add(msg);
+            addGroupLine(mNativeCrashGroups, pid, tid, time, level, tag, msg,
+                    NativeCrashParser.START);
         }
 
         // PID and TID are enough to separate Java crashes.
         if (("E".equals(level) && "AndroidRuntime".equals(tag))) {
-            String key = encodeLine(pid, tid, level, tag);
-            LogcatData data;
-            if (!mDataMap.containsKey(key)) {
-                data = new LogcatData(pid, tid, time, level, tag, mPreambleUtil.getLastTail(),
-                        mPreambleUtil.getIdTail(pid));
-                mDataMap.put(key, data);
-                mDataList.add(data);
-            } else {
-                data = mDataMap.get(key);
-            }
-            data.mLines.add(msg);
+            addGroupLine(mJavaCrashGroups, pid, tid, time, level, tag, msg, null);
         }
 
-        // Check the message here but add it in commit()
-        if (mPatternUtil.checkMessage(msg, new ExtrasPattern(level, tag)) != null) {
+        // A message which matches a pattern is an event by itself.
+        if (mPatternUtil.checkMessage(msg, level, tag) != null) {
             LogcatData data = new LogcatData(pid, tid, time, level, tag,
                     mPreambleUtil.getLastTail(), mPreambleUtil.getIdTail(pid));
             data.mLines.add(msg);
-            mDataList.add(data);
+            closeGroup(data);
         }
 
         // After parsing the line, add it the the buffer for the preambles.
@@ -311,122 +391,242 @@ public class LogcatParser implements IParser {
     }
 
     /**
-     * Signal that the input has finished.
+     * Add a line to the open group of lines with the same PID and TID in a map of groups with the
+     * same level and tag.  A group is closed when the next group of its key starts, when it times
+     * out, or when the limit on open groups is reached.
+     *
+     * @param start The {@link Pattern} which matches the first line of a group, or {@code null}
+     * if the lines of a key are a single group.
      */
-    private void commit() {
-        if (mLogcat == null) {
+    private void addGroupLine(LongLruMap<LogcatData> groups, Integer pid, Integer tid, long time,
+            String level, String tag, String msg, Pattern start) {
+        long key = packKey(pid, tid);
+        LogcatData data = groups.get(key);
+        if (data == null || (start != null && start.matcher(msg).matches())) {
+            if (data != null) {
+                closeGroup(data);
+            }
+            data = new LogcatData(pid, tid, time, level, tag,
+                    mPreambleUtil.getLastTail(), mPreambleUtil.getIdTail(pid));
+            groups.put(key, data);
+            if (mMaxOpenGroups > 0 && getOpenGroupCount() > mMaxOpenGroups) {
+                closeGroup(removeEldestGroup());
+            }
+        }
+        data.mLastTime = time;
+        data.mLastLine = mLineNumber;
+        data.mLines.add(msg);
+    }
+
+    /**
+     * Close the groups which have not had a line for the group timeout, if one is set.
+     */
+    private void closeIdleGroups(long time) {
+        if (mGroupTimeout <= 0 || time == TimestampCodec.INVALID) {
             return;
         }
-        for (LogcatData data : mDataList) {
-            MiscLogcatItem item = null;
-            if ("E".equals(data.mLevel) && "ActivityManager".equals(data.mTag)) {
-                item = new AnrParser().parse(data.mLines);
-            } else if ("E".equals(data.mLevel) && "AndroidRuntime".equals(data.mTag)) {
-                // Get the process name/PID from the Java crash, then pass the rest of the lines to
-                // the parser.
-                Integer pid = null;
-                String app = null;
-                for (int i = 0; i < data.mLines.size(); i++) {
-                    String line = data.mLines.get(i);
-                    Matcher m = JAVA_CRASH_PROCESS_PID.matcher(line);
-                    if (m.matches()) {
-                        app = m.group(2);
-                        pid = Integer.valueOf(m.group(3));
-                        data.mLines = data.mLines.subList(i + 1, data.mLines.size());
-                        break;
-                    }
-                    m = SYSTEM_SERVER_CRASH.matcher(line);
-                    if (m.matches()) {
-                        app = mPids.get(data.mPid);
-                        if (app == null) {
-                            app = "system_server";
-                        }
-                        data.mLines = data.mLines.subList(i + 1, data.mLines.size());
-                        break;
-                    }
-                }
-                item = new JavaCrashParser().parse(data.mLines);
-                if (item != null) {
-                    item.setApp(app);
-                    item.setPid(pid);
+        closeIdleGroups(mAnrGroups, time);
+        closeIdleGroups(mNativeCrashGroups, time);
+        closeIdleGroups(mJavaCrashGroups, time);
+    }
+
+    private void closeIdleGroups(LongLruMap<LogcatData> groups, long time) {
+        LogcatData data;
+        while ((data = groups.getEldest()) != null) {
+            if (data.mLastTime != TimestampCodec.INVALID && time - data.mLastTime < mGroupTimeout) {
+                // The rest of the groups have had a line more recently.
+                return;
+            }
+            closeGroup(groups.removeEldest());
+        }
+    }
+
+    private int getOpenGroupCount() {
+        return mAnrGroups.size() + mNativeCrashGroups.size() + mJavaCrashGroups.size();
+    }
+
+    /**
+     * Remove the open group which was least recently added to.
+     */
+    private LogcatData removeEldestGroup() {
+        LongLruMap<LogcatData> eldest = mAnrGroups;
+        if (isEarlier(mNativeCrashGroups, eldest)) {
+            eldest = mNativeCrashGroups;
+        }
+        if (isEarlier(mJavaCrashGroups, eldest)) {
+            eldest = mJavaCrashGroups;
+        }
+        return eldest.removeEldest();
+    }
+
+    private static boolean isEarlier(LongLruMap<LogcatData> groups,
+            LongLruMap<LogcatData> other) {
+        LogcatData data = groups.getEldest();
+        LogcatData otherData = other.getEldest();
+        return data != null && (otherData == null || data.mLastLine < otherData.mLastLine);
+    }
+
+    /**
+     * Parse the lines of a group into an event, deliver it to the listener, and release the lines.
+     */
+    private void closeGroup(LogcatData data) {
+        MiscLogcatItem item = null;
+        if ("E".equals(data.mLevel) && "ActivityManager".equals(data.mTag)) {
+            item = new AnrParser().parse(data.mLines);
+        } else if ("E".equals(data.mLevel) && "AndroidRuntime".equals(data.mTag)) {
+            // Get the process name/PID from the Java crash, then pass the rest of the lines to
+            // the parser.
+            Integer pid = null;
+            String app = null;
+            for (int i = 0; i < data.mLines.size(); i++) {
+                String line = data.mLines.get(i);
+                Matcher m = JAVA_CRASH_PROCESS_PID.matcher(line);
+                if (m.matches()) {
+                    app = m.group(2);
+                    pid = Integer.valueOf(m.group(3));
+                    data.mLines = data.mLines.subList(i + 1, data.mLines.size());
+                    break;
                 }
-            } else if ("I".equals(data.mLevel) && "DEBUG".equals(data.mTag)) {
-                // CLog.v("Parsing native crash: %s", data.mLines);
-                item = new NativeCrashParser().parse(data.mLines);
-            } else {
-                String msg = ArrayUtil.join("\n", data.mLines);
-                String category = mPatternUtil.checkMessage(msg, new ExtrasPattern(
-                        data.mLevel, data.mTag));
-                if (category != null) {
-                    MiscLogcatItem logcatItem = new MiscLogcatItem();
-                    logcatItem.setCategory(category);
-                    logcatItem.setStack(msg);
-                    item = logcatItem;
+                m = SYSTEM_SERVER_CRASH.matcher(line);
+                if (m.matches()) {
+                    app = mPids.get(data.mPid);
+                    if (app == null) {
+                        app = "system_server";
+                    }
+                    data.mLines = data.mLines.subList(i + 1, data.mLines.size());
+                    break;
                 }
             }
+            item = new JavaCrashParser().parse(data.mLines);
             if (item != null) {
-                item.setEventTime(data.mTime);
-                if (item.getPid() == null) {
-                    item.setPid(data.mPid);
-                    item.setTid(data.mTid);
-                }
-                item.setLastPreamble(data.mLastPreamble);
-                item.setProcessPreamble(data.mProcPreamble);
-                item.setTag(data.mTag);
-                mLogcat.addEvent(item);
+                item.setApp(app);
+                item.setPid(pid);
             }
+        } else if ("I".equals(data.mLevel) && "DEBUG".equals(data.mTag)) {
+            // CLog.v("Parsing native crash: %s", data.mLines);
+            item = new NativeCrashParser().parse(data.mLines);
+        } else {
+            String msg = ArrayUtil.join("\n", data.mLines);
+            String category = mPatternUtil.checkMessage(msg, data.mLevel, data.mTag);
+            if (category != null) {
+                MiscLogcatItem logcatItem = new MiscLogcatItem();
+                logcatItem.setCategory(category);
+                logcatItem.setStack(msg);
+                item = logcatItem;
+            }
+        }
+        if (item != null) {
+            item.setEventTime(TimestampCodec.toDate(data.mTime));
+            if (item.getPid() == null) {
+                item.setPid(data.mPid);
+                item.setTid(data.mTid);
+            }
+            item.setLastPreamble(data.mLastPreamble);
+            item.setProcessPreamble(data.mProcPreamble);
+            item.setTag(data.mTag);
         }
 
-        mLogcat.setStartTime(mStartTime);
-        mLogcat.setStopTime(mStopTime);
+        data.mItem = item;
+        data.mLines = null;
+        data.mLastPreamble = null;
+        data.mProcPreamble = null;
+        if (item != null) {
+            mEventGroups.add(data);
+            if (mEventListener != null) {
+                mEventListener.onEvent(item);
+            }
+        }
     }
 
     /**
-     * Create an identifier that "should" be unique for a given logcat. In practice, we do use it as
-     * a unique identifier.
+     * Signal that the input has finished.
      */
-    private static String encodeLine(Integer pid, Integer tid, String level, String tag) {
-        if (tid == null) {
-            return String.format("%d|%s|%s", pid, level, tag);
+    private void commit() {
+        if (mLogcat == null) {
+            return;
+        }
+        while (getOpenGroupCount() > 0) {
+            closeGroup(removeEldestGroup());
         }
-        return String.format("%d|%d|%s|%s", pid, tid, level, tag);
+        // Add the events in the order that they started.
+        Collections.sort(mEventGroups, new Comparator<LogcatData>() {
+            @Override
+            public int compare(LogcatData data, LogcatData other) {
+                return data.mOrder < other.mOrder ? -1 : (data.mOrder == other.mOrder ? 0 : 1);
+            }
+        });
+        for (LogcatData data : mEventGroups) {
+            mLogcat.addEvent(data.mItem);
+        }
+        mEventGroups.clear();
+
+        mLogcat.setStartTime(TimestampCodec.toDate(mStartTime));
+        mLogcat.setStopTime(TimestampCodec.toDate(mStopTime));
     }
 
     /**
-     * Parse the timestamp and return a {@link Date}.  If year is not set, the current year will be
+     * Pack a PID and TID into the key of a group.  A TID of {@code null}, for logs without TIDs,
+     * can't clash with a parsed TID since those are never negative.
+     */
+    private static long packKey(Integer pid, Integer tid) {
+        return ((long) pid << 32) | ((tid == null ? -1 : tid) & 0xffffffffL);
+    }
+
+    /**
+     * Parse the timestamp at the start of a line.  If year is not set, the current year will be
      * used.
      *
-     * @param timeStr The timestamp in the format {@code MM-dd HH:mm:ss.SSS}.
-     * @return The {@link Date}.
+     * @param line A line starting with a timestamp in the format {@code MM-dd HH:mm:ss.SSS}.
+     * @return The time in milliseconds since the epoch, or {@link TimestampCodec#INVALID}.
      */
-    private Date parseTime(String timeStr) {
-        // If year is null, just use the current year.
-        if (mYear == null) {
-            DateFormat yearFormatter = new SimpleDateFormat("yyyy");
-            mYear = yearFormatter.format(new Date());
+    private long parseTime(String line) {
+        if (mYearValue == null) {
+            // If year is null, just use the current year.
+            if (mYear == null) {
+                DateFormat yearFormatter = new SimpleDateFormat("yyyy");
+                mYear = yearFormatter.format(new Date());
+            }
+            mYearValue = parseYear(mYear);
+        }
+        if (mYearValue < 0) {
+            return TimestampCodec.INVALID;
         }
+        return mTimestampCodec.parseMonthDayTime(mYearValue, line, 0);
+    }
 
-        DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        try {
-            return formatter.parse(String.format("%s-%s", mYear, timeStr));
-        } catch (ParseException e) {
-            // CLog.e("Could not parse time string %s", timeStr);
-            return null;
+    /**
+     * Parse a year made of digits.
+     *
+     * @return The year, or -1 if it is not a number.
+     */
+    private static int parseYear(String year) {
+        if (year.length() == 0 || year.length() > 9) {
+            return -1;
         }
+        int value = 0;
+        for (int i = 0; i < year.length(); i++) {
+            final char c = year.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
     }
 
     private void initPatterns() {
         // High CPU usage
         mPatternUtil.addPattern(Pattern.compile(".* timed out \\(is the CPU pegged\\?\\).*"),
-                HIGH_CPU_USAGE);
+                null, null, HIGH_CPU_USAGE);
 
         // High memory usage
         mPatternUtil.addPattern(Pattern.compile(
-                "GetBufferLock timed out for thread \\d+ buffer .*"), HIGH_MEMORY_USAGE);
+                "GetBufferLock timed out for thread \\d+ buffer .*"), null, null,
+                HIGH_MEMORY_USAGE);
 
         // Runtime restarts
         mPatternUtil.addPattern(Pattern.compile("\\*\\*\\* WATCHDOG KILLING SYSTEM PROCESS.*"),
-                RUNTIME_RESTART);
+                null, null, RUNTIME_RESTART);
     }
 
     /**
@@ -445,40 +645,6 @@ public class LogcatParser implements IParser {
         if (pattern == null) {
             pattern = Pattern.compile(".*");
         }
-        mPatternUtil.addPattern(pattern, new ExtrasPattern(level, tag), category);
-    }
-
-    /**
-     * Used internally for bundling up extra pattern criteria for more advanced pattern matching.
-     */
-    private class ExtrasPattern {
-        public String mLevel;
-        public String mTag;
-
-        public ExtrasPattern(String level, String tag) {
-            mLevel = level;
-            mTag = tag;
-        }
-
-        /**
-         * Override Object.equals to match based on the level & tag patterns,
-         * while also counting null level & tag patterns as wildcards.
-         *
-         * @param otherObj the object we're matching the level & tag patterns to.
-         * @return true if otherObj's extras match, false otherwise
-         */
-        @Override
-        public boolean equals(Object otherObj) {
-            if (otherObj instanceof ExtrasPattern) {
-                // Treat objects as equal only if the obj's level and tag match.
-                // Treat null as a wildcard.
-                ExtrasPattern other = (ExtrasPattern) otherObj;
-                if ((mLevel == null || other.mLevel == null || mLevel.equals(other.mLevel)) &&
-                        (mTag == null || other.mTag == null || mTag.equals(other.mTag))) {
-                    return true;
-                }
-            }
-            return false;
-        }
+        mPatternUtil.addPattern(pattern, level, tag, category);
     }
 }
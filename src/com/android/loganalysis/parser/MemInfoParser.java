@@ -16,20 +16,22 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.MemInfoItem;
-import com.android.loganalysis.util.ArrayUtil;
 
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A {@link IParser} to handle the output from {@code /proc/meminfo}.
+ * A {@link IStreamingParser} to handle the output from {@code /proc/meminfo}.
  */
-public class MemInfoParser implements IParser {
+public class MemInfoParser implements IStreamingParser {
 
     /** Match a single MemoryInfo line, such as "MemFree:           65420 kB" */
     private static final Pattern INFO_LINE = Pattern.compile("^([^:]+):\\s+(\\d+) kB");
 
+    private MemInfoItem mItem = null;
+    private StringBuilder mText = null;
+
     /**
      * {@inheritDoc}
      *
@@ -37,27 +39,55 @@ public class MemInfoParser implements IParser {
      */
     @Override
     public MemInfoItem parse(List<String> lines) {
-        final String text = ArrayUtil.join("\n", lines).trim();
-        if ("".equals(text)) {
-            return null;
+        beginSection();
+        for (String line : lines) {
+            acceptLine(line);
         }
+        return finishSection();
+    }
 
-        MemInfoItem item = new MemInfoItem();
-        item.setText(text);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginSection() {
+        mItem = new MemInfoItem();
+        mText = new StringBuilder();
+    }
 
-        for (String line : lines) {
-            Matcher m = INFO_LINE.matcher(line);
-            if (m.matches()) {
-                String key = m.group(1);
-                try {
-                    Long value = Long.parseLong(m.group(2));
-                    item.put(key, value);
-                } catch (NumberFormatException e) {
-                    // Ignore
-                }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
+        mText.append(line).append('\n');
+
+        Matcher m = INFO_LINE.matcher(line);
+        if (m.matches()) {
+            String key = m.group(1);
+            try {
+                Long value = Long.parseLong(m.group(2));
+                mItem.put(key, value);
+            } catch (NumberFormatException e) {
+                // Ignore
             }
         }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The {@link MemInfoItem}, or {@code null} if the section was blank.
+     */
+    @Override
+    public MemInfoItem finishSection() {
+        final String text = mText.toString().trim();
+        mText = null;
+        if ("".equals(text)) {
+            return null;
+        }
 
-        return item;
+        mItem.setText(text);
+        return mItem;
     }
 }
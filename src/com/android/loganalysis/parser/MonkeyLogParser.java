@@ -21,10 +21,11 @@ import com.android.loganalysis.item.MonkeyLogItem;
 import com.android.loganalysis.item.MonkeyLogItem.DroppedCategory;
 import com.android.loganalysis.item.NativeCrashItem;
 import com.android.loganalysis.item.TracesItem;
+import com.android.loganalysis.util.LineReader;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.LinkedList;
@@ -106,6 +107,22 @@ public class MonkeyLogParser implements IParser {
         return mMonkeyLog;
     }
 
+    /**
+     * Parse a monkey log from a {@link LineReader} into an {@link MonkeyLogItem} object.
+     *
+     * @param input a {@link LineReader}.
+     * @return The {@link MonkeyLogItem}.
+     * @see #parse(List)
+     */
+    public MonkeyLogItem parse(LineReader input) throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            parseLine(line);
+        }
+
+        return mMonkeyLog;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -313,17 +330,19 @@ public class MonkeyLogParser implements IParser {
      * @return The {@link Date}.
      */
     private Date parseTime(String timeStr) {
-        try {
-            return new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy").parse(timeStr);
-        } catch (ParseException e) {
-            // CLog.v("Could not parse date %s with format EEE MMM dd HH:mm:ss zzz yyyy", timeStr);
+        Date time = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy").parse(timeStr,
+                new ParsePosition(0));
+        if (time != null) {
+            return time;
         }
+        // CLog.v("Could not parse date %s with format EEE MMM dd HH:mm:ss zzz yyyy", timeStr);
 
-        try {
-            return new SimpleDateFormat("E, MM/dd/yyyy hh:mm:ss a").parse(timeStr);
-        } catch (ParseException e) {
-            // CLog.v("Could not parse date %s with format E, MM/dd/yyyy hh:mm:ss a", timeStr);
+        time = new SimpleDateFormat("E, MM/dd/yyyy hh:mm:ss a").parse(timeStr,
+                new ParsePosition(0));
+        if (time != null) {
+            return time;
         }
+        // CLog.v("Could not parse date %s with format E, MM/dd/yyyy hh:mm:ss a", timeStr);
 
         // CLog.e("Could not parse date %s", timeStr);
         return null;
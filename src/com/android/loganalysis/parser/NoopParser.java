@@ -20,9 +20,9 @@ import com.android.loganalysis.item.IItem;
 import java.util.List;
 
 /**
- * A {@link IParser} that consumes nothing.
+ * A {@link IStreamingParser} that consumes nothing.
  */
-public class NoopParser implements IParser {
+public class NoopParser implements IStreamingParser {
     /**
      * {@inheritDoc}
      */
@@ -31,5 +31,30 @@ public class NoopParser implements IParser {
         // ignore
         return null;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginSection() {
+        // ignore
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
+        // ignore
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IItem finishSection() {
+        // ignore
+        return null;
+    }
 }
 
@@ -16,17 +16,17 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.ProcrankItem;
-import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.SymbolTable;
 
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A {@link IParser} to handle the output of {@code procrank}.  Memory values returned are in units
- * of kilobytes.
+ * A {@link IStreamingParser} to handle the output of {@code procrank}.  Memory values returned
+ * are in units of kilobytes.
  */
-public class ProcrankParser implements IParser {
+public class ProcrankParser implements IStreamingParser {
 
     /** Match a valid line, such as:
      * " 1313   78128K   77996K   48603K   45812K  com.google.android.apps.maps" */
@@ -38,35 +38,82 @@ public class ProcrankParser implements IParser {
     /** Match the end of the Procrank table, determined by three sets of "------". */
     private static final Pattern END_PAT = Pattern.compile("^\\s+-{6}\\s+-{6}\\s+-{6}");
 
+    private ProcrankItem mItem = null;
+    private StringBuilder mText = null;
+    private boolean mReachedEnd = false;
+    private SymbolTable mSymbols = new SymbolTable();
+
+    /**
+     * Set the {@link SymbolTable} which process names are interned in.
+     */
+    public void setSymbolTable(SymbolTable symbols) {
+        mSymbols = symbols;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public ProcrankItem parse(List<String> lines) {
-        final String text = ArrayUtil.join("\n", lines).replaceAll("\\s+$", "");
-        if ("".equals(text.trim())) {
-            return null;
+        beginSection();
+        for (String line : lines) {
+            acceptLine(line);
         }
+        return finishSection();
+    }
 
-        ProcrankItem item = new ProcrankItem();
-        item.setText(text);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginSection() {
+        mItem = new ProcrankItem();
+        mText = new StringBuilder();
+        mReachedEnd = false;
+    }
 
-        for (String line : lines) {
-            // If we have reached the end.
-            Matcher endMatcher = END_PAT.matcher(line);
-            if (endMatcher.matches()) {
-                return item;
-            }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
+        // The text includes the whole section, even after the end of the table.
+        mText.append(line).append('\n');
+        if (mReachedEnd) {
+            return;
+        }
 
-            Matcher m = LINE_PAT.matcher(line);
-            if (m.matches()) {
-                item.addProcrankLine(Integer.parseInt(m.group(1)), m.group(6),
-                        Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)),
-                        Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5)));
-            }
+        // If we have reached the end.
+        Matcher endMatcher = END_PAT.matcher(line);
+        if (endMatcher.matches()) {
+            mReachedEnd = true;
+            return;
+        }
+
+        Matcher m = LINE_PAT.matcher(line);
+        if (m.matches()) {
+            mItem.addProcrankLine(Integer.parseInt(m.group(1)),
+                    mSymbols.intern(line, m.start(6), m.end(6)),
+                    Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)),
+                    Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5)));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The {@link ProcrankItem}, or {@code null} if the section was blank.
+     */
+    @Override
+    public ProcrankItem finishSection() {
+        final String text = mText.toString().replaceAll("\\s+$", "");
+        mText = null;
+        if ("".equals(text.trim())) {
+            return null;
         }
 
-        return item;
+        mItem.setText(text);
+        return mItem;
     }
 }
 
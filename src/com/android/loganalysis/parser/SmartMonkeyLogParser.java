@@ -16,11 +16,11 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.SmartMonkeyLogItem;
+import com.android.loganalysis.util.LineReader;
+import com.android.loganalysis.util.TimestampCodec;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -75,6 +75,7 @@ public class SmartMonkeyLogParser implements IParser {
             TIME_STAMP_GROUP + INVOKE_NUM_GROUP + SEQ_NUM_GROUP + "-UI Exception: CRASH: (.*)");
 
     private final SmartMonkeyLogItem mSmartMonkeyLog = new SmartMonkeyLogItem();
+    private final TimestampCodec mTimestampCodec = new TimestampCodec();
 
     /**
      * Parse a monkey log from a {@link BufferedReader} into an {@link SmartMonkeyLogItem}
@@ -92,6 +93,22 @@ public class SmartMonkeyLogParser implements IParser {
         return mSmartMonkeyLog;
     }
 
+    /**
+     * Parse a monkey log from a {@link LineReader} into an {@link SmartMonkeyLogItem}
+     * object.
+     *
+     * @param input a {@link LineReader}.
+     * @return The {@link SmartMonkeyLogItem}.
+     * @see #parse(List)
+     */
+    public SmartMonkeyLogItem parse(LineReader input) throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            parseLine(line);
+        }
+        return mSmartMonkeyLog;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -144,7 +161,7 @@ public class SmartMonkeyLogParser implements IParser {
         }
         m = START_TIME.matcher(line);
         if (m.matches()) {
-            mSmartMonkeyLog.setStartTime(parseTime(m.group(1)));
+            mSmartMonkeyLog.setStartTime(parseTime(line, m.start(1)));
         }
         m = START_UPTIME.matcher(line);
         if (m.matches()) {
@@ -152,13 +169,13 @@ public class SmartMonkeyLogParser implements IParser {
         }
         m = STOP_UPTIME.matcher(line);
         if (m.matches()) {
-            mSmartMonkeyLog.setStopTime(parseTime(m.group(1)));
+            mSmartMonkeyLog.setStopTime(parseTime(line, m.start(1)));
             mSmartMonkeyLog.setStopUptimeDuration(Long.parseLong(m.group(2)));
             mSmartMonkeyLog.setTotalDuration(Long.parseLong(m.group(3)));
         }
         m = INTERMEDIATE_TIME.matcher(line);
         if (m.matches()) {
-            mSmartMonkeyLog.setIntermediateTime(parseTime(m.group(1)));
+            mSmartMonkeyLog.setIntermediateTime(parseTime(line, m.start(1)));
         }
         m = FINAL_COUNT.matcher(line);
         if (m.matches()) {
@@ -174,11 +191,11 @@ public class SmartMonkeyLogParser implements IParser {
         }
         m = UI_CRASH.matcher(line);
         if (m.matches()) {
-            mSmartMonkeyLog.addCrashTime(parseTime(m.group(1)));
+            mSmartMonkeyLog.addCrashTime(parseTime(line, m.start(1)));
         }
         m = UI_ANR.matcher(line);
         if (m.matches()) {
-            mSmartMonkeyLog.addAnrTime(parseTime(m.group(1)));
+            mSmartMonkeyLog.addAnrTime(parseTime(line, m.start(1)));
         }
     }
 
@@ -189,11 +206,18 @@ public class SmartMonkeyLogParser implements IParser {
      * @return The {@link Date}.
      */
     public static Date parseTime(String timeStr) {
-        try {
-            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").parse(timeStr);
-        } catch (ParseException e) {
-        }
-        return null;
+        return TimestampCodec.toDate(new TimestampCodec().parseDateTime(timeStr, 0, true));
+    }
+
+    /**
+     * Parse the timestamp in a line and return a date.
+     *
+     * @param line The line.
+     * @param start The index of the timestamp in the format {@code yyyy-MM-dd HH:mm:ss.SSS}.
+     * @return The {@link Date}.
+     */
+    private Date parseTime(String line, int start) {
+        return TimestampCodec.toDate(mTimestampCodec.parseDateTime(line, start, true));
     }
 
 }
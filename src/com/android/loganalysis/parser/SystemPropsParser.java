@@ -16,19 +16,21 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.SystemPropsItem;
-import com.android.loganalysis.util.ArrayUtil;
 
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A {@link IParser} to handle the output from {@code getprop}.
+ * A {@link IStreamingParser} to handle the output from {@code getprop}.
  */
-public class SystemPropsParser implements IParser {
+public class SystemPropsParser implements IStreamingParser {
     /** Match a single property line, such as "[gsm.sim.operator.numeric]: []" */
     private static final Pattern PROP_LINE = Pattern.compile("^\\[(.*)\\]: \\[(.*)\\]$");
 
+    private SystemPropsItem mItem = null;
+    private StringBuilder mText = null;
+
     /**
      * {@inheritDoc}
      *
@@ -36,21 +38,50 @@ public class SystemPropsParser implements IParser {
      */
     @Override
     public SystemPropsItem parse(List<String> lines) {
-        final String text = ArrayUtil.join("\n", lines).trim();
-        if ("".equals(text)) {
-            return null;
+        beginSection();
+        for (String line : lines) {
+            acceptLine(line);
         }
+        return finishSection();
+    }
 
-        SystemPropsItem item = new SystemPropsItem();
-        item.setText(text);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginSection() {
+        mItem = new SystemPropsItem();
+        mText = new StringBuilder();
+    }
 
-        for (String line : lines) {
-            Matcher m = PROP_LINE.matcher(line);
-            if (m.matches()) {
-                item.put(m.group(1), m.group(2));
-            }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
+        mText.append(line).append('\n');
+
+        Matcher m = PROP_LINE.matcher(line);
+        if (m.matches()) {
+            mItem.put(m.group(1), m.group(2));
         }
-        return item;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The {@link SystemPropsItem}, or {@code null} if the section was blank.
+     */
+    @Override
+    public SystemPropsItem finishSection() {
+        final String text = mText.toString().trim();
+        mText = null;
+        if ("".equals(text)) {
+            return null;
+        }
+
+        mItem.setText(text);
+        return mItem;
     }
 }
 
@@ -16,20 +16,19 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.TopItem;
-import com.android.loganalysis.util.ArrayUtil;
 
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A {@link IParser} to handle the output of the top command output.
+ * A {@link IStreamingParser} to handle the output of the top command output.
  * <p>
  * The parser only record the last top entry if multiple entries are printed by the top command. It
  * only parses the total cpu usage.
  * </p>
  */
-public class TopParser implements IParser {
+public class TopParser implements IStreamingParser {
 
     /**
      * Match a valid cpu ticks line, such as:
@@ -39,32 +38,64 @@ public class TopParser implements IParser {
             "User (\\d+) \\+ Nice (\\d+) \\+ Sys (\\d+) \\+ Idle (\\d+) \\+ IOW (\\d+) \\+ " +
             "IRQ (\\d+) \\+ SIRQ (\\d+) = (\\d+)");
 
+    private TopItem mItem = null;
+    private StringBuilder mText = null;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public TopItem parse(List<String> lines) {
-        final String text = ArrayUtil.join("\n", lines).trim();
-        if ("".equals(text)) {
-            return null;
+        beginSection();
+        for (String line : lines) {
+            acceptLine(line);
         }
+        return finishSection();
+    }
 
-        TopItem item = new TopItem();
-        item.setText(text);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginSection() {
+        mItem = new TopItem();
+        mText = new StringBuilder();
+    }
 
-        for (String line : lines) {
-            Matcher m = TICKS_PAT.matcher(line);
-            if (m.matches()) {
-                item.setUser(Integer.parseInt(m.group(1)));
-                item.setNice(Integer.parseInt(m.group(2)));
-                item.setSystem(Integer.parseInt(m.group(3)));
-                item.setIdle(Integer.parseInt(m.group(4)));
-                item.setIow(Integer.parseInt(m.group(5)));
-                item.setIrq(Integer.parseInt(m.group(6)));
-                item.setSirq(Integer.parseInt(m.group(7)));
-                item.setTotal(Integer.parseInt(m.group(8)));
-            }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
+        mText.append(line).append('\n');
+
+        Matcher m = TICKS_PAT.matcher(line);
+        if (m.matches()) {
+            mItem.setUser(Integer.parseInt(m.group(1)));
+            mItem.setNice(Integer.parseInt(m.group(2)));
+            mItem.setSystem(Integer.parseInt(m.group(3)));
+            mItem.setIdle(Integer.parseInt(m.group(4)));
+            mItem.setIow(Integer.parseInt(m.group(5)));
+            mItem.setIrq(Integer.parseInt(m.group(6)));
+            mItem.setSirq(Integer.parseInt(m.group(7)));
+            mItem.setTotal(Integer.parseInt(m.group(8)));
         }
-        return item;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The {@link TopItem}, or {@code null} if the section was blank.
+     */
+    @Override
+    public TopItem finishSection() {
+        final String text = mText.toString().trim();
+        mText = null;
+        if ("".equals(text)) {
+            return null;
+        }
+
+        mItem.setText(text);
+        return mItem;
     }
 }
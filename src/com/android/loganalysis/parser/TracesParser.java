@@ -22,13 +22,13 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A {@link IParser} to parse Android traces files.
+ * A {@link IStreamingParser} to parse Android traces files.
  * <p>
  * For now, this only extracts the main stack trace from the first process. It is used to get a
  * stack from {@code /data/anr/traces.txt} which can be used to give some context about the ANR. If
  * there is a need, this parser can be expanded to parse all stacks from all processes.
  */
-public class TracesParser implements IParser {
+public class TracesParser implements IStreamingParser {
 
     /**
      * Matches: ----- pid PID at YYYY-MM-DD hh:mm:ss -----
@@ -46,6 +46,10 @@ public class TracesParser implements IParser {
      */
     private static final Pattern STACK = Pattern.compile("^\"main\" .*$");
 
+    private TracesItem mTraces = null;
+    private StringBuffer mStack = null;
+    private boolean mFoundStack = false;
+
     /**
      * {@inheritDoc}
      *
@@ -53,38 +57,69 @@ public class TracesParser implements IParser {
      */
     @Override
     public TracesItem parse(List<String> lines) {
-        TracesItem traces = new TracesItem();
-        StringBuffer stack = null;
-
+        beginSection();
         for (String line : lines) {
-            if (stack == null) {
-                Matcher m = PID.matcher(line);
-                if (m.matches()) {
-                    traces.setPid(Integer.parseInt(m.group(1)));
-                }
-                m = APP.matcher(line);
-                if (m.matches()) {
-                    traces.setApp(m.group(1));
-                }
-                m = STACK.matcher(line);
-                if (m.matches()) {
-                    stack = new StringBuffer();
-                    stack.append(line);
-                    stack.append("\n");
-                }
-            } else if (!"".equals(line)) {
-                stack.append(line);
-                stack.append("\n");
-            } else {
-                traces.setStack(stack.toString().trim());
-                return traces;
+            acceptLine(line);
+        }
+        return finishSection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginSection() {
+        mTraces = new TracesItem();
+        mStack = null;
+        mFoundStack = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptLine(String line) {
+        if (mFoundStack) {
+            // Only the first main stack is needed, so ignore the rest of the section.
+            return;
+        }
+
+        if (mStack == null) {
+            Matcher m = PID.matcher(line);
+            if (m.matches()) {
+                mTraces.setPid(Integer.parseInt(m.group(1)));
             }
+            m = APP.matcher(line);
+            if (m.matches()) {
+                mTraces.setApp(m.group(1));
+            }
+            m = STACK.matcher(line);
+            if (m.matches()) {
+                mStack = new StringBuffer();
+                mStack.append(line);
+                mStack.append("\n");
+            }
+        } else if (!"".equals(line)) {
+            mStack.append(line);
+            mStack.append("\n");
+        } else {
+            mFoundStack = true;
         }
-        if (stack == null) {
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The {@link TracesItem}, or {@code null} if there was no main stack.
+     */
+    @Override
+    public TracesItem finishSection() {
+        if (mStack == null) {
             return null;
         }
-        traces.setStack(stack.toString().trim());
-        return traces;
+        mTraces.setStack(mStack.toString().trim());
+        mStack = null;
+        return mTraces;
     }
 
 }
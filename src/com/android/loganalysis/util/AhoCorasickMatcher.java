@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds which of a set of literal strings occur in a text with a single pass over the text, using
+ * the Aho-Corasick algorithm.
+ * <p>
+ * The automaton is a full transition table for ASCII characters, so each ASCII character of the
+ * text costs one array lookup.  Other characters follow failure links.  A matcher is immutable
+ * once it is constructed, and can be shared between threads.
+ * </p>
+ */
+public class AhoCorasickMatcher {
+    private static final int ASCII_BITS = 7;
+    private static final int ASCII = 1 << ASCII_BITS;
+
+    private final int mLiteralCount;
+    /** The next state for each state and ASCII character, at {@code (state << 7) | c}. */
+    private final int[] mAsciiTransitions;
+    /** The sorted non-ASCII characters with a transition out of each state. */
+    private final char[][] mWideChars;
+    /** The targets of the transitions in {@link #mWideChars}. */
+    private final int[][] mWideTargets;
+    private final int[] mFailures;
+    /** The indexes of the literals which end at each state, or {@code null} if there are none. */
+    private final int[][] mOutputs;
+
+    /**
+     * Build a matcher for a list of literals.
+     *
+     * @param literals the literals to find.  The index of each literal in the list is used to
+     * report it by {@link #find(CharSequence, boolean[])}.
+     */
+    public AhoCorasickMatcher(List<String> literals) {
+        mLiteralCount = literals.size();
+
+        // Build the trie of the literals.
+        List<Map<Character, Integer>> transitions = new ArrayList<Map<Character, Integer>>();
+        List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+        transitions.add(new TreeMap<Character, Integer>());
+        outputs.add(new ArrayList<Integer>());
+        for (int i = 0; i < literals.size(); i++) {
+            int state = 0;
+            String literal = literals.get(i);
+            for (int j = 0; j < literal.length(); j++) {
+                Integer next = transitions.get(state).get(literal.charAt(j));
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.get(state).put(literal.charAt(j), next);
+                    transitions.add(new TreeMap<Character, Integer>());
+                    outputs.add(new ArrayList<Integer>());
+                }
+                state = next;
+            }
+            outputs.get(state).add(i);
+        }
+
+        final int stateCount = transitions.size();
+        mAsciiTransitions = new int[stateCount << ASCII_BITS];
+        mWideChars = new char[stateCount][];
+        mWideTargets = new int[stateCount][];
+        mFailures = new int[stateCount];
+        mOutputs = new int[stateCount][];
+
+        // Visit the states in breadth first order, so the failure state of each state, which is
+        // shallower, is complete before the state itself.
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int state = queue.removeFirst();
+            Map<Character, Integer> stateTransitions = transitions.get(state);
+            int wideCount = 0;
+            for (Map.Entry<Character, Integer> transition : stateTransitions.entrySet()) {
+                char c = transition.getKey();
+                int child = transition.getValue();
+                if (c >= ASCII) {
+                    wideCount++;
+                }
+                mFailures[child] = state == 0 ? 0 : getTransition(mFailures[state], c);
+                outputs.get(child).addAll(outputs.get(mFailures[child]));
+                queue.add(child);
+            }
+
+            for (int c = 0; c < ASCII; c++) {
+                Integer next = stateTransitions.get((char) c);
+                if (next != null) {
+                    mAsciiTransitions[(state << ASCII_BITS) | c] = next;
+                } else if (state != 0) {
+                    mAsciiTransitions[(state << ASCII_BITS) | c] =
+                            mAsciiTransitions[(mFailures[state] << ASCII_BITS) | c];
+                }
+            }
+
+            // The TreeMap keeps the characters sorted for the binary search.
+            mWideChars[state] = new char[wideCount];
+            mWideTargets[state] = new int[wideCount];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : stateTransitions.entrySet()) {
+                if (transition.getKey() >= ASCII) {
+                    mWideChars[state][i] = transition.getKey();
+                    mWideTargets[state][i] = transition.getValue();
+                    i++;
+                }
+            }
+
+            List<Integer> stateOutputs = outputs.get(state);
+            if (!stateOutputs.isEmpty()) {
+                mOutputs[state] = new int[stateOutputs.size()];
+                for (int j = 0; j < stateOutputs.size(); j++) {
+                    mOutputs[state][j] = stateOutputs.get(j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of literals.
+     */
+    public int getLiteralCount() {
+        return mLiteralCount;
+    }
+
+    /**
+     * Find the literals which occur in a text.
+     *
+     * @param text the text to search.
+     * @param found an array of at least {@link #getLiteralCount()} entries.  The entry for each
+     * literal which occurs in the text is set to {@code true}, and other entries are not changed.
+     */
+    public void find(CharSequence text, boolean[] found) {
+        int state = 0;
+        // An empty literal is found in any text.
+        addOutputs(state, found);
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c < ASCII) {
+                state = mAsciiTransitions[(state << ASCII_BITS) | c];
+            } else {
+                state = getTransition(state, c);
+            }
+            if (mOutputs[state] != null) {
+                addOutputs(state, found);
+            }
+        }
+    }
+
+    private void addOutputs(int state, boolean[] found) {
+        if (mOutputs[state] != null) {
+            for (int literal : mOutputs[state]) {
+                found[literal] = true;
+            }
+        }
+    }
+
+    /**
+     * Get the next state for a character, following failure links if needed.  The transitions of
+     * the state and every state on its failure path must already be built.
+     */
+    private int getTransition(int state, char c) {
+        while (true) {
+            if (c < ASCII) {
+                return mAsciiTransitions[(state << ASCII_BITS) | c];
+            }
+            int i = Arrays.binarySearch(mWideChars[state], c);
+            if (i >= 0) {
+                return mWideTargets[state][i];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = mFailures[state];
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A line reader which finds line breaks directly in the raw bytes of the input.
+ * <p>
+ * Regular files are memory mapped with {@link FileChannel#map} so that the bytes are never copied
+ * into an intermediate buffer.  Other inputs, such as stdin or pipes, are read through a growable
+ * byte buffer, and bytes which are already in memory can be read directly from a
+ * {@link ByteBuffer}.  In all cases, lines are returned either as {@link LineView}s, which point
+ * into the underlying buffer, or as {@link String}s decoded as UTF-8.
+ * </p><p>
+ * Lines are terminated by {@code \n} or {@code \r\n}.  Unlike {@link java.io.BufferedReader}, a
+ * lone {@code \r} is not treated as a line terminator.
+ * </p>
+ */
+public abstract class LineReader implements Closeable {
+    private final LineView mView = new LineView();
+
+    /** The current window of bytes.  The position is the start of the next line. */
+    protected ByteBuffer mBuffer = null;
+    /** The offset in the input of the start of {@link #mBuffer}. */
+    protected long mBufferOffset = 0;
+    /** The offset in the input of the start of the last line read. */
+    private long mLineOffset = 0;
+
+    /**
+     * Open a {@link LineReader} for a file.  The file will be memory mapped.
+     *
+     * @param file the file to read.
+     * @return the {@link LineReader}.
+     * @throws IOException if the file could not be opened or mapped.
+     */
+    public static LineReader open(File file) throws IOException {
+        return new MappedLineReader(new RandomAccessFile(file, "r"));
+    }
+
+    /**
+     * Open a {@link LineReader} for an {@link InputStream} which cannot be mapped, such as stdin
+     * or a pipe.
+     *
+     * @param input the {@link InputStream} to read.
+     * @return the {@link LineReader}.
+     */
+    public static LineReader open(InputStream input) {
+        return new StreamLineReader(input);
+    }
+
+    /**
+     * Open a {@link LineReader} for the bytes from the position to the limit of a
+     * {@link ByteBuffer}, such as a section of a file which has already been mapped.  The
+     * position of the buffer is not changed.
+     *
+     * @param buffer the {@link ByteBuffer} to read.
+     * @return the {@link LineReader}.
+     */
+    public static LineReader open(ByteBuffer buffer) {
+        return new BufferLineReader(buffer);
+    }
+
+    /**
+     * Get the offset of the next line in the input, in bytes.
+     */
+    public long getOffset() {
+        return mBufferOffset + mBuffer.position();
+    }
+
+    /**
+     * Get the offset of the start of the line which was last read, in bytes.
+     */
+    public long getLineOffset() {
+        return mLineOffset;
+    }
+
+    /**
+     * Read the next line which starts with one of a set of prefixes as a {@link LineView}.  The
+     * lines before it are skipped by scanning for line terminators, without creating a view of
+     * them or decoding them.  The view is only valid until the next line is read.
+     *
+     * @param prefixes the byte prefixes, one of which the line must start with.
+     * @return the {@link LineView}, or {@code null} if the end of the input was reached before a
+     * line starting with any of the prefixes.
+     * @throws IOException if the input could not be read.
+     */
+    public LineView readLineView(byte[][] prefixes) throws IOException {
+        int longest = 0;
+        for (byte[] prefix : prefixes) {
+            longest = Math.max(longest, prefix.length);
+        }
+        while (true) {
+            while (mBuffer.remaining() < longest && fill()) {
+                // Make sure the longest prefix can be compared, unless the input ends first.
+            }
+            if (!mBuffer.hasRemaining()) {
+                return null;
+            }
+            if (startsWithAny(prefixes)) {
+                return readLineView();
+            }
+            if (!skipLine()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Read the next line as a {@link LineView}.  The view is only valid until the next call to
+     * this method or {@link #readLine()}.
+     *
+     * @return the {@link LineView}, or {@code null} if the end of the input has been reached.
+     * @throws IOException if the input could not be read.
+     */
+    public LineView readLineView() throws IOException {
+        int scanned = 0;
+        while (true) {
+            final int start = mBuffer.position();
+            final int limit = mBuffer.limit();
+            for (int i = start + scanned; i < limit; i++) {
+                if (mBuffer.get(i) == '\n') {
+                    mBuffer.position(i + 1);
+                    return setView(start, i);
+                }
+            }
+            scanned = limit - start;
+
+            if (!fill()) {
+                if (!mBuffer.hasRemaining()) {
+                    return null;
+                }
+                // fill() may have moved the remaining bytes.
+                final int remainingStart = mBuffer.position();
+                final int end = mBuffer.limit();
+                mBuffer.position(end);
+                return setView(remainingStart, end);
+            }
+        }
+    }
+
+    /**
+     * Read the next line as a {@link String}.
+     *
+     * @return the line, or {@code null} if the end of the input has been reached.
+     * @throws IOException if the input could not be read.
+     */
+    public String readLine() throws IOException {
+        LineView view = readLineView();
+        return view == null ? null : view.toString();
+    }
+
+    /**
+     * Check if the bytes at the position of {@link #mBuffer} start with any of a set of prefixes.
+     */
+    private boolean startsWithAny(byte[][] prefixes) {
+        final int start = mBuffer.position();
+        final int remaining = mBuffer.remaining();
+        for (byte[] prefix : prefixes) {
+            if (prefix.length > remaining) {
+                continue;
+            }
+            int i = 0;
+            while (i < prefix.length && mBuffer.get(start + i) == prefix[i]) {
+                i++;
+            }
+            if (i == prefix.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the position past the next line terminator.
+     *
+     * @return {@code false} if the end of the input was reached first.
+     */
+    private boolean skipLine() throws IOException {
+        while (true) {
+            final int limit = mBuffer.limit();
+            for (int i = mBuffer.position(); i < limit; i++) {
+                if (mBuffer.get(i) == '\n') {
+                    mBuffer.position(i + 1);
+                    return true;
+                }
+            }
+            // None of the skipped bytes need to be kept.
+            mBuffer.position(limit);
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Make more bytes available in {@link #mBuffer}.  Bytes from the current position to the
+     * limit must be kept, although they may be moved to the start of a new buffer.
+     *
+     * @return {@code false} if the end of the input has been reached.
+     * @throws IOException if the input could not be read.
+     */
+    protected abstract boolean fill() throws IOException;
+
+    /**
+     * Point the view at the bytes from start to end, stripping a trailing {@code \r}.
+     */
+    private LineView setView(int start, int end) {
+        mLineOffset = mBufferOffset + start;
+        if (end > start && mBuffer.get(end - 1) == '\r') {
+            end--;
+        }
+        mView.set(mBuffer, start, end - start);
+        return mView;
+    }
+
+    /**
+     * A {@link LineReader} which maps a file in windows of at most {@link #MAX_WINDOW} bytes.
+     */
+    private static class MappedLineReader extends LineReader {
+        private static final long MAX_WINDOW = 1L << 30;
+
+        private final RandomAccessFile mFile;
+        private final FileChannel mChannel;
+        private final long mSize;
+        private long mWindowOffset = 0;
+
+        public MappedLineReader(RandomAccessFile file) throws IOException {
+            mFile = file;
+            mChannel = file.getChannel();
+            mSize = mChannel.size();
+            map(0);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean fill() throws IOException {
+            if (mWindowOffset + mBuffer.limit() >= mSize) {
+                return false;
+            }
+            if (mBuffer.position() == 0) {
+                throw new IOException(String.format("Line at offset %d is longer than %d bytes",
+                        mWindowOffset, MAX_WINDOW));
+            }
+            map(mWindowOffset + mBuffer.position());
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            mChannel.close();
+            mFile.close();
+        }
+
+        private void map(long offset) throws IOException {
+            mWindowOffset = offset;
+            mBufferOffset = offset;
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(mSize - offset, MAX_WINDOW));
+        }
+    }
+
+    /**
+     * A {@link LineReader} which reads an {@link InputStream} into a growable heap buffer.
+     */
+    private static class StreamLineReader extends LineReader {
+        private static final int INITIAL_CAPACITY = 64 * 1024;
+
+        private final InputStream mInput;
+        private boolean mEof = false;
+
+        public StreamLineReader(InputStream input) {
+            mInput = input;
+            mBuffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+            mBuffer.limit(0);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean fill() throws IOException {
+            if (mEof) {
+                return false;
+            }
+            if (mBuffer.position() == 0 && mBuffer.limit() == mBuffer.capacity()) {
+                // The current line does not fit in the buffer.
+                ByteBuffer larger = ByteBuffer.allocate(mBuffer.capacity() * 2);
+                larger.put(mBuffer);
+                mBuffer = larger;
+            } else {
+                mBufferOffset += mBuffer.position();
+                mBuffer.compact();
+            }
+
+            // The buffer is now in write mode.
+            int read = mInput.read(mBuffer.array(), mBuffer.position(), mBuffer.remaining());
+            if (read < 0) {
+                mEof = true;
+            } else {
+                mBuffer.position(mBuffer.position() + read);
+            }
+            mBuffer.flip();
+            return !mEof;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            mInput.close();
+        }
+    }
+
+    /**
+     * A {@link LineReader} which reads a {@link ByteBuffer} which is already in memory.
+     */
+    private static class BufferLineReader extends LineReader {
+        public BufferLineReader(ByteBuffer buffer) {
+            mBuffer = buffer.slice();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean fill() {
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+}
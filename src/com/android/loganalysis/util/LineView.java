@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A lightweight view of a single line of bytes returned by a {@link LineReader}.
+ * <p>
+ * The view does not own the bytes it points to.  It is only valid until the next call to
+ * {@link LineReader#readLineView()}, so callers which need to keep the line must call
+ * {@link #toString()}.
+ * </p>
+ */
+public final class LineView {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ByteBuffer mBuffer = null;
+    private int mOffset = 0;
+    private int mLength = 0;
+
+    /**
+     * Point the view at a region of a {@link ByteBuffer}.
+     */
+    void set(ByteBuffer buffer, int offset, int length) {
+        mBuffer = buffer;
+        mOffset = offset;
+        mLength = length;
+    }
+
+    /**
+     * Get the length of the line in bytes, not including the line terminator.
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * Get the byte at a given index in the line.
+     */
+    public byte byteAt(int index) {
+        if (index < 0 || index >= mLength) {
+            throw new IndexOutOfBoundsException(String.format("index %d, length %d", index,
+                    mLength));
+        }
+        return mBuffer.get(mOffset + index);
+    }
+
+    /**
+     * Check if the line starts with a given sequence of bytes.
+     */
+    public boolean startsWith(byte[] prefix) {
+        if (prefix.length > mLength) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (mBuffer.get(mOffset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the line is empty or only contains whitespace, using the same definition of
+     * whitespace as {@link String#trim()}.
+     */
+    public boolean isBlank() {
+        for (int i = 0; i < mLength; i++) {
+            final byte b = mBuffer.get(mOffset + i);
+            if (b < 0 || b > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode the line as UTF-8.  Lines which only contain ASCII characters are copied directly
+     * without going through a {@link java.nio.charset.CharsetDecoder}.
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[mLength];
+        for (int i = 0; i < mLength; i++) {
+            final byte b = mBuffer.get(mOffset + i);
+            if (b < 0) {
+                return decode();
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decode a line that contains non-ASCII characters.
+     */
+    private String decode() {
+        byte[] bytes = new byte[mLength];
+        for (int i = 0; i < mLength; i++) {
+            bytes[i] = mBuffer.get(mOffset + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+}
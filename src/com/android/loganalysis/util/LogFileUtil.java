@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Enumeration;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A utility class for opening log files as {@link LineReader}s.
+ * <p>
+ * Plain text files are memory mapped.  Gzip files and zip files, such as the
+ * {@code bugreport-*.zip} files generated by devices, are decompressed as a stream on a background
+ * thread so that parsing overlaps decompression.  Nothing is written to disk.
+ * </p><p>
+ * For zip files, the main entry is the entry named in {@code main_entry.txt} if present, then the
+ * largest entry matching {@code bugreport*.txt}, then the largest {@code .txt} entry.
+ * </p>
+ */
+public class LogFileUtil {
+    private static final String MAIN_ENTRY = "main_entry.txt";
+    private static final Pattern BUGREPORT_ENTRY = Pattern.compile("(.*/)?bugreport[^/]*\\.txt");
+    private static final Pattern TEXT_ENTRY = Pattern.compile(".*\\.txt");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private LogFileUtil() {
+    }
+
+    /**
+     * The container format of a log file, detected from its first bytes.
+     */
+    public enum Format {
+        TEXT,
+        GZIP,
+        ZIP;
+    }
+
+    /**
+     * Open a log file as a {@link LineReader}, decompressing it if needed.
+     *
+     * @param file the log file.
+     * @return the {@link LineReader}.
+     * @throws FileNotFoundException if the file could not be found.
+     * @throws IOException if the file could not be opened, or if a zip file does not contain a
+     * text entry.
+     */
+    public static LineReader openLineReader(File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException(String.format("%s (No such file or directory)",
+                    file.getPath()));
+        }
+        if (!file.isFile()) {
+            return openLineReader(new FileInputStream(file));
+        }
+
+        switch (getFormat(file)) {
+            case GZIP:
+                return LineReader.open(new ReadAheadInputStream(
+                        new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE)));
+            case ZIP:
+                return LineReader.open(new ReadAheadInputStream(openZipEntry(file)));
+            default:
+                return LineReader.open(file);
+        }
+    }
+
+    /**
+     * Open a log stream as a {@link LineReader}, decompressing it if needed.  Since the stream
+     * cannot be searched, the main entry of a zip stream is the first entry matching
+     * {@code bugreport*.txt}.
+     *
+     * @param input the log stream.
+     * @return the {@link LineReader}.
+     * @throws IOException if the stream could not be read, or if a zip stream does not contain a
+     * bugreport entry.
+     */
+    public static LineReader openLineReader(InputStream input) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input, BUFFER_SIZE);
+        buffered.mark(4);
+        byte[] magic = new byte[4];
+        int length = 0;
+        int read;
+        while (length < magic.length &&
+                (read = buffered.read(magic, length, magic.length - length)) >= 0) {
+            length += read;
+        }
+        buffered.reset();
+
+        switch (getFormat(magic, length)) {
+            case GZIP:
+                return LineReader.open(new ReadAheadInputStream(
+                        new GZIPInputStream(buffered, BUFFER_SIZE)));
+            case ZIP:
+                return LineReader.open(new ReadAheadInputStream(openZipEntry(buffered)));
+            default:
+                return LineReader.open(buffered);
+        }
+    }
+
+    /**
+     * Detect the {@link Format} of a file from its first bytes.
+     */
+    public static Format getFormat(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] magic = new byte[4];
+            int length = 0;
+            int read;
+            while (length < magic.length &&
+                    (read = input.read(magic, length, magic.length - length)) >= 0) {
+                length += read;
+            }
+            return getFormat(magic, length);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static Format getFormat(byte[] magic, int length) {
+        if (length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return Format.GZIP;
+        }
+        if (length >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return Format.ZIP;
+        }
+        return Format.TEXT;
+    }
+
+    /**
+     * Open the main entry of a zip file as a stream.  The zip file is closed with the stream.
+     */
+    private static InputStream openZipEntry(File file) throws IOException {
+        final ZipFile zip = new ZipFile(file);
+        try {
+            ZipEntry entry = findMainEntry(zip);
+            if (entry == null) {
+                throw new IOException(String.format("%s does not contain a text entry",
+                        file.getPath()));
+            }
+            return new FilterInputStream(zip.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zip.close();
+                    }
+                }
+            };
+        } catch (IOException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Find the main entry of a zip file.
+     */
+    private static ZipEntry findMainEntry(ZipFile zip) throws IOException {
+        ZipEntry mainEntry = zip.getEntry(MAIN_ENTRY);
+        if (mainEntry != null) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    zip.getInputStream(mainEntry), "UTF-8"));
+            try {
+                String name = reader.readLine();
+                ZipEntry entry = name == null ? null : zip.getEntry(name.trim());
+                if (entry != null) {
+                    return entry;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        ZipEntry bugreport = null;
+        ZipEntry text = null;
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory() || MAIN_ENTRY.equals(entry.getName())) {
+                continue;
+            }
+            if (BUGREPORT_ENTRY.matcher(entry.getName()).matches() &&
+                    (bugreport == null || entry.getSize() > bugreport.getSize())) {
+                bugreport = entry;
+            }
+            if (TEXT_ENTRY.matcher(entry.getName()).matches() &&
+                    (text == null || entry.getSize() > text.getSize())) {
+                text = entry;
+            }
+        }
+        return bugreport != null ? bugreport : text;
+    }
+
+    /**
+     * Position a zip stream at its main entry.
+     */
+    private static InputStream openZipEntry(InputStream input) throws IOException {
+        ZipInputStream zip = new ZipInputStream(input);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory() && BUGREPORT_ENTRY.matcher(entry.getName()).matches()) {
+                return zip;
+            }
+        }
+        zip.close();
+        throw new IOException("Zip stream does not contain a bugreport entry");
+    }
+}
@@ -15,8 +15,11 @@
  */
 package com.android.loganalysis.util;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,6 +29,18 @@ import java.util.regex.Pattern;
  * This is used to match a message against a set of patterns, and optionally, an extra object. If
  * the message is matched, a category will be returned. This means that a single object can be used
  * to match many different categories.
+ * <p>
+ * Patterns can also be added for a log level and tag, either of which may be a wildcard.  These
+ * patterns are kept in buckets by their level and tag, so a message is only matched against the
+ * patterns which could apply to its level and tag.
+ * <p>
+ * If a message matches more than one pattern, the category of the pattern which was added first
+ * is returned.
+ * <p>
+ * The longest literal which each pattern requires, such as {@code "scontext="}, is found with
+ * {@link RegexLiteralUtil} when the pattern is added.  A message is searched for all of the
+ * literals at once with an {@link AhoCorasickMatcher}, and a pattern's regex is only run if its
+ * literal was found.
  */
 public class LogPatternUtil {
 
@@ -36,6 +51,10 @@ public class LogPatternUtil {
         public Pattern mPattern;
         public Object mExtras;
         public String mCategory;
+        /** The order in which the pattern was added, which decides ties between patterns. */
+        public int mIndex;
+        /** The index of the literal which the pattern requires, or -1 if there is none. */
+        public int mLiteral;
 
         /**
          * Constructor for {@link PatternInfo}
@@ -49,10 +68,24 @@ public class LogPatternUtil {
             mPattern = pattern;
             mExtras = extras;
             mCategory = category;
+            mIndex = mPatternCount++;
+            mLiteral = addLiteral(RegexLiteralUtil.getRequiredLiteral(pattern));
         }
     }
 
-    private Set<PatternInfo> mPatterns = new HashSet<PatternInfo>();
+    private int mPatternCount = 0;
+    /** The patterns added without a level and tag, in the order they were added. */
+    private List<PatternInfo> mPatterns = new ArrayList<PatternInfo>();
+    /** The patterns added with a level and tag, by level and then tag, with null for wildcards. */
+    private Map<String, Map<String, List<PatternInfo>>> mBuckets =
+            new HashMap<String, Map<String, List<PatternInfo>>>();
+    private List<String> mLiterals = new ArrayList<String>();
+    private Map<String, Integer> mLiteralIndexes = new HashMap<String, Integer>();
+    /** The matcher for {@link #mLiterals}, or {@code null} until the next message is checked. */
+    private AhoCorasickMatcher mLiteralMatcher = null;
+    /** Which literals were found in {@link #mSearchedMessage}. */
+    private boolean[] mFoundLiterals = null;
+    private String mSearchedMessage = null;
 
     /**
      * Add a pattern to this list of patterns to match against.
@@ -76,6 +109,29 @@ public class LogPatternUtil {
         mPatterns.add(new PatternInfo(pattern, extras, category));
     }
 
+    /**
+     * Add a pattern for messages with a given log level and tag to this list of patterns to match
+     * against.
+     *
+     * @param pattern the {@link Pattern} to match against.
+     * @param level the level to additionally match against, or null for a wildcard.
+     * @param tag the tag to additionally match against, or null for a wildcard.
+     * @param category the category to return if there is a match.
+     */
+    public void addPattern(Pattern pattern, String level, String tag, String category) {
+        Map<String, List<PatternInfo>> tags = mBuckets.get(level);
+        if (tags == null) {
+            tags = new HashMap<String, List<PatternInfo>>();
+            mBuckets.put(level, tags);
+        }
+        List<PatternInfo> bucket = tags.get(tag);
+        if (bucket == null) {
+            bucket = new ArrayList<PatternInfo>();
+            tags.put(tag, bucket);
+        }
+        bucket.add(new PatternInfo(pattern, null, category));
+    }
+
     /**
      * Checks to see if the message matches any patterns.
      *
@@ -94,16 +150,119 @@ public class LogPatternUtil {
      * @return The category of the match.
      */
     public String checkMessage(String message, Object extras) {
-        for (PatternInfo patternInfo : mPatterns) {
-            Matcher m = patternInfo.mPattern.matcher(message);
+        try {
+            for (PatternInfo patternInfo : mPatterns) {
+                // Return the category if the extras are equal and the pattern matches. Treat a
+                // null patternInfo.mExtras as a wildcard.
+                if (patternInfo.mExtras != null && !patternInfo.mExtras.equals(extras)) {
+                    continue;
+                }
+                if (!hasLiteral(patternInfo, message)) {
+                    continue;
+                }
+                Matcher m = patternInfo.mPattern.matcher(message);
+                if (ParseStats.matches(m)) {
+                    return patternInfo.mCategory;
+                }
+            }
+            return null;
+        } finally {
+            mSearchedMessage = null;
+        }
+    }
+
+    /**
+     * Checks to see if a message with a given log level and tag matches any patterns added with
+     * {@link #addPattern(Pattern, String, String, String)}.  Only the patterns for the level and
+     * tag, and those with wildcards, are matched.
+     *
+     * @param message the message to match against
+     * @param level the level of the message
+     * @param tag the tag of the message
+     * @return The category of the match.
+     */
+    public String checkMessage(String message, String level, String tag) {
+        Map<String, List<PatternInfo>> levelTags = level == null ? null : mBuckets.get(level);
+        Map<String, List<PatternInfo>> anyLevelTags = mBuckets.get(null);
+        PatternInfo match = null;
+        try {
+            if (levelTags != null) {
+                if (tag != null) {
+                    match = checkBucket(levelTags.get(tag), message, match);
+                }
+                match = checkBucket(levelTags.get(null), message, match);
+            }
+            if (anyLevelTags != null) {
+                if (tag != null) {
+                    match = checkBucket(anyLevelTags.get(tag), message, match);
+                }
+                match = checkBucket(anyLevelTags.get(null), message, match);
+            }
+        } finally {
+            mSearchedMessage = null;
+        }
+        return match == null ? null : match.mCategory;
+    }
+
+    /**
+     * Find the first pattern in a bucket which matches a message, if it was added before the best
+     * match so far.
+     *
+     * @return the pattern which matched, or {@code best} if none matched.
+     */
+    private PatternInfo checkBucket(List<PatternInfo> bucket, String message, PatternInfo best) {
+        if (bucket == null) {
+            return best;
+        }
+        for (int i = 0; i < bucket.size(); i++) {
+            PatternInfo patternInfo = bucket.get(i);
+            if (best != null && patternInfo.mIndex > best.mIndex) {
+                break;
+            }
+            if (hasLiteral(patternInfo, message)
+                    && ParseStats.matches(patternInfo.mPattern.matcher(message))) {
+                return patternInfo;
+            }
+        }
+        return best;
+    }
 
-            // Return the category if the pattern matches and the extras are equal. Treat a null
-            // patternInfo.mExtras as a wildcard.
-            if (m.matches() &&
-                    (patternInfo.mExtras == null || patternInfo.mExtras.equals(extras))) {
-                return patternInfo.mCategory;
+    /**
+     * Check if a message contains the literal which a pattern requires.  The message is searched
+     * for every literal the first time this is called for it.
+     */
+    private boolean hasLiteral(PatternInfo patternInfo, String message) {
+        if (patternInfo.mLiteral < 0) {
+            return true;
+        }
+        if (mSearchedMessage != message) {
+            if (mLiteralMatcher == null) {
+                mLiteralMatcher = new AhoCorasickMatcher(mLiterals);
+                mFoundLiterals = new boolean[mLiterals.size()];
             }
+            Arrays.fill(mFoundLiterals, false);
+            mLiteralMatcher.find(message, mFoundLiterals);
+            mSearchedMessage = message;
+        }
+        return mFoundLiterals[patternInfo.mLiteral];
+    }
+
+    /**
+     * Add a literal to search messages for.
+     *
+     * @return the index of the literal, or -1 if it is empty.
+     */
+    private int addLiteral(String literal) {
+        if (literal.isEmpty()) {
+            return -1;
+        }
+        Integer index = mLiteralIndexes.get(literal);
+        if (index == null) {
+            index = mLiterals.size();
+            mLiterals.add(literal);
+            mLiteralIndexes.put(literal, index);
+            mLiteralMatcher = null;
         }
-        return null;
+        return index;
     }
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive {@code long} keys to values which keeps its entries in access order, like a
+ * {@link java.util.LinkedHashMap} created with {@code accessOrder} set.
+ * <p>
+ * The entries are stored in parallel arrays which are reused after an entry is removed, so once
+ * the map has grown, finding, adding and removing entries does not allocate.  This is meant for
+ * state which is looked up for every line of a log, such as open groups of lines keyed by their
+ * PID and TID.
+ * </p><p>
+ * This class is not thread safe.
+ * </p>
+ */
+public class LongLruMap<V> {
+    private static final int NONE = -1;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** The entry in each slot of an open addressing hash table, whose length is a power of two. */
+    private int[] mSlots;
+    /** The number of bits to shift a mixed key by to get its home slot. */
+    private int mShift;
+
+    private long[] mKeys;
+    private Object[] mValues;
+    /** The entry which was accessed before each entry. */
+    private int[] mBefore;
+    /** The entry which was accessed after each entry, or the next free entry. */
+    private int[] mAfter;
+
+    private int mEldest = NONE;
+    private int mNewest = NONE;
+    private int mFree = NONE;
+    /** The number of entries which have ever been used. */
+    private int mUsed = 0;
+    private int mSize = 0;
+
+    /**
+     * Constructor for {@link LongLruMap}.
+     */
+    public LongLruMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for {@link LongLruMap}.
+     *
+     * @param capacity the number of entries to allocate space for.
+     */
+    public LongLruMap(int capacity) {
+        allocate(Math.max(Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1), 2));
+    }
+
+    /**
+     * Get the value of a key, and make it the most recently accessed entry.
+     *
+     * @return the value, or {@code null} if the map does not contain the key.
+     */
+    public V get(long key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        int entry = mSlots[slot];
+        unlink(entry);
+        linkNewest(entry);
+        return value(entry);
+    }
+
+    /**
+     * Set the value of a key, and make it the most recently accessed entry.
+     *
+     * @return the previous value, or {@code null} if the map did not contain the key.
+     */
+    public V put(long key, V value) {
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            int entry = mSlots[slot];
+            V previous = value(entry);
+            mValues[entry] = value;
+            unlink(entry);
+            linkNewest(entry);
+            return previous;
+        }
+        if (mSize == mKeys.length) {
+            grow();
+            slot = findSlot(key);
+        }
+        int entry = mFree;
+        if (entry != NONE) {
+            mFree = mAfter[entry];
+        } else {
+            entry = mUsed++;
+        }
+        mKeys[entry] = key;
+        mValues[entry] = value;
+        mSlots[~slot] = entry;
+        linkNewest(entry);
+        mSize++;
+        return null;
+    }
+
+    /**
+     * Remove a key.
+     *
+     * @return the value, or {@code null} if the map did not contain the key.
+     */
+    public V remove(long key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        return removeEntry(slot);
+    }
+
+    /**
+     * Get the value of the least recently accessed entry, without changing the order.
+     *
+     * @return the value, or {@code null} if the map is empty.
+     */
+    public V getEldest() {
+        return mEldest == NONE ? null : value(mEldest);
+    }
+
+    /**
+     * Remove the least recently accessed entry.
+     *
+     * @return the value, or {@code null} if the map is empty.
+     */
+    public V removeEldest() {
+        if (mEldest == NONE) {
+            return null;
+        }
+        return removeEntry(findSlot(mKeys[mEldest]));
+    }
+
+    /**
+     * Get the number of entries.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Remove all of the entries, keeping the space which has been allocated for them.
+     */
+    public void clear() {
+        Arrays.fill(mSlots, NONE);
+        Arrays.fill(mValues, 0, mUsed, null);
+        mEldest = NONE;
+        mNewest = NONE;
+        mFree = NONE;
+        mUsed = 0;
+        mSize = 0;
+    }
+
+    /**
+     * Find the slot of a key.
+     *
+     * @return the slot, or the bitwise complement of the empty slot the key would be added to.
+     */
+    private int findSlot(long key) {
+        final int mask = mSlots.length - 1;
+        for (int i = homeSlot(key); ; i = (i + 1) & mask) {
+            int entry = mSlots[i];
+            if (entry == NONE) {
+                return ~i;
+            }
+            if (mKeys[entry] == key) {
+                return i;
+            }
+        }
+    }
+
+    private int homeSlot(long key) {
+        // Fibonacci hashing, so that keys which only differ in their high bits are spread out.
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> mShift);
+    }
+
+    /**
+     * Remove the entry in a slot, moving any later entries in its probe sequence back so that
+     * they can still be found.
+     */
+    private V removeEntry(int slot) {
+        final int mask = mSlots.length - 1;
+        int entry = mSlots[slot];
+        int hole = slot;
+        for (int i = (slot + 1) & mask; mSlots[i] != NONE; i = (i + 1) & mask) {
+            int home = homeSlot(mKeys[mSlots[i]]);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                mSlots[hole] = mSlots[i];
+                hole = i;
+            }
+        }
+        mSlots[hole] = NONE;
+
+        V value = value(entry);
+        unlink(entry);
+        mValues[entry] = null;
+        mAfter[entry] = mFree;
+        mFree = entry;
+        mSize--;
+        return value;
+    }
+
+    private void linkNewest(int entry) {
+        mBefore[entry] = mNewest;
+        mAfter[entry] = NONE;
+        if (mNewest == NONE) {
+            mEldest = entry;
+        } else {
+            mAfter[mNewest] = entry;
+        }
+        mNewest = entry;
+    }
+
+    private void unlink(int entry) {
+        int before = mBefore[entry];
+        int after = mAfter[entry];
+        if (before == NONE) {
+            mEldest = after;
+        } else {
+            mAfter[before] = after;
+        }
+        if (after == NONE) {
+            mNewest = before;
+        } else {
+            mBefore[after] = before;
+        }
+    }
+
+    /**
+     * Allocate the arrays for a capacity, which must be a power of two.  The hash table is kept
+     * at most half full.
+     */
+    private void allocate(int capacity) {
+        mSlots = new int[capacity * 2];
+        Arrays.fill(mSlots, NONE);
+        mShift = 64 - Integer.numberOfTrailingZeros(mSlots.length);
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mBefore = new int[capacity];
+        mAfter = new int[capacity];
+    }
+
+    /**
+     * Double the capacity of a full map, keeping the entries and their order.
+     */
+    private void grow() {
+        long[] keys = mKeys;
+        Object[] values = mValues;
+        int[] after = mAfter;
+        int entry = mEldest;
+        allocate(keys.length * 2);
+        mEldest = NONE;
+        mNewest = NONE;
+        mUsed = 0;
+        for (; entry != NONE; entry = after[entry]) {
+            int slot = ~findSlot(keys[entry]);
+            mKeys[mUsed] = keys[entry];
+            mValues[mUsed] = values[entry];
+            mSlots[slot] = mUsed;
+            linkNewest(mUsed);
+            mUsed++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int entry) {
+        return (V) mValues[entry];
+    }
+}
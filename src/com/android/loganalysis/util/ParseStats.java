@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects performance metrics while logs are parsed, so that the expensive sections and parsers
+ * of an input can be found.
+ * <p>
+ * Stats are collected for the thread which they are set on with {@link #setCurrent(ParseStats)}.
+ * Parsers report into the current stats, and do nothing if no stats are set.  Collecting stats is
+ * opt in, and costs a read of a volatile count of the threads collecting stats otherwise.  Regex
+ * attempts are counted by each thread and added to the stats when the thread stops collecting
+ * them or reads them, so that matching does not take a lock.  For each section, the lines and
+ * characters are recorded, and for each section and parser, the number of runs, the wall and CPU
+ * time, and the bytes allocated are recorded.  The number of attempts and hits are recorded for
+ * each regex which is matched against every line.
+ * </p><p>
+ * The time of a parser includes the time of any sections it ran.  The characters of a section are
+ * those of its lines plus one for each line terminator, whichever way the section was read, which
+ * is the byte count for ASCII logs with {@code \n} line endings.  CPU time and allocated bytes are
+ * {@code -1} if the JVM does not support measuring them.
+ * </p>
+ */
+public class ParseStats {
+
+    private static final ThreadLocal<ThreadStats> CURRENT = new ThreadLocal<ThreadStats>();
+    /** The number of threads collecting stats, so that other threads can skip the lookup. */
+    private static final AtomicInteger ACTIVE_THREADS = new AtomicInteger();
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN =
+            THREAD_BEAN instanceof com.sun.management.ThreadMXBean ?
+                    (com.sun.management.ThreadMXBean) THREAD_BEAN : null;
+
+    private final Map<String, Counter> mSections = new LinkedHashMap<String, Counter>();
+    private final Map<String, Counter> mParsers = new LinkedHashMap<String, Counter>();
+    private final Map<String, RegexCounter> mRegexes = new LinkedHashMap<String, RegexCounter>();
+
+    /**
+     * The metrics for a section or parser.
+     */
+    public static class Counter {
+        private final String mName;
+        private int mRuns = 0;
+        private long mLines = 0;
+        private long mChars = 0;
+        private long mWallNanos = 0;
+        private long mCpuNanos = 0;
+        private long mAllocatedBytes = 0;
+
+        Counter(String name) {
+            mName = name;
+        }
+
+        /** Get the name of the section or parser. */
+        public String getName() {
+            return mName;
+        }
+
+        /** Get the number of times the section or parser was run. */
+        public int getRuns() {
+            return mRuns;
+        }
+
+        /** Get the number of lines parsed.  Only set for sections. */
+        public long getLines() {
+            return mLines;
+        }
+
+        /** Get the number of characters parsed.  Only set for sections. */
+        public long getChars() {
+            return mChars;
+        }
+
+        /** Get the wall time in nanoseconds. */
+        public long getWallNanos() {
+            return mWallNanos;
+        }
+
+        /** Get the CPU time in nanoseconds, or {@code -1} if it could not be measured. */
+        public long getCpuNanos() {
+            return mCpuNanos;
+        }
+
+        /** Get the bytes allocated, or {@code -1} if they could not be measured. */
+        public long getAllocatedBytes() {
+            return mAllocatedBytes;
+        }
+
+        private void add(Measurement measurement) {
+            mRuns++;
+            mWallNanos += measurement.mWallNanos;
+            mCpuNanos = addMeasured(mCpuNanos, measurement.mCpuNanos);
+            mAllocatedBytes = addMeasured(mAllocatedBytes, measurement.mAllocatedBytes);
+        }
+
+        private static long addMeasured(long total, long value) {
+            return total < 0 || value < 0 ? -1 : total + value;
+        }
+    }
+
+    /**
+     * The number of times a regex was matched, and the number of times it matched.
+     */
+    public static class RegexCounter {
+        private final String mRegex;
+        private long mAttempts = 0;
+        private long mHits = 0;
+
+        RegexCounter(String regex) {
+            mRegex = regex;
+        }
+
+        /** Get the regex. */
+        public String getRegex() {
+            return mRegex;
+        }
+
+        /** Get the number of times the regex was matched against an input. */
+        public long getAttempts() {
+            return mAttempts;
+        }
+
+        /** Get the number of times the regex matched. */
+        public long getHits() {
+            return mHits;
+        }
+    }
+
+    /**
+     * The wall time, CPU time, and allocated bytes of the current thread from when
+     * {@link #start()} was called until {@link #stop()} is called.
+     */
+    public static class Measurement {
+        private long mWallNanos;
+        private long mCpuNanos;
+        private long mAllocatedBytes;
+        private boolean mStopped = false;
+
+        private Measurement() {
+            mWallNanos = System.nanoTime();
+            mCpuNanos = getThreadCpuTime();
+            mAllocatedBytes = getThreadAllocatedBytes();
+        }
+
+        /**
+         * Stop the measurement.  It must be stopped on the thread which started it.
+         */
+        public Measurement stop() {
+            if (!mStopped) {
+                mWallNanos = System.nanoTime() - mWallNanos;
+                mCpuNanos = difference(getThreadCpuTime(), mCpuNanos);
+                mAllocatedBytes = difference(getThreadAllocatedBytes(), mAllocatedBytes);
+                mStopped = true;
+            }
+            return this;
+        }
+
+        private static long difference(long stop, long start) {
+            return stop < 0 || start < 0 ? -1 : stop - start;
+        }
+    }
+
+    /**
+     * The stats of a thread, and the regex attempts it has not yet added to them.
+     */
+    private static class ThreadStats {
+        private final ParseStats mStats;
+        /** The attempts and hits of each {@link Pattern}, which is compared by identity. */
+        private final Map<Pattern, long[]> mRegexes = new LinkedHashMap<Pattern, long[]>();
+
+        ThreadStats(ParseStats stats) {
+            mStats = stats;
+        }
+
+        void addRegexAttempt(Pattern pattern, boolean hit) {
+            long[] counts = mRegexes.get(pattern);
+            if (counts == null) {
+                counts = new long[2];
+                mRegexes.put(pattern, counts);
+            }
+            counts[0]++;
+            if (hit) {
+                counts[1]++;
+            }
+        }
+
+        void flush() {
+            if (!mRegexes.isEmpty()) {
+                mStats.addRegexAttempts(mRegexes);
+                mRegexes.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the stats for the current thread.
+     *
+     * @return the {@link ParseStats}, or {@code null} if stats are not being collected.
+     */
+    public static ParseStats getCurrent() {
+        if (ACTIVE_THREADS.get() == 0) {
+            return null;
+        }
+        ThreadStats current = CURRENT.get();
+        return current != null ? current.mStats : null;
+    }
+
+    /**
+     * Set the stats for the current thread.  The regex attempts counted for the previous stats,
+     * if any, are added to them.
+     *
+     * @param stats the {@link ParseStats} to report into, or {@code null} to stop collecting stats.
+     */
+    public static void setCurrent(ParseStats stats) {
+        ThreadStats current = CURRENT.get();
+        if (current != null) {
+            if (current.mStats == stats) {
+                return;
+            }
+            current.flush();
+            ACTIVE_THREADS.decrementAndGet();
+        }
+        if (stats == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(new ThreadStats(stats));
+            ACTIVE_THREADS.incrementAndGet();
+        }
+    }
+
+    /**
+     * Start a measurement of the current thread.
+     */
+    public static Measurement start() {
+        return new Measurement();
+    }
+
+    /**
+     * Match a {@link Matcher} against its whole input with {@link Matcher#matches()}, and record
+     * the attempt in the current stats, if any.
+     *
+     * @return {@code true} if the input matched.
+     */
+    public static boolean matches(Matcher matcher) {
+        boolean hit = matcher.matches();
+        if (ACTIVE_THREADS.get() != 0) {
+            ThreadStats current = CURRENT.get();
+            if (current != null) {
+                current.addRegexAttempt(matcher.pattern(), hit);
+            }
+        }
+        return hit;
+    }
+
+    /**
+     * Add the lines of a section.
+     *
+     * @param section the name of the section.
+     * @param lines the lines of the section.
+     */
+    public void addSectionLines(String section, List<String> lines) {
+        long chars = 0;
+        for (String line : lines) {
+            chars += line.length() + 1;
+        }
+        addSectionLines(section, lines.size(), chars);
+    }
+
+    /**
+     * Add a count of lines and characters to a section.
+     *
+     * @param section the name of the section.
+     * @param lines the number of lines.
+     * @param chars the number of characters, counting one for each line terminator.
+     */
+    public synchronized void addSectionLines(String section, long lines, long chars) {
+        Counter counter = getCounter(mSections, section);
+        counter.mLines += lines;
+        counter.mChars += chars;
+    }
+
+    /**
+     * Add the time of a section, which is also added to the parser which parsed it.
+     *
+     * @param section the name of the section.
+     * @param parser the name of the parser.
+     * @param measurement the {@link Measurement} of the parser, which is stopped if needed.
+     */
+    public synchronized void addSection(String section, String parser, Measurement measurement) {
+        measurement.stop();
+        getCounter(mSections, section).add(measurement);
+        getCounter(mParsers, parser).add(measurement);
+    }
+
+    /**
+     * Add the time of a parser.
+     *
+     * @param parser the name of the parser.
+     * @param measurement the {@link Measurement} of the parser, which is stopped if needed.
+     */
+    public synchronized void addParser(String parser, Measurement measurement) {
+        measurement.stop();
+        getCounter(mParsers, parser).add(measurement);
+    }
+
+    /**
+     * Add an attempt to match a regex.
+     *
+     * @param pattern the {@link Pattern} that was matched.
+     * @param hit whether the input matched.
+     */
+    public synchronized void addRegexAttempt(Pattern pattern, boolean hit) {
+        RegexCounter counter = getRegexCounter(pattern);
+        counter.mAttempts++;
+        if (hit) {
+            counter.mHits++;
+        }
+    }
+
+    /**
+     * Add the attempts and hits counted by a thread.
+     */
+    private synchronized void addRegexAttempts(Map<Pattern, long[]> regexes) {
+        for (Map.Entry<Pattern, long[]> entry : regexes.entrySet()) {
+            RegexCounter counter = getRegexCounter(entry.getKey());
+            counter.mAttempts += entry.getValue()[0];
+            counter.mHits += entry.getValue()[1];
+        }
+    }
+
+    private RegexCounter getRegexCounter(Pattern pattern) {
+        RegexCounter counter = mRegexes.get(pattern.pattern());
+        if (counter == null) {
+            counter = new RegexCounter(pattern.pattern());
+            mRegexes.put(pattern.pattern(), counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Get the metrics for each section, in the order the sections were first seen.
+     */
+    public synchronized List<Counter> getSections() {
+        return new ArrayList<Counter>(mSections.values());
+    }
+
+    /**
+     * Get the metrics for each parser, in the order the parsers first finished.
+     */
+    public synchronized List<Counter> getParsers() {
+        return new ArrayList<Counter>(mParsers.values());
+    }
+
+    /**
+     * Get the metrics for each regex, in the order the regexes were first matched.  Attempts
+     * which other threads have counted are only included once they stop collecting stats.
+     */
+    public List<RegexCounter> getRegexes() {
+        ThreadStats current = CURRENT.get();
+        if (current != null && current.mStats == this) {
+            current.flush();
+        }
+        synchronized (this) {
+            return new ArrayList<RegexCounter>(mRegexes.values());
+        }
+    }
+
+    /**
+     * Print the metrics as tables, with the most expensive sections, parsers and regexes first.
+     *
+     * @param out the {@link PrintStream} to print to.
+     */
+    public void print(PrintStream out) {
+        Comparator<Counter> byWallTime = new Comparator<Counter>() {
+            @Override
+            public int compare(Counter a, Counter b) {
+                return Long.valueOf(b.getWallNanos()).compareTo(a.getWallNanos());
+            }
+        };
+
+        List<Counter> sections = getSections();
+        Collections.sort(sections, byWallTime);
+        out.println(String.format("%-40s %5s %10s %12s %10s %10s %12s", "Section", "Runs", "Lines",
+                "Chars", "Wall ms", "CPU ms", "Alloc KB"));
+        for (Counter counter : sections) {
+            out.println(String.format("%-40s %5d %10d %12d %10s %10s %12s",
+                    truncate(counter.getName(), 40), counter.getRuns(), counter.getLines(),
+                    counter.getChars(), formatNanos(counter.getWallNanos()),
+                    formatNanos(counter.getCpuNanos()), formatKb(counter.getAllocatedBytes())));
+        }
+        out.println();
+
+        List<Counter> parsers = getParsers();
+        Collections.sort(parsers, byWallTime);
+        out.println(String.format("%-40s %5s %10s %10s %12s", "Parser", "Runs", "Wall ms",
+                "CPU ms", "Alloc KB"));
+        for (Counter counter : parsers) {
+            out.println(String.format("%-40s %5d %10s %10s %12s", truncate(counter.getName(), 40),
+                    counter.getRuns(), formatNanos(counter.getWallNanos()),
+                    formatNanos(counter.getCpuNanos()), formatKb(counter.getAllocatedBytes())));
+        }
+        out.println();
+
+        List<RegexCounter> regexes = getRegexes();
+        Collections.sort(regexes, new Comparator<RegexCounter>() {
+            @Override
+            public int compare(RegexCounter a, RegexCounter b) {
+                return Long.valueOf(b.getAttempts()).compareTo(a.getAttempts());
+            }
+        });
+        out.println(String.format("%12s %12s  %s", "Attempts", "Hits", "Regex"));
+        for (RegexCounter counter : regexes) {
+            out.println(String.format("%12d %12d  %s", counter.getAttempts(), counter.getHits(),
+                    counter.getRegex()));
+        }
+    }
+
+    private static Counter getCounter(Map<String, Counter> counters, String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter(name);
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    private static String formatNanos(long nanos) {
+        return nanos < 0 ? "-" : String.format("%.1f", nanos / 1000000.0);
+    }
+
+    private static String formatKb(long bytes) {
+        return bytes < 0 ? "-" : String.valueOf(bytes / 1024);
+    }
+
+    private static String truncate(String name, int length) {
+        return name.length() <= length ? name : name.substring(0, length - 3) + "...";
+    }
+
+    private static long getThreadCpuTime() {
+        try {
+            return THREAD_BEAN.isCurrentThreadCpuTimeSupported() ?
+                    THREAD_BEAN.getCurrentThreadCpuTime() : -1;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static long getThreadAllocatedBytes() {
+        try {
+            return ALLOCATION_BEAN != null && ALLOCATION_BEAN.isThreadAllocatedMemorySupported() &&
+                    ALLOCATION_BEAN.isThreadAllocatedMemoryEnabled() ?
+                    ALLOCATION_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+}
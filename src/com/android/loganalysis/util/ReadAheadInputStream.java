@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An {@link InputStream} which reads another stream on a background thread.
+ * <p>
+ * This is used to overlap expensive reads, such as decompression, with parsing.  At most
+ * {@code maxChunks} chunks of {@code chunkSize} bytes are buffered ahead of the reader.
+ * </p>
+ */
+public class ReadAheadInputStream extends InputStream {
+    private static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    private static final int DEFAULT_MAX_CHUNKS = 8;
+
+    /**
+     * A chunk of data, the end of the stream, or an error from the background thread.
+     */
+    private static class Chunk {
+        public final byte[] mData;
+        public final Throwable mError;
+
+        public Chunk(byte[] data, Throwable error) {
+            mData = data;
+            mError = error;
+        }
+    }
+
+    private static final Chunk EOF = new Chunk(null, null);
+
+    private final InputStream mInput;
+    private final int mChunkSize;
+    private final BlockingQueue<Chunk> mQueue;
+    private final Thread mThread;
+
+    private Chunk mChunk = null;
+    private int mPos = 0;
+    private volatile boolean mClosed = false;
+    /** Whether the background thread has stopped using the input, guarded by {@code this} */
+    private boolean mThreadDone = false;
+
+    /**
+     * Constructor for {@link ReadAheadInputStream} with the default arguments.
+     *
+     * @param input the {@link InputStream} to read in the background.
+     */
+    public ReadAheadInputStream(InputStream input) {
+        this(input, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     * Constructor for {@link ReadAheadInputStream}.
+     *
+     * @param input the {@link InputStream} to read in the background.
+     * @param chunkSize the size of each chunk read from the input.
+     * @param maxChunks the maximum number of chunks to buffer.
+     */
+    public ReadAheadInputStream(InputStream input, int chunkSize, int maxChunks) {
+        mInput = input;
+        mChunkSize = chunkSize;
+        mQueue = new ArrayBlockingQueue<Chunk>(maxChunks);
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        }, "ReadAheadInputStream");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Read the input into chunks until the end of the stream or until closed.  Any exception or
+     * error is passed to the reader, so that it does not wait forever for the next chunk.  If the
+     * stream was closed while the input was in use, the input is closed here.
+     */
+    private void readAhead() {
+        try {
+            while (!mClosed) {
+                byte[] buffer = new byte[mChunkSize];
+                int length = 0;
+                int read = 0;
+                while (!mClosed && length < mChunkSize && (read = mInput.read(buffer, length,
+                        mChunkSize - length)) >= 0) {
+                    length += read;
+                }
+                if (length > 0) {
+                    mQueue.put(new Chunk(length == mChunkSize ? buffer :
+                            Arrays.copyOf(buffer, length), null));
+                }
+                if (read < 0) {
+                    mQueue.put(EOF);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting for the reader
+        } catch (IOException e) {
+            putError(e);
+        } catch (RuntimeException e) {
+            putError(e);
+        } catch (Error e) {
+            putError(e);
+        } finally {
+            boolean closeInput;
+            synchronized (this) {
+                mThreadDone = true;
+                closeInput = mClosed;
+            }
+            if (closeInput) {
+                closeInput();
+            }
+        }
+    }
+
+    /**
+     * Close the input from the background thread, where there is no one to report errors to.
+     */
+    private void closeInput() {
+        try {
+            mInput.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Pass an exception or error from the background thread to the reader.
+     */
+    private void putError(Throwable error) {
+        if (!mClosed) {
+            try {
+                mQueue.put(new Chunk(null, error));
+            } catch (InterruptedException e) {
+                // Closed while reporting the error
+            }
+        }
+    }
+
+    /**
+     * Get the current chunk, waiting for the background thread if needed.
+     *
+     * @return the current chunk, or {@code null} at the end of the stream.
+     */
+    private Chunk currentChunk() throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        if (mChunk != null && mChunk != EOF && mPos >= mChunk.mData.length) {
+            mChunk = null;
+        }
+        if (mChunk == null) {
+            try {
+                mChunk = mQueue.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            mPos = 0;
+        }
+        if (mChunk.mError instanceof IOException) {
+            throw (IOException) mChunk.mError;
+        } else if (mChunk.mError instanceof RuntimeException) {
+            throw (RuntimeException) mChunk.mError;
+        } else if (mChunk.mError instanceof Error) {
+            throw (Error) mChunk.mError;
+        }
+        return mChunk == EOF ? null : mChunk;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        Chunk chunk = currentChunk();
+        if (chunk == null) {
+            return -1;
+        }
+        return chunk.mData[mPos++] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        Chunk chunk = currentChunk();
+        if (chunk == null) {
+            return -1;
+        }
+        final int count = Math.min(len, chunk.mData.length - mPos);
+        System.arraycopy(chunk.mData, mPos, b, off, count);
+        mPos += count;
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This interrupts the background thread and does not wait for it, since a read of an input
+     * such as stdin can block forever.  If the thread has already stopped, the input is closed
+     * here.  Otherwise the thread closes the input once its read in progress returns, so the
+     * input is never closed during a read, and any error from closing it is ignored.  The thread
+     * is a daemon, so a read which never returns does not keep the JVM alive.
+     * </p>
+     */
+    @Override
+    public void close() throws IOException {
+        boolean closeInput;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            closeInput = mThreadDone;
+        }
+        mThread.interrupt();
+        mQueue.clear();
+        if (closeInput) {
+            mInput.close();
+        }
+    }
+}
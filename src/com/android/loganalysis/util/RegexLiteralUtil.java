@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * Utility methods for finding the literal text required by a regular expression.
+ */
+public class RegexLiteralUtil {
+
+    /** The characters which have a special meaning outside of a character class. */
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private RegexLiteralUtil() {
+    }
+
+    /**
+     * Get the literal text which every string matched by a {@link Pattern} must start with.
+     *
+     * @see #getLiteralPrefix(String)
+     */
+    public static String getLiteralPrefix(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            // Flags such as CASE_INSENSITIVE or COMMENTS change what a literal matches.
+            return "";
+        }
+        return getLiteralPrefix(pattern.pattern());
+    }
+
+    /**
+     * Get the literal text which every string matched by a regular expression must start with.
+     * <p>
+     * The prefix is conservative: it may be shorter than the longest such prefix, and it is empty
+     * if the start of the regular expression is not a literal or the regular expression contains
+     * an alternation outside of any group.
+     * </p>
+     *
+     * @param regex the regular expression, which must be valid
+     * @return the literal prefix, or an empty {@link String} if none was found
+     */
+    public static String getLiteralPrefix(String regex) {
+        return scan(regex, true);
+    }
+
+    /**
+     * Get the longest literal text which every string matched by a {@link Pattern} must contain.
+     *
+     * @see #getRequiredLiteral(String)
+     */
+    public static String getRequiredLiteral(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return "";
+        }
+        return getRequiredLiteral(pattern.pattern());
+    }
+
+    /**
+     * Get the longest literal text which every string matched by a regular expression must
+     * contain, such as {@code "scontext="} for {@code ".*avc:\s.*scontext=.*"}.
+     * <p>
+     * Only literals outside of any group are found, and the literal is empty if there is none or
+     * the regular expression contains an alternation outside of any group.
+     * </p>
+     *
+     * @param regex the regular expression, which must be valid
+     * @return the required literal, or an empty {@link String} if none was found
+     */
+    public static String getRequiredLiteral(String regex) {
+        return scan(regex, false);
+    }
+
+    /**
+     * Find the runs of literal characters in the top level of a regular expression.
+     *
+     * @param regex the regular expression
+     * @param prefixOnly if {@code true}, return the run at the start of the regular expression,
+     * otherwise return the longest run
+     */
+    private static String scan(String regex, boolean prefixOnly) {
+        if (hasTopLevelAlternation(regex)) {
+            return "";
+        }
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            String literal = null;
+            int next;
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    break;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    next = end < 0 ? regex.length() : end + 2;
+                    literal = regex.substring(i + 2, end < 0 ? regex.length() : end);
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    // A character class, back reference, boundary or control character.
+                    next = skipEscape(regex, i);
+                } else {
+                    literal = String.valueOf(escaped);
+                    next = i + 2;
+                }
+            } else if (c == '[') {
+                next = skipClass(regex, i);
+            } else if (c == '(') {
+                if (isFlagGroup(regex, i)) {
+                    // The flags change how the rest of the regex matches.
+                    break;
+                }
+                next = skipGroup(regex, i);
+            } else if (METACHARACTERS.indexOf(c) >= 0) {
+                next = i + 1;
+            } else {
+                literal = String.valueOf(c);
+                next = i + 1;
+            }
+
+            int end = skipQuantifier(regex, next);
+            if (literal != null && end == next) {
+                run.append(literal);
+            } else {
+                if (literal != null) {
+                    // The quantifier only applies to the last character of the literal.
+                    int required = literal.length() - (regex.charAt(next) == '+' ? 0 : 1);
+                    run.append(literal, 0, Math.max(required, 0));
+                }
+                if (prefixOnly) {
+                    break;
+                }
+                if (run.length() > longest.length()) {
+                    longest = run.toString();
+                }
+                run.setLength(0);
+            }
+            i = end;
+        }
+        if (prefixOnly || run.length() > longest.length()) {
+            return run.toString();
+        }
+        return longest;
+    }
+
+    /**
+     * Get the index after a quantifier starting at {@code start}, including any lazy or
+     * possessive suffix, or {@code start} if there is no quantifier.
+     */
+    private static int skipQuantifier(String regex, int start) {
+        if (start >= regex.length()) {
+            return start;
+        }
+        char c = regex.charAt(start);
+        int end;
+        if (c == '?' || c == '*' || c == '+') {
+            end = start + 1;
+        } else if (c == '{') {
+            int close = regex.indexOf('}', start);
+            end = close < 0 ? regex.length() : close + 1;
+        } else {
+            return start;
+        }
+        if (end < regex.length() && (regex.charAt(end) == '?' || regex.charAt(end) == '+')) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Get the index after an escape sequence starting with a letter or digit, such as
+     * {@code \d}, {@code \x41} or {@code \p{Alpha}}.
+     */
+    private static int skipEscape(String regex, int start) {
+        char escaped = regex.charAt(start + 1);
+        int i = start + 2;
+        if (i < regex.length() && (regex.charAt(i) == '{' || regex.charAt(i) == '<')
+                && "pPxNk".indexOf(escaped) >= 0) {
+            int close = regex.indexOf(regex.charAt(i) == '{' ? '}' : '>', i);
+            return close < 0 ? regex.length() : close + 1;
+        }
+        int digits = 0;
+        boolean hex = false;
+        switch (escaped) {
+            case 'x':
+                digits = 2;
+                hex = true;
+                break;
+            case 'u':
+                digits = 4;
+                hex = true;
+                break;
+            case '0':
+                digits = 3;
+                break;
+            case 'c':
+            case 'p':
+            case 'P':
+                return Math.min(i + 1, regex.length());
+            default:
+                if (Character.isDigit(escaped)) {
+                    // A back reference
+                    digits = Integer.MAX_VALUE;
+                }
+                break;
+        }
+        while (digits > 0 && i < regex.length() && (hex ?
+                Character.digit(regex.charAt(i), 16) >= 0 : Character.isDigit(regex.charAt(i)))) {
+            i++;
+            digits--;
+        }
+        return i;
+    }
+
+    /**
+     * Get the index after a character class starting at {@code start}, allowing for nested
+     * classes, escapes, and a {@code ]} at the start of a class.
+     */
+    private static int skipClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                i++;
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    // A ] at the start of a class is a literal.
+                    i++;
+                }
+                continue;
+            }
+            i++;
+            if (c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    /**
+     * Get the index after a group starting at {@code start}.
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? regex.length() : end + 2;
+                } else {
+                    i += 2;
+                }
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                continue;
+            }
+            i++;
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    /**
+     * Check if a group sets flags for the rest of the regex, such as {@code (?i)}.
+     */
+    private static boolean isFlagGroup(String regex, int start) {
+        if (!regex.startsWith("(?", start)) {
+            return false;
+        }
+        int i = start + 2;
+        while (i < regex.length() && (Character.isLetter(regex.charAt(i))
+                || regex.charAt(i) == '-')) {
+            i++;
+        }
+        return i > start + 2 && i < regex.length() && regex.charAt(i) == ')';
+    }
+
+    /**
+     * Get whether a regular expression contains a {@code |} which is not inside a group or a
+     * character class.
+     */
+    private static boolean hasTopLevelAlternation(String regex) {
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? regex.length() : end + 2;
+                } else {
+                    i += 2;
+                }
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                i = skipGroup(regex, i);
+            } else if (c == '|') {
+                return true;
+            } else {
+                i++;
+            }
+        }
+        return false;
+    }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * The RegexTrie is a trie where each _stored_ segment of the key is a regex {@link Pattern}.  Thus,
@@ -39,6 +40,19 @@ import java.util.regex.Pattern;
  * If no more-specific entry matches, the wildcard match will add all remaining {@code String}s
  * to the list of captures (if enabled) and return the value associated with the wildcard.
  * <p />
+ * The {@link Pattern}s of the children of each node are combined into a single alternation, so
+ * a segment is matched once per level rather than once per child.  Each child's pattern is
+ * wrapped in a capturing group to find the first child in insertion order which matched, and its
+ * captures.  Children whose patterns cannot be combined safely, such as patterns with flags or
+ * back references, are matched one at a time instead.
+ * <p />
+ * The literal text which each child's pattern must start with is extracted with
+ * {@link RegexLiteralUtil}.  If every child has such a prefix, a segment which starts with none of
+ * them is rejected with a few character comparisons and never reaches the regex engine.
+ * <p />
+ * A RegexTrie is not thread safe.  {@link #freeze()} returns an immutable {@link Snapshot} of the
+ * trie which can be shared by many threads, and which retrieves values without allocating.
+ * <p />
  * A short sample of the wildcard functionality:
  * <pre>
  * List<List<String>> captures = new LinkedList<List<String>>();
@@ -58,6 +72,15 @@ public class RegexTrie<V> {
     private V mValue = null;
     private Map<CompPattern, RegexTrie<V>> mChildren =
             new LinkedHashMap<CompPattern, RegexTrie<V>>();
+    /** The patterns of the children combined, or {@code null} until the next retrieval. */
+    private CombinedPattern<V> mCombined = null;
+
+    /**
+     * Matches the parts of a regex which change meaning when the regex is wrapped in a group of a
+     * larger regex: back references, named groups and inline flags.
+     */
+    private static final Pattern UNCOMBINABLE = Pattern.compile(
+            "\\\\[0-9k]|\\(\\?<[a-zA-Z]|\\(\\?[a-zA-Z-]+[:)]");
 
     /**
      * Patterns aren't comparable by default, which prevents you from retrieving them from a
@@ -103,14 +126,441 @@ public class RegexTrie<V> {
         }
     }
 
+    /**
+     * The non-wildcard children of a node, with their patterns combined into one alternation.
+     */
+    private static class CombinedPattern<V> {
+        /** The combined pattern, or {@code null} if the children are matched one at a time. */
+        public Pattern mPattern = null;
+        public final List<CompPattern> mPatterns = new ArrayList<CompPattern>();
+        public final List<RegexTrie<V>> mChildren = new ArrayList<RegexTrie<V>>();
+        /** The group of the combined pattern which wraps each child's pattern. */
+        public int[] mGroups = null;
+        /** The number of groups in each child's pattern. */
+        public int[] mGroupCounts = null;
+        /** The literal prefix of each child's pattern, which may be empty. */
+        public final List<String> mPrefixes = new ArrayList<String>();
+        /**
+         * The first character of each prefix, or {@code null} if any child has no prefix and
+         * segments cannot be rejected by their prefix.
+         */
+        public String mFirstChars = null;
+
+        public CombinedPattern(Map<CompPattern, RegexTrie<V>> children) {
+            for (Map.Entry<CompPattern, RegexTrie<V>> child : children.entrySet()) {
+                if (child.getKey() != null) {
+                    mPatterns.add(child.getKey());
+                    mChildren.add(child.getValue());
+                    mPrefixes.add(RegexLiteralUtil.getLiteralPrefix(child.getKey().mPattern));
+                }
+            }
+            if (mPatterns.size() > 1) {
+                mPattern = combine();
+            }
+            StringBuilder firstChars = new StringBuilder();
+            for (String prefix : mPrefixes) {
+                if (prefix.isEmpty()) {
+                    return;
+                }
+                if (firstChars.indexOf(prefix.substring(0, 1)) < 0) {
+                    firstChars.append(prefix.charAt(0));
+                }
+            }
+            mFirstChars = firstChars.toString();
+        }
+
+        /**
+         * Get whether a segment starts with the prefix of any child, and so might match.
+         */
+        public boolean mayMatch(String segment) {
+            if (mFirstChars == null) {
+                return true;
+            }
+            if (segment.isEmpty() || mFirstChars.indexOf(segment.charAt(0)) < 0) {
+                return false;
+            }
+            for (String prefix : mPrefixes) {
+                if (segment.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Combine the patterns into {@code (p1)|(p2)|...}, or return {@code null} if any pattern
+         * cannot be combined.
+         */
+        private Pattern combine() {
+            StringBuilder regex = new StringBuilder();
+            mGroups = new int[mPatterns.size()];
+            mGroupCounts = new int[mPatterns.size()];
+            int group = 1;
+            for (int i = 0; i < mPatterns.size(); i++) {
+                Pattern pattern = mPatterns.get(i).mPattern;
+                if (pattern.flags() != 0 || UNCOMBINABLE.matcher(pattern.pattern()).find()) {
+                    return null;
+                }
+                if (i > 0) {
+                    regex.append('|');
+                }
+                regex.append('(').append(pattern.pattern()).append(')');
+                mGroups[i] = group;
+                mGroupCounts[i] = pattern.matcher("").groupCount();
+                group += mGroupCounts[i] + 1;
+            }
+            try {
+                return Pattern.compile(regex.toString());
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Get the index of the child whose group matched in a successful match of the combined
+         * pattern.
+         */
+        public int getMatchedChild(Matcher matcher) {
+            for (int i = 0; i < mGroups.length; i++) {
+                if (matcher.start(mGroups[i]) != -1) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException("No child matched");
+        }
+    }
+
+    /**
+     * The captures of a retrieval from a {@link Snapshot}, which are reused from one retrieval to
+     * the next so that the retrieval does not allocate.  Captures are stored as offsets into the
+     * retrieved segments, and are only copied into a {@link String} by {@link #get(int, int)}.
+     * <p />
+     * This class is not thread safe, so each thread should use its own {@code Captures}.
+     */
+    public static final class Captures {
+        private String[] mSegments = new String[0];
+        private int mLevelCount = 0;
+        /** The index of the first capture of each level, followed by the total capture count. */
+        private int[] mLevelStarts = new int[4];
+        private int[] mStarts = new int[8];
+        private int[] mEnds = new int[8];
+
+        /**
+         * Get the number of levels which were matched, including those matched by a wildcard.
+         */
+        public int getLevelCount() {
+            return mLevelCount;
+        }
+
+        /**
+         * Get the number of captures of a level.
+         */
+        public int getCount(int level) {
+            checkLevel(level);
+            return mLevelStarts[level + 1] - mLevelStarts[level];
+        }
+
+        /**
+         * Get the start offset of a capture in its segment, or -1 if the group did not match.
+         *
+         * @param level the level of the trie
+         * @param index the index of the capture in the level, where 0 is the first group
+         */
+        public int getStart(int level, int index) {
+            return mStarts[getCapture(level, index)];
+        }
+
+        /**
+         * Get the end offset of a capture in its segment, or -1 if the group did not match.
+         *
+         * @see #getStart(int, int)
+         */
+        public int getEnd(int level, int index) {
+            return mEnds[getCapture(level, index)];
+        }
+
+        /**
+         * Get the text of a capture, or {@code null} if the group did not match.
+         *
+         * @see #getStart(int, int)
+         */
+        public String get(int level, int index) {
+            int capture = getCapture(level, index);
+            if (mStarts[capture] == -1) {
+                return null;
+            }
+            return mSegments[level].substring(mStarts[capture], mEnds[capture]);
+        }
+
+        /**
+         * Copy the captures into the {@code List<List<String>>} form used by
+         * {@link RegexTrie#retrieve(List, String...)}.
+         */
+        public List<List<String>> toList() {
+            List<List<String>> captures = new ArrayList<List<String>>(mLevelCount);
+            for (int level = 0; level < mLevelCount; level++) {
+                List<String> levelCaptures = new ArrayList<String>(getCount(level));
+                for (int i = 0; i < getCount(level); i++) {
+                    levelCaptures.add(get(level, i));
+                }
+                captures.add(levelCaptures);
+            }
+            return captures;
+        }
+
+        private int getCapture(int level, int index) {
+            if (index < 0 || index >= getCount(level)) {
+                throw new IndexOutOfBoundsException(String.format(
+                        "Capture %d of level %d", index, level));
+            }
+            return mLevelStarts[level] + index;
+        }
+
+        private void checkLevel(int level) {
+            if (level < 0 || level >= mLevelCount) {
+                throw new IndexOutOfBoundsException(String.format("Level %d", level));
+            }
+        }
+
+        private void clear() {
+            mLevelCount = 0;
+            mLevelStarts[0] = 0;
+            // Don't hold on to the segments of the last retrieval
+            Arrays.fill(mSegments, null);
+        }
+
+        /**
+         * Add a level with the captures of the groups {@code firstGroup} to
+         * {@code firstGroup + count - 1} of a successful match.
+         */
+        private void addLevel(String segment, Matcher matcher, int firstGroup, int count) {
+            int start = startLevel(segment, count);
+            for (int i = 0; i < count; i++) {
+                mStarts[start + i] = matcher.start(firstGroup + i);
+                mEnds[start + i] = matcher.end(firstGroup + i);
+            }
+        }
+
+        /**
+         * Add a level which was matched by a wildcard, with the whole segment as its capture.
+         */
+        private void addWildcardLevel(String segment) {
+            int start = startLevel(segment, 1);
+            mStarts[start] = 0;
+            mEnds[start] = segment.length();
+        }
+
+        private int startLevel(String segment, int count) {
+            if (mLevelCount + 2 > mLevelStarts.length) {
+                mLevelStarts = Arrays.copyOf(mLevelStarts, mLevelStarts.length * 2);
+            }
+            if (mLevelCount + 1 > mSegments.length) {
+                mSegments = Arrays.copyOf(mSegments, Math.max(4, mSegments.length * 2));
+            }
+            int start = mLevelStarts[mLevelCount];
+            if (start + count > mStarts.length) {
+                int length = Math.max(start + count, mStarts.length * 2);
+                mStarts = Arrays.copyOf(mStarts, length);
+                mEnds = Arrays.copyOf(mEnds, length);
+            }
+            mSegments[mLevelCount] = segment;
+            mLevelCount++;
+            mLevelStarts[mLevelCount] = start + count;
+            return start;
+        }
+    }
+
+    /**
+     * An immutable, array-backed copy of a {@link RegexTrie}, created by {@link #freeze()}.
+     * <p />
+     * A snapshot can be shared by any number of threads.  Each thread reuses its own
+     * {@link Matcher}s, so retrieving a single segment allocates nothing, and captures are written
+     * into a {@link Captures} supplied by the caller.  Later changes to the {@link RegexTrie} are
+     * not seen by the snapshot.
+     */
+    public static final class Snapshot<V> {
+        private final Node<V> mRoot;
+
+        private Snapshot(Node<V> root) {
+            mRoot = root;
+        }
+
+        /**
+         * Fetch a value from the snapshot by matching a single segment.
+         *
+         * @see RegexTrie#retrieve(String...)
+         */
+        public V retrieve(String segment) {
+            return retrieve(null, null, segment);
+        }
+
+        /**
+         * Fetch a value from the snapshot by matching a single segment, writing the captures of
+         * the match into {@code captures}.
+         *
+         * @see RegexTrie#retrieve(List, String...)
+         */
+        public V retrieve(Captures captures, String segment) {
+            return retrieve(captures, null, segment);
+        }
+
+        /**
+         * Fetch a value from the snapshot by matching a sequence of segments.
+         *
+         * @see RegexTrie#retrieve(String...)
+         */
+        public V retrieve(String... segments) {
+            return retrieve(null, segments);
+        }
+
+        /**
+         * Fetch a value from the snapshot by matching a sequence of segments, writing the captures
+         * of the match into {@code captures}.  As with {@link RegexTrie#retrieve(List, String...)},
+         * {@code captures} is cleared first, and reflects any partial match if retrieval fails.
+         *
+         * @param captures The {@link Captures} to reuse, or {@code null} if captures are not needed
+         * @param segments A sequence of {@link String}s to match
+         * @return The associated value, or {@code null} if no value was found
+         */
+        public V retrieve(Captures captures, String... segments) {
+            if (segments.length == 0) {
+                throw new IllegalArgumentException("string list must be non-empty");
+            }
+            return retrieve(captures, segments, null);
+        }
+
+        /**
+         * Retrieve either {@code segments}, or {@code segment} alone if {@code segments} is
+         * {@code null}.
+         */
+        private V retrieve(Captures captures, String[] segments, String segment) {
+            if (captures != null) {
+                captures.clear();
+            }
+            final int count = segments == null ? 1 : segments.length;
+            Node<V> node = mRoot;
+            for (int i = 0; i < count; i++) {
+                String curKey = segments == null ? segment : segments[i];
+                int child = node.match(curKey, captures);
+                if (child >= 0) {
+                    node = node.mChildren[child];
+                } else if (node.mWildcard != null) {
+                    if (captures != null) {
+                        for (int j = i; j < count; j++) {
+                            captures.addWildcardLevel(segments == null ? segment : segments[j]);
+                        }
+                    }
+                    return node.mWildcard.mValue;
+                } else {
+                    return null;
+                }
+            }
+            return node.mValue;
+        }
+    }
+
+    /**
+     * A node of a {@link Snapshot}.
+     */
+    private static final class Node<V> {
+        final V mValue;
+        final CombinedPattern<V> mCombined;
+        final Node<V>[] mChildren;
+        final Node<V> mWildcard;
+        /**
+         * The {@link Matcher}s of the current thread, for each child's pattern followed by the
+         * combined pattern, which are created on first use.
+         */
+        final ThreadLocal<Matcher[]> mMatchers;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Node(RegexTrie<V> trie) {
+            mValue = trie.mValue;
+            mCombined = new CombinedPattern<V>(trie.mChildren);
+            mChildren = new Node[mCombined.mChildren.size()];
+            for (int i = 0; i < mChildren.length; i++) {
+                mChildren[i] = new Node<V>(mCombined.mChildren.get(i));
+            }
+            RegexTrie<V> wildcard = trie.mChildren.get(null);
+            mWildcard = wildcard == null ? null : new Node<V>(wildcard);
+            final int matcherCount = mChildren.length + 1;
+            mMatchers = new ThreadLocal<Matcher[]>() {
+                @Override
+                protected Matcher[] initialValue() {
+                    return new Matcher[matcherCount];
+                }
+            };
+        }
+
+        /**
+         * Find the first child which matches a segment, and add its captures.
+         *
+         * @return the index of the child, or -1 if none matched
+         */
+        int match(String segment, Captures captures) {
+            if (mChildren.length == 0 || !mCombined.mayMatch(segment)) {
+                return -1;
+            }
+            Matcher[] matchers = mMatchers.get();
+            if (mCombined.mPattern != null) {
+                Matcher matcher = getMatcher(matchers, mChildren.length, mCombined.mPattern,
+                        segment);
+                int child = -1;
+                if (ParseStats.matches(matcher)) {
+                    child = mCombined.getMatchedChild(matcher);
+                    if (captures != null) {
+                        captures.addLevel(segment, matcher, mCombined.mGroups[child] + 1,
+                                mCombined.mGroupCounts[child]);
+                    }
+                }
+                // Don't hold on to the segment
+                matcher.reset("");
+                return child;
+            }
+            for (int child = 0; child < mChildren.length; child++) {
+                if (!segment.startsWith(mCombined.mPrefixes.get(child))) {
+                    continue;
+                }
+                Matcher matcher = getMatcher(matchers, child,
+                        mCombined.mPatterns.get(child).mPattern, segment);
+                boolean hit = ParseStats.matches(matcher);
+                if (hit && captures != null) {
+                    captures.addLevel(segment, matcher, 1, matcher.groupCount());
+                }
+                matcher.reset("");
+                if (hit) {
+                    return child;
+                }
+            }
+            return -1;
+        }
+
+        private static Matcher getMatcher(Matcher[] matchers, int index, Pattern pattern,
+                String segment) {
+            if (matchers[index] == null) {
+                matchers[index] = pattern.matcher(segment);
+                return matchers[index];
+            }
+            return matchers[index].reset(segment);
+        }
+    }
+
     public void clear() {
         mValue = null;
+        mCombined = null;
         for (RegexTrie child : mChildren.values()) {
             child.clear();
         }
         mChildren.clear();
     }
 
+    /**
+     * Create an immutable {@link Snapshot} of the trie, which can be shared between threads.
+     */
+    public Snapshot<V> freeze() {
+        return new Snapshot<V>(new Node<V>(this));
+    }
+
     boolean containsKey(String... strings) {
         return retrieve(strings) != null;
     }
@@ -132,6 +582,7 @@ public class RegexTrie<V> {
             if (nextChild == null) {
                 nextChild = new RegexTrie<V>();
                 mChildren.put(curKey, nextChild);
+                mCombined = null;
             }
             return nextChild.recursivePut(value, nextKeys);
         }
@@ -199,42 +650,63 @@ public class RegexTrie<V> {
         if (strings.isEmpty()) {
             return mValue;
         } else {
-            boolean wildcardMatch = false;
-            V wildcardValue = null;
             String curKey = strings.get(0);
             List<String> nextKeys = strings.subList(1, strings.size());
 
-            for (Map.Entry<CompPattern, RegexTrie<V>> child : mChildren.entrySet()) {
-                CompPattern pattern = child.getKey();
-                if (pattern == null) {
-                    wildcardMatch = true;
-                    wildcardValue = child.getValue().getValue();
-                    continue;
-                }
-
-                Matcher matcher = pattern.matcher(curKey);
-                if (matcher.matches()) {
+            if (mCombined == null) {
+                mCombined = new CombinedPattern<V>(mChildren);
+            }
+            if (!mCombined.mayMatch(curKey)) {
+                // No child can match, so fall through to the wildcard
+            } else if (mCombined.mPattern != null) {
+                Matcher matcher = mCombined.mPattern.matcher(curKey);
+                if (ParseStats.matches(matcher)) {
+                    int child = mCombined.getMatchedChild(matcher);
                     if (captures != null) {
-                        List<String> curCaptures = new ArrayList<String>(matcher.groupCount());
-                        for (int i = 0; i < matcher.groupCount(); i++) {
-                            // i+1 since group 0 is the entire matched string
-                            curCaptures.add(matcher.group(i+1));
+                        final int group = mCombined.mGroups[child];
+                        final int groupCount = mCombined.mGroupCounts[child];
+                        List<String> curCaptures = new ArrayList<String>(groupCount);
+                        for (int i = 0; i < groupCount; i++) {
+                            // i+1 since the child's group is its entire matched string
+                            curCaptures.add(matcher.group(group + i + 1));
                         }
                         captures.add(curCaptures);
                     }
 
-                    return child.getValue().recursiveRetrieve(captures, nextKeys);
+                    return mCombined.mChildren.get(child).recursiveRetrieve(captures, nextKeys);
+                }
+            } else {
+                for (int child = 0; child < mCombined.mPatterns.size(); child++) {
+                    if (!curKey.startsWith(mCombined.mPrefixes.get(child))) {
+                        continue;
+                    }
+                    Matcher matcher = mCombined.mPatterns.get(child).matcher(curKey);
+                    if (ParseStats.matches(matcher)) {
+                        if (captures != null) {
+                            List<String> curCaptures =
+                                    new ArrayList<String>(matcher.groupCount());
+                            for (int i = 0; i < matcher.groupCount(); i++) {
+                                // i+1 since group 0 is the entire matched string
+                                curCaptures.add(matcher.group(i+1));
+                            }
+                            captures.add(curCaptures);
+                        }
+
+                        return mCombined.mChildren.get(child).recursiveRetrieve(captures,
+                                nextKeys);
+                    }
                 }
             }
 
-            if (wildcardMatch) {
+            // The wildcard is only used if no more-specific child matched
+            if (mChildren.containsKey(null)) {
                 // Stick the rest of the query string into the captures list and return
                 if (captures != null) {
                     for (String str : strings) {
                         captures.add(Arrays.asList(str));
                     }
                 }
-                return wildcardValue;
+                return mChildren.get(null).getValue();
             }
 
             // no match
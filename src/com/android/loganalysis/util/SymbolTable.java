@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+/**
+ * A table of canonical {@link String}s for the values which repeat across a log, such as tags,
+ * process names and package names.
+ * <p>
+ * A log has few distinct values but many references to them, so items which keep the canonical
+ * instance retain one copy of each value, and equal values are the same instance.  A value can be
+ * interned from a region of a line, in which case a {@link String} is only created the first time
+ * the value is seen.
+ * </p><p>
+ * A table is meant to be created for a parse session and shared by its parsers, so it is thread
+ * safe.
+ * </p>
+ */
+public class SymbolTable {
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** An open addressing hash table, whose length is a power of two. */
+    private String[] mSymbols = new String[INITIAL_CAPACITY];
+    private int mSize = 0;
+
+    /**
+     * Get the canonical instance of a {@link String}.
+     *
+     * @param s the {@link String}, which may be {@code null}.
+     * @return the canonical instance, or {@code null} if {@code s} is {@code null}.
+     */
+    public synchronized String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        final int mask = mSymbols.length - 1;
+        for (int i = s.hashCode() & mask; ; i = (i + 1) & mask) {
+            final String symbol = mSymbols[i];
+            if (symbol == null) {
+                return add(i, s);
+            }
+            if (symbol.equals(s)) {
+                return symbol;
+            }
+        }
+    }
+
+    /**
+     * Get the canonical instance of a region of a {@link CharSequence}, without creating a
+     * {@link String} if the value is already in the table.
+     *
+     * @param s the {@link CharSequence}.
+     * @param start the index of the first character of the value.
+     * @param end the index after the last character of the value.
+     * @return the canonical instance.
+     */
+    public synchronized String intern(CharSequence s, int start, int end) {
+        // The same hash as String.hashCode(), so both methods find the same slot.
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        final int mask = mSymbols.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            final String symbol = mSymbols[i];
+            if (symbol == null) {
+                return add(i, s.subSequence(start, end).toString());
+            }
+            if (symbol.hashCode() == hash && regionEquals(symbol, s, start, end)) {
+                return symbol;
+            }
+        }
+    }
+
+    /**
+     * Get the number of distinct values in the table.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Add a value to an empty slot, growing the table if it is half full.
+     */
+    private String add(int index, String s) {
+        mSymbols[index] = s;
+        mSize++;
+        if (mSize * 2 > mSymbols.length) {
+            String[] symbols = mSymbols;
+            mSymbols = new String[symbols.length * 2];
+            final int mask = mSymbols.length - 1;
+            for (String symbol : symbols) {
+                if (symbol != null) {
+                    int i = symbol.hashCode() & mask;
+                    while (mSymbols[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    mSymbols[i] = symbol;
+                }
+            }
+        }
+        return s;
+    }
+
+    private static boolean regionEquals(String symbol, CharSequence s, int start, int end) {
+        if (symbol.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != s.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Parses the fixed width timestamps of logs, such as {@code 05-26 11:02:36.886} and
+ * {@code 2012-05-26 11:02:36.886}, into milliseconds since the epoch without allocating.
+ * <p>
+ * The result is the same as parsing with a lenient {@link java.text.SimpleDateFormat} in the same
+ * time zone.  The start of the last day parsed is cached, so timestamps on the same day are found
+ * with arithmetic unless the offset of the time zone changes during that day.  Timestamps which
+ * do not have the expected layout are {@link #INVALID} rather than throwing an exception.
+ * </p><p>
+ * A codec caches the last day, so it is not thread safe.
+ * </p>
+ */
+public class TimestampCodec {
+
+    /** The value returned for a timestamp which could not be parsed. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    /** The length of a timestamp such as {@code 05-26 11:02:36.886}. */
+    public static final int MONTH_DAY_TIME_LENGTH = 18;
+    /** The length of a timestamp such as {@code 2012-05-26 11:02:36}. */
+    public static final int DATE_TIME_LENGTH = 19;
+    /** The length of a timestamp such as {@code 2012-05-26 11:02:36.886}. */
+    public static final int DATE_TIME_MILLIS_LENGTH = 23;
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    /** More than the most that the offset of a time zone falls back by. */
+    private static final long MAX_OFFSET_CHANGE = 3 * HOUR_MILLIS;
+
+    private final TimeZone mTimeZone;
+    private final Calendar mCalendar;
+
+    private int mYear = 0;
+    private int mMonth = 0;
+    private int mDay = 0;
+    private long mDayStart = INVALID;
+    private boolean mFixedOffset = false;
+
+    /**
+     * Constructor for {@link TimestampCodec} in the default time zone.
+     */
+    public TimestampCodec() {
+        this(TimeZone.getDefault());
+    }
+
+    /**
+     * Constructor for {@link TimestampCodec}.
+     *
+     * @param timeZone the time zone of the timestamps.
+     */
+    public TimestampCodec(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mCalendar = new GregorianCalendar(timeZone);
+    }
+
+    /**
+     * Parse a timestamp in the layout {@code MM-dd HH:mm:ss.SSS}, such as in logcat.
+     *
+     * @param year the year of the timestamp, which is not part of the layout.
+     * @param s the text containing the timestamp.
+     * @param start the index of the timestamp in {@code s}.
+     * @return the milliseconds since the epoch, or {@link #INVALID}.
+     */
+    public long parseMonthDayTime(int year, CharSequence s, int start) {
+        if (start + MONTH_DAY_TIME_LENGTH > s.length() || s.charAt(start + 2) != '-') {
+            return INVALID;
+        }
+        final int month = parseDigits(s, start, 2);
+        final int day = parseDigits(s, start + 3, 2);
+        if (month < 0 || day < 0 || s.charAt(start + 5) != ' ') {
+            return INVALID;
+        }
+        return parseTimeOfDay(year, month, day, s, start + 6, true);
+    }
+
+    /**
+     * Parse a timestamp in the layout {@code yyyy-MM-dd HH:mm:ss} or
+     * {@code yyyy-MM-dd HH:mm:ss.SSS}, such as in a bugreport or monkey log.
+     *
+     * @param s the text containing the timestamp.
+     * @param start the index of the timestamp in {@code s}.
+     * @param millis whether the timestamp ends with milliseconds.
+     * @return the milliseconds since the epoch, or {@link #INVALID}.
+     */
+    public long parseDateTime(CharSequence s, int start, boolean millis) {
+        final int length = millis ? DATE_TIME_MILLIS_LENGTH : DATE_TIME_LENGTH;
+        if (start + length > s.length() || s.charAt(start + 4) != '-'
+                || s.charAt(start + 7) != '-' || s.charAt(start + 10) != ' ') {
+            return INVALID;
+        }
+        final int year = parseDigits(s, start, 4);
+        final int month = parseDigits(s, start + 5, 2);
+        final int day = parseDigits(s, start + 8, 2);
+        if (year < 0 || month < 0 || day < 0) {
+            return INVALID;
+        }
+        return parseTimeOfDay(year, month, day, s, start + 11, millis);
+    }
+
+    /**
+     * Get the milliseconds since the epoch of a local date and time.  Fields which are out of
+     * range, such as the 30th of February, roll over as in a lenient {@link Calendar}.
+     *
+     * @param month the month, from 1 to 12.
+     */
+    public long toMillis(int year, int month, int day, int hour, int minute, int second,
+            int millis) {
+        if (year != mYear || month != mMonth || day != mDay || mDayStart == INVALID) {
+            cacheDay(year, month, day);
+        }
+        if (mFixedOffset && hour < 24 && minute < 60 && second < 60 && millis < 1000) {
+            return mDayStart + ((hour * 60L + minute) * 60 + second) * 1000 + millis;
+        }
+        mCalendar.clear();
+        mCalendar.set(year, month - 1, day, hour, minute, second);
+        mCalendar.set(Calendar.MILLISECOND, millis);
+        return mCalendar.getTimeInMillis();
+    }
+
+    /**
+     * Get the time zone of the timestamps.
+     */
+    public TimeZone getTimeZone() {
+        return mTimeZone;
+    }
+
+    /**
+     * Convert milliseconds since the epoch into a {@link Date}.
+     *
+     * @return the {@link Date}, or {@code null} if {@code millis} is {@link #INVALID}.
+     */
+    public static Date toDate(long millis) {
+        return millis == INVALID ? null : new Date(millis);
+    }
+
+    /**
+     * Parse the {@code HH:mm:ss} or {@code HH:mm:ss.SSS} at the end of a timestamp.
+     */
+    private long parseTimeOfDay(int year, int month, int day, CharSequence s, int start,
+            boolean millis) {
+        if (s.charAt(start + 2) != ':' || s.charAt(start + 5) != ':'
+                || (millis && s.charAt(start + 8) != '.')) {
+            return INVALID;
+        }
+        final int hour = parseDigits(s, start, 2);
+        final int minute = parseDigits(s, start + 3, 2);
+        final int second = parseDigits(s, start + 6, 2);
+        final int milli = millis ? parseDigits(s, start + 9, 3) : 0;
+        if (hour < 0 || minute < 0 || second < 0 || milli < 0) {
+            return INVALID;
+        }
+        return toMillis(year, month, day, hour, minute, second, milli);
+    }
+
+    /**
+     * Find the start of a day, and whether the offset of the time zone is the same for the whole
+     * day, in which case the time of day can simply be added to the start.
+     * <p>
+     * The offset must also be the same just before the day, since the day starts late if midnight
+     * is skipped, and for a few hours after it, since the end of the day is repeated if the
+     * offset falls back at midnight.
+     * </p>
+     */
+    private void cacheDay(int year, int month, int day) {
+        mCalendar.clear();
+        mCalendar.set(year, month - 1, day);
+        final long dayStart = mCalendar.getTimeInMillis();
+        final int offset = mTimeZone.getOffset(dayStart);
+        boolean fixedOffset = offset == mTimeZone.getOffset(dayStart - 1);
+        for (long time = dayStart + HOUR_MILLIS; fixedOffset
+                && time <= dayStart + DAY_MILLIS + MAX_OFFSET_CHANGE; time += HOUR_MILLIS) {
+            fixedOffset = offset == mTimeZone.getOffset(time);
+        }
+        mYear = year;
+        mMonth = month;
+        mDay = day;
+        mDayStart = dayStart;
+        mFixedOffset = fixedOffset;
+    }
+
+    /**
+     * Parse a fixed number of ASCII digits.
+     *
+     * @return the value, or -1 if any of the characters is not a digit.
+     */
+    private static int parseDigits(CharSequence s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
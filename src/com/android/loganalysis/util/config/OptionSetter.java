@@ -27,11 +27,13 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Populates {@link Option} fields.
@@ -61,6 +63,19 @@ public class OptionSetter {
     private static final HashMap<Class<?>, Handler> handlers = new HashMap<Class<?>, Handler>();
     static final char NAMESPACE_SEPARATOR = ':';
 
+    /**
+     * The {@link Option} fields of each class, which are looked up once per class rather than
+     * once per {@link OptionSetter} or help request.
+     */
+    private static final Map<Class<?>, Collection<Field>> optionFieldsCache =
+            new ConcurrentHashMap<Class<?>, Collection<Field>>();
+    /**
+     * The {@link Handler} of each {@link Option} field, which is looked up once per field rather
+     * than for every value set.
+     */
+    private static final Map<Field, Handler> fieldHandlers =
+            new ConcurrentHashMap<Field, Handler>();
+
     static {
         handlers.put(boolean.class, new BooleanHandler());
         handlers.put(Boolean.class, new BooleanHandler());
@@ -140,6 +155,21 @@ public class OptionSetter {
                 type));
     }
 
+    /**
+     * Get the {@link Handler} for an {@link Option} field, computing it the first time the field
+     * is seen.
+     */
+    private static Handler getHandler(Field field) throws ConfigurationException {
+        Handler handler = fieldHandlers.get(field);
+        if (handler == null) {
+            handler = getHandler(field.getGenericType());
+            if (handler != null) {
+                fieldHandlers.put(field, handler);
+            }
+        }
+        return handler;
+    }
+
     private final Collection<Object> mOptionSources;
     private final Map<String, OptionFieldsForName> mOptionMap;
 
@@ -155,8 +185,8 @@ public class OptionSetter {
 
         void addField(String name, Object source, Field field) throws ConfigurationException {
             if (size() > 0) {
-                Handler existingFieldHandler = getHandler(getFirstField().getGenericType());
-                Handler newFieldHandler = getHandler(field.getGenericType());
+                Handler existingFieldHandler = getHandler(getFirstField());
+                Handler newFieldHandler = getHandler(field);
                 if (!existingFieldHandler.equals(newFieldHandler)) {
                     throw new ConfigurationException(String.format(
                             "@Option field with name '%s' in class '%s' is defined with a " +
@@ -247,7 +277,7 @@ public class OptionSetter {
 
             Object optionSource = fieldEntry.getKey();
             Field field = fieldEntry.getValue();
-            Handler handler = getHandler(field.getGenericType());
+            Handler handler = getHandler(field);
             Object value = handler.translate(valueText);
             if (value == null) {
                 final String type = field.getType().getSimpleName();
@@ -340,7 +370,7 @@ public class OptionSetter {
 
             Object optionSource = fieldEntry.getKey();
             Field field = fieldEntry.getValue();
-            Handler handler = getHandler(field.getGenericType());
+            Handler handler = getHandler(field);
             if (handler == null || !(handler instanceof MapHandler)) {
                 throw new ConfigurationException("Not a map!");
             }
@@ -560,13 +590,24 @@ public class OptionSetter {
 
     /**
      * Gets a list of all {@link Option} fields (both declared and inherited) for given class.
+     * <p/>
+     * The fields are only searched for the first time a class is seen, and are made accessible
+     * then, so the same unmodifiable {@link Collection} is returned for later calls.
      *
      * @param optionClass the {@link Class} to search
      * @return a {@link Collection} of fields annotated with {@link Option}
      */
     static Collection<Field> getOptionFieldsForClass(final Class<?> optionClass) {
-        Collection<Field> fieldList = new ArrayList<Field>();
-        buildOptionFieldsForClass(optionClass, fieldList);
+        Collection<Field> fieldList = optionFieldsCache.get(optionClass);
+        if (fieldList == null) {
+            Collection<Field> fields = new ArrayList<Field>();
+            buildOptionFieldsForClass(optionClass, fields);
+            for (Field field : fields) {
+                field.setAccessible(true);
+            }
+            fieldList = Collections.unmodifiableCollection(fields);
+            optionFieldsCache.put(optionClass, fieldList);
+        }
         return fieldList;
     }
 
@@ -660,7 +701,7 @@ public class OptionSetter {
     }
 
     static boolean isBooleanField(Field field) throws ConfigurationException {
-        return getHandler(field.getGenericType()).isBoolean();
+        return getHandler(field).isBoolean();
     }
 
     public boolean isMapOption(String name) throws ConfigurationException {
@@ -669,7 +710,7 @@ public class OptionSetter {
     }
 
     static boolean isMapField(Field field) throws ConfigurationException {
-        return getHandler(field.getGenericType()).isMap();
+        return getHandler(field).isMap();
     }
 
     private void addNameToMap(Map<String, OptionFieldsForName> optionMap, Object optionSource,
@@ -681,7 +722,7 @@ public class OptionSetter {
         }
 
         fields.addField(name, optionSource, field);
-        if (getHandler(field.getGenericType()) == null) {
+        if (getHandler(field) == null) {
             throw new ConfigurationException(String.format(
                     "Option name '%s' in class '%s' is invalid. Unsupported @Option field type '%s'",
                     name, optionSource.getClass().getName(), field.getType()));
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+
+/**
+ * Unit tests for {@link AnalysisServer}.
+ */
+public class AnalysisServerTest extends TestCase {
+    private static final String LOGCAT =
+            "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not responding) " +
+            "in process: com.android.package\n";
+
+    private AnalysisServer mServer = null;
+    private File mRoot = null;
+    private File mFile = null;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mRoot = File.createTempFile("AnalysisServerTest", "");
+        mRoot.delete();
+        mRoot.mkdir();
+        mServer = new AnalysisServer(0, 2, 10000, mRoot);
+        mServer.start();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mServer.stop();
+        if (mFile != null) {
+            mFile.delete();
+        }
+        mRoot.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that a log is analyzed from a local path.
+     */
+    public void testAnalyze_path() throws Exception {
+        mFile = writeLog(mRoot);
+
+        HttpURLConnection connection = open(String.format("?type=logcat&path=%s",
+                URLEncoder.encode(mFile.getPath(), "UTF-8")));
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(1, read(connection).getJSONArray("EVENTS").length());
+
+        // Relative paths are resolved against the root.
+        connection = open(String.format("?type=logcat&path=%s",
+                URLEncoder.encode(mFile.getName(), "UTF-8")));
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(1, read(connection).getJSONArray("EVENTS").length());
+    }
+
+    /**
+     * Test that paths outside of the root are rejected, even if the file exists.
+     */
+    public void testAnalyze_pathOutsideRoot() throws Exception {
+        mFile = writeLog(mRoot.getParentFile());
+
+        HttpURLConnection connection = open(String.format("?type=logcat&path=%s",
+                URLEncoder.encode(mFile.getPath(), "UTF-8")));
+        assertEquals(403, connection.getResponseCode());
+        assertTrue(read(connection).has(AnalysisServer.ERROR));
+
+        connection = open(String.format("?type=logcat&path=%s",
+                URLEncoder.encode("../" + mFile.getName(), "UTF-8")));
+        assertEquals(403, connection.getResponseCode());
+        assertTrue(read(connection).has(AnalysisServer.ERROR));
+    }
+
+    /**
+     * Test that a server without a root rejects all paths.
+     */
+    public void testAnalyze_pathWithoutRoot() throws Exception {
+        mServer.stop();
+        mServer = new AnalysisServer(0, 2, 10000, null);
+        mServer.start();
+        mFile = writeLog(mRoot);
+
+        HttpURLConnection connection = open(String.format("?type=logcat&path=%s",
+                URLEncoder.encode(mFile.getPath(), "UTF-8")));
+        assertEquals(403, connection.getResponseCode());
+        assertTrue(read(connection).has(AnalysisServer.ERROR));
+    }
+
+    /**
+     * Test that a log is analyzed from the request body.
+     */
+    public void testAnalyze_body() throws Exception {
+        HttpURLConnection connection = open("?type=LOGCAT");
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        out.write(LOGCAT.getBytes("UTF-8"));
+        out.close();
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(1, read(connection).getJSONArray("EVENTS").length());
+    }
+
+    /**
+     * Test that bad requests get an error response.
+     */
+    public void testAnalyze_errors() throws Exception {
+        HttpURLConnection connection = open("?path=does_not_exist");
+        assertEquals(404, connection.getResponseCode());
+        assertTrue(read(connection).getString(AnalysisServer.ERROR).contains("does_not_exist"));
+
+        connection = open("?type=unknown&path=does_not_exist");
+        assertEquals(400, connection.getResponseCode());
+        assertTrue(read(connection).has(AnalysisServer.ERROR));
+
+        connection = open("");
+        assertEquals(400, connection.getResponseCode());
+        assertTrue(read(connection).has(AnalysisServer.ERROR));
+    }
+
+    /**
+     * Test that a query with a malformed escape is rejected.  The JDK server already rejects the
+     * request line, but the query parser must not rely on it.
+     */
+    public void testAnalyze_malformedQuery() throws Exception {
+        HttpURLConnection connection = open("?path=%zz");
+        assertEquals(400, connection.getResponseCode());
+
+        try {
+            AnalysisServer.parseQuery("path=%zz");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private File writeLog(File dir) throws IOException {
+        File file = File.createTempFile("AnalysisServerTest", ".txt", dir);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(LOGCAT.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private HttpURLConnection open(String query) throws IOException {
+        return (HttpURLConnection) new URL(String.format("http://127.0.0.1:%d%s%s",
+                mServer.getPort(), AnalysisServer.ANALYZE_PATH, query)).openConnection();
+    }
+
+    private JSONObject read(HttpURLConnection connection) throws Exception {
+        InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() :
+                connection.getErrorStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return new JSONObject(bytes.toString("UTF-8"));
+    }
+}
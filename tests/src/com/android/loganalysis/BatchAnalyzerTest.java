@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.LogAnalyzer.LogType;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link BatchAnalyzer}.
+ */
+public class BatchAnalyzerTest extends TestCase {
+    private static final String LOGCAT =
+            "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not responding) " +
+            "in process: com.android.package\n";
+
+    private File mDir = null;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mDir = File.createTempFile("BatchAnalyzerTest", "");
+        mDir.delete();
+        mDir.mkdir();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        delete(mDir);
+        super.tearDown();
+    }
+
+    /**
+     * Test that directories and globs are expanded to the matching files.
+     */
+    public void testExpandPaths() throws IOException {
+        File a = writeFile("a.txt", LOGCAT);
+        File b = writeFile("sub/b.txt", LOGCAT);
+        File c = writeFile("sub/c.log", LOGCAT);
+        final String dir = mDir.getPath();
+
+        assertEquals(Arrays.asList(a, b, c),
+                BatchAnalyzer.expandPaths(Arrays.asList(dir)));
+        assertEquals(Arrays.asList(a),
+                BatchAnalyzer.expandPaths(Arrays.asList(dir + "/*.txt")));
+        assertEquals(Arrays.asList(a, b),
+                BatchAnalyzer.expandPaths(Arrays.asList(dir + "/**/*.txt")));
+        assertEquals(Arrays.asList(b, c),
+                BatchAnalyzer.expandPaths(Arrays.asList(dir + "/s?b/[bc].*")));
+        assertEquals(Arrays.asList(new File(dir, "missing.txt")),
+                BatchAnalyzer.expandPaths(Arrays.asList(dir + "/missing.txt")));
+    }
+
+    /**
+     * Test that a manifest skips blank lines and comments.
+     */
+    public void testReadManifest() throws IOException {
+        File manifest = writeFile("manifest", "# comment\n/a/b.txt\n\n  /c/*.txt  \n");
+        assertEquals(Arrays.asList("/a/b.txt", "/c/*.txt"), BatchAnalyzer.readManifest(manifest));
+    }
+
+    /**
+     * Test that one line is written per file and that failures are reported per file.
+     */
+    public void testAnalyze() throws Exception {
+        File good = writeFile("good.txt", LOGCAT);
+        File missing = new File(mDir, "missing.txt");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BatchAnalyzer batch = new BatchAnalyzer(LogType.LOGCAT, 2, new PrintStream(bytes, true));
+        assertEquals(1, batch.analyze(Arrays.asList(good, missing, good)));
+
+        Map<String, List<JSONObject>> results = parseOutput(bytes.toString("UTF-8"));
+        assertEquals(2, results.size());
+        assertEquals(2, results.get(good.getPath()).size());
+        for (JSONObject output : results.get(good.getPath())) {
+            assertFalse(output.has(BatchAnalyzer.ERROR));
+            assertEquals(1, output.getJSONObject(BatchAnalyzer.RESULT).getJSONArray(
+                    "EVENTS").length());
+        }
+        assertEquals(1, results.get(missing.getPath()).size());
+        JSONObject output = results.get(missing.getPath()).get(0);
+        assertFalse(output.has(BatchAnalyzer.RESULT));
+        assertTrue(output.getString(BatchAnalyzer.ERROR).contains("missing.txt"));
+    }
+
+    private Map<String, List<JSONObject>> parseOutput(String output) throws JSONException {
+        Map<String, List<JSONObject>> results = new HashMap<String, List<JSONObject>>();
+        for (String line : output.split("\n")) {
+            JSONObject json = new JSONObject(line);
+            String file = json.getString(BatchAnalyzer.FILE);
+            if (!results.containsKey(file)) {
+                results.put(file, new ArrayList<JSONObject>());
+            }
+            results.get(file).add(json);
+        }
+        return results;
+    }
+
+    private File writeFile(String name, String contents) throws IOException {
+        File file = new File(mDir, name);
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.item.CombinedLogItem;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link LogAnalyzer}.
+ */
+public class LogAnalyzerTest extends TestCase {
+    private static final String LOGCAT =
+            "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not responding) " +
+            "in process: com.android.package\n";
+    private static final String KERNEL_LOG = "[    0.000000] Start\n[    1.000000] Kernel panic\n";
+
+    private PrintStream mOriginalOut = null;
+    private PrintStream mOriginalErr = null;
+    private ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+    private ByteArrayOutputStream mErr = new ByteArrayOutputStream();
+    private List<File> mFiles = new ArrayList<File>();
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mOriginalOut = System.out;
+        mOriginalErr = System.err;
+        System.setOut(new PrintStream(mOut, true, "UTF-8"));
+        System.setErr(new PrintStream(mErr, true, "UTF-8"));
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        System.setOut(mOriginalOut);
+        System.setErr(mOriginalErr);
+        for (File file : mFiles) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Test that a logcat and kernel log are printed together as a {@link CombinedLogItem}.
+     */
+    public void testRun_combined() throws Exception {
+        new LogAnalyzer().run(new String[] {"--logcat", writeLog(LOGCAT).getPath(),
+                "--kernel-log", writeLog(KERNEL_LOG).getPath()});
+
+        JSONObject output = new JSONObject(mOut.toString("UTF-8"));
+        assertFalse(output.has(CombinedLogItem.BUGREPORT));
+        assertEquals(1, output.getJSONObject(CombinedLogItem.LOGCAT).getJSONArray("EVENTS")
+                .length());
+        assertEquals(1, output.getJSONObject(CombinedLogItem.KERNEL_LOG).getJSONArray("EVENTS")
+                .length());
+    }
+
+    /**
+     * Test that nothing is printed to stdout if one of the combined logs fails.
+     */
+    public void testRun_combinedFailure() throws Exception {
+        new LogAnalyzer().run(new String[] {"--logcat", writeLog(LOGCAT).getPath(),
+                "--kernel-log", "/does/not/exist"});
+
+        assertEquals(0, mOut.size());
+        assertTrue(mErr.toString("UTF-8").contains("/does/not/exist"));
+    }
+
+    /**
+     * Test that at most one log can be read from stdin.
+     */
+    public void testRun_combinedStdin() throws Exception {
+        new LogAnalyzer().run(new String[] {"--logcat", "-", "--kernel-log", "-"});
+
+        assertEquals(0, mOut.size());
+        assertTrue(mErr.toString("UTF-8").startsWith("Usage:"));
+    }
+
+    private File writeLog(String log) throws IOException {
+        File file = File.createTempFile("LogAnalyzerTest", ".txt");
+        mFiles.add(file);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(log.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
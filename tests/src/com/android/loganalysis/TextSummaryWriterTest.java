@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.item.AnrItem;
+import com.android.loganalysis.item.BugreportItem;
+import com.android.loganalysis.item.DumpsysBatteryInfoItem;
+import com.android.loganalysis.item.DumpsysBatteryInfoItem.WakeLockCategory;
+import com.android.loganalysis.item.DumpsysItem;
+import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.item.JavaCrashItem;
+import com.android.loganalysis.item.KernelLogItem;
+import com.android.loganalysis.item.LogcatItem;
+import com.android.loganalysis.item.MiscKernelLogItem;
+import com.android.loganalysis.item.MonkeyLogItem;
+import com.android.loganalysis.item.ProcrankItem;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for {@link TextSummaryWriter}.
+ */
+public class TextSummaryWriterTest extends TestCase {
+
+    /**
+     * Test that the sections of a bugreport are summarized.
+     */
+    public void testWrite_bugreport() throws IOException {
+        BugreportItem bugreport = new BugreportItem();
+
+        LogcatItem logcat = new LogcatItem();
+        JavaCrashItem crash = new JavaCrashItem();
+        crash.setPid(123);
+        crash.setApp("com.android.foo");
+        crash.setException("java.lang.NullPointerException");
+        crash.setStack("java.lang.NullPointerException\n\tat Foo.bar(Foo.java:1)");
+        logcat.addEvent(crash);
+        AnrItem anr = new AnrItem();
+        anr.setPid(456);
+        anr.setReason("keyDispatchingTimedOut");
+        logcat.addEvent(anr);
+        logcat.addEvent(crash);
+        bugreport.setSystemLog(logcat);
+
+        KernelLogItem kernelLog = new KernelLogItem();
+        MiscKernelLogItem reset = new MiscKernelLogItem();
+        reset.setEventTime(1.5);
+        reset.setCategory("KERNEL_RESET");
+        reset.setStack("Kernel panic\nmore");
+        kernelLog.addEvent(reset);
+        bugreport.setKernelLog(kernelLog);
+
+        ProcrankItem procrank = new ProcrankItem();
+        for (int i = 1; i <= TextSummaryWriter.TOP_PROCESSES + 2; i++) {
+            procrank.addProcrankLine(i, "process" + i, 4 * i, 3 * i, 2 * i, i);
+        }
+        bugreport.setProcrank(procrank);
+
+        DumpsysBatteryInfoItem batteryInfo = new DumpsysBatteryInfoItem();
+        batteryInfo.addWakeLock("short", 10, 1, WakeLockCategory.LAST_CHARGE_WAKELOCK);
+        batteryInfo.addWakeLock("long", 1000, 2, WakeLockCategory.LAST_CHARGE_WAKELOCK);
+        DumpsysItem dumpsys = new DumpsysItem();
+        dumpsys.setBatteryInfo(batteryInfo);
+        bugreport.setDumpsys(dumpsys);
+
+        String text = write(bugreport);
+        assertTrue(text.contains("== System log =="));
+        assertTrue(text.contains("Events: 3 (ANR: 1, JAVA_CRASH: 2)"));
+        assertTrue(text.indexOf("-- ANR (1) --") < text.indexOf("-- JAVA_CRASH (2) --"));
+        assertTrue(text.contains("app=com.android.foo java.lang.NullPointerException"));
+        assertTrue(text.contains("keyDispatchingTimedOut"));
+        assertFalse(text.contains("Foo.bar"));
+
+        assertTrue(text.contains("-- KERNEL_RESET (1) --"));
+        assertTrue(text.contains("Kernel panic"));
+        assertFalse(text.contains("more"));
+
+        // Only the processes using the most memory are listed, largest first.
+        assertTrue(text.contains("process12"));
+        assertTrue(text.indexOf("process12") < text.indexOf("process11"));
+        assertFalse(text.contains("process2 "));
+
+        assertTrue(text.indexOf(" long") < text.indexOf(" short"));
+    }
+
+    /**
+     * Test that items without a text summary are written as JSON.
+     */
+    public void testWrite_json() throws IOException {
+        MonkeyLogItem monkey = new MonkeyLogItem();
+        monkey.setSeed(123L);
+        assertEquals(monkey.toJson().toString(), write(monkey).trim());
+    }
+
+    /**
+     * Test that nothing is written for a {@code null} item.
+     */
+    public void testWrite_null() throws IOException {
+        assertEquals("", write(null));
+    }
+
+    private String write(IItem item) throws IOException {
+        StringWriter out = new StringWriter();
+        new TextSummaryWriter(out).write(item);
+        return out.toString();
+    }
+}
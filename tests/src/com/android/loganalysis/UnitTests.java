@@ -18,6 +18,7 @@ package com.android.loganalysis;
 
 import com.android.loganalysis.item.DumpsysBatteryInfoItemTest;
 import com.android.loganalysis.item.GenericItemTest;
+import com.android.loganalysis.item.ItemCodecTest;
 import com.android.loganalysis.item.MemInfoItemTest;
 import com.android.loganalysis.item.MonkeyLogItemTest;
 import com.android.loganalysis.item.ProcrankItemTest;
@@ -31,6 +32,7 @@ import com.android.loganalysis.parser.DumpsysBatteryInfoParserTest;
 import com.android.loganalysis.parser.DumpsysParserTest;
 import com.android.loganalysis.parser.JavaCrashParserTest;
 import com.android.loganalysis.parser.KernelLogParserTest;
+import com.android.loganalysis.parser.LogcatLineTokenizerTest;
 import com.android.loganalysis.parser.LogcatParserTest;
 import com.android.loganalysis.parser.MemInfoParserTest;
 import com.android.loganalysis.parser.MonkeyLogParserTest;
@@ -39,10 +41,19 @@ import com.android.loganalysis.parser.ProcrankParserTest;
 import com.android.loganalysis.parser.SystemPropsParserTest;
 import com.android.loganalysis.parser.TopParserTest;
 import com.android.loganalysis.parser.TracesParserTest;
+import com.android.loganalysis.util.AhoCorasickMatcherTest;
 import com.android.loganalysis.util.ArrayUtilTest;
+import com.android.loganalysis.util.LineReaderTest;
+import com.android.loganalysis.util.LogFileUtilTest;
 import com.android.loganalysis.util.LogPatternUtilTest;
 import com.android.loganalysis.util.LogTailUtilTest;
+import com.android.loganalysis.util.LongLruMapTest;
+import com.android.loganalysis.util.ParseStatsTest;
+import com.android.loganalysis.util.ReadAheadInputStreamTest;
+import com.android.loganalysis.util.RegexLiteralUtilTest;
 import com.android.loganalysis.util.RegexTrieTest;
+import com.android.loganalysis.util.SymbolTableTest;
+import com.android.loganalysis.util.TimestampCodecTest;
 import com.android.loganalysis.util.config.ArgsOptionParserTest;
 import com.android.loganalysis.util.config.OptionSetterTest;
 import com.android.loganalysis.util.config.OptionUpdateRuleTest;
@@ -60,9 +71,15 @@ public class UnitTests extends TestSuite {
     public UnitTests() {
         super();
 
+        addTestSuite(AnalysisServerTest.class);
+        addTestSuite(BatchAnalyzerTest.class);
+        addTestSuite(LogAnalyzerTest.class);
+        addTestSuite(TextSummaryWriterTest.class);
+
         // item
         addTestSuite(DumpsysBatteryInfoItemTest.class);
         addTestSuite(GenericItemTest.class);
+        addTestSuite(ItemCodecTest.class);
         addTestSuite(MemInfoItemTest.class);
         addTestSuite(MonkeyLogItemTest.class);
         addTestSuite(ProcrankItemTest.class);
@@ -78,6 +95,7 @@ public class UnitTests extends TestSuite {
         addTestSuite(DumpsysBatteryInfoParserTest.class);
         addTestSuite(JavaCrashParserTest.class);
         addTestSuite(KernelLogParserTest.class);
+        addTestSuite(LogcatLineTokenizerTest.class);
         addTestSuite(LogcatParserTest.class);
         addTestSuite(MemInfoParserTest.class);
         addTestSuite(MonkeyLogParserTest.class);
@@ -88,10 +106,19 @@ public class UnitTests extends TestSuite {
         addTestSuite(TracesParserTest.class);
 
         // util
+        addTestSuite(AhoCorasickMatcherTest.class);
         addTestSuite(ArrayUtilTest.class);
+        addTestSuite(LineReaderTest.class);
+        addTestSuite(LogFileUtilTest.class);
         addTestSuite(LogPatternUtilTest.class);
         addTestSuite(LogTailUtilTest.class);
+        addTestSuite(LongLruMapTest.class);
+        addTestSuite(ParseStatsTest.class);
+        addTestSuite(ReadAheadInputStreamTest.class);
+        addTestSuite(RegexLiteralUtilTest.class);
         addTestSuite(RegexTrieTest.class);
+        addTestSuite(SymbolTableTest.class);
+        addTestSuite(TimestampCodecTest.class);
 
         // util.config
         addTestSuite(ArgsOptionParserTest.class);
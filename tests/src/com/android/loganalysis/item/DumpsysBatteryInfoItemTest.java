@@ -22,6 +22,9 @@ import junit.framework.TestCase;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.io.StringWriter;
 
 /**
  * Unit test for {@link DumpsysBatteryInfoItem}.
@@ -65,4 +68,26 @@ public class DumpsysBatteryInfoItemTest extends TestCase {
         assertEquals(WakeLockCategory.LAST_UNPLUGGED_KERNEL_WAKELOCK.toString(),
                 wakeLock.get(DumpsysBatteryInfoItem.WakeLock.CATEGORY));
     }
+
+    /**
+     * Test that {@link DumpsysBatteryInfoItem#writeJson(JSONWriter)} writes the same JSON as
+     * {@link DumpsysBatteryInfoItem#toJson()}.
+     */
+    public void testWriteJson() throws JSONException {
+        DumpsysBatteryInfoItem item = new DumpsysBatteryInfoItem();
+        item.addWakeLock("a", 0, 1, WakeLockCategory.LAST_UNPLUGGED_KERNEL_WAKELOCK);
+        item.addWakeLock("b", 2, 3, WakeLockCategory.LAST_UNPLUGGED_KERNEL_WAKELOCK);
+        item.addWakeLock("c", 4, 5, 6, WakeLockCategory.LAST_UNPLUGGED_WAKELOCK);
+        item.addWakeLock("d", 7, 8, 9, WakeLockCategory.LAST_UNPLUGGED_WAKELOCK);
+        item.addWakeLock("e", 10, 11, 12, WakeLockCategory.LAST_UNPLUGGED_WAKELOCK);
+        item.addWakeLock("w", 0, 1, WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK);
+        item.addWakeLock("v", 2, 3, WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK);
+        item.addWakeLock("x", 4, 5, 6, WakeLockCategory.LAST_CHARGE_WAKELOCK);
+        item.addWakeLock("y", 7, 8, 9, WakeLockCategory.LAST_CHARGE_WAKELOCK);
+        item.addWakeLock("z", 10, 11, 12, WakeLockCategory.LAST_CHARGE_WAKELOCK);
+
+        StringWriter output = new StringWriter();
+        item.writeJson(new JSONWriter(output));
+        assertEquals(item.toJson().toString(), output.toString());
+    }
 }
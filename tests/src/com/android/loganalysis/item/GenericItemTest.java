@@ -19,7 +19,9 @@ import junit.framework.TestCase;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
@@ -264,4 +266,28 @@ public class GenericItemTest extends TestCase {
         assertTrue(output.get("item") instanceof JSONObject);
         assertFalse(output.has("null"));
     }
+
+    /**
+     * Test that {@link GenericItem#writeJson(JSONWriter)} writes the same JSON as
+     * {@link GenericItem#toJson()}.
+     */
+    public void testWriteJson() throws JSONException {
+        GenericItem item = new GenericItem(new HashSet<String>(Arrays.asList(
+                "string", "date", "integer", "double", "item", "null", "quote")));
+        NativeCrashItem subItem = new NativeCrashItem();
+        subItem.setPid(123);
+        subItem.setStack("line 1\nline 2");
+
+        item.setAttribute("string", "foo");
+        item.setAttribute("date", new Date());
+        item.setAttribute("integer", 0);
+        item.setAttribute("double", 3.5);
+        item.setAttribute("item", subItem);
+        item.setAttribute("null", null);
+        item.setAttribute("quote", "\"</script>\\");
+
+        StringWriter output = new StringWriter();
+        item.writeJson(new JSONWriter(output));
+        assertEquals(item.toJson().toString(), output.toString());
+    }
 }
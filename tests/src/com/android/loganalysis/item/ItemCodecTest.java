@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import com.android.loganalysis.item.DumpsysBatteryInfoItem.WakeLockCategory;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+
+/**
+ * Unit test for {@link ItemCodec}.
+ */
+public class ItemCodecTest extends TestCase {
+
+    /**
+     * Test that a bugreport with nested items and events is decoded to the same item.
+     */
+    public void testBugreport() throws IOException {
+        BugreportItem bugreport = new BugreportItem();
+        bugreport.setTime(new Date(1335449594000L));
+
+        LogcatItem logcat = new LogcatItem();
+        logcat.setStartTime(new Date(1335449594000L));
+        logcat.setStopTime(new Date(1335449599000L));
+        for (int i = 0; i < 3; i++) {
+            AnrItem anr = new AnrItem();
+            anr.setPid(100 + i);
+            anr.setApp("com.android.package");
+            anr.setActivity("com.android.package/.Activity");
+            anr.setCpuUsage(AnrItem.CpuUsageCategory.TOTAL, 12.5);
+            anr.setLastPreamble(createPreamble(i, 50));
+            logcat.addEvent(anr);
+
+            JavaCrashItem crash = new JavaCrashItem();
+            crash.setPid(-1);
+            crash.setException("java.lang.NullPointerException");
+            crash.setStack("java.lang.NullPointerException\n\tat Foo.bar(Foo.java:1)");
+            logcat.addEvent(crash);
+        }
+        bugreport.setSystemLog(logcat);
+
+        KernelLogItem kernelLog = new KernelLogItem();
+        MiscKernelLogItem kernelEvent = new MiscKernelLogItem();
+        kernelEvent.setEventTime(12.345);
+        kernelEvent.setCategory("KERNEL_RESET");
+        kernelLog.addEvent(kernelEvent);
+        bugreport.setKernelLog(kernelLog);
+
+        ProcrankItem procrank = new ProcrankItem();
+        procrank.addProcrankLine(1, "init", 2, 3, 4, 5);
+        procrank.setText("procrank text");
+        bugreport.setProcrank(procrank);
+
+        MemInfoItem memInfo = new MemInfoItem();
+        memInfo.put("MemTotal", 123456789012L);
+        memInfo.setText("MemTotal: 123456789012 kB");
+        bugreport.setMemInfo(memInfo);
+
+        BugreportItem.CommandLineItem commandLine = new BugreportItem.CommandLineItem();
+        commandLine.put("androidboot.bootreason", "hw_reset");
+        bugreport.setCommandLine(commandLine);
+
+        DumpsysBatteryInfoItem batteryInfo = new DumpsysBatteryInfoItem();
+        batteryInfo.addWakeLock("a", 1, 2, WakeLockCategory.LAST_CHARGE_WAKELOCK);
+        batteryInfo.addWakeLock("b", 3, 4, 5, WakeLockCategory.LAST_UNPLUGGED_KERNEL_WAKELOCK);
+        DumpsysItem dumpsys = new DumpsysItem();
+        dumpsys.setBatteryInfo(batteryInfo);
+        bugreport.setDumpsys(dumpsys);
+
+        BugreportItem decoded = (BugreportItem) roundTrip(bugreport);
+        assertEquals(bugreport.toJson().toString(), decoded.toJson().toString());
+        assertEquals(6, decoded.getSystemLog().getEvents().size());
+        assertEquals(3, decoded.getSystemLog().getAnrs().size());
+        assertEquals(1, decoded.getDumpsys().getBatteryInfo().getWakeLocks(
+                WakeLockCategory.LAST_UNPLUGGED_KERNEL_WAKELOCK).size());
+    }
+
+    /**
+     * Test that collections created by the item constructors keep working after decoding.
+     */
+    public void testCollections() throws IOException {
+        MonkeyLogItem monkey = new MonkeyLogItem();
+        monkey.addPackage("com.android.foo");
+        monkey.addPackage("com.android.bar");
+        monkey.addCategory("android.intent.category.LAUNCHER");
+        monkey.setSeed(123L);
+
+        MonkeyLogItem decoded = (MonkeyLogItem) roundTrip(monkey);
+        assertEquals(monkey.getPackages(), decoded.getPackages());
+        decoded.addPackage("com.android.baz");
+        assertEquals(3, decoded.getPackages().size());
+
+        SmartMonkeyLogItem smartMonkey = new SmartMonkeyLogItem();
+        smartMonkey.addApplication("app");
+        smartMonkey.addAnrTime(new Date(1000L));
+        SmartMonkeyLogItem decodedSmartMonkey = (SmartMonkeyLogItem) roundTrip(smartMonkey);
+        assertEquals(Arrays.asList("app"), decodedSmartMonkey.getApplications());
+        assertEquals(smartMonkey.getAnrTimes(), decodedSmartMonkey.getAnrTimes());
+    }
+
+    /**
+     * Test that items which do not extend {@link GenericItem} are decoded.
+     */
+    public void testCompactMemInfo() throws IOException {
+        CompactMemInfoItem memInfo = new CompactMemInfoItem();
+        memInfo.addPid(1, "init", "native", 1234L, false);
+        memInfo.addPid(2, "system_server", "system", 5678L, true);
+
+        CompactMemInfoItem decoded = (CompactMemInfoItem) roundTrip(memInfo);
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)), decoded.getPids());
+        assertEquals("system_server", decoded.getName(2));
+        assertEquals(5678L, decoded.getPss(2));
+        assertTrue(decoded.hasActivities(2));
+    }
+
+    /**
+     * Test that repeated strings are only written once.
+     */
+    public void testStringTable() throws IOException {
+        LogcatItem logcat = new LogcatItem();
+        for (int i = 0; i < 100; i++) {
+            MiscLogcatItem event = new MiscLogcatItem();
+            event.setTag("ActivityManager");
+            event.setLastPreamble(createPreamble(i, 50));
+            logcat.addEvent(event);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ItemCodec.encode(logcat, bytes);
+        assertTrue(bytes.size() * 4 < logcat.toJson().toString().length());
+    }
+
+    /**
+     * Test that data which was not encoded by {@link ItemCodec} is rejected.
+     */
+    public void testDecode_invalid() {
+        try {
+            ItemCodec.decode(new ByteArrayInputStream("{\"JSON\":1}".getBytes()));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that a value of the wrong type is rejected with an {@link IOException}.
+     */
+    public void testDecode_corrupt() throws IOException {
+        CompactMemInfoItem memInfo = new CompactMemInfoItem();
+        memInfo.addPid(1, "init", "native", 1234L, true);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ItemCodec.encode(memInfo, bytes);
+
+        // Replace the boolean at the end with the integer 1.
+        byte[] encoded = bytes.toByteArray();
+        byte[] corrupt = Arrays.copyOf(encoded, encoded.length + 1);
+        corrupt[encoded.length - 1] = 2;
+        corrupt[encoded.length] = 2;
+        try {
+            ItemCodec.decode(new ByteArrayInputStream(corrupt));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Corrupt item"));
+        }
+    }
+
+    /**
+     * Test that corrupt lengths and counts throw an {@link IOException} instead of allocating
+     * everything they claim before the input runs out.
+     */
+    public void testDecode_corruptLength() throws IOException {
+        // A string of 0x7fffffff bytes, which is over the maximum.
+        assertDecodeFails(1, 1, 0xff, 0xff, 0xff, 0xff, 0x07);
+        // A string of 32 MB, which is truncated.
+        assertDecodeFails(1, 1, 0x80, 0x80, 0x80, 0x10, 'a');
+        // A list of 0x7fffffff values, which is truncated.
+        assertDecodeFails(11, 0xff, 0xff, 0xff, 0xff, 0x07, 0);
+    }
+
+    /**
+     * Assert that decoding the value after the header throws an {@link IOException}.
+     */
+    private void assertDecodeFails(int... value) {
+        byte[] encoded = new byte[5 + value.length];
+        encoded[0] = 'L';
+        encoded[1] = 'A';
+        encoded[2] = 'I';
+        encoded[3] = 'C';
+        encoded[4] = 1;
+        for (int i = 0; i < value.length; i++) {
+            encoded[5 + i] = (byte) value[i];
+        }
+        try {
+            ItemCodec.decode(new ByteArrayInputStream(encoded));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private IItem roundTrip(IItem item) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ItemCodec.encode(item, bytes);
+        return ItemCodec.decode(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private String createPreamble(int start, int count) {
+        StringBuilder preamble = new StringBuilder();
+        for (int i = start; i < start + count; i++) {
+            if (i > start) {
+                preamble.append('\n');
+            }
+            preamble.append(String.format(
+                    "04-25 17:17:%02d.445   312   366 I ActivityManager: Line %d", i % 60, i));
+        }
+        return preamble.toString();
+    }
+}
@@ -19,6 +19,9 @@ import junit.framework.TestCase;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.io.StringWriter;
 
 /**
  * Unit test for {@link MemInfoItem}.
@@ -49,4 +52,19 @@ public class MemInfoItemTest extends TestCase {
         assertEquals(123, lines.get("foo"));
         assertEquals(456, lines.get("bar"));
     }
+
+    /**
+     * Test that {@link MemInfoItem#writeJson(JSONWriter)} writes the same JSON as
+     * {@link MemInfoItem#toJson()}.
+     */
+    public void testWriteJson() throws JSONException {
+        MemInfoItem item = new MemInfoItem();
+        item.put("foo", 123l);
+        item.put("bar", 456l);
+        item.setText("foo: 123 kB\nbar: 456 kB");
+
+        StringWriter output = new StringWriter();
+        item.writeJson(new JSONWriter(output));
+        assertEquals(item.toJson().toString(), output.toString());
+    }
 }
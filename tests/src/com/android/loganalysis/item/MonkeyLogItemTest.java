@@ -20,6 +20,9 @@ import junit.framework.TestCase;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.io.StringWriter;
 
 /**
  * Unit test for {@link MonkeyLogItem}.
@@ -56,6 +59,21 @@ public class MonkeyLogItemTest extends TestCase {
         assertTrue(in("package3", packages));
     }
 
+    /**
+     * Test that {@link MonkeyLogItem#writeJson(JSONWriter)} writes the same JSON as
+     * {@link MonkeyLogItem#toJson()} when it is the top level item.
+     */
+    public void testWriteJson() throws JSONException {
+        MonkeyLogItem item = new MonkeyLogItem();
+        item.addCategory("category1");
+        item.addPackage("package1");
+        item.setSeed(123L);
+
+        StringWriter output = new StringWriter();
+        item.writeJson(new JSONWriter(output));
+        assertEquals(item.toJson().toString(), output.toString());
+    }
+
     private boolean in(String value, JSONArray array) throws JSONException {
         for (int i = 0; i < array.length(); i++) {
             if (value.equals(array.get(i))) {
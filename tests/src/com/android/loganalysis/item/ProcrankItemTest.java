@@ -20,6 +20,9 @@ import junit.framework.TestCase;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.io.StringWriter;
 
 /**
  * Unit test for {@link ProcrankItem}.
@@ -57,4 +60,19 @@ public class ProcrankItemTest extends TestCase {
         assertEquals(3, line.get(ProcrankItem.PSS));
         assertEquals(4, line.get(ProcrankItem.USS));
     }
+
+    /**
+     * Test that {@link ProcrankItem#writeJson(JSONWriter)} writes the same JSON as
+     * {@link ProcrankItem#toJson()}.
+     */
+    public void testWriteJson() throws JSONException {
+        ProcrankItem item = new ProcrankItem();
+        item.addProcrankLine(0, "process0", 1, 2, 3, 4);
+        item.addProcrankLine(5, "process1", 6, 7, 8, 9);
+        item.setText("foo\nbar");
+
+        StringWriter output = new StringWriter();
+        item.writeJson(new JSONWriter(output));
+        assertEquals(item.toJson().toString(), output.toString());
+    }
 }
@@ -16,17 +16,26 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.item.MiscLogcatItem;
+import com.android.loganalysis.util.LineReader;
+import com.android.loganalysis.util.LineView;
 
 import junit.framework.TestCase;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Unit tests for {@link AbstractSectionParser}
  */
 public class AbstractSectionParserTest extends TestCase {
     AbstractSectionParser mParser = null;
+    ExecutorService mExecutor = null;
 
     @Override
     public void setUp() throws Exception {
@@ -43,6 +52,14 @@ public class AbstractSectionParserTest extends TestCase {
         };
     }
 
+    @Override
+    public void tearDown() throws Exception {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+        }
+        super.tearDown();
+    }
+
     private static class FakeBlockParser implements IParser {
         private String mExpected = null;
         private int mCalls = 0;
@@ -64,6 +81,92 @@ public class AbstractSectionParserTest extends TestCase {
         }
     }
 
+    private static class FakeStreamingParser implements IStreamingParser {
+        private List<String> mCalls = new ArrayList<String>();
+
+        public List<String> getCalls() {
+            return mCalls;
+        }
+
+        @Override
+        public IItem parse(List<String> lines) {
+            mCalls.add("parse " + lines);
+            return null;
+        }
+
+        @Override
+        public void beginSection() {
+            mCalls.add("begin");
+        }
+
+        @Override
+        public void acceptLine(String line) {
+            mCalls.add(line);
+        }
+
+        @Override
+        public IItem finishSection() {
+            mCalls.add("finish");
+            MiscLogcatItem item = new MiscLogcatItem();
+            item.setTag(Integer.toString(mCalls.size()));
+            return item;
+        }
+    }
+
+    /**
+     * A {@link NoopParser} which records the lines it is given.
+     */
+    private static class RecordingNoopParser extends NoopParser {
+        private List<String> mLines = new ArrayList<String>();
+
+        @Override
+        public IItem parse(List<String> lines) {
+            mLines.addAll(lines);
+            return null;
+        }
+
+        @Override
+        public void acceptLine(String line) {
+            mLines.add(line);
+        }
+    }
+
+    /**
+     * An {@link AbstractSectionParser} which is itself a section parser, like
+     * {@link DumpsysParser}.
+     */
+    private static class NestedParser extends AbstractSectionParser implements IStreamingParser {
+        public NestedParser(IParser parser) {
+            addSectionParser(parser, "-- KEEP");
+            addSectionParser(new NoopParser(), "-- .*");
+        }
+
+        @Override
+        public IItem parse(List<String> lines) {
+            beginSection();
+            for (String line : lines) {
+                acceptLine(line);
+            }
+            return finishSection();
+        }
+
+        @Override
+        public void beginSection() {
+            setParser(new NoopParser());
+        }
+
+        @Override
+        public void acceptLine(String line) {
+            parseLine(line);
+        }
+
+        @Override
+        public IItem finishSection() {
+            commit();
+            return null;
+        }
+    }
+
     /**
      * Verifies that {@link AbstractSectionParser} switches between parsers as expected
      */
@@ -94,5 +197,136 @@ public class AbstractSectionParserTest extends TestCase {
                     parsers[i].getCalls());
         }
     }
-}
 
+    /**
+     * Verifies that {@link AbstractSectionParser} runs all of the parsers when the sections are
+     * parsed on an executor.
+     */
+    public void testSwitchParsers_executor() {
+        mExecutor = Executors.newFixedThreadPool(4);
+        mParser.setExecutor(mExecutor);
+        testSwitchParsers();
+    }
+
+    /**
+     * Verifies that sections for the same parser are parsed in order when they are parsed on an
+     * executor, and that the last section is kept.
+     */
+    public void testExecutor_sameParser() {
+        final List<String> blocks = new ArrayList<String>();
+        IParser parser = new IParser() {
+            @Override
+            public IItem parse(List<String> lines) {
+                String block = lines.isEmpty() ? "" : lines.get(0);
+                blocks.add(block);
+                MiscLogcatItem item = new MiscLogcatItem();
+                item.setTag(block);
+                return item;
+            }
+        };
+        mExecutor = Executors.newFixedThreadPool(4);
+        mParser.setExecutor(mExecutor);
+        mParser.addSectionParser(parser, "SECTION");
+        mParser.parse(Arrays.asList("SECTION", "1", "SECTION", "2", "SECTION", "3"));
+
+        assertEquals(Arrays.asList("1", "2", "3"), blocks);
+        assertEquals("3", ((MiscLogcatItem) mParser.getSection(parser)).getTag());
+    }
+
+    /**
+     * Verifies that an exception thrown by a parser on an executor is thrown from the section
+     * parser.
+     */
+    public void testExecutor_exception() {
+        IParser parser = new IParser() {
+            @Override
+            public IItem parse(List<String> lines) {
+                throw new IllegalStateException("bad section");
+            }
+        };
+        mExecutor = Executors.newFixedThreadPool(1);
+        mParser.setExecutor(mExecutor);
+        mParser.addSectionParser(parser, "SECTION");
+        try {
+            mParser.parse(Arrays.asList("SECTION", "1"));
+            fail("IllegalStateException not thrown");
+        } catch (IllegalStateException e) {
+            assertEquals("bad section", e.getMessage());
+        }
+    }
+
+    /**
+     * Verifies that lines are passed to an {@link IStreamingParser} one at a time instead of being
+     * buffered, including for empty sections.
+     */
+    public void testStreamingParser() {
+        FakeStreamingParser parser = new FakeStreamingParser();
+        mParser.addSectionParser(parser, "SECTION");
+        mParser.addSectionParser(new NoopParser(), "OTHER");
+        mParser.parse(Arrays.asList("SECTION", "1", "2", "OTHER", "3", "SECTION"));
+
+        assertEquals(Arrays.asList("begin", "1", "2", "finish", "begin", "finish"),
+                parser.getCalls());
+        assertEquals("6", ((MiscLogcatItem) mParser.getSection(parser)).getTag());
+    }
+
+    /**
+     * Verifies that an {@link IStreamingParser} is given the buffered section when sections are
+     * parsed on an executor.
+     */
+    public void testStreamingParser_executor() {
+        FakeStreamingParser parser = new FakeStreamingParser();
+        mExecutor = Executors.newFixedThreadPool(1);
+        mParser.setExecutor(mExecutor);
+        mParser.addSectionParser(parser, "SECTION");
+        mParser.parse(Arrays.asList("SECTION", "1", "2"));
+
+        assertEquals(Arrays.asList("parse [1, 2]"), parser.getCalls());
+    }
+
+    /**
+     * Verifies that lines in a discarded section are dropped without being buffered, even when
+     * sections are parsed on an executor, unless they start with the prefix of the section
+     * patterns.
+     */
+    public void testDiscardedSection() {
+        RecordingNoopParser noop = new RecordingNoopParser();
+        FakeStreamingParser parser = new FakeStreamingParser();
+        mExecutor = Executors.newFixedThreadPool(1);
+        mParser.setExecutor(mExecutor);
+        mParser.addSectionParser(parser, "SECTION 1");
+        mParser.addSectionParser(noop, "SECTION \\d+");
+        mParser.parse(Arrays.asList("SECTION 2", "a", "SECTION b", "SECTION 1", "c"));
+
+        // Only a line which could start a section reaches the discarded section's parser.
+        assertEquals(Arrays.asList("SECTION b"), noop.mLines);
+        assertEquals(Arrays.asList("parse [c]"), parser.getCalls());
+    }
+
+    /**
+     * Verifies that {@link AbstractSectionParser#readLineView(LineReader)} skips the lines which
+     * would be discarded, including those discarded by a nested {@link AbstractSectionParser}.
+     */
+    public void testReadLineView() throws IOException {
+        FakeStreamingParser parser = new FakeStreamingParser();
+        mParser.addSectionParser(new NestedParser(parser), "== NESTED");
+        mParser.addSectionParser(new NoopParser(), "== .*");
+        String input = "header\n== OTHER\no1\n== NESTED\nx1\n-- KEEP\nk1\n-- DROP\nd1\n"
+                + "d2\n-- KEEP\nk2\n== OTHER\no2\n== NESTED\n-- KEEP\nk3";
+        LineReader reader = LineReader.open(ByteBuffer.wrap(input.getBytes("UTF-8")));
+        mParser.setParser(new NoopParser());
+
+        List<String> read = new ArrayList<String>();
+        LineView line;
+        while ((line = mParser.readLineView(reader)) != null) {
+            read.add(line.toString());
+            mParser.parseLine(line.toString());
+        }
+        mParser.commit();
+
+        assertEquals(Arrays.asList("== OTHER", "== NESTED", "x1", "-- KEEP", "k1", "-- DROP",
+                "-- KEEP", "k2", "== OTHER", "== NESTED", "-- KEEP", "k3"), read);
+        assertEquals(Arrays.asList("begin", "k1", "finish", "begin", "k2", "finish", "begin",
+                "k3", "finish"), parser.getCalls());
+    }
+}
@@ -17,21 +17,38 @@ package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.BugreportItem;
 import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.item.LogcatItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.ParseStats;
 
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Unit tests for {@link BugreportParser}
  */
 public class BugreportParserTest extends TestCase {
+    private File mFile = null;
+
+    @Override
+    public void tearDown() throws Exception {
+        if (mFile != null) {
+            mFile.delete();
+        }
+        super.tearDown();
+    }
 
     /**
      * Test that a bugreport can be parsed.
@@ -182,6 +199,31 @@ public class BugreportParserTest extends TestCase {
         assertEquals(parseTime("1999-01-01 01:02:04.000"), bugreport.getSystemLog().getStopTime());
     }
 
+    /**
+     * Test that a bugreport parsed with the sections on an executor is the same as one parsed on a
+     * single thread, including the fix-ups which use more than one section.
+     */
+    public void testParse_executor() {
+        List<String> lines = createFixUpLines();
+
+        BugreportItem expected = new BugreportParser().parse(lines);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BugreportParser parser = new BugreportParser();
+            parser.setExecutor(executor);
+            BugreportItem bugreport = parser.parse(lines);
+
+            assertEquals(expected.toJson().toString(), bugreport.toJson().toString());
+            assertEquals("system_server",
+                    bugreport.getSystemLog().getJavaCrashes().get(0).getApp());
+            assertNotNull(bugreport.getSystemLog().getAnrs().get(0).getTrace());
+            assertEquals(1, bugreport.getLastKmsg().getMiscEvents(
+                    KernelLogParser.KERNEL_RESET).size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Test that the command line is parsed
      */
@@ -524,6 +566,176 @@ public class BugreportParserTest extends TestCase {
         assertNotNull(bugreport.getSystemLog());
     }
 
+    /**
+     * Test that the events of a bugreport with more than one logcat section are each added to the
+     * system log exactly once.
+     */
+    public void testParse_twoLogcatSections() {
+        List<String> lines = Arrays.asList(
+                "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------",
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: java.lang.Exception",
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method1(Class.java:1)",
+                "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not responding) in process: com.android.package",
+                "04-25 17:17:08.445   312   366 E ActivityManager: Reason: keyDispatchingTimedOut",
+                "",
+                "------ MAIN LOG (logcat -b main -b system -v threadtime -d *:v) ------",
+                "04-25 18:33:27.273   115   115 I DEBUG   : *** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***",
+                "04-25 18:33:27.273   115   115 I DEBUG   : Build fingerprint: 'product:build:target'",
+                "04-25 18:33:27.273   115   115 I DEBUG   : pid: 3112, tid: 3112  >>> com.google.android.browser <<<",
+                "04-25 18:33:27.273   115   115 I DEBUG   : signal 11 (SIGSEGV), code 1 (SEGV_MAPERR), fault addr 00000000",
+                "04-25 18:40:00.000  3065  3083 E AndroidRuntime: java.lang.IllegalStateException",
+                "04-25 18:40:00.000  3065  3083 E AndroidRuntime: \tat class.method2(Class.java:2)",
+                "");
+        LogcatItem systemLog = new BugreportParser().parse(lines).getSystemLog();
+
+        assertEquals(4, systemLog.getEvents().size());
+        assertEquals(1, systemLog.getAnrs().size());
+        assertEquals(1, systemLog.getNativeCrashes().size());
+        assertEquals(2, systemLog.getJavaCrashes().size());
+        assertEquals("java.lang.Exception",
+                systemLog.getJavaCrashes().get(0).getException());
+        assertEquals("java.lang.IllegalStateException",
+                systemLog.getJavaCrashes().get(1).getException());
+    }
+
+    /**
+     * Test that only the included sections are parsed, and that the header is always parsed.
+     */
+    public void testParse_includedSections() {
+        BugreportParser parser = new BugreportParser();
+        parser.setIncludedSections(Arrays.asList(BugreportParser.Section.LAST_KMSG,
+                BugreportParser.Section.PROCRANK));
+        BugreportItem bugreport = parser.parse(createFixUpLines());
+
+        assertNotNull(bugreport.getTime());
+        assertEquals("kernel_panic", bugreport.getCommandLine().get("androidboot.bootreason"));
+        assertNotNull(bugreport.getProcrank());
+        assertNull(bugreport.getSystemLog());
+        assertEquals(1, bugreport.getLastKmsg().getMiscEvents(
+                KernelLogParser.KERNEL_RESET).size());
+    }
+
+    /**
+     * Test that excluded sections are skipped, including when they are also included, and that a
+     * section after a skipped section is still parsed.
+     */
+    public void testParse_excludedSections() {
+        BugreportParser parser = new BugreportParser();
+        parser.setIncludedSections(Arrays.asList(BugreportParser.Section.SYSTEM_LOG,
+                BugreportParser.Section.TRACES, BugreportParser.Section.LAST_KMSG));
+        parser.setExcludedSections(Arrays.asList(BugreportParser.Section.LAST_KMSG,
+                BugreportParser.Section.PROCRANK));
+        BugreportItem bugreport = parser.parse(createFixUpLines());
+
+        assertNull(bugreport.getProcrank());
+        assertNull(bugreport.getSystemLog().getJavaCrashes().get(0).getApp());
+        assertNotNull(bugreport.getSystemLog().getAnrs().get(0).getTrace());
+        // The boot reason from the command line is still added.
+        assertEquals(1, bugreport.getLastKmsg().getEvents().size());
+        assertEquals("Last boot reason: kernel_panic",
+                bugreport.getLastKmsg().getEvents().get(0).getStack());
+    }
+
+    /**
+     * Test that a bugreport parsed lazily from a file is the same as one parsed up front,
+     * including the fix-ups which use more than one section.
+     */
+    public void testParseLazily() throws IOException {
+        List<String> lines = createFixUpLines();
+        BugreportItem expected = new BugreportParser().parse(lines);
+        BugreportItem bugreport = new BugreportParser().parseLazily(writeFile(lines));
+
+        assertEquals(expected.getTime(), bugreport.getTime());
+        assertEquals("system_server",
+                bugreport.getSystemLog().getJavaCrashes().get(0).getApp());
+        assertNotNull(bugreport.getSystemLog().getAnrs().get(0).getTrace());
+        assertEquals(1, bugreport.getLastKmsg().getMiscEvents(
+                KernelLogParser.KERNEL_RESET).size());
+        assertEquals(expected.toJson().toString(), bugreport.toJson().toString());
+    }
+
+    /**
+     * Test that a section is only parsed when it is accessed, along with the sections needed for
+     * its fix-ups.
+     */
+    public void testParseLazily_onDemand() throws IOException {
+        File file = writeFile(createFixUpLines());
+        ParseStats stats = new ParseStats();
+        ParseStats.setCurrent(stats);
+        try {
+            BugreportItem bugreport = new BugreportParser().parseLazily(file);
+            assertTrue(getSectionNames(stats).isEmpty());
+
+            assertNull(bugreport.getMemInfo());
+            assertTrue(getSectionNames(stats).isEmpty());
+
+            assertNotNull(bugreport.getProcrank());
+            assertEquals(Arrays.asList("PROCRANK (procrank)"), getSectionNames(stats));
+
+            assertNotNull(bugreport.getSystemLog());
+            assertEquals(3, getSectionNames(stats).size());
+            assertTrue(getSectionNames(stats).contains(
+                    "SYSTEM LOG (logcat -v threadtime -d *:v)"));
+            assertFalse(getSectionNames(stats).contains("LAST KMSG (/proc/last_kmsg)"));
+        } finally {
+            ParseStats.setCurrent(null);
+        }
+    }
+
+    /**
+     * Test that an empty file is parsed lazily to {@code null}.
+     */
+    public void testParseLazily_empty() throws IOException {
+        assertNull(new BugreportParser().parseLazily(writeFile(Arrays.asList("", " "))));
+    }
+
+    /**
+     * Create a bugreport which needs each of the fix-ups which use more than one section.
+     */
+    private List<String> createFixUpLines() {
+        return Arrays.asList(
+                "== dumpstate: 1999-01-01 02:03:04",
+                "Command line: androidboot.bootreason=kernel_panic",
+                "------ PROCRANK (procrank) ------",
+                "  PID      Vss      Rss      Pss      Uss  cmdline",
+                "  178   87136K   81684K   52829K   50012K  system_server",
+                "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------",
+                "01-01 01:02:03.000   178   178 E AndroidRuntime: java.lang.Exception",
+                "01-01 01:02:03.000   178   178 E AndroidRuntime: \tat class.method1(Class.java:1)",
+                "01-01 17:17:08.445   312   366 E ActivityManager: ANR (application not responding) in process: com.android.package",
+                "01-01 17:17:08.445   312   366 E ActivityManager: Reason: keyDispatchingTimedOut",
+                "------ LAST KMSG (/proc/last_kmsg) ------",
+                "[    0.000000] Initializing cgroup subsys cpu",
+                "------ VM TRACES AT LAST ANR (/data/anr/traces.txt: 1999-01-01 17:17:08) ------",
+                "----- pid 2887 at 1999-01-01 17:17:08 -----",
+                "Cmd line: com.android.package",
+                "",
+                "\"main\" prio=5 tid=1 SUSPENDED",
+                "  at class.method1(Class.java:1)",
+                "",
+                "----- end 2887 -----",
+                "");
+    }
+
+    private File writeFile(List<String> lines) throws IOException {
+        mFile = File.createTempFile("BugreportParserTest", ".txt");
+        FileWriter writer = new FileWriter(mFile);
+        try {
+            writer.write(ArrayUtil.join("\n", lines));
+        } finally {
+            writer.close();
+        }
+        return mFile;
+    }
+
+    private List<String> getSectionNames(ParseStats stats) {
+        List<String> names = new ArrayList<String>();
+        for (ParseStats.Counter counter : stats.getSections()) {
+            names.add(counter.getName());
+        }
+        return names;
+    }
+
     private Date parseTime(String timeStr) throws ParseException {
         DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
         return formatter.parse(timeStr);
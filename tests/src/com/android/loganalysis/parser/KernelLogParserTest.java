@@ -51,6 +51,47 @@ public class KernelLogParserTest extends TestCase {
         assertEquals("Kernel panic", item.getStack());
     }
 
+    /**
+     * Test that an event is delivered to the listener as soon as its line is parsed.
+     */
+    public void testEventListener() {
+        RecordingEventListener<MiscKernelLogItem> listener =
+                new RecordingEventListener<MiscKernelLogItem>();
+        List<MiscKernelLogItem> events = listener.getEvents();
+        KernelLogParser parser = new KernelLogParser();
+        parser.setEventListener(listener);
+        parser.beginSection();
+        parser.acceptLine("[    0.000000] Start");
+        parser.acceptLine("[    1.000000] Kernel panic");
+        assertEquals(1, events.size());
+        assertEquals("Kernel panic", events.get(0).getStack());
+
+        KernelLogItem kernelLog = parser.finishSection();
+        assertEquals(1, events.size());
+        assertSame(events.get(0), kernelLog.getEvents().get(0));
+    }
+
+    /**
+     * Test that the listener is not sent the kernel resets after the first, since those are not
+     * added to the {@link KernelLogItem}.
+     */
+    public void testEventListener_secondReset() {
+        RecordingEventListener<MiscKernelLogItem> listener =
+                new RecordingEventListener<MiscKernelLogItem>();
+        List<MiscKernelLogItem> events = listener.getEvents();
+        KernelLogParser parser = new KernelLogParser();
+        parser.setEventListener(listener);
+        parser.beginSection();
+        parser.acceptLine("[    0.000000] Start");
+        parser.acceptLine("[    1.000000] Kernel panic");
+        parser.acceptLine("[    2.000000] Kernel panic");
+
+        KernelLogItem kernelLog = parser.finishSection();
+        assertEquals(1, kernelLog.getEvents().size());
+        assertEquals(1, events.size());
+        assertSame(kernelLog.getEvents().get(0), events.get(0));
+    }
+
     /**
      * Test that log lines formatted by dmsg are able to be parsed.
      */
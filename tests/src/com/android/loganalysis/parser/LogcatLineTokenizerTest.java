@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.parser.LogcatLineTokenizer.Format;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+
+/**
+ * Unit tests for {@link LogcatLineTokenizer}.
+ */
+public class LogcatLineTokenizerTest extends TestCase {
+
+    /**
+     * Test that a threadtime line is split into its fields.
+     */
+    public void testTokenize_threadtime() {
+        LogcatLineTokenizer tokenizer = new LogcatLineTokenizer();
+        assertTrue(tokenizer.tokenize(
+                "05-26 11:02:36.886  5689  5690 D AndroidRuntime  : CheckJNI is OFF: true"));
+        assertEquals(Format.THREADTIME, tokenizer.getFormat());
+        assertEquals("05-26 11:02:36.886", tokenizer.getTime());
+        assertEquals(5689, tokenizer.getPid());
+        assertEquals(Integer.valueOf(5690), tokenizer.getTid());
+        assertEquals("D", tokenizer.getLevel());
+        assertEquals("AndroidRuntime", tokenizer.getTag());
+        assertEquals("CheckJNI is OFF: true", tokenizer.getMessage());
+    }
+
+    /**
+     * Test that a time line is split into its fields.
+     */
+    public void testTokenize_time() {
+        LogcatLineTokenizer tokenizer = new LogcatLineTokenizer();
+        assertTrue(tokenizer.tokenize(
+                "06-04 02:32:14.002 D/dalvik(vm)(  236): GC_CONCURRENT freed 580K (2): 1"));
+        assertEquals(Format.TIME, tokenizer.getFormat());
+        assertEquals("06-04 02:32:14.002", tokenizer.getTime());
+        assertEquals(236, tokenizer.getPid());
+        assertNull(tokenizer.getTid());
+        assertEquals("D", tokenizer.getLevel());
+        assertEquals("dalvik(vm)", tokenizer.getTag());
+        assertEquals("GC_CONCURRENT freed 580K (2): 1", tokenizer.getMessage());
+    }
+
+    /**
+     * Test that lines which are not logcat are not tokenized, and that the format of a line is
+     * found after a line of the other format.
+     */
+    public void testTokenize_mismatch() {
+        LogcatLineTokenizer tokenizer = new LogcatLineTokenizer();
+        assertFalse(tokenizer.tokenize("--------- beginning of /dev/log/main"));
+        assertNull(tokenizer.getFormat());
+        assertFalse(tokenizer.tokenize("05-26 11:02:36.886  5689  5690 d tag: message"));
+        assertFalse(tokenizer.tokenize("05-26 11:02:36.886 D/tag(abc): message"));
+        assertTrue(tokenizer.tokenize("05-26 11:02:36.886 D/tag( 1): message"));
+        assertEquals(Format.TIME, tokenizer.getFormat());
+        assertTrue(tokenizer.tokenize("05-26 11:02:36.886  1  2 D tag: message"));
+        assertEquals(Format.THREADTIME, tokenizer.getFormat());
+    }
+
+    /**
+     * Test that a pid which does not fit in an int throws like {@link Integer#parseInt(String)}.
+     */
+    public void testTokenize_overflow() {
+        LogcatLineTokenizer tokenizer = new LogcatLineTokenizer();
+        assertTrue(tokenizer.tokenize("05-26 11:02:36.886  2147483647  1 D tag: message"));
+        assertEquals(Integer.MAX_VALUE, tokenizer.getPid());
+        try {
+            tokenizer.tokenize("05-26 11:02:36.886  2147483648  1 D tag: message");
+            fail("NumberFormatException not thrown");
+        } catch (NumberFormatException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that the tokenizer gives the same fields as the regexes for lines which are built from
+     * the characters that the regexes treat specially.
+     */
+    public void testTokenize_regexEquivalence() {
+        final String[] timestamps = {"05-26 11:02:36.886", "05-26 11:02:36x886",
+                "05-26 11:02:36\n886", "5-26 11:02:36.886"};
+        final String[] pieces = {" ", "  ", "\t", ":", ": ", " : ", "(", ")", "): ", "( 12): ",
+                "/", "D", "d", "_", "1", "23", "tag", "\r", "\u2028", "\n"};
+        LogcatLineTokenizer tokenizer = new LogcatLineTokenizer();
+        // The regex gives a space back to the tag when there is no other tag before the ": ".
+        assertTokenized(tokenizer, "05-26 11:02:36.886  1  2 D  : message");
+        assertEquals(" ", tokenizer.getTag());
+        assertTokenized(tokenizer, "05-26 11:02:36.886  1  2 D   :  : message");
+        assertTokenized(tokenizer, "05-26 11:02:36.886  1  2 D\r: message\r");
+        Random random = new Random(0);
+        for (int i = 0; i < 200000; i++) {
+            StringBuilder line = new StringBuilder(timestamps[random.nextInt(
+                    timestamps.length)]);
+            for (int j = random.nextInt(12); j > 0; j--) {
+                // Mostly use the pieces of a well formed line, so that many lines match.
+                line.append(pieces[random.nextInt(random.nextBoolean() ? 17 : pieces.length)]);
+            }
+            assertTokenized(tokenizer, line.toString());
+        }
+    }
+
+    /**
+     * Assert that the tokenizer gives the same result as matching a line with
+     * {@link LogcatLineTokenizer#THREADTIME_LINE} and {@link LogcatLineTokenizer#TIME_LINE}.
+     */
+    private void assertTokenized(LogcatLineTokenizer tokenizer, String line) {
+        final boolean tokenized = tokenizer.tokenize(line);
+        Matcher m = LogcatLineTokenizer.THREADTIME_LINE.matcher(line);
+        Matcher tm = LogcatLineTokenizer.TIME_LINE.matcher(line);
+        if (m.matches()) {
+            assertTrue(line, tokenized);
+            assertEquals(line, Format.THREADTIME, tokenizer.getFormat());
+            assertEquals(line, m.group(1), tokenizer.getTime());
+            assertEquals(line, Integer.parseInt(m.group(2)), tokenizer.getPid());
+            assertEquals(line, Integer.valueOf(m.group(3)), tokenizer.getTid());
+            assertEquals(line, m.group(4), tokenizer.getLevel());
+            assertEquals(line, m.group(5), tokenizer.getTag());
+            assertEquals(line, m.group(6), tokenizer.getMessage());
+        } else if (tm.matches()) {
+            assertTrue(line, tokenized);
+            assertEquals(line, Format.TIME, tokenizer.getFormat());
+            assertEquals(line, tm.group(1), tokenizer.getTime());
+            assertEquals(line, tm.group(2), tokenizer.getLevel());
+            assertEquals(line, tm.group(3), tokenizer.getTag());
+            assertEquals(line, Integer.parseInt(tm.group(4)), tokenizer.getPid());
+            assertNull(line, tokenizer.getTid());
+            assertEquals(line, tm.group(5), tokenizer.getMessage());
+        } else {
+            assertFalse(line, tokenized);
+            assertNull(line, tokenizer.getFormat());
+        }
+    }
+}
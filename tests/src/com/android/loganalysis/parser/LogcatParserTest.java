@@ -15,10 +15,12 @@
  */
 package com.android.loganalysis.parser;
 
+import com.android.loganalysis.item.AnrItem;
 import com.android.loganalysis.item.JavaCrashItem;
 import com.android.loganalysis.item.LogcatItem;
 import com.android.loganalysis.item.MiscLogcatItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.SymbolTable;
 
 import junit.framework.TestCase;
 
@@ -617,6 +619,143 @@ public class LogcatParserTest extends TestCase {
         assertEquals("com.android.commands.input.Input", crash.getApp());
     }
 
+    /**
+     * Test that the tags of events are interned in the {@link SymbolTable} of the parser.
+     */
+    public void testSymbolTable() {
+        List<String> lines = Arrays.asList(
+                "04-25 18:33:27.273   395   637 W Watchdog: find me",
+                "04-25 18:33:28.273   395   637 W Watchdog: find me too");
+        SymbolTable symbols = new SymbolTable();
+        String tag = symbols.intern(new String("Watchdog"));
+
+        LogcatParser parser = new LogcatParser("2012");
+        parser.setSymbolTable(symbols);
+        parser.addPattern(Pattern.compile("find.*"), null, "Watchdog", "WatchdogCategory");
+        LogcatItem logcat = parser.parse(lines);
+
+        List<MiscLogcatItem> matchedEvents = logcat.getMiscEvents("WatchdogCategory");
+        assertEquals(2, matchedEvents.size());
+        assertSame(tag, matchedEvents.get(0).getTag());
+        assertSame(tag, matchedEvents.get(1).getTag());
+    }
+
+    /**
+     * Test that an ANR is delivered to the listener when the next ANR of the thread starts, and
+     * that an event which matches a pattern is delivered straight away.
+     */
+    public void testEventListener() {
+        RecordingEventListener<MiscLogcatItem> listener =
+                new RecordingEventListener<MiscLogcatItem>();
+        List<MiscLogcatItem> events = listener.getEvents();
+        LogcatParser parser = new LogcatParser("2012");
+        parser.setEventListener(listener);
+        parser.addPattern(Pattern.compile("find me"), null, "Watchdog", "WatchdogCategory");
+        parser.beginSection();
+        parser.acceptLine("04-25 17:17:08.445   312   366 E ActivityManager: ANR in com.android.a");
+        parser.acceptLine("04-25 17:17:08.445   312   366 E ActivityManager: Reason: timedOut");
+        parser.acceptLine("04-25 17:17:09.445   395   637 W Watchdog: find me");
+        assertEquals(1, events.size());
+        assertEquals("WatchdogCategory", events.get(0).getCategory());
+
+        parser.acceptLine("04-25 17:17:10.445   312   366 E ActivityManager: ANR in com.android.b");
+        assertEquals(2, events.size());
+        assertEquals("com.android.a", ((AnrItem) events.get(1)).getApp());
+
+        LogcatItem logcat = parser.finishSection();
+        assertEquals(3, events.size());
+        assertEquals("com.android.b", ((AnrItem) events.get(2)).getApp());
+        // The events of the item are in the order that they started.
+        assertEquals(Arrays.asList(events.get(1), events.get(0), events.get(2)),
+                logcat.getEvents());
+    }
+
+    /**
+     * Test that a Java crash is delivered to the listener when its lines time out, and that later
+     * lines of the thread start a new crash.
+     */
+    public void testEventListener_timeout() {
+        RecordingEventListener<MiscLogcatItem> listener =
+                new RecordingEventListener<MiscLogcatItem>();
+        List<MiscLogcatItem> events = listener.getEvents();
+        LogcatParser parser = new LogcatParser("2012");
+        parser.setEventListener(listener);
+        parser.setGroupTimeout(1000);
+        parser.beginSection();
+        parser.acceptLine("04-25 09:55:47.799  3064  3082 E AndroidRuntime: java.lang.Exception");
+        parser.acceptLine(
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method1(Class.java:1)");
+        parser.acceptLine("04-25 09:55:48.700  3064  3064 I Other: not yet");
+        assertEquals(0, events.size());
+        parser.acceptLine("04-25 09:55:48.799  3064  3064 I Other: timed out");
+        assertEquals(1, events.size());
+        assertEquals("java.lang.Exception", ((JavaCrashItem) events.get(0)).getException());
+
+        parser.acceptLine("04-25 09:55:49.799  3064  3082 E AndroidRuntime: java.lang.Error");
+        parser.acceptLine(
+                "04-25 09:55:49.799  3064  3082 E AndroidRuntime: \tat class.method2(Class.java:2)");
+        LogcatItem logcat = parser.finishSection();
+        assertEquals(2, events.size());
+        assertEquals("java.lang.Error", ((JavaCrashItem) events.get(1)).getException());
+        assertEquals(events, logcat.getEvents());
+    }
+
+    /**
+     * Test that the group which was least recently added to is closed when there are too many open
+     * groups, and that the events are still in the order that they started.
+     */
+    public void testMaxOpenGroups() {
+        RecordingEventListener<MiscLogcatItem> listener =
+                new RecordingEventListener<MiscLogcatItem>();
+        List<MiscLogcatItem> events = listener.getEvents();
+        LogcatParser parser = new LogcatParser("2012");
+        parser.setEventListener(listener);
+        parser.setMaxOpenGroups(2);
+        parser.beginSection();
+        parser.acceptLine("04-25 09:55:47.799  3064  3082 E AndroidRuntime: java.lang.Exception");
+        parser.acceptLine("04-25 17:17:08.445   312   366 E ActivityManager: ANR in com.android.a");
+        parser.acceptLine(
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method1(Class.java:1)");
+        assertEquals(0, events.size());
+
+        // The ANR is closed since the Java crash had a line more recently.
+        parser.acceptLine("04-25 09:55:47.799  3065  3083 E AndroidRuntime: java.lang.Error");
+        assertEquals(1, events.size());
+        assertEquals("com.android.a", ((AnrItem) events.get(0)).getApp());
+        parser.acceptLine(
+                "04-25 09:55:47.799  3065  3083 E AndroidRuntime: \tat class.method2(Class.java:2)");
+
+        LogcatItem logcat = parser.finishSection();
+        assertEquals(3, logcat.getEvents().size());
+        assertEquals("java.lang.Exception",
+                ((JavaCrashItem) logcat.getEvents().get(0)).getException());
+        assertSame(events.get(0), logcat.getEvents().get(1));
+        assertEquals("java.lang.Error",
+                ((JavaCrashItem) logcat.getEvents().get(2)).getException());
+    }
+
+    /**
+     * Test that there is no limit on open groups by default, so that the lines of a Java crash are
+     * kept together however many other groups are open.
+     */
+    public void testMaxOpenGroups_default() {
+        LogcatParser parser = new LogcatParser("2012");
+        parser.beginSection();
+        parser.acceptLine("04-25 09:55:47.799  3064  3082 E AndroidRuntime: java.lang.Exception");
+        for (int tid = 10000; tid < 15000; tid++) {
+            parser.acceptLine(String.format(
+                    "04-25 09:55:47.799  3065 %5d E AndroidRuntime: java.lang.Error", tid));
+        }
+        parser.acceptLine(
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method1(Class.java:1)");
+
+        LogcatItem logcat = parser.finishSection();
+        assertEquals(5001, logcat.getEvents().size());
+        JavaCrashItem crash = (JavaCrashItem) logcat.getEvents().get(0);
+        assertEquals("java.lang.Exception", crash.getException());
+        assertEquals("java.lang.Exception\n\tat class.method1(Class.java:1)", crash.getStack());
+    }
+
     /**
      * Test that an empty input returns {@code null}.
      */
@@ -68,5 +68,27 @@ public class ProcrankParserTest extends TestCase {
         ProcrankItem item = new ProcrankParser().parse(Arrays.asList(""));
         assertNull(item);
     }
-}
 
+    /**
+     * Test that lines streamed after the end of the table are kept in the text but not parsed.
+     */
+    public void testStreaming() {
+        List<String> inputBlock = Arrays.asList(
+                "  PID      Vss      Rss      Pss      Uss  cmdline",
+                "  178   87136K   81684K   52829K   50012K  system_server",
+                "                          ------   ------  ------",
+                " 1313   78128K   77996K   48603K   45812K  com.google.android.apps.maps");
+
+        ProcrankParser parser = new ProcrankParser();
+        parser.beginSection();
+        for (String line : inputBlock) {
+            parser.acceptLine(line);
+        }
+        parser.acceptLine("");
+        ProcrankItem procrank = parser.finishSection();
+
+        assertEquals(1, procrank.getPids().size());
+        assertEquals((Integer) 87136, procrank.getVss(178));
+        assertEquals(ArrayUtil.join("\n", inputBlock), procrank.getText());
+    }
+}
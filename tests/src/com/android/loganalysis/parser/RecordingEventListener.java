@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.item.IItem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link IEventListener} for tests which records the events it is sent.
+ */
+class RecordingEventListener<T extends IItem> implements IEventListener<T> {
+    private final List<T> mEvents = new ArrayList<T>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEvent(T event) {
+        mEvents.add(event);
+    }
+
+    /**
+     * Get the events in the order they were sent, which is updated as more are sent.
+     */
+    public List<T> getEvents() {
+        return mEvents;
+    }
+}
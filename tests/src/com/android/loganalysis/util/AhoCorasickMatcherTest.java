@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link AhoCorasickMatcher}.
+ */
+public class AhoCorasickMatcherTest extends TestCase {
+
+    /**
+     * Test that overlapping literals and literals which are suffixes of others are found.
+     */
+    public void testFind() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList(
+                "he", "she", "his", "hers", "\u00e9t\u00e9", "t\u00e9"));
+        assertEquals(Arrays.asList(true, true, false, true, false, false),
+                find(matcher, "ushers"));
+        assertEquals(Arrays.asList(false, false, true, false, false, false),
+                find(matcher, "this"));
+        assertEquals(Arrays.asList(false, false, false, false, true, true),
+                find(matcher, "un \u00e9t\u00e9"));
+        assertEquals(Arrays.asList(false, false, false, false, false, true),
+                find(matcher, "\u00e9t\u00e8 t\u00e9"));
+        assertEquals(Arrays.asList(false, false, false, false, false, false),
+                find(matcher, ""));
+    }
+
+    /**
+     * Test that an empty literal is found in any text, and that no literals find nothing.
+     */
+    public void testFind_empty() {
+        assertEquals(Arrays.asList(true, false), find(new AhoCorasickMatcher(
+                Arrays.asList("", "a")), "b"));
+        assertEquals(0, new AhoCorasickMatcher(new ArrayList<String>()).getLiteralCount());
+        new AhoCorasickMatcher(new ArrayList<String>()).find("abc", new boolean[0]);
+    }
+
+    /**
+     * Test that the results agree with {@link String#contains(CharSequence)} for random literals
+     * and texts.
+     */
+    public void testFind_random() {
+        Random random = new Random(0);
+        for (int round = 0; round < 50; round++) {
+            List<String> literals = new ArrayList<String>();
+            for (int i = 0; i < 10; i++) {
+                literals.add(randomString(random, 1 + random.nextInt(4)));
+            }
+            AhoCorasickMatcher matcher = new AhoCorasickMatcher(literals);
+            for (int t = 0; t < 20; t++) {
+                String text = randomString(random, random.nextInt(30));
+                List<Boolean> expected = new ArrayList<Boolean>();
+                for (String literal : literals) {
+                    expected.add(text.contains(literal));
+                }
+                assertEquals(text, expected, find(matcher, text));
+            }
+        }
+    }
+
+    private String randomString(Random random, int length) {
+        final String chars = "ab\u00e9c";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
+    private List<Boolean> find(AhoCorasickMatcher matcher, String text) {
+        boolean[] found = new boolean[matcher.getLiteralCount()];
+        matcher.find(text, found);
+        List<Boolean> result = new ArrayList<Boolean>();
+        for (boolean b : found) {
+            result.add(b);
+        }
+        return result;
+    }
+}
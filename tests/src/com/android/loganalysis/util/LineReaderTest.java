@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for {@link LineReader}.
+ */
+public class LineReaderTest extends TestCase {
+    private static final String INPUT = "line 1\nline 2\r\n\n  \nlast line";
+    private static final List<String> LINES = Arrays.asList(
+            "line 1", "line 2", "", "  ", "last line");
+
+    private File mFile = null;
+
+    @Override
+    public void tearDown() throws Exception {
+        if (mFile != null) {
+            mFile.delete();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Test that lines are read from a mapped file.
+     */
+    public void testOpen_file() throws IOException {
+        assertEquals(LINES, readAll(LineReader.open(writeFile(INPUT.getBytes("UTF-8")))));
+    }
+
+    /**
+     * Test that lines are read from a stream.
+     */
+    public void testOpen_stream() throws IOException {
+        assertEquals(LINES, readAll(LineReader.open(
+                new ByteArrayInputStream(INPUT.getBytes("UTF-8")))));
+    }
+
+    /**
+     * Test that empty input does not return any lines.
+     */
+    public void testEmpty() throws IOException {
+        assertTrue(readAll(LineReader.open(writeFile(new byte[0]))).isEmpty());
+        assertTrue(readAll(LineReader.open(new ByteArrayInputStream(new byte[0]))).isEmpty());
+    }
+
+    /**
+     * Test that a trailing newline does not create an extra empty line.
+     */
+    public void testTrailingNewline() throws IOException {
+        LineReader reader = LineReader.open(new ByteArrayInputStream("a\nb\n".getBytes("UTF-8")));
+        assertEquals(Arrays.asList("a", "b"), readAll(reader));
+    }
+
+    /**
+     * Test that lines longer than the stream buffer are read correctly.
+     */
+    public void testLongLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        final String longLine = sb.toString();
+        LineReader reader = LineReader.open(new ByteArrayInputStream(
+                String.format("short\n%s\nshort", longLine).getBytes("UTF-8")));
+        assertEquals(Arrays.asList("short", longLine, "short"), readAll(reader));
+    }
+
+    /**
+     * Test that non-ASCII lines are decoded as UTF-8.
+     */
+    public void testUtf8() throws IOException {
+        final String line = "caf\u00e9 \u2603";
+        LineReader reader = LineReader.open(writeFile((line + "\nascii").getBytes("UTF-8")));
+        assertEquals(Arrays.asList(line, "ascii"), readAll(reader));
+    }
+
+    /**
+     * Test the {@link LineView} helpers.
+     */
+    public void testLineView() throws IOException {
+        LineReader reader = LineReader.open(new ByteArrayInputStream(
+                "------ SECTION ------\n \t\n".getBytes("UTF-8")));
+        LineView view = reader.readLineView();
+        assertEquals(21, view.length());
+        assertEquals('-', view.byteAt(0));
+        assertTrue(view.startsWith("------ ".getBytes("UTF-8")));
+        assertFalse(view.startsWith("DUMP OF".getBytes("UTF-8")));
+        assertFalse(view.isBlank());
+
+        view = reader.readLineView();
+        assertTrue(view.isBlank());
+        assertNull(reader.readLineView());
+        reader.close();
+    }
+
+    /**
+     * Test that lines are read from a {@link ByteBuffer} without changing its position.
+     */
+    public void testOpen_buffer() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(("skipped\n" + INPUT).getBytes("UTF-8"));
+        buffer.position(8);
+        assertEquals(LINES, readAll(LineReader.open(buffer)));
+        assertEquals(8, buffer.position());
+    }
+
+    /**
+     * Test that the offset of the next line is tracked for each kind of input.
+     */
+    public void testGetOffset() throws IOException {
+        List<Long> expected = Arrays.asList(0L, 7L, 15L, 16L, 19L, 28L);
+        assertEquals(expected, readOffsets(LineReader.open(writeFile(INPUT.getBytes("UTF-8")))));
+        assertEquals(expected, readOffsets(LineReader.open(
+                new ByteArrayInputStream(INPUT.getBytes("UTF-8")))));
+        assertEquals(expected, readOffsets(LineReader.open(
+                ByteBuffer.wrap(INPUT.getBytes("UTF-8")))));
+    }
+
+    /**
+     * Test that the offset is tracked when the stream buffer is compacted.
+     */
+    public void testGetOffset_compact() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("0123456789\n");
+        }
+        LineReader reader = LineReader.open(new ByteArrayInputStream(
+                sb.toString().getBytes("UTF-8")));
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(i * 11L, reader.getOffset());
+            assertEquals("0123456789", reader.readLine());
+        }
+        assertEquals(220000L, reader.getOffset());
+        reader.close();
+    }
+
+    /**
+     * Test that lines which do not start with a prefix are skipped, for each kind of input.
+     */
+    public void testReadLineView_prefixes() throws IOException {
+        String input = "line 1\n-- a\r\nline 2\n-\n== b\n\n-- c";
+        List<String> expected = Arrays.asList("-- a", "== b", "-- c");
+        List<Long> expectedOffsets = Arrays.asList(7L, 22L, 28L);
+        byte[] bytes = input.getBytes("UTF-8");
+        assertEquals(expected, readPrefixed(LineReader.open(writeFile(bytes)), null));
+        List<Long> offsets = new ArrayList<Long>();
+        assertEquals(expected, readPrefixed(LineReader.open(new ByteArrayInputStream(bytes)),
+                offsets));
+        assertEquals(expectedOffsets, offsets);
+        offsets.clear();
+        assertEquals(expected, readPrefixed(LineReader.open(ByteBuffer.wrap(bytes)), offsets));
+        assertEquals(expectedOffsets, offsets);
+
+        assertEquals(Collections.emptyList(), readPrefixed(LineReader.open(
+                new ByteArrayInputStream("-\n=".getBytes("UTF-8"))), null));
+    }
+
+    /**
+     * Test that lines are skipped across refills of the stream buffer.
+     */
+    public void testReadLineView_prefixesCompact() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append(i % 1000 == 999 ? "-- 3456789\n" : "0123456789\n");
+        }
+        List<Long> offsets = new ArrayList<Long>();
+        List<String> lines = readPrefixed(LineReader.open(new ByteArrayInputStream(
+                sb.toString().getBytes("UTF-8"))), offsets);
+        assertEquals(20, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals("-- 3456789", lines.get(i));
+            assertEquals((i * 1000 + 999) * 11L, (long) offsets.get(i));
+        }
+    }
+
+    private List<String> readPrefixed(LineReader reader, List<Long> offsets) throws IOException {
+        byte[][] prefixes = {"-- ".getBytes("UTF-8"), "== ".getBytes("UTF-8")};
+        List<String> lines = new ArrayList<String>();
+        try {
+            LineView line;
+            while ((line = reader.readLineView(prefixes)) != null) {
+                lines.add(line.toString());
+                if (offsets != null) {
+                    offsets.add(reader.getLineOffset());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private List<Long> readOffsets(LineReader reader) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        try {
+            offsets.add(reader.getOffset());
+            while (reader.readLine() != null) {
+                offsets.add(reader.getOffset());
+            }
+        } finally {
+            reader.close();
+        }
+        return offsets;
+    }
+
+    private File writeFile(byte[] contents) throws IOException {
+        mFile = File.createTempFile("LineReaderTest", ".txt");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return mFile;
+    }
+
+    private List<String> readAll(LineReader reader) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
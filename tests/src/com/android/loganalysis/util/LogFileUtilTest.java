@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import com.android.loganalysis.util.LogFileUtil.Format;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Unit tests for {@link LogFileUtil}.
+ */
+public class LogFileUtilTest extends TestCase {
+    private static final String BUGREPORT = "== dumpstate: 2012-04-26 12:13:14\n" +
+            "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------\n";
+    private static final List<String> BUGREPORT_LINES = Arrays.asList(
+            "== dumpstate: 2012-04-26 12:13:14",
+            "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------");
+
+    private File mFile = null;
+
+    @Override
+    public void tearDown() throws Exception {
+        if (mFile != null) {
+            mFile.delete();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Test that plain text files are read as is.
+     */
+    public void testOpenLineReader_text() throws IOException {
+        writeFile(BUGREPORT.getBytes("UTF-8"));
+        assertEquals(Format.TEXT, LogFileUtil.getFormat(mFile));
+        assertEquals(BUGREPORT_LINES, readAll(LogFileUtil.openLineReader(mFile)));
+    }
+
+    /**
+     * Test that gzip files are decompressed.
+     */
+    public void testOpenLineReader_gzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(BUGREPORT.getBytes("UTF-8"));
+        gzip.close();
+
+        writeFile(bytes.toByteArray());
+        assertEquals(Format.GZIP, LogFileUtil.getFormat(mFile));
+        assertEquals(BUGREPORT_LINES, readAll(LogFileUtil.openLineReader(mFile)));
+        assertEquals(BUGREPORT_LINES, readAll(LogFileUtil.openLineReader(
+                new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    /**
+     * Test that the main entry of a zip file is found with {@code main_entry.txt}.
+     */
+    public void testOpenLineReader_zipMainEntry() throws IOException {
+        byte[] zip = createZip("version.txt", "1.0",
+                "bugreport-old.txt", "old bugreport that is a lot longer than the main one",
+                "bugreport-main.txt", BUGREPORT,
+                "main_entry.txt", "bugreport-main.txt");
+
+        writeFile(zip);
+        assertEquals(Format.ZIP, LogFileUtil.getFormat(mFile));
+        assertEquals(BUGREPORT_LINES, readAll(LogFileUtil.openLineReader(mFile)));
+    }
+
+    /**
+     * Test that the bugreport entry of a zip file is found without {@code main_entry.txt}.
+     */
+    public void testOpenLineReader_zipBugreportEntry() throws IOException {
+        byte[] zip = createZip("version.txt", "1.0",
+                "FS/data/anr/traces.txt", "traces that are longer than the bugreport itself",
+                "bugreport-main.txt", BUGREPORT);
+
+        writeFile(zip);
+        assertEquals(BUGREPORT_LINES, readAll(LogFileUtil.openLineReader(mFile)));
+        assertEquals(BUGREPORT_LINES, readAll(LogFileUtil.openLineReader(
+                new ByteArrayInputStream(zip))));
+    }
+
+    /**
+     * Test that a zip file without any text entries cannot be opened.
+     */
+    public void testOpenLineReader_zipNoEntry() throws IOException {
+        writeFile(createZip("image.png", "not text"));
+        try {
+            LogFileUtil.openLineReader(mFile);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private byte[] createZip(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+            zip.write(namesAndContents[i + 1].getBytes("UTF-8"));
+            zip.closeEntry();
+        }
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private void writeFile(byte[] contents) throws IOException {
+        mFile = File.createTempFile("LogFileUtilTest", ".bin");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+
+    private List<String> readAll(LineReader reader) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -54,4 +54,108 @@ public class LogPatternUtilTest extends TestCase {
         assertEquals("cat2", patternUtil.checkMessage("123", "E/tag1"));
         assertEquals("cat3", patternUtil.checkMessage("123", "E/tag2"));
     }
+
+    /**
+     * Test pattern matching with a level and tag, either of which may be a wildcard.
+     */
+    public void testLevelTagMatching() {
+        LogPatternUtil patternUtil = new LogPatternUtil();
+        patternUtil.addPattern(Pattern.compile("abc"), "E", "tag1", "cat1");
+        patternUtil.addPattern(Pattern.compile("abc"), "W", null, "cat2");
+        patternUtil.addPattern(Pattern.compile("abc"), null, "tag2", "cat3");
+        patternUtil.addPattern(Pattern.compile("123"), null, null, "cat4");
+
+        assertEquals("cat1", patternUtil.checkMessage("abc", "E", "tag1"));
+        assertNull(patternUtil.checkMessage("abc", "E", "tag3"));
+        assertEquals("cat2", patternUtil.checkMessage("abc", "W", "tag1"));
+        assertEquals("cat3", patternUtil.checkMessage("abc", "E", "tag2"));
+        assertEquals("cat4", patternUtil.checkMessage("123", "I", "tag3"));
+        assertNull(patternUtil.checkMessage("xyz", "E", "tag1"));
+        assertNull(patternUtil.checkMessage("abc"));
+    }
+
+    /**
+     * Test that the pattern which was added first wins when more than one pattern matches.
+     */
+    public void testPriority() {
+        LogPatternUtil patternUtil = new LogPatternUtil();
+        patternUtil.addPattern(Pattern.compile("a.*"), null, null, "cat1");
+        patternUtil.addPattern(Pattern.compile("ab"), "E", "tag", "cat2");
+        patternUtil.addPattern(Pattern.compile("b.*"), "E", "tag", "cat3");
+        patternUtil.addPattern(Pattern.compile("bc"), null, "tag", "cat4");
+        patternUtil.addPattern(Pattern.compile("c"), null, "tag", "cat5");
+        patternUtil.addPattern(Pattern.compile("c"), "E", null, "cat6");
+
+        assertEquals("cat1", patternUtil.checkMessage("ab", "E", "tag"));
+        assertEquals("cat3", patternUtil.checkMessage("bc", "E", "tag"));
+        assertEquals("cat4", patternUtil.checkMessage("bc", "W", "tag"));
+        assertEquals("cat5", patternUtil.checkMessage("c", "E", "tag"));
+        assertEquals("cat6", patternUtil.checkMessage("c", "E", "other"));
+
+        patternUtil = new LogPatternUtil();
+        for (int i = 0; i < 10; i++) {
+            patternUtil.addPattern(Pattern.compile("abc"), String.format("cat%d", i));
+        }
+        assertEquals("cat0", patternUtil.checkMessage("abc"));
+    }
+
+    /**
+     * Test that a message is only matched against the patterns for its level and tag.
+     */
+    public void testLevelTagMatching_candidates() {
+        LogPatternUtil patternUtil = new LogPatternUtil();
+        for (int i = 0; i < 100; i++) {
+            // Patterns without a literal, which are always run for their level and tag
+            patternUtil.addPattern(Pattern.compile(String.format("\\d{%d}", i)), "E",
+                    String.format("tag%d", i), "cat");
+        }
+        patternUtil.addPattern(Pattern.compile("\\d+"), "E", null, "cat");
+
+        ParseStats stats = new ParseStats();
+        ParseStats.setCurrent(stats);
+        try {
+            assertNull(patternUtil.checkMessage("abc", "E", "tag5"));
+            assertNull(patternUtil.checkMessage("abc", "I", "tag5"));
+        } finally {
+            ParseStats.setCurrent(null);
+        }
+        long attempts = 0;
+        for (ParseStats.RegexCounter counter : stats.getRegexes()) {
+            attempts += counter.getAttempts();
+        }
+        assertEquals(2, attempts);
+    }
+
+    /**
+     * Test that a pattern's regex is only run if the message contains its required literal.
+     */
+    public void testRequiredLiteral() {
+        LogPatternUtil patternUtil = new LogPatternUtil();
+        patternUtil.addPattern(Pattern.compile(".*avc:\\s.*scontext=(\\w*).*"), "cat1");
+        patternUtil.addPattern(Pattern.compile("Kernel panic.*"), "cat2");
+        patternUtil.addPattern(Pattern.compile(".*panic.*"), "E", null, "cat3");
+        patternUtil.addPattern(Pattern.compile("\\w+ \\d+"), "cat4");
+
+        ParseStats stats = new ParseStats();
+        ParseStats.setCurrent(stats);
+        try {
+            assertNull(patternUtil.checkMessage("nothing to see here"));
+            assertEquals(1, getAttempts(stats));
+            assertEquals("cat1", patternUtil.checkMessage("avc: denied scontext=u:r:foo:s0"));
+            assertEquals("cat2", patternUtil.checkMessage("Kernel panic - not syncing"));
+            assertEquals("cat4", patternUtil.checkMessage("panic 123"));
+            assertEquals("cat3", patternUtil.checkMessage("a panic", "E", "tag"));
+            assertNull(patternUtil.checkMessage("scontext=", "E", "tag"));
+        } finally {
+            ParseStats.setCurrent(null);
+        }
+    }
+
+    private long getAttempts(ParseStats stats) {
+        long attempts = 0;
+        for (ParseStats.RegexCounter counter : stats.getRegexes()) {
+            attempts += counter.getAttempts();
+        }
+        return attempts;
+    }
 }
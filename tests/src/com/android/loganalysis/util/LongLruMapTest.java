@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link LongLruMap}.
+ */
+public class LongLruMapTest extends TestCase {
+
+    /**
+     * Test that values can be added, found, replaced and removed.
+     */
+    public void testPutGetRemove() {
+        LongLruMap<String> map = new LongLruMap<String>();
+        assertNull(map.put(1L, "a"));
+        assertNull(map.put(-1L, "b"));
+        assertNull(map.put(1L << 32, "c"));
+        assertEquals(3, map.size());
+
+        assertEquals("a", map.get(1L));
+        assertEquals("b", map.get(-1L));
+        assertEquals("c", map.get(1L << 32));
+        assertNull(map.get(2L));
+
+        assertEquals("a", map.put(1L, "d"));
+        assertEquals("d", map.get(1L));
+        assertEquals(3, map.size());
+
+        assertEquals("b", map.remove(-1L));
+        assertNull(map.remove(-1L));
+        assertNull(map.get(-1L));
+        assertEquals(2, map.size());
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(1L));
+        assertNull(map.getEldest());
+    }
+
+    /**
+     * Test that the entries are in the order that they were accessed.
+     */
+    public void testAccessOrder() {
+        LongLruMap<String> map = new LongLruMap<String>(2);
+        map.put(1L, "a");
+        map.put(2L, "b");
+        map.put(3L, "c");
+        assertEquals("a", map.getEldest());
+
+        map.get(1L);
+        assertEquals("b", map.getEldest());
+        map.put(2L, "d");
+        assertEquals("c", map.removeEldest());
+        assertEquals("a", map.removeEldest());
+        assertEquals("d", map.removeEldest());
+        assertNull(map.removeEldest());
+        assertEquals(0, map.size());
+    }
+
+    /**
+     * Test that random operations give the same results as a {@link LinkedHashMap} in access
+     * order, with keys that clash in the hash table.
+     */
+    public void testRandomOperations() {
+        Random random = new Random(25);
+        LongLruMap<Long> map = new LongLruMap<Long>();
+        LinkedHashMap<Long, Long> expected = new LinkedHashMap<Long, Long>(16, 0.75f, true);
+        for (int i = 0; i < 100000; i++) {
+            // Few distinct keys, which only differ in their high bits.
+            long key = ((long) random.nextInt(300)) << 40;
+            int op = random.nextInt(10);
+            if (op < 4) {
+                Long value = Long.valueOf(i);
+                assertEquals(expected.put(key, value), map.put(key, value));
+            } else if (op < 7) {
+                assertEquals(expected.get(key), map.get(key));
+            } else if (op < 9) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Iterator<Map.Entry<Long, Long>> iterator = expected.entrySet().iterator();
+                Long value = null;
+                if (iterator.hasNext()) {
+                    value = iterator.next().getValue();
+                    iterator.remove();
+                }
+                assertEquals(value, map.removeEldest());
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Long value : expected.values()) {
+            assertEquals(value, map.removeEldest());
+        }
+        assertEquals(0, map.size());
+    }
+}
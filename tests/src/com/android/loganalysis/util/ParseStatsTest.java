@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import com.android.loganalysis.parser.BugreportParser;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Unit tests for {@link ParseStats}.
+ */
+public class ParseStatsTest extends TestCase {
+
+    private static final List<String> BUGREPORT = Arrays.asList(
+            "== dumpstate: 2012-04-25 20:45:10",
+            "------ MEMORY INFO (/proc/meminfo) ------",
+            "MemTotal:         353332 kB",
+            "MemFree:           65420 kB",
+            "------ KERNEL LOG (dmesg) ------",
+            "<6>[    0.000000] Initializing cgroup subsys cpu",
+            "<3>[    1.000000] Kernel panic",
+            "------ SECTION ------");
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        ParseStats.setCurrent(null);
+        super.tearDown();
+    }
+
+    /**
+     * Test that the sections, parsers and regexes of a bugreport are reported.
+     */
+    public void testBugreport() {
+        ParseStats stats = new ParseStats();
+        ParseStats.setCurrent(stats);
+        new BugreportParser().parse(BUGREPORT);
+
+        ParseStats.Counter memInfo = getCounter(stats.getSections(),
+                "MEMORY INFO (/proc/meminfo)");
+        assertEquals(1, memInfo.getRuns());
+        assertEquals(2, memInfo.getLines());
+        assertEquals(BUGREPORT.get(2).length() + BUGREPORT.get(3).length() + 2,
+                memInfo.getChars());
+        assertTrue(memInfo.getWallNanos() > 0);
+        assertNotNull(getCounter(stats.getSections(), "SECTION"));
+
+        ParseStats.Counter kernelLog = getCounter(stats.getParsers(), "KernelLogParser");
+        assertEquals(1, kernelLog.getRuns());
+        assertEquals(0, kernelLog.getLines());
+
+        boolean foundKernelPanic = false;
+        for (ParseStats.RegexCounter regex : stats.getRegexes()) {
+            if ("Kernel panic.*".equals(regex.getRegex())) {
+                // The regex is only run on the line which contains "Kernel panic".
+                assertEquals(1, regex.getAttempts());
+                assertEquals(1, regex.getHits());
+                foundKernelPanic = true;
+            }
+        }
+        assertTrue(foundKernelPanic);
+    }
+
+    /**
+     * Test that a section read lazily from a file with {@code \r\n} line endings reports the same
+     * characters as the same section parsed from lines.
+     */
+    public void testBugreport_lazily() throws IOException {
+        ParseStats stats = new ParseStats();
+        ParseStats.setCurrent(stats);
+        new BugreportParser().parse(BUGREPORT);
+        long chars = getCounter(stats.getSections(), "KERNEL LOG (dmesg)").getChars();
+
+        File file = File.createTempFile("ParseStatsTest", ".txt");
+        try {
+            FileWriter writer = new FileWriter(file);
+            try {
+                writer.write(ArrayUtil.join("\r\n", BUGREPORT));
+                writer.write("\r\n");
+            } finally {
+                writer.close();
+            }
+            stats = new ParseStats();
+            ParseStats.setCurrent(stats);
+            assertNotNull(new BugreportParser().parseLazily(file).getKernelLog());
+            assertEquals(chars, getCounter(stats.getSections(), "KERNEL LOG (dmesg)").getChars());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that nothing is reported if stats are not set for the thread.
+     */
+    public void testNotCurrent() {
+        ParseStats stats = new ParseStats();
+        ParseStats.setCurrent(stats);
+        ParseStats.setCurrent(null);
+        new BugreportParser().parse(BUGREPORT);
+        assertTrue(ParseStats.matches(Pattern.compile("a").matcher("a")));
+
+        assertTrue(stats.getSections().isEmpty());
+        assertTrue(stats.getParsers().isEmpty());
+        assertTrue(stats.getRegexes().isEmpty());
+    }
+
+    /**
+     * Test that the regex attempts counted by another thread are added to the stats when the
+     * thread stops collecting them.
+     */
+    public void testMatches_otherThread() throws InterruptedException {
+        final ParseStats stats = new ParseStats();
+        final Pattern pattern = Pattern.compile("a+");
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ParseStats.setCurrent(stats);
+                try {
+                    ParseStats.matches(pattern.matcher("aa"));
+                    ParseStats.matches(pattern.matcher("b"));
+                } finally {
+                    ParseStats.setCurrent(null);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertNull(ParseStats.getCurrent());
+        List<ParseStats.RegexCounter> regexes = stats.getRegexes();
+        assertEquals(1, regexes.size());
+        assertEquals("a+", regexes.get(0).getRegex());
+        assertEquals(2, regexes.get(0).getAttempts());
+        assertEquals(1, regexes.get(0).getHits());
+    }
+
+    /**
+     * Test that the measured values add up across runs.
+     */
+    public void testAddParser() {
+        ParseStats stats = new ParseStats();
+        stats.addParser("parser", ParseStats.start());
+        stats.addParser("parser", ParseStats.start().stop());
+
+        ParseStats.Counter counter = getCounter(stats.getParsers(), "parser");
+        assertEquals(2, counter.getRuns());
+        assertTrue(counter.getWallNanos() >= 0);
+        assertTrue(counter.getCpuNanos() >= -1);
+    }
+
+    private ParseStats.Counter getCounter(List<ParseStats.Counter> counters, String name) {
+        for (ParseStats.Counter counter : counters) {
+            if (name.equals(counter.getName())) {
+                return counter;
+            }
+        }
+        fail(String.format("No counter for %s in %s", name, counters));
+        return null;
+    }
+}
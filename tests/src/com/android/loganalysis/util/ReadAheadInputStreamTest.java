@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link ReadAheadInputStream}.
+ */
+public class ReadAheadInputStreamTest extends TestCase {
+
+    /**
+     * Test that the input is read in order across chunks.
+     */
+    public void testRead() throws IOException {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        InputStream input = new ReadAheadInputStream(new ByteArrayInputStream(data), 64, 2);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(0, input.read());
+        byte[] buffer = new byte[100];
+        int read;
+        while ((read = input.read(buffer, 0, buffer.length)) >= 0) {
+            output.write(buffer, 0, read);
+        }
+        input.close();
+
+        byte[] rest = output.toByteArray();
+        assertEquals(data.length - 1, rest.length);
+        for (int i = 0; i < rest.length; i++) {
+            assertEquals(data[i + 1], rest[i]);
+        }
+    }
+
+    /**
+     * Test that an unchecked exception from the input is thrown to the reader rather than leaving
+     * it waiting for the next chunk.
+     */
+    public void testRead_uncheckedException() throws IOException {
+        final IllegalStateException error = new IllegalStateException("corrupt");
+        InputStream input = new ReadAheadInputStream(new InputStream() {
+            @Override
+            public int read() {
+                throw error;
+            }
+        }, 64, 2);
+        try {
+            input.read();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertSame(error, e);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Test that closing does not wait for a read which is blocked, and that the input is closed
+     * once the read returns rather than while it is in progress.
+     */
+    public void testClose_blockedRead() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final boolean[] closedDuringRead = new boolean[1];
+        InputStream input = new InputStream() {
+            private volatile boolean mReading = false;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                read(b, 0, 1);
+                return b[0];
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                mReading = true;
+                reading.countDown();
+                // Keep waiting when interrupted, like a read of stdin.
+                while (true) {
+                    try {
+                        release.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+                mReading = false;
+                b[off] = 'a';
+                return 1;
+            }
+
+            @Override
+            public void close() {
+                closedDuringRead[0] = mReading;
+                closed.countDown();
+            }
+        };
+        InputStream readAhead = new ReadAheadInputStream(input, 64, 2);
+        reading.await();
+        readAhead.close();
+        assertEquals(1, closed.getCount());
+
+        release.countDown();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertFalse(closedDuringRead[0]);
+    }
+
+    /**
+     * Test that the input is only closed when the {@link ReadAheadInputStream} is closed, even
+     * after it has been read to the end.
+     */
+    public void testClose_afterEnd() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(1);
+        InputStream input = new ReadAheadInputStream(new ByteArrayInputStream(new byte[10]) {
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        }, 64, 2);
+        while (input.read() >= 0) {
+            // Read to the end
+        }
+        assertEquals(1, closed.getCount());
+        input.close();
+        // The background thread may still be finishing, in which case it closes the input.
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.util.regex.Pattern;
+
+/**
+ * Unit tests for {@link RegexLiteralUtil}.
+ */
+public class RegexLiteralUtilTest extends TestCase {
+
+    /**
+     * Test that the literal text at the start of a regex is returned.
+     */
+    public void testGetLiteralPrefix() {
+        assertEquals("------ ", RegexLiteralUtil.getLiteralPrefix(
+                "------ (SYSTEM|MAIN|MAIN AND SYSTEM) LOG .*"));
+        assertEquals("DUMP OF SERVICE ", RegexLiteralUtil.getLiteralPrefix("^DUMP OF SERVICE .*"));
+        assertEquals("abc", RegexLiteralUtil.getLiteralPrefix("abc"));
+        assertEquals("a.b(", RegexLiteralUtil.getLiteralPrefix("a\\.b\\(\\d+"));
+        assertEquals("a.*b", RegexLiteralUtil.getLiteralPrefix("\\Qa.*b\\E"));
+        assertEquals("a.*bc", RegexLiteralUtil.getLiteralPrefix("\\Qa.*b\\Ec[0-9]"));
+    }
+
+    /**
+     * Test that a literal character made optional or repeated by a quantifier is handled.
+     */
+    public void testGetLiteralPrefix_quantifier() {
+        assertEquals("ab", RegexLiteralUtil.getLiteralPrefix("abc?"));
+        assertEquals("ab", RegexLiteralUtil.getLiteralPrefix("abc*d"));
+        assertEquals("ab", RegexLiteralUtil.getLiteralPrefix("abc{2}"));
+        assertEquals("abc", RegexLiteralUtil.getLiteralPrefix("abc+d"));
+        assertEquals("a.", RegexLiteralUtil.getLiteralPrefix("\\Qa.b\\E?"));
+        assertEquals("", RegexLiteralUtil.getLiteralPrefix("a?bc"));
+    }
+
+    /**
+     * Test that no prefix is returned when one cannot be found safely.
+     */
+    public void testGetLiteralPrefix_none() {
+        assertEquals("", RegexLiteralUtil.getLiteralPrefix(""));
+        assertEquals("", RegexLiteralUtil.getLiteralPrefix(".*"));
+        assertEquals("", RegexLiteralUtil.getLiteralPrefix("\\s+foo"));
+        assertEquals("", RegexLiteralUtil.getLiteralPrefix("(?i)foo"));
+        assertEquals("", RegexLiteralUtil.getLiteralPrefix("alpha|beta"));
+        assertEquals("", RegexLiteralUtil.getLiteralPrefix("alpha[|]|beta"));
+        assertEquals("", RegexLiteralUtil.getLiteralPrefix(Pattern.compile("foo",
+                Pattern.CASE_INSENSITIVE)));
+        assertEquals("foo", RegexLiteralUtil.getLiteralPrefix("foo(a|b)"));
+        assertEquals("foo", RegexLiteralUtil.getLiteralPrefix("foo[|]"));
+        assertEquals("foo|", RegexLiteralUtil.getLiteralPrefix("foo\\|"));
+    }
+
+    /**
+     * Test that the longest literal outside of any group is returned.
+     */
+    public void testGetRequiredLiteral() {
+        assertEquals("scontext=", RegexLiteralUtil.getRequiredLiteral(
+                ".*avc:\\s.*scontext=\\w*:\\w*:([\\w\\s]*):\\w*\\s.*"));
+        assertEquals(" timed out (is the CPU pegged?)", RegexLiteralUtil.getRequiredLiteral(
+                ".* timed out \\(is the CPU pegged\\?\\).*"));
+        assertEquals("Last boot reason: ", RegexLiteralUtil.getRequiredLiteral(
+                "Last boot reason: (?:kernel_panic|hw_reset(?:$|\\n)|wdog_.*)"));
+        assertEquals("[MODEM_IF]", RegexLiteralUtil.getRequiredLiteral("\\[MODEM_IF\\].*CRASH.*"));
+        assertEquals("GetBufferLock timed out for thread ", RegexLiteralUtil.getRequiredLiteral(
+                "GetBufferLock timed out for thread \\d+ buffer .*"));
+        assertEquals("abcd", RegexLiteralUtil.getRequiredLiteral("x*abcd+e?"));
+        assertEquals("BC", RegexLiteralUtil.getRequiredLiteral("\\x41BC"));
+        assertEquals("bcd", RegexLiteralUtil.getRequiredLiteral("\\u0041bcd"));
+        assertEquals("def", RegexLiteralUtil.getRequiredLiteral("a[]bc]def"));
+        assertEquals("def", RegexLiteralUtil.getRequiredLiteral("ab\\p{Alpha}def"));
+        assertEquals("cde", RegexLiteralUtil.getRequiredLiteral("(a)b\\1cde"));
+        assertEquals("bcd", RegexLiteralUtil.getRequiredLiteral("a{1,2}?bcd"));
+    }
+
+    /**
+     * Test that no literal is returned when one cannot be found safely.
+     */
+    public void testGetRequiredLiteral_none() {
+        assertEquals("", RegexLiteralUtil.getRequiredLiteral(".*"));
+        assertEquals("", RegexLiteralUtil.getRequiredLiteral("(abc)"));
+        assertEquals("", RegexLiteralUtil.getRequiredLiteral(".*abc|def"));
+        assertEquals("", RegexLiteralUtil.getRequiredLiteral("a[]|]b|c"));
+        assertEquals("ab", RegexLiteralUtil.getRequiredLiteral("ab(?i)cde"));
+        assertEquals("", RegexLiteralUtil.getRequiredLiteral(Pattern.compile(".*abc.*",
+                Pattern.CASE_INSENSITIVE)));
+    }
+}
@@ -21,6 +21,7 @@ import junit.framework.TestCase;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -216,6 +217,195 @@ public class RegexTrieTest extends TestCase {
         assertEquals(STORED_VAL + 2, retrieved);
     }
 
+    /**
+     * Make sure that the first child to be put wins when several children match, and that the
+     * captures come from the child which matched.
+     */
+    public void testCombined_precedence() {
+        mTrie.put(STORED_VAL, "a.*");
+        mTrie.put(STORED_VAL + 1, "ab");
+        mTrie.put(STORED_VAL + 2, "(b)(c)?");
+        mTrie.put(STORED_VAL + 3, "(b)(d)");
+        Integer retrieved;
+        List<List<String>> groups = new ArrayList<List<String>>();
+
+        retrieved = mTrie.retrieve(groups, "ab");
+        assertEquals(STORED_VAL, retrieved);
+        assertTrue(groups.get(0).isEmpty());
+
+        retrieved = mTrie.retrieve(groups, "b");
+        assertEquals((Integer)(STORED_VAL + 2), retrieved);
+        assertEquals(Arrays.asList("b", null), groups.get(0));
+
+        retrieved = mTrie.retrieve(groups, "bd");
+        assertEquals((Integer)(STORED_VAL + 3), retrieved);
+        assertEquals(Arrays.asList("b", "d"), groups.get(0));
+
+        assertNull(mTrie.retrieve(groups, "c"));
+    }
+
+    /**
+     * Make sure that children with back references or flags, which cannot be combined, are still
+     * matched.
+     */
+    public void testCombined_uncombinable() {
+        mTrie.put(STORED_VAL, "(a)\\1");
+        mTrie.put(STORED_VAL + 1, Pattern.compile("b", Pattern.CASE_INSENSITIVE));
+        mTrie.put(STORED_VAL + 2, "(?i)c");
+        List<List<String>> groups = new ArrayList<List<String>>();
+
+        assertEquals(STORED_VAL, mTrie.retrieve(groups, "aa"));
+        assertEquals(Arrays.asList("a"), groups.get(0));
+        assertNull(mTrie.retrieve("ab"));
+        assertEquals((Integer)(STORED_VAL + 1), mTrie.retrieve("B"));
+        assertEquals((Integer)(STORED_VAL + 2), mTrie.retrieve("C"));
+    }
+
+    /**
+     * Make sure that a child which is put after a retrieval is matched.
+     */
+    public void testCombined_putAfterRetrieve() {
+        mTrie.put(STORED_VAL, "a", "b");
+        assertNull(mTrie.retrieve("c"));
+        assertNull(mTrie.retrieve("a", "c"));
+
+        mTrie.put(STORED_VAL + 1, "c");
+        mTrie.put(STORED_VAL + 2, "a", "c");
+        assertEquals((Integer)(STORED_VAL + 1), mTrie.retrieve("c"));
+        assertEquals((Integer)(STORED_VAL + 2), mTrie.retrieve("a", "c"));
+        assertEquals(STORED_VAL, mTrie.retrieve("a", "b"));
+    }
+
+    /**
+     * Make sure that segments which start with no child's literal prefix are rejected without
+     * running any regex, and that the wildcard is still used.
+     */
+    public void testPrefix_rejected() {
+        mTrie.put(STORED_VAL, "------ MEMORY INFO .*");
+        mTrie.put(STORED_VAL + 1, "------ CPU INFO .*");
+        mTrie.put(STORED_VAL + 2, "DUMP OF SERVICE (.*):");
+        ParseStats stats = new ParseStats();
+        ParseStats.setCurrent(stats);
+        try {
+            assertNull(mTrie.retrieve("foo"));
+            assertNull(mTrie.retrieve(""));
+            assertNull(mTrie.retrieve("------ TOP ------"));
+            assertEquals(0, stats.getRegexes().size());
+
+            assertEquals((Integer)(STORED_VAL + 1), mTrie.retrieve("------ CPU INFO (top)"));
+            assertEquals(1, stats.getRegexes().size());
+        } finally {
+            ParseStats.setCurrent(null);
+        }
+
+        mTrie.put(STORED_VAL + 3, (String) null);
+        List<List<String>> groups = new ArrayList<List<String>>();
+        assertEquals((Integer)(STORED_VAL + 3), mTrie.retrieve(groups, "foo"));
+        assertEquals(Arrays.asList("foo"), groups.get(0));
+        assertEquals((Integer)(STORED_VAL + 2), mTrie.retrieve(groups, "DUMP OF SERVICE a:"));
+        assertEquals(Arrays.asList("a"), groups.get(0));
+    }
+
+    /**
+     * Make sure that a child without a literal prefix disables prefix rejection.
+     */
+    public void testPrefix_none() {
+        mTrie.put(STORED_VAL, "abc");
+        mTrie.put(STORED_VAL + 1, "x|abd");
+        mTrie.put(STORED_VAL + 2, "(?i)def");
+        assertEquals((Integer)(STORED_VAL + 1), mTrie.retrieve("x"));
+        assertEquals((Integer)(STORED_VAL + 1), mTrie.retrieve("abd"));
+        assertEquals((Integer)(STORED_VAL + 2), mTrie.retrieve("DEF"));
+        assertEquals(STORED_VAL, mTrie.retrieve("abc"));
+    }
+
+    /**
+     * Make sure that a snapshot retrieves the same values and captures as the trie.
+     */
+    public void testFreeze() {
+        mTrie.put(STORED_VAL, "a(b)?(c)", "d(e)");
+        mTrie.put(STORED_VAL + 1, "a(.)");
+        mTrie.put(STORED_VAL + 2, "x", null);
+        mTrie.put(STORED_VAL + 3, "(y)(z)");
+        RegexTrie.Snapshot<Integer> snapshot = mTrie.freeze();
+        RegexTrie.Captures captures = new RegexTrie.Captures();
+        List<List<String>> groups = new ArrayList<List<String>>();
+
+        String[][] queries = {{"ac", "de"}, {"abc", "de"}, {"ab"}, {"x", "1", "2"}, {"yz"},
+                {"ac", "d"}, {"q"}, {"ac"}};
+        for (String[] query : queries) {
+            Integer expected = mTrie.retrieve(groups, query);
+            assertEquals(expected, snapshot.retrieve(captures, query));
+            assertEquals(expected, snapshot.retrieve(query));
+            assertEquals(groups, captures.toList());
+        }
+
+        assertEquals(STORED_VAL, snapshot.retrieve(captures, "ac", "de"));
+        assertEquals(2, captures.getLevelCount());
+        assertNull(captures.get(0, 0));
+        assertEquals(-1, captures.getStart(0, 0));
+        assertEquals("c", captures.get(0, 1));
+        assertEquals(1, captures.getStart(0, 1));
+        assertEquals(2, captures.getEnd(0, 1));
+        assertEquals((Integer)(STORED_VAL + 3), snapshot.retrieve(captures, "yz"));
+        assertEquals(1, captures.getLevelCount());
+        assertEquals(2, captures.getCount(0));
+        try {
+            captures.get(0, 2);
+            fail("Expected an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Make sure that a snapshot is not changed by later changes to the trie.
+     */
+    public void testFreeze_immutable() {
+        mTrie.put(STORED_VAL, "a");
+        RegexTrie.Snapshot<Integer> snapshot = mTrie.freeze();
+        mTrie.put(STORED_VAL + 1, "b");
+        mTrie.put(STORED_VAL + 2, "a");
+        mTrie.clear();
+        assertEquals(STORED_VAL, snapshot.retrieve("a"));
+        assertNull(snapshot.retrieve("b"));
+    }
+
+    /**
+     * Make sure that many threads can retrieve from one snapshot at the same time.
+     */
+    public void testFreeze_threads() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            mTrie.put(i, String.format("key%d: (\\d+)", i));
+        }
+        final RegexTrie.Snapshot<Integer> snapshot = mTrie.freeze();
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    RegexTrie.Captures captures = new RegexTrie.Captures();
+                    for (int i = 0; i < 5000; i++) {
+                        int key = (i + offset) % 20;
+                        Integer value = snapshot.retrieve(captures,
+                                String.format("key%d: %d", key, i));
+                        if (value == null || value != key
+                                || !String.valueOf(i).equals(captures.get(0, 0))) {
+                            failures.add(String.format("key%d: %d", key, i));
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+    }
+
     /**
      * Make sure that {@link CompPattern#equals} works as expected.  Shake a proverbial fist at Java
      */
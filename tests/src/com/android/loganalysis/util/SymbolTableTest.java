@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link SymbolTable}.
+ */
+public class SymbolTableTest extends TestCase {
+
+    /**
+     * Test that equal values are interned as the same instance.
+     */
+    public void testIntern() {
+        SymbolTable symbols = new SymbolTable();
+        String tag = symbols.intern(new String("ActivityManager"));
+        assertSame(tag, symbols.intern(new String("ActivityManager")));
+        assertSame(tag, symbols.intern("E ActivityManager: msg", 2, 17));
+        assertSame(tag, symbols.intern(new StringBuilder("ActivityManager"), 0, 15));
+        assertNotSame(tag, symbols.intern("ActivityManage"));
+        assertSame("", symbols.intern("abc", 1, 1));
+        assertNull(symbols.intern(null));
+        assertEquals(3, symbols.size());
+    }
+
+    /**
+     * Test that a region is only copied the first time it is interned.
+     */
+    public void testIntern_region() {
+        SymbolTable symbols = new SymbolTable();
+        String line = "1313 78128K com.google.android.apps.maps";
+        String name = symbols.intern(line, 12, line.length());
+        assertEquals("com.google.android.apps.maps", name);
+        assertSame(name, symbols.intern(line, 12, line.length()));
+        assertSame(name, symbols.intern("com.google.android.apps.maps"));
+    }
+
+    /**
+     * Test that values are still found after the table grows.
+     */
+    public void testIntern_grow() {
+        SymbolTable symbols = new SymbolTable();
+        List<String> interned = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            interned.add(symbols.intern(String.valueOf(i)));
+        }
+        assertEquals(10000, symbols.size());
+        for (int i = 0; i < 10000; i++) {
+            assertSame(interned.get(i), symbols.intern(String.valueOf(i)));
+            assertSame(interned.get(i), symbols.intern("x" + i, 1, 1 + String.valueOf(i).length()));
+        }
+    }
+
+    /**
+     * Test that a table can be shared by threads.
+     */
+    public void testIntern_threads() throws InterruptedException {
+        final SymbolTable symbols = new SymbolTable();
+        final String[][] results = new String[4][1000];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t++) {
+            final String[] result = results[t];
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = symbols.intern("tag" + i, 0, 3 + String.valueOf(i).length());
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1000, symbols.size());
+        for (int i = 0; i < 1000; i++) {
+            for (String[] result : results) {
+                assertSame(results[0][i], result[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Unit tests for {@link TimestampCodec}.
+ */
+public class TimestampCodecTest extends TestCase {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * Test that each layout is parsed at an offset in the text.
+     */
+    public void testParse() {
+        TimestampCodec codec = new TimestampCodec(UTC);
+        assertEquals(1335373028445L, codec.parseMonthDayTime(2012, "04-25 16:57:08.445", 0));
+        assertEquals(1335373028445L, codec.parseMonthDayTime(2012, "x 04-25 16:57:08.445 y", 2));
+        assertEquals(1335373028445L, codec.parseDateTime("2012-04-25 16:57:08.445", 0, true));
+        assertEquals(1335373028000L, codec.parseDateTime("== 2012-04-25 16:57:08", 3, false));
+        assertEquals(new Date(1335373028000L), TimestampCodec.toDate(1335373028000L));
+        assertNull(TimestampCodec.toDate(TimestampCodec.INVALID));
+    }
+
+    /**
+     * Test that text which does not have the layout is {@link TimestampCodec#INVALID}.
+     */
+    public void testParse_invalid() {
+        TimestampCodec codec = new TimestampCodec(UTC);
+        assertEquals(TimestampCodec.INVALID,
+                codec.parseMonthDayTime(2012, "04-25 16:57:08x445", 0));
+        assertEquals(TimestampCodec.INVALID,
+                codec.parseMonthDayTime(2012, "04-25 16:57:08.44", 0));
+        assertEquals(TimestampCodec.INVALID,
+                codec.parseMonthDayTime(2012, "04-2a 16:57:08.445", 0));
+        assertEquals(TimestampCodec.INVALID, codec.parseDateTime("2012/04/25 16:57:08", 0, false));
+        assertEquals(TimestampCodec.INVALID, codec.parseDateTime("2012-04-25 16:57:08", 0, true));
+    }
+
+    /**
+     * Test that fields which are out of range roll over like a lenient calendar.
+     */
+    public void testParse_lenient() {
+        TimestampCodec codec = new TimestampCodec(UTC);
+        assertEquals(codec.parseDateTime("2013-03-02 00:00:00", 0, false),
+                codec.parseDateTime("2013-02-30 00:00:00", 0, false));
+        assertEquals(codec.parseDateTime("2013-01-01 01:00:00", 0, false),
+                codec.parseDateTime("2012-12-31 24:60:00", 0, false));
+    }
+
+    /**
+     * Test that timestamps are the same as a lenient {@link SimpleDateFormat} gives, including on
+     * days when the offset of the time zone changes.
+     */
+    public void testParse_timeZones() {
+        final String[] zones = {"America/Los_Angeles", "America/Sao_Paulo", "Australia/Lord_Howe",
+                "Pacific/Apia"};
+        Random random = new Random(0);
+        for (String zone : zones) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            TimestampCodec codec = new TimestampCodec(timeZone);
+            SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            formatter.setTimeZone(timeZone);
+            for (int year = 1990; year <= 2020; year++) {
+                for (int month = 1; month <= 12; month++) {
+                    for (int day = 1; day <= 31; day++) {
+                        for (int hour = 0; hour < 24; hour += 1 + random.nextInt(4)) {
+                            String timestamp = String.format("%04d-%02d-%02d %02d:%02d:%02d.%03d",
+                                    year, month, day, hour, random.nextInt(60),
+                                    random.nextInt(60), random.nextInt(1000));
+                            assertEquals(zone + " " + timestamp,
+                                    formatter.parse(timestamp, new ParsePosition(0)).getTime(),
+                                    codec.parseDateTime(timestamp, 0, true));
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
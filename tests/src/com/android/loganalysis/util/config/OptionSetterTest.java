@@ -392,6 +392,29 @@ public class OptionSetterTest extends TestCase {
         }
     }
 
+    /**
+     * Test that {@link OptionSetter#getOptionFieldsForClass(Class)} only searches a class once,
+     * and that the same fields are used to set options on each instance of the class.
+     */
+    public void testGetOptionFieldsForClass_cached() throws ConfigurationException {
+        Collection<Field> fields = OptionSetter.getOptionFieldsForClass(
+                AllTypesOptionSource.class);
+        assertSame(fields, OptionSetter.getOptionFieldsForClass(AllTypesOptionSource.class));
+        try {
+            fields.clear();
+            fail("UnsupportedOperationException not thrown");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        AllTypesOptionSource optionSource1 = new AllTypesOptionSource();
+        AllTypesOptionSource optionSource2 = new AllTypesOptionSource();
+        new OptionSetter(optionSource1).setOptionValue("int", "1");
+        new OptionSetter(optionSource2).setOptionValue("int", "2");
+        assertEquals(1, optionSource1.mInt);
+        assertEquals(2, optionSource2.mInt);
+    }
+
     /**
      * Test {@link OptionSetter#isBooleanOption(String)} when passed an unknown option name
      */